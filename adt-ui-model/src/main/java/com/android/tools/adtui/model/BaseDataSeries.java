@@ -65,6 +65,12 @@ public abstract class BaseDataSeries<E> implements DataSeries<E> {
     return mX.size();
   }
 
+  @Override
+  public long getModificationCount() {
+    // Samples are only ever added.
+    return mX.size();
+  }
+
   public long getX(int index) {
     return mX.get(index);
   }
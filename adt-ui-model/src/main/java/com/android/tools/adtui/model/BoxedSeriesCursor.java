@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link SeriesCursor} over a boxed {@link DataSeries}, for series that don't implement {@link PrimitiveDataSeries}.
+ */
+class BoxedSeriesCursor implements SeriesCursor {
+  @NotNull
+  private final DataSeries<Long> mySeries;
+
+  private ImmutableList<SeriesData<Long>> myData;
+
+  private int myIndex;
+
+  private SeriesData<Long> myCurrent;
+
+  BoxedSeriesCursor(@NotNull DataSeries<Long> series) {
+    mySeries = series;
+  }
+
+  @Override
+  public void seek(@NotNull Range xRange) {
+    myData = mySeries.getDataForXRange(xRange);
+    myIndex = -1;
+  }
+
+  @Override
+  public boolean next() {
+    if (myIndex + 1 >= myData.size()) {
+      return false;
+    }
+    myCurrent = myData.get(++myIndex);
+    return true;
+  }
+
+  @Override
+  public long getX() {
+    return myCurrent.x;
+  }
+
+  @Override
+  public double getY() {
+    return myCurrent.value;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Numeric series that stores its x and y values in primitive {@code long[]} and {@code double[]} columns. Reading it through
+ * {@link #createCursor()} doesn't allocate anything per sample, {@link #getDataForXRange(Range)} is kept for users of the boxed
+ * {@link DataSeries} API and rounds the y values to {@link Long}s.
+ *
+ * If created with a sampling period, the series also maintains a {@link MinMaxPyramid} so cursors seeking with a point budget (see
+ * {@link SeriesCursor#seek(Range, int)}) read bucket aggregates instead of every raw sample of a zoomed out range.
+ */
+public class ColumnarDataSeries implements DataSeries<Long>, PrimitiveDataSeries {
+  private static final int INITIAL_CAPACITY = 64;
+
+  @NotNull
+  private long[] myX = new long[INITIAL_CAPACITY];
+
+  @NotNull
+  private double[] myY = new double[INITIAL_CAPACITY];
+
+  private int mySize;
+
+  private long myModificationCount;
+
+  @Nullable
+  private final MinMaxPyramid myPyramid;
+
+  public ColumnarDataSeries() {
+    myPyramid = null;
+  }
+
+  /**
+   * @param samplingPeriod about the x distance between consecutive samples, see {@link MinMaxPyramid#forSamplingPeriod(long)}.
+   */
+  public ColumnarDataSeries(long samplingPeriod) {
+    myPyramid = MinMaxPyramid.forSamplingPeriod(samplingPeriod);
+  }
+
+  public void add(long x, double y) {
+    if (mySize == myX.length) {
+      myX = Arrays.copyOf(myX, mySize * 2);
+      myY = Arrays.copyOf(myY, mySize * 2);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    mySize++;
+    myModificationCount++;
+    if (myPyramid != null) {
+      myPyramid.add(x, y);
+    }
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public long getModificationCount() {
+    return myModificationCount;
+  }
+
+  public long getX(int index) {
+    checkIndex(index);
+    return myX[index];
+  }
+
+  public double getY(int index) {
+    checkIndex(index);
+    return myY[index];
+  }
+
+  public void clear() {
+    mySize = 0;
+    myModificationCount++;
+    if (myPyramid != null) {
+      myPyramid.clear();
+    }
+  }
+
+  /**
+   * Same as {@link BaseDataSeries#getNearestXIndex(long)}: the index of the last sample at or before x, clamped to the series.
+   */
+  public int getNearestXIndex(long x) {
+    int index = Arrays.binarySearch(myX, 0, mySize, x);
+    if (index < 0) {
+      // No exact match, step to 1 before the insertion point.
+      index = -index - 2;
+    }
+    return Math.max(0, Math.min(index, mySize - 1));
+  }
+
+  @Override
+  public ImmutableList<SeriesData<Long>> getDataForXRange(Range xRange) {
+    int fromIndex = mySize == 0 ? 0 : getNearestXIndex((long)xRange.getMin());
+    int toIndex = mySize == 0 ? 0 : getNearestXIndex((long)xRange.getMax()) + 1;
+    return getData(fromIndex, toIndex);
+  }
+
+  /**
+   * @return all the samples of the series, boxed like {@link #getDataForXRange(Range)} does.
+   */
+  ImmutableList<SeriesData<Long>> getData() {
+    return getData(0, mySize);
+  }
+
+  private ImmutableList<SeriesData<Long>> getData(int fromIndex, int toIndex) {
+    return new ImmutableList<SeriesData<Long>>() {
+      @Override
+      public int size() {
+        return toIndex - fromIndex;
+      }
+
+      @Override
+      public SeriesData<Long> get(int index) {
+        assert index < size();
+        return new SeriesData<>(myX[fromIndex + index], Math.round(myY[fromIndex + index]));
+      }
+    };
+  }
+
+  @NotNull
+  @Override
+  public SeriesCursor createCursor() {
+    return new Cursor();
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mySize) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+    }
+  }
+
+  private class Cursor implements SeriesCursor {
+    private int myIndex;
+    private int myEndIndex;
+
+    // Set while the cursor walks pyramid buckets instead of raw samples.
+    @Nullable
+    private MinMaxPyramid.Cursor myPyramidCursor;
+
+    @Nullable
+    private final MinMaxPyramid.Cursor myCachedPyramidCursor = myPyramid == null ? null : myPyramid.createCursor();
+
+    @Override
+    public void seek(@NotNull Range xRange, int maxPoints) {
+      seek(xRange);
+      // Each bucket yields up to three points, so only switch when that's still a lot less than reading the raw samples.
+      if (myCachedPyramidCursor != null && myEndIndex - myIndex > maxPoints * 3) {
+        int level = myPyramid.getLevelFor(xRange.getLength(), maxPoints);
+        if (level >= 0) {
+          myCachedPyramidCursor.setLevel(level);
+          myCachedPyramidCursor.seek(xRange);
+          myPyramidCursor = myCachedPyramidCursor;
+        }
+      }
+    }
+
+    @Override
+    public void seek(@NotNull Range xRange) {
+      myPyramidCursor = null;
+      if (mySize == 0) {
+        myIndex = -1;
+        myEndIndex = 0;
+        return;
+      }
+      // Same samples as getDataForXRange, the cursor starts just before the first one.
+      myIndex = getNearestXIndex((long)xRange.getMin()) - 1;
+      myEndIndex = getNearestXIndex((long)xRange.getMax()) + 1;
+    }
+
+    @Override
+    public boolean next() {
+      if (myPyramidCursor != null) {
+        return myPyramidCursor.next();
+      }
+      if (myIndex + 1 >= myEndIndex) {
+        return false;
+      }
+      myIndex++;
+      return true;
+    }
+
+    @Override
+    public long getX() {
+      return myPyramidCursor != null ? myPyramidCursor.getX() : myX[myIndex];
+    }
+
+    @Override
+    public double getY() {
+      return myPyramidCursor != null ? myPyramidCursor.getY() : myY[myIndex];
+    }
+  }
+}
@@ -21,6 +21,18 @@ import com.intellij.util.containers.ImmutableList;
  * An interface that provides data to all RangedSeries used by the UI.
  */
 public interface DataSeries<E> {
+  /**
+   * Returned by {@link #getModificationCount()} when a series can't tell whether its samples changed.
+   */
+  long UNKNOWN_MODIFICATION_COUNT = -1;
 
   ImmutableList<SeriesData<E>> getDataForXRange(Range xRange);
+
+  /**
+   * @return a count that changes whenever samples are added to or removed from the series, so readers can tell whether what they built
+   * from it is stale. Series that load their samples on every request (e.g. from an RPC) return {@link #UNKNOWN_MODIFICATION_COUNT}.
+   */
+  default long getModificationCount() {
+    return UNKNOWN_MODIFICATION_COUNT;
+  }
 }
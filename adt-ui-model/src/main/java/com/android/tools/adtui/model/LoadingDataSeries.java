@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Numeric series that loads the samples of each requested range on demand, e.g. from an RPC, straight into the primitive columns of a
+ * {@link ColumnarDataSeries}. Each cursor keeps its own columns and reuses them on every {@link SeriesCursor#seek(Range)}, so charts
+ * reading the series through {@link #createCursor()} don't allocate anything per sample. {@link #getDataForXRange(Range)} is kept for
+ * users of the boxed {@link DataSeries} API.
+ *
+ * If created with a sampling period, the series also keeps a {@link MinMaxPyramid} of the samples it loaded, so cursors seeking a zoomed
+ * out range with a point budget (see {@link SeriesCursor#seek(Range, int)}) read bucket aggregates instead of loading every raw sample of
+ * the range each time. The pyramid is fed incrementally: each such seek only loads the samples after the latest one it holds.
+ */
+public abstract class LoadingDataSeries implements DataSeries<Long>, PrimitiveDataSeries {
+  @Nullable
+  private final MinMaxPyramid myPyramid;
+
+  /**
+   * The x range of the samples added to {@link #myPyramid}, guarded by the series.
+   */
+  private long myPyramidStart;
+  private long myPyramidEnd;
+  private boolean myPyramidEmpty = true;
+
+  @NotNull
+  private final ColumnarDataSeries myPyramidSamples = new ColumnarDataSeries();
+
+  protected LoadingDataSeries() {
+    myPyramid = null;
+  }
+
+  /**
+   * @param samplingPeriod about the x distance between consecutive samples, see {@link MinMaxPyramid#forSamplingPeriod(long)}.
+   */
+  protected LoadingDataSeries(long samplingPeriod) {
+    myPyramid = MinMaxPyramid.forSamplingPeriod(samplingPeriod);
+  }
+
+  /**
+   * Adds the samples of the given range, in x order, to {@code samples}. Series may add samples around the range as well, e.g. so lines
+   * can be drawn from off screen; all of them are returned to the reader.
+   */
+  protected abstract void load(@NotNull Range xRange, @NotNull ColumnarDataSeries samples);
+
+  @Override
+  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range xRange) {
+    ColumnarDataSeries samples = new ColumnarDataSeries();
+    load(xRange, samples);
+    return samples.getData();
+  }
+
+  @NotNull
+  @Override
+  public SeriesCursor createCursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Each cursor loads into its own columns, so they can be used on any thread as long as {@link #load} can.
+   */
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
+  /**
+   * Loads the samples the pyramid doesn't have yet, up to the end of the range. Samples are expected to be loaded in x order and to arrive
+   * in x order, so only the ones after the latest sample of the pyramid are added.
+   */
+  private synchronized void updatePyramid(@NotNull MinMaxPyramid pyramid, @NotNull Range xRange) {
+    long min = (long)xRange.getMin();
+    long max = (long)xRange.getMax();
+    long start;
+    if (myPyramidEmpty || min < myPyramidStart) {
+      // Start a range length earlier, so zooming further out doesn't reload everything on each frame.
+      start = min - (max - min);
+      pyramid.clear();
+      myPyramidStart = start;
+      myPyramidEmpty = true;
+    }
+    else if (max <= myPyramidEnd) {
+      return;
+    }
+    else {
+      start = myPyramidEnd;
+    }
+
+    myPyramidSamples.clear();
+    load(new Range(start, max), myPyramidSamples);
+    for (int i = 0; i < myPyramidSamples.size(); i++) {
+      long x = myPyramidSamples.getX(i);
+      if (myPyramidEmpty || x > myPyramidEnd) {
+        pyramid.add(x, myPyramidSamples.getY(i));
+        myPyramidEnd = x;
+        myPyramidEmpty = false;
+      }
+    }
+  }
+
+  private class Cursor implements SeriesCursor {
+    @NotNull
+    private final ColumnarDataSeries mySamples = new ColumnarDataSeries();
+    private int myIndex;
+
+    // Set while the cursor walks pyramid buckets instead of loaded samples.
+    @Nullable
+    private MinMaxPyramid.Cursor myPyramidCursor;
+
+    @Nullable
+    private final MinMaxPyramid.Cursor myCachedPyramidCursor = myPyramid == null ? null : myPyramid.createCursor();
+
+    @Override
+    public void seek(@NotNull Range xRange, int maxPoints) {
+      if (myPyramid != null && myCachedPyramidCursor != null) {
+        int level = myPyramid.getLevelFor(xRange.getLength(), maxPoints);
+        if (level >= 0) {
+          updatePyramid(myPyramid, xRange);
+          mySamples.clear();
+          myCachedPyramidCursor.setLevel(level);
+          myCachedPyramidCursor.seek(xRange);
+          myPyramidCursor = myCachedPyramidCursor;
+          return;
+        }
+      }
+      seek(xRange);
+    }
+
+    @Override
+    public void seek(@NotNull Range xRange) {
+      myPyramidCursor = null;
+      mySamples.clear();
+      load(xRange, mySamples);
+      myIndex = -1;
+    }
+
+    @Override
+    public boolean next() {
+      if (myPyramidCursor != null) {
+        return myPyramidCursor.next();
+      }
+      if (myIndex + 1 >= mySamples.size()) {
+        return false;
+      }
+      myIndex++;
+      return true;
+    }
+
+    @Override
+    public long getX() {
+      return myPyramidCursor != null ? myPyramidCursor.getX() : mySamples.getX(myIndex);
+    }
+
+    @Override
+    public double getY() {
+      return myPyramidCursor != null ? myPyramidCursor.getY() : mySamples.getY(myIndex);
+    }
+  }
+}
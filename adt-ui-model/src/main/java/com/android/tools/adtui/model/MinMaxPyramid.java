@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution summary of a numeric series, maintained incrementally as samples are added. Level k splits the x axis into buckets of
+ * {@code baseBucketWidth << k} and keeps the min, max and last sample of each bucket, so a zoomed out view can read about one bucket per
+ * pixel instead of every raw sample in range.
+ *
+ * A bucket holds up to three points and takes seven slots, so it only saves anything if it covers a lot more samples than that. Pyramids
+ * created with {@link #forSamplingPeriod(long)} start at {@link #SAMPLES_PER_BASE_BUCKET} samples per bucket; all their levels together
+ * hold about an eighth as many buckets as there are samples, and zoomed in views read the raw samples instead.
+ *
+ * Samples are expected in x order, a sample older than the latest bucket of a level is folded into that bucket.
+ *
+ * Samples can be added while other threads read the pyramid through {@link Cursor}s: a cursor works on the buckets as they were when it
+ * was last {@link Cursor#seek seeked}.
+ */
+public class MinMaxPyramid {
+  /**
+   * Number of samples covered by a bucket of the finest level of {@link #forSamplingPeriod(long)} pyramids.
+   */
+  public static final int SAMPLES_PER_BASE_BUCKET = 16;
+
+  /**
+   * With {@link #SAMPLES_PER_BASE_BUCKET}, the coarsest level of a series sampled every 250ms has buckets of a little over two hours.
+   */
+  public static final int DEFAULT_LEVEL_COUNT = 12;
+
+  public static final int MAX_LEVEL_COUNT = 16;
+
+  @NotNull
+  private final Level[] myLevels;
+
+  /**
+   * @return a pyramid with {@link #DEFAULT_LEVEL_COUNT} levels for a series sampled about every {@code samplingPeriod}.
+   */
+  @NotNull
+  public static MinMaxPyramid forSamplingPeriod(long samplingPeriod) {
+    return new MinMaxPyramid(samplingPeriod * SAMPLES_PER_BASE_BUCKET, DEFAULT_LEVEL_COUNT);
+  }
+
+  public MinMaxPyramid(long baseBucketWidth, int levelCount) {
+    if (baseBucketWidth <= 0 || levelCount <= 0 || levelCount > MAX_LEVEL_COUNT ||
+        levelCount >= Long.numberOfLeadingZeros(baseBucketWidth)) {
+      throw new IllegalArgumentException("Invalid pyramid: " + baseBucketWidth + " x " + levelCount);
+    }
+    myLevels = new Level[levelCount];
+    for (int i = 0; i < levelCount; i++) {
+      myLevels[i] = new Level(baseBucketWidth << i);
+    }
+  }
+
+  public synchronized void add(long x, double y) {
+    for (Level level : myLevels) {
+      level.add(x, y);
+    }
+  }
+
+  public synchronized void clear() {
+    for (Level level : myLevels) {
+      level.clear();
+    }
+  }
+
+  public int getLevelCount() {
+    return myLevels.length;
+  }
+
+  public long getBucketWidth(int level) {
+    return myLevels[level].myWidth;
+  }
+
+  public synchronized int getBucketCount(int level) {
+    return myLevels[level].mySize;
+  }
+
+  /**
+   * @return the finest level that covers the given width with at most maxBuckets buckets, or the coarsest level if none does. Returns -1
+   * if the buckets of even the finest level are wider than {@code width / maxBuckets}: the raw samples should be read then, since the
+   * pyramid would give fewer points than asked for.
+   */
+  public int getLevelFor(double width, int maxBuckets) {
+    double bucketWidth = width / Math.max(1, maxBuckets);
+    if (myLevels[0].myWidth > bucketWidth) {
+      return -1;
+    }
+    for (int i = 0; i < myLevels.length; i++) {
+      if (myLevels[i].myWidth >= bucketWidth) {
+        return i;
+      }
+    }
+    return myLevels.length - 1;
+  }
+
+  /**
+   * @return a cursor that walks the min, max and last samples (in x order) of the buckets of a level.
+   */
+  @NotNull
+  public Cursor createCursor() {
+    return new Cursor();
+  }
+
+  private static final class Level {
+    private final long myWidth;
+    private int mySize;
+    @NotNull private long[] myBuckets = new long[16];
+    @NotNull private long[] myMinX = new long[16];
+    @NotNull private double[] myMin = new double[16];
+    @NotNull private long[] myMaxX = new long[16];
+    @NotNull private double[] myMax = new double[16];
+    @NotNull private long[] myLastX = new long[16];
+    @NotNull private double[] myLast = new double[16];
+
+    private Level(long width) {
+      myWidth = width;
+    }
+
+    void add(long x, double y) {
+      long bucket = Math.floorDiv(x, myWidth);
+      int last = mySize - 1;
+      if (last >= 0 && bucket <= myBuckets[last]) {
+        if (y < myMin[last]) {
+          myMin[last] = y;
+          myMinX[last] = x;
+        }
+        if (y > myMax[last]) {
+          myMax[last] = y;
+          myMaxX[last] = x;
+        }
+        if (x >= myLastX[last]) {
+          myLastX[last] = x;
+          myLast[last] = y;
+        }
+        return;
+      }
+
+      if (mySize == myBuckets.length) {
+        int capacity = mySize * 2;
+        myBuckets = Arrays.copyOf(myBuckets, capacity);
+        myMinX = Arrays.copyOf(myMinX, capacity);
+        myMin = Arrays.copyOf(myMin, capacity);
+        myMaxX = Arrays.copyOf(myMaxX, capacity);
+        myMax = Arrays.copyOf(myMax, capacity);
+        myLastX = Arrays.copyOf(myLastX, capacity);
+        myLast = Arrays.copyOf(myLast, capacity);
+      }
+      myBuckets[mySize] = bucket;
+      myMinX[mySize] = myMaxX[mySize] = myLastX[mySize] = x;
+      myMin[mySize] = myMax[mySize] = myLast[mySize] = y;
+      mySize++;
+    }
+
+    void clear() {
+      mySize = 0;
+    }
+
+    /**
+     * @return the index of the last bucket at or before the given bucket, or 0 if there is none.
+     */
+    int getNearestIndex(long bucket) {
+      int index = Arrays.binarySearch(myBuckets, 0, mySize, bucket);
+      if (index < 0) {
+        index = -index - 2;
+      }
+      return Math.max(0, Math.min(index, mySize - 1));
+    }
+  }
+
+  /**
+   * {@link SeriesCursor} over one level of the pyramid. Like raw series, it includes the bucket right before the range so lines can be
+   * drawn from off screen.
+   */
+  public final class Cursor implements SeriesCursor {
+    @NotNull private Level myLevel = myLevels[0];
+    private int myBucket;
+    private int myEndBucket;
+
+    // The level's buckets as of the last seek. Only the latest bucket of a level is ever updated in place, the ones before it are final
+    // once a sample starts a new bucket, and the arrays are only replaced by larger copies. So these stay valid for the buckets before the
+    // latest one while samples are being added...
+    @NotNull private long[] myMinX = myLevel.myMinX;
+    @NotNull private double[] myMin = myLevel.myMin;
+    @NotNull private long[] myMaxX = myLevel.myMaxX;
+    @NotNull private double[] myMax = myLevel.myMax;
+    @NotNull private long[] myLastX = myLevel.myLastX;
+    @NotNull private double[] myLast = myLevel.myLast;
+
+    // ...and the latest bucket is copied at the seek, so it's never read while it's half way through an update.
+    private int myLatestBucket = -1;
+    private long myLatestMinX;
+    private double myLatestMin;
+    private long myLatestMaxX;
+    private double myLatestMax;
+    private long myLatestLastX;
+    private double myLatestLast;
+
+    // The up to three distinct points of the current bucket, sorted by x.
+    private final long[] myPointX = new long[3];
+    private final double[] myPointY = new double[3];
+    private int myPointCount;
+    private int myPoint;
+
+    public void setLevel(int level) {
+      myLevel = myLevels[level];
+    }
+
+    @Override
+    public void seek(@NotNull Range xRange) {
+      myPointCount = 0;
+      myPoint = 0;
+      synchronized (MinMaxPyramid.this) {
+        myMinX = myLevel.myMinX;
+        myMin = myLevel.myMin;
+        myMaxX = myLevel.myMaxX;
+        myMax = myLevel.myMax;
+        myLastX = myLevel.myLastX;
+        myLast = myLevel.myLast;
+        myLatestBucket = myLevel.mySize - 1;
+        if (myLatestBucket < 0) {
+          myBucket = -1;
+          myEndBucket = 0;
+          return;
+        }
+        myLatestMinX = myMinX[myLatestBucket];
+        myLatestMin = myMin[myLatestBucket];
+        myLatestMaxX = myMaxX[myLatestBucket];
+        myLatestMax = myMax[myLatestBucket];
+        myLatestLastX = myLastX[myLatestBucket];
+        myLatestLast = myLast[myLatestBucket];
+        // Start one bucket before the one containing the range's min, which may not have any samples before the min.
+        myBucket = Math.max(-1, myLevel.getNearestIndex(Math.floorDiv((long)xRange.getMin(), myLevel.myWidth)) - 2);
+        myEndBucket = myLevel.getNearestIndex(Math.floorDiv((long)xRange.getMax(), myLevel.myWidth)) + 1;
+      }
+    }
+
+    @Override
+    public boolean next() {
+      if (++myPoint < myPointCount) {
+        return true;
+      }
+      if (myBucket + 1 >= myEndBucket) {
+        return false;
+      }
+      myBucket++;
+      myPoint = 0;
+      myPointCount = 0;
+      if (myBucket == myLatestBucket) {
+        addPoint(myLatestMinX, myLatestMin);
+        addPoint(myLatestMaxX, myLatestMax);
+        addPoint(myLatestLastX, myLatestLast);
+      }
+      else {
+        addPoint(myMinX[myBucket], myMin[myBucket]);
+        addPoint(myMaxX[myBucket], myMax[myBucket]);
+        addPoint(myLastX[myBucket], myLast[myBucket]);
+      }
+      return true;
+    }
+
+    @Override
+    public long getX() {
+      return myPointX[myPoint];
+    }
+
+    @Override
+    public double getY() {
+      return myPointY[myPoint];
+    }
+
+    private void addPoint(long x, double y) {
+      int i = myPointCount;
+      for (int j = 0; j < myPointCount; j++) {
+        if (myPointX[j] == x) {
+          return;
+        }
+      }
+      while (i > 0 && myPointX[i - 1] > x) {
+        myPointX[i] = myPointX[i - 1];
+        myPointY[i] = myPointY[i - 1];
+        i--;
+      }
+      myPointX[i] = x;
+      myPointY[i] = y;
+      myPointCount++;
+    }
+  }
+}
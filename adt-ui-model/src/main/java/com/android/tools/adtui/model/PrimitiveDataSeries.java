@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A numeric {@link DataSeries} that can be read through a {@link SeriesCursor} without boxing every sample.
+ */
+public interface PrimitiveDataSeries {
+  @NotNull
+  SeriesCursor createCursor();
+
+  /**
+   * Whether cursors of this series can be used on another thread while the series is being written, e.g. because it reads a
+   * concurrent store. Readers on other threads snapshot series that can't, see {@link RangedContinuousSeries#createConcurrentCursor()}.
+   */
+  default boolean isConcurrent() {
+    return false;
+  }
+}
@@ -17,6 +17,7 @@
 package com.android.tools.adtui.model;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a view into a continuous series, where the data in view is only
@@ -30,6 +31,9 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range mYRange;
 
+  @Nullable
+  private SeriesCursor mCursor;
+
   public RangedContinuousSeries(@NotNull String label, @NotNull Range xRange, @NotNull Range yRange, @NotNull DataSeries<Long> series) {
     super(xRange, series);
     mYRange = yRange;
@@ -41,6 +45,63 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
     return mYRange;
   }
 
+  /**
+   * @return a cursor over the data in the x range. The cursor is reused between calls, so only one caller should iterate it at a time.
+   * Series implementing {@link PrimitiveDataSeries} are read without boxing, others are adapted from {@link #getSeries()}.
+   */
+  @NotNull
+  public SeriesCursor getCursor() {
+    SeriesCursor cursor = getOrCreateCursor();
+    cursor.seek(mXRange);
+    return cursor;
+  }
+
+  /**
+   * Same as {@link #getCursor()}, but allows the series to return pre-aggregated data if the x range holds a lot more than maxPoints
+   * samples. See {@link SeriesCursor#seek(Range, int)}.
+   */
+  @NotNull
+  public SeriesCursor getCursor(int maxPoints) {
+    SeriesCursor cursor = getOrCreateCursor();
+    cursor.seek(mXRange, maxPoints);
+    return cursor;
+  }
+
+  /**
+   * @return a new cursor over the series, not shared with {@link #getCursor()}.
+   */
+  @NotNull
+  public SeriesCursor createCursor() {
+    return mSeries instanceof PrimitiveDataSeries ? ((PrimitiveDataSeries)mSeries).createCursor() : new BoxedSeriesCursor(mSeries);
+  }
+
+  /**
+   * @return a new cursor that can be used on another thread, which needs to {@link SeriesCursor#seek(Range)} with its own copy of the
+   * current x range. Series that aren't {@link PrimitiveDataSeries#isConcurrent() concurrent} are copied on the calling thread, so the
+   * cursor only sees the samples currently in the x range, and doesn't see samples added later.
+   */
+  @NotNull
+  public SeriesCursor createConcurrentCursor() {
+    if (mSeries instanceof PrimitiveDataSeries && ((PrimitiveDataSeries)mSeries).isConcurrent()) {
+      return ((PrimitiveDataSeries)mSeries).createCursor();
+    }
+    ColumnarDataSeries snapshot = new ColumnarDataSeries();
+    SeriesCursor cursor = createCursor();
+    cursor.seek(mXRange);
+    while (cursor.next()) {
+      snapshot.add(cursor.getX(), cursor.getY());
+    }
+    return snapshot.createCursor();
+  }
+
+  @NotNull
+  private SeriesCursor getOrCreateCursor() {
+    if (mCursor == null) {
+      mCursor = createCursor();
+    }
+    return mCursor;
+  }
+
   @NotNull
   public String getLabel() {
     return mLabel;
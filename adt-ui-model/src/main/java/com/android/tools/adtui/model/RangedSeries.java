@@ -49,6 +49,13 @@ public class RangedSeries<E> {
     return mSeries.getDataForXRange(mXRange);
   }
 
+  /**
+   * @return the {@link DataSeries#getModificationCount() modification count} of the underlying series.
+   */
+  public long getModificationCount() {
+    return mSeries.getModificationCount();
+  }
+
   /**
    * @return The {@link Range} object that represents the xRange of this series.
    */
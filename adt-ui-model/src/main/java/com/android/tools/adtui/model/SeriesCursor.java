@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Allocation free iterator over the (x, y) samples of a numeric series. A cursor is meant to be kept around and re-positioned with
+ * {@link #seek(Range)} every frame instead of fetching a new list of {@link SeriesData}.
+ */
+public interface SeriesCursor {
+  /**
+   * Positions the cursor before the first sample of the given range, the next call to {@link #next()} moves to that sample.
+   */
+  void seek(@NotNull Range xRange);
+
+  /**
+   * Same as {@link #seek(Range)}, but lets the series return pre-aggregated samples if the range holds a lot more than maxPoints raw
+   * samples, e.g. when the caller can't draw more than one point per pixel anyway. Series without aggregates return the raw samples.
+   */
+  default void seek(@NotNull Range xRange, int maxPoints) {
+    seek(xRange);
+  }
+
+  /**
+   * Moves to the next sample.
+   *
+   * @return false if there are no more samples in the range.
+   */
+  boolean next();
+
+  long getX();
+
+  double getY();
+}
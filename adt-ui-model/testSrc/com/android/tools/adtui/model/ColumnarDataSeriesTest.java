@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColumnarDataSeriesTest {
+
+  private static double DELTA = 0;
+
+  @Test
+  public void testCursorMatchesBoxedData() {
+    ColumnarDataSeries series = new ColumnarDataSeries();
+    for (int i = 0; i < 100; i++) {
+      series.add(i * 10, i * 2);
+    }
+
+    Range range = new Range(95, 305);
+    ImmutableList<SeriesData<Long>> boxed = series.getDataForXRange(range);
+    SeriesCursor cursor = series.createCursor();
+    cursor.seek(range);
+    int count = 0;
+    while (cursor.next()) {
+      assertEquals(boxed.get(count).x, cursor.getX());
+      assertEquals(boxed.get(count).value, cursor.getY(), DELTA);
+      count++;
+    }
+    assertEquals(boxed.size(), count);
+    // The sample before the range (90) is included, like BaseDataSeries does.
+    assertEquals(90, boxed.get(0).x);
+    assertEquals(300, boxed.get(boxed.size() - 1).x);
+  }
+
+  @Test
+  public void testCursorCanBeReused() {
+    ColumnarDataSeries series = new ColumnarDataSeries();
+    SeriesCursor cursor = series.createCursor();
+    cursor.seek(new Range(0, 100));
+    assertFalse(cursor.next());
+
+    series.add(10, 1.5);
+    series.add(20, 2.5);
+    cursor.seek(new Range(0, 100));
+    assertTrue(cursor.next());
+    assertEquals(10, cursor.getX());
+    assertEquals(1.5, cursor.getY(), DELTA);
+    assertTrue(cursor.next());
+    assertEquals(20, cursor.getX());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testCursorReadsPyramidOnlyWhenZoomedOut() {
+    ColumnarDataSeries series = new ColumnarDataSeries(1);
+    for (int i = 0; i < 100000; i++) {
+      series.add(i, i % 10);
+    }
+    SeriesCursor cursor = series.createCursor();
+
+    // Zoomed out, about three points per bucket of the coarsest level that fits in 100 buckets
+    cursor.seek(new Range(0, 100000), 100);
+    int count = 0;
+    while (cursor.next()) {
+      count++;
+    }
+    assertTrue("points: " + count, count <= 3 * 102);
+
+    // The finest buckets cover 16 samples, too coarse for 100 points over 1000 samples, so the raw samples are read
+    cursor.seek(new Range(0, 1000), 100);
+    count = 0;
+    while (cursor.next()) {
+      assertEquals(count, cursor.getX());
+      count++;
+    }
+    assertEquals(1001, count);
+  }
+
+  @Test
+  public void testRangedSeriesUsesCursor() {
+    ColumnarDataSeries series = new ColumnarDataSeries();
+    series.add(0, 5);
+    series.add(10, 7);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(0, 10), new Range(0, 10), series);
+    SeriesCursor cursor = ranged.getCursor();
+    assertTrue(cursor.next());
+    assertEquals(5, cursor.getY(), DELTA);
+    assertTrue(cursor.next());
+    assertEquals(7, cursor.getY(), DELTA);
+    assertFalse(cursor.next());
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.intellij.util.containers.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadingDataSeriesTest {
+
+  private static double DELTA = 0;
+
+  @Test
+  public void testCursorMatchesBoxedData() {
+    SquareSeries series = new SquareSeries();
+    Range range = new Range(20, 50);
+    ImmutableList<SeriesData<Long>> boxed = series.getDataForXRange(range);
+    SeriesCursor cursor = series.createCursor();
+    cursor.seek(range);
+    int count = 0;
+    while (cursor.next()) {
+      assertEquals(boxed.get(count).x, cursor.getX());
+      assertEquals(boxed.get(count).value, cursor.getY(), DELTA);
+      count++;
+    }
+    assertEquals(boxed.size(), count);
+    // The padding the series loads around the range is returned as well
+    assertEquals(10, boxed.get(0).x);
+    assertEquals(100, (long)boxed.get(0).value);
+    assertEquals(60, boxed.get(boxed.size() - 1).x);
+  }
+
+  @Test
+  public void testCursorLoadsEachSeek() {
+    SquareSeries series = new SquareSeries();
+    SeriesCursor cursor = series.createCursor();
+    cursor.seek(new Range(0, 10));
+    assertEquals(1, series.myLoadCount);
+    int count = 0;
+    while (cursor.next()) {
+      count++;
+    }
+    assertEquals(4, count);
+
+    // A narrower range replaces the samples of the previous one
+    cursor.seek(new Range(100, 100));
+    assertEquals(2, series.myLoadCount);
+    assertTrue(cursor.next());
+    assertEquals(90, cursor.getX());
+    assertTrue(cursor.next());
+    assertEquals(100, cursor.getX());
+    assertEquals(10000, cursor.getY(), DELTA);
+    assertTrue(cursor.next());
+    assertEquals(110, cursor.getX());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testRangedSeriesUsesCursor() {
+    SquareSeries series = new SquareSeries();
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(10, 10), new Range(0, 10), series);
+    SeriesCursor cursor = ranged.getCursor();
+    assertTrue(cursor.next());
+    assertEquals(0, cursor.getX());
+    assertTrue(cursor.next());
+    assertEquals(10, cursor.getX());
+    assertTrue(cursor.next());
+    assertEquals(20, cursor.getX());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testZoomedOutSeeksReadThePyramid() {
+    SquareSeries series = new SquareSeries(10);
+    SeriesCursor cursor = series.createCursor();
+    // 10 points over 10000 units need buckets of 1000, wider than the 160 of the finest level.
+    cursor.seek(new Range(0, 10000), 10);
+    assertEquals(1, series.myLoadCount);
+    int count = 0;
+    double max = 0;
+    long lastX = Long.MIN_VALUE;
+    while (cursor.next()) {
+      assertTrue(cursor.getX() > lastX);
+      lastX = cursor.getX();
+      max = Math.max(max, cursor.getY());
+      count++;
+    }
+    // The buckets keep the extremes, with at most 3 points each instead of the 1000 raw samples. Like raw loads, they include the
+    // samples the series loads past the end of the range.
+    assertTrue("points: " + count, count <= 3 * 12);
+    assertEquals(10010 * 10010, max, DELTA);
+
+    // Moving the view only loads the samples after the latest one of the pyramid.
+    cursor.seek(new Range(1000, 11000), 10);
+    assertEquals(2, series.myLoadCount);
+    assertEquals(10010, series.myLastLoad.getMin(), DELTA);
+    assertEquals(11000, series.myLastLoad.getMax(), DELTA);
+    max = 0;
+    while (cursor.next()) {
+      max = Math.max(max, cursor.getY());
+    }
+    assertEquals(11010 * 11010, max, DELTA);
+
+    // Nothing new to load for a range the pyramid already covers.
+    cursor.seek(new Range(500, 10500), 10);
+    assertEquals(2, series.myLoadCount);
+
+    // Zoomed in views load the raw samples.
+    cursor.seek(new Range(0, 100), 10);
+    assertEquals(3, series.myLoadCount);
+    count = 0;
+    while (cursor.next()) {
+      assertEquals(cursor.getX() * cursor.getX(), cursor.getY(), DELTA);
+      count++;
+    }
+    assertEquals(13, count);
+  }
+
+  /**
+   * Loads x * x every 10 units of the range, plus one sample on each side.
+   */
+  private static class SquareSeries extends LoadingDataSeries {
+    private int myLoadCount;
+    private Range myLastLoad;
+
+    private SquareSeries() {
+    }
+
+    private SquareSeries(long samplingPeriod) {
+      super(samplingPeriod);
+    }
+
+    @Override
+    protected void load(@NotNull Range xRange, @NotNull ColumnarDataSeries samples) {
+      myLoadCount++;
+      myLastLoad = new Range(xRange.getMin(), xRange.getMax());
+      for (long x = (long)xRange.getMin() - 10; x <= (long)xRange.getMax() + 10; x += 10) {
+        samples.add(x, x * x);
+      }
+    }
+  }
+}
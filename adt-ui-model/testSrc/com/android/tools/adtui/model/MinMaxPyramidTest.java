@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class MinMaxPyramidTest {
+
+  private static double DELTA = 0;
+
+  @Test
+  public void testBucketsKeepMinMaxAndLastInOrder() {
+    MinMaxPyramid pyramid = new MinMaxPyramid(10, 4);
+    // Level 1 has buckets of 20: [0, 20) and [20, 40).
+    pyramid.add(0, 5);
+    pyramid.add(5, 9);
+    pyramid.add(10, 1);
+    pyramid.add(15, 3);
+    pyramid.add(20, 4);
+
+    MinMaxPyramid.Cursor cursor = pyramid.createCursor();
+    cursor.setLevel(1);
+    cursor.seek(new Range(0, 39));
+    assertPoint(cursor, 5, 9);
+    assertPoint(cursor, 10, 1);
+    assertPoint(cursor, 15, 3);
+    assertPoint(cursor, 20, 4);
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testCursorIncludesBucketBeforeRange() {
+    MinMaxPyramid pyramid = new MinMaxPyramid(10, 4);
+    for (int i = 0; i < 100; i++) {
+      pyramid.add(i, i);
+    }
+    MinMaxPyramid.Cursor cursor = pyramid.createCursor();
+    cursor.setLevel(0);
+    cursor.seek(new Range(50, 69));
+    // Bucket [40, 50) is included so the line can be drawn from off screen.
+    assertPoint(cursor, 40, 40);
+    assertPoint(cursor, 49, 49);
+    int buckets = 1;
+    while (cursor.next()) {
+      if (cursor.getX() % 10 == 0) {
+        buckets++;
+      }
+    }
+    assertEquals(3, buckets);
+  }
+
+  @Test
+  public void testLevelSelection() {
+    MinMaxPyramid pyramid = new MinMaxPyramid(10, 8);
+    assertEquals(0, pyramid.getLevelFor(1000, 100));
+    assertEquals(1, pyramid.getLevelFor(2000, 100));
+    assertEquals(2, pyramid.getLevelFor(3000, 100));
+    assertEquals(7, pyramid.getLevelFor(1e9, 100));
+    assertEquals(40, pyramid.getBucketWidth(2));
+    // The finest buckets are wider than asked for, the raw samples have to be read
+    assertEquals(-1, pyramid.getLevelFor(500, 100));
+  }
+
+  @Test
+  public void testSamplingPeriodPyramidIsSmallerThanItsSamples() {
+    MinMaxPyramid pyramid = MinMaxPyramid.forSamplingPeriod(250);
+    assertEquals(MinMaxPyramid.DEFAULT_LEVEL_COUNT, pyramid.getLevelCount());
+    assertEquals(250 * MinMaxPyramid.SAMPLES_PER_BASE_BUCKET, pyramid.getBucketWidth(0));
+
+    int samples = 100000;
+    for (int i = 0; i < samples; i++) {
+      pyramid.add(i * 250L, i % 7);
+    }
+    int buckets = 0;
+    for (int level = 0; level < pyramid.getLevelCount(); level++) {
+      buckets += pyramid.getBucketCount(level);
+    }
+    assertEquals(samples / MinMaxPyramid.SAMPLES_PER_BASE_BUCKET, pyramid.getBucketCount(0));
+    assertTrue("buckets: " + buckets, buckets <= samples / 8 + pyramid.getLevelCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLevelCountIsCapped() {
+    new MinMaxPyramid(10, MinMaxPyramid.MAX_LEVEL_COUNT + 1);
+  }
+
+  @Test
+  public void testCursorReadsLatestBucketAsOfSeek() {
+    MinMaxPyramid pyramid = new MinMaxPyramid(10, 1);
+    pyramid.add(0, 5);
+    pyramid.add(10, 5);
+    MinMaxPyramid.Cursor cursor = pyramid.createCursor();
+    cursor.seek(new Range(0, 19));
+
+    // Updates the min, max and last sample of the latest bucket after the seek
+    pyramid.add(11, 1);
+    pyramid.add(12, 9);
+    assertPoint(cursor, 0, 5);
+    assertPoint(cursor, 10, 5);
+    assertFalse(cursor.next());
+
+    // The next seek sees the updated bucket, whose min and max have moved
+    cursor.seek(new Range(0, 19));
+    assertPoint(cursor, 0, 5);
+    assertPoint(cursor, 11, 1);
+    assertPoint(cursor, 12, 9);
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testCursorsReadWhileSamplesAreAdded() throws Exception {
+    MinMaxPyramid pyramid = new MinMaxPyramid(1, 4);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread[] readers = new Thread[2];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(() -> {
+        MinMaxPyramid.Cursor cursor = pyramid.createCursor();
+        try {
+          while (!done.get()) {
+            for (int level = 0; level < pyramid.getLevelCount(); level++) {
+              cursor.setLevel(level);
+              cursor.seek(new Range(0, Long.MAX_VALUE));
+              long lastX = Long.MIN_VALUE;
+              while (cursor.next()) {
+                assertTrue(cursor.getX() > lastX);
+                lastX = cursor.getX();
+              }
+            }
+          }
+        }
+        catch (Throwable t) {
+          error.set(t);
+        }
+      });
+      readers[i].start();
+    }
+    for (int i = 0; i < 200000; i++) {
+      pyramid.add(i, i % 100);
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertNull(error.get());
+  }
+
+  private static void assertPoint(SeriesCursor cursor, long x, double y) {
+    assertTrue(cursor.next());
+    assertEquals(x, cursor.getX());
+    assertEquals(y, cursor.getY(), DELTA);
+  }
+}
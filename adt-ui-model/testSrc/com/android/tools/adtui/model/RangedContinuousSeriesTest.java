@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RangedContinuousSeriesTest {
+
+  private static double DELTA = 0;
+
+  @Test
+  public void testConcurrentCursorSnapshotsSeriesThatArentConcurrent() {
+    DefaultDataSeries<Long> data = new DefaultDataSeries<>();
+    for (int i = 0; i < 10; i++) {
+      data.add(i * 10, (long)i);
+    }
+    Range xRange = new Range(20, 50);
+    RangedContinuousSeries series = new RangedContinuousSeries("test", xRange, new Range(0, 10), data);
+    SeriesCursor cursor = series.createConcurrentCursor();
+
+    // Writes after the cursor was created don't reach it.
+    data.add(100, 10L);
+    xRange.set(0, 100);
+
+    cursor.seek(new Range(20, 50));
+    assertTrue(cursor.next());
+    assertEquals(20, cursor.getX());
+    assertEquals(2, cursor.getY(), DELTA);
+    int count = 1;
+    while (cursor.next()) {
+      count++;
+    }
+    assertEquals(4, count);
+    assertEquals(50, cursor.getX());
+
+    // Only the samples in range at the time were copied.
+    cursor.seek(new Range(0, 100));
+    count = 0;
+    while (cursor.next()) {
+      count++;
+    }
+    assertEquals(4, count);
+  }
+
+  @Test
+  public void testConcurrentCursorReadsConcurrentSeriesDirectly() {
+    CountingSeries data = new CountingSeries();
+    Range xRange = new Range(0, 10);
+    RangedContinuousSeries series = new RangedContinuousSeries("test", xRange, new Range(0, 10), data);
+    SeriesCursor cursor = series.createConcurrentCursor();
+    assertEquals(0, data.myLoadCount);
+
+    cursor.seek(xRange);
+    assertEquals(1, data.myLoadCount);
+    assertTrue(cursor.next());
+    assertEquals(0, cursor.getX());
+  }
+
+  private static class CountingSeries extends LoadingDataSeries {
+    private int myLoadCount;
+
+    @Override
+    protected void load(@NotNull Range xRange, @NotNull ColumnarDataSeries samples) {
+      myLoadCount++;
+      for (long x = (long)xRange.getMin(); x <= xRange.getMax(); x++) {
+        samples.add(x, x);
+      }
+    }
+  }
+}
@@ -62,6 +62,11 @@ public class AccordionLayout implements LayoutManager2, Animatable {
     float currentSize;
     AccordionState state;
 
+    /**
+     * The size the component had been laid out with as of the last animation.
+     */
+    float laidOutSize = -1;
+
     ComponentInfo(Component component, float size, AccordionState state) {
       this.component = component;
       this.currentSize = size;
@@ -387,6 +392,34 @@ public class AccordionLayout implements LayoutManager2, Animatable {
     }
   }
 
+  /**
+   * Dirty until every component reached its target size and the layout stopped resizing them.
+   */
+  @Override
+  public boolean isDirty() {
+    for (ComponentInfo info : mComponentInfoSet) {
+      if (info.currentSize != getTargetSize(info) || getSize(info.component.getSize()) != info.laidOutSize) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private float getSize(@NotNull Dimension dimension) {
+    return mOrientation == Orientation.HORIZONTAL ? dimension.width : dimension.height;
+  }
+
+  private float getTargetSize(@NotNull ComponentInfo info) {
+    switch (info.state) {
+      case MINIMIZE:
+        return getSize(info.component.getMinimumSize());
+      case MAXIMIZE:
+        return getSize(info.component.getMaximumSize());
+      default:
+        return getSize(info.component.getPreferredSize());
+    }
+  }
+
   @Override
   public void animate(float frameLength) {
     boolean hasMaximizedComponents = false;
@@ -409,6 +442,7 @@ public class AccordionLayout implements LayoutManager2, Animatable {
           currentSize = info.component.getSize().height;
           break;
       }
+      info.laidOutSize = currentSize;
 
       switch (info.state) {
         case MINIMIZE:
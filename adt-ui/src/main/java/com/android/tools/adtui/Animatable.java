@@ -25,6 +25,14 @@ public interface Animatable {
   default void reset() {
   }
 
+  /**
+   * Whether anything this {@link Animatable} depends on changed since it was last animated. The {@link Choreographer}
+   * skips clean ones on most frames, and slows down once everything is clean. Defaults to always dirty.
+   */
+  default boolean isDirty() {
+    return true;
+  }
+
   /**
    * Triggered by the {@link Choreographer} to give an {@link Animatable} a chance to
    * update/interpolate any components or data based on the current frame rate.
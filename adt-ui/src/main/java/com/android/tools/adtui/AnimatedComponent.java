@@ -16,7 +16,9 @@
 package com.android.tools.adtui;
 
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -30,6 +32,9 @@ import java.util.List;
  * At a minimum, child classes should override {@link #updateData()} and {@link
  * #draw(Graphics2D)}, as well as pay attention to the field {@link #mFrameLength} as it controls
  * the behavior of timed animations.
+ *
+ * Child classes that can list the {@link Range}s they read from should override {@link #getInputRanges()}, so the
+ * {@link Choreographer} can skip them while those don't move.
  */
 public abstract class AnimatedComponent extends JComponent implements Animatable {
 
@@ -43,6 +48,11 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
 
   protected long mLastRenderTime;
 
+  /**
+   * How long the last {@link #draw(Graphics2D, Dimension)} took, in nanoseconds.
+   */
+  private long mLastRenderDuration;
+
   protected long mUpdateStartTime;
 
   protected long mUpdateEndTime;
@@ -58,6 +68,18 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
 
   private int mMultiDrawNumFrames;
 
+  /**
+   * Min and max of each of the {@link #getInputRanges()} as of the last update.
+   */
+  @NotNull
+  private double[] mLastInputValues = new double[0];
+
+  private int mLastWidth = -1;
+
+  private int mLastHeight = -1;
+
+  private boolean mForceUpdate = true;
+
   public AnimatedComponent() {
     mDebugInfo = new LinkedList<>();
     mDefaultFontMetrics = getFontMetrics(AdtUiUtils.DEFAULT_FONT);
@@ -78,6 +100,7 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
     mLastRenderTime = System.nanoTime();
     Graphics2D g2d = (Graphics2D)g.create();
     draw(g2d, getSize());
+    mLastRenderDuration = System.nanoTime() - mLastRenderTime;
     mDrawCount++;
 
     if (mDrawDebugInfo) {
@@ -86,6 +109,52 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
     g2d.dispose();
   }
 
+  /**
+   * @return the {@link System#nanoTime()} at which the component was last drawn.
+   */
+  public final long getLastDrawTime() {
+    return mLastRenderTime;
+  }
+
+  /**
+   * @return how long the component took to draw last time, in nanoseconds.
+   */
+  public final long getLastDrawDuration() {
+    return mLastRenderDuration;
+  }
+
+  /**
+   * The ranges this component reads its data through, or null if that's not known, in which case the component is
+   * considered dirty every frame. Other changes to the component's inputs should call {@link #markDirty()}.
+   */
+  @Nullable
+  protected List<Range> getInputRanges() {
+    return null;
+  }
+
+  /**
+   * Makes the component update on the next frame even if none of its {@link #getInputRanges()} changed.
+   */
+  public final void markDirty() {
+    mForceUpdate = true;
+  }
+
+  @Override
+  public boolean isDirty() {
+    List<Range> inputs = getInputRanges();
+    if (mForceUpdate || inputs == null || getWidth() != mLastWidth || getHeight() != mLastHeight ||
+        mLastInputValues.length != inputs.size() * 2) {
+      return true;
+    }
+    int i = 0;
+    for (Range range : inputs) {
+      if (mLastInputValues[i++] != range.getMin() || mLastInputValues[i++] != range.getMax()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   protected final void addDebugInfo(String format, Object... values) {
     if (mDrawDebugInfo) {
       mDebugInfo.add(String.format(format, values));
@@ -98,7 +167,7 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
     addDebugInfo("Multi-draw Frame Count: %d", mMultiDrawNumFrames);
     addDebugInfo("Draw Count: %d", mDrawCount);
     addDebugInfo("Update time: %.2fms", (mUpdateEndTime - mUpdateStartTime) / 1000000.f);
-    addDebugInfo("Render time: %.2fms", (System.nanoTime() - mLastRenderTime) / 1000000.f);
+    addDebugInfo("Render time: %.2fms", mLastRenderDuration / 1000000.f);
     addDebugInfo("FPS: %.2f", (1.0f / mFrameLength));
     g.setFont(AdtUiUtils.DEFAULT_FONT);
     g.setColor(AdtUiUtils.DEFAULT_FONT_COLOR);
@@ -162,6 +231,8 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
     mDrawCount = 0;
 
     mFrameLength = frameLength;
+    // Recorded before the update, so changes the component makes to its own ranges (e.g. lerping them) keep it dirty.
+    recordInputs();
 
     mUpdateStartTime = System.nanoTime();
     this.updateData();
@@ -171,5 +242,24 @@ public abstract class AnimatedComponent extends JComponent implements Animatable
   @Override
   public void reset() {
     mMultiDrawNumFrames = 0;
+    mForceUpdate = true;
+  }
+
+  private void recordInputs() {
+    mForceUpdate = false;
+    mLastWidth = getWidth();
+    mLastHeight = getHeight();
+    List<Range> inputs = getInputRanges();
+    if (inputs == null) {
+      return;
+    }
+    if (mLastInputValues.length != inputs.size() * 2) {
+      mLastInputValues = new double[inputs.size() * 2];
+    }
+    int i = 0;
+    for (Range range : inputs) {
+      mLastInputValues[i++] = range.getMin();
+      mLastInputValues[i++] = range.getMax();
+    }
   }
 }
@@ -66,6 +66,11 @@ public class AnimatedRange extends Range implements Animatable {
     myTargetMax = max;
   }
 
+  @Override
+  public boolean isDirty() {
+    return myMin != myTargetMin || myMax != myTargetMax;
+  }
+
   @Override
   public void animate(float frameLength) {
     if (myMin != myTargetMin) {
@@ -43,6 +43,14 @@ public class AnimatedTimeRange implements Animatable {
     mShift = shift;
   }
 
+  /**
+   * The range follows the clock, so it moves on every frame.
+   */
+  @Override
+  public boolean isDirty() {
+    return true;
+  }
+
   @Override
   public void animate(float frameLength) {
     long now = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()) - mOffsetUs;
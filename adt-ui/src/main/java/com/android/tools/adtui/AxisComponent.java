@@ -29,6 +29,9 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A component that draws an axis based on data from a {@link Range} object.
@@ -215,6 +218,7 @@ public final class AxisComponent extends AnimatedComponent {
 
   public void setClampToMajorTicks(boolean clamp) {
     myClampToMajorTicks = clamp;
+    markDirty();
   }
 
   public boolean getClampToMajorTicks() {
@@ -226,6 +230,7 @@ public final class AxisComponent extends AnimatedComponent {
    */
   public void setAxisFormatter(BaseAxisFormatter formatter) {
     myFormatter = formatter;
+    markDirty();
   }
 
   @NotNull
@@ -239,6 +244,7 @@ public final class AxisComponent extends AnimatedComponent {
    */
   public void setParentAxis(AxisComponent parent) {
     myParentAxis = parent;
+    markDirty();
   }
 
   @Nullable
@@ -298,6 +304,16 @@ public final class AxisComponent extends AnimatedComponent {
     return myOffset + myCurrentMinValueRelative + myMinorInterval * normalizedOffset / myMinorScale;
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    if (myParentAxis != null) {
+      // The markers follow the parent's, which can change without any of our ranges moving.
+      return null;
+    }
+    return myGlobalRange == null ? Collections.singletonList(myRange) : Arrays.asList(myRange, myGlobalRange);
+  }
+
   @Override
   protected void updateData() {
     double maxTarget = myRange.getMax() - myOffset;
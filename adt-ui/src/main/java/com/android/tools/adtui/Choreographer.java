@@ -21,14 +21,25 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.HierarchyListener;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An auxiliary object that synchronizes a group of {@link Animatable} via a simple update loop
  * running at a specific frame rate. This ensures all UI components and model classes are reading
  * and displaying consistent information at any given time.
+ *
+ * Each tick only steps the components that report themselves as {@link Animatable#isDirty() dirty}, and the parent
+ * is only repainted if any of them were. Once nothing has been dirty for a second the loop drops to
+ * {@link #IDLE_FPS}, only polling the components for dirtiness, until something becomes dirty again or
+ * {@link #requestFrame()} is called. Owners of changes a component can't detect themselves should call
+ * {@link #requestFrame()} or the component's {@link AnimatedComponent#markDirty()}.
  */
 public class Choreographer implements ActionListener {
 
@@ -36,6 +47,11 @@ public class Choreographer implements ActionListener {
   private static final float NANOSECONDS_IN_SECOND = 1000000000.0f;
   private static final float DEFAULT_FRAME_LENGTH = 1.0f / DEFAULT_FPS;
 
+  /**
+   * Frame rate of the loop while none of the components are dirty.
+   */
+  public static final int IDLE_FPS = 4;
+
   private final List<Animatable> mComponents;
   private List<Animatable> mToRegister;
   private List<Animatable> mToUnregister;
@@ -44,6 +60,35 @@ public class Choreographer implements ActionListener {
   private long mFrameTime;
   private boolean mReset;
 
+  /**
+   * Timer delay while some component is dirty.
+   */
+  private final int mActiveDelayMs;
+
+  /**
+   * Time each frame's updates and draws are expected to fit in, at the active frame rate.
+   */
+  private final long mFrameBudgetNs;
+
+  /**
+   * Number of consecutive clean frames after which the loop goes idle.
+   */
+  private final int mIdleFrameThreshold;
+
+  private int mCleanFrameCount;
+
+  private boolean mIdle;
+
+  /**
+   * Set by {@link #requestFrame()} to step every component on the next tick.
+   */
+  private boolean mFrameRequested;
+
+  private int mOverBudgetFrameCount;
+
+  @NotNull
+  private final Map<Animatable, FrameTiming> mTimings;
+
   /**
    * At the end of each update loop, repaint is trigger on the parent container so that all its
    * children are redrawn, displaying the updated data. This avoids having to trigger repaint on
@@ -64,12 +109,24 @@ public class Choreographer implements ActionListener {
     mComponents = new LinkedList<>();
     mToRegister = new LinkedList<>();
     mToUnregister = new LinkedList<>();
+    mTimings = new HashMap<>();
     mUpdate = true;
     mUpdating = false;
-    mTimer = new Timer(1000 / fps, this);
+    mActiveDelayMs = 1000 / fps;
+    mFrameBudgetNs = (long)(NANOSECONDS_IN_SECOND / fps);
+    mIdleFrameThreshold = fps;
+    mTimer = new Timer(mActiveDelayMs, this);
     if (fps >= 0) {
       mTimer.start();
     }
+
+    // A resize invalidates most components, don't wait for the next idle tick to pick it up.
+    mParentContainer.addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized(ComponentEvent e) {
+        requestFrame();
+      }
+    });
   }
 
   public Choreographer(@NotNull JComponent parent) {
@@ -81,6 +138,8 @@ public class Choreographer implements ActionListener {
       mToRegister.add(animatable);
     } else {
       mComponents.add(animatable);
+      mTimings.put(animatable, new FrameTiming());
+      requestFrame();
     }
   }
 
@@ -95,6 +154,7 @@ public class Choreographer implements ActionListener {
       mToUnregister.add(animatable);
     } else {
       mComponents.remove(animatable);
+      mTimings.remove(animatable);
     }
   }
 
@@ -104,6 +164,41 @@ public class Choreographer implements ActionListener {
     }
   }
 
+  /**
+   * Steps every component on the next tick, and brings the loop back to its full frame rate if it was idle. For
+   * changes the components can't detect themselves, e.g. data arriving for a range that didn't move.
+   */
+  public void requestFrame() {
+    mFrameRequested = true;
+    setIdle(false);
+  }
+
+  /**
+   * Whether the loop has dropped to {@link #IDLE_FPS} because none of the components were dirty.
+   */
+  public boolean isIdle() {
+    return mIdle;
+  }
+
+  /**
+   * @return the update and draw times of the registered components.
+   */
+  @NotNull
+  public Map<Animatable, FrameTiming> getTimings() {
+    return Collections.unmodifiableMap(mTimings);
+  }
+
+  /**
+   * @return the number of frames whose updates and draws didn't fit in the frame budget.
+   */
+  public int getOverBudgetFrameCount() {
+    return mOverBudgetFrameCount;
+  }
+
+  public long getFrameBudgetNs() {
+    return mFrameBudgetNs;
+  }
+
   @Override
   public void actionPerformed(ActionEvent actionEvent) {
     long now = System.nanoTime();
@@ -113,7 +208,7 @@ public class Choreographer implements ActionListener {
     if (!mUpdate) {
       return;
     }
-    step(frame);
+    step(frame, mFrameRequested);
   }
 
   /**
@@ -141,24 +236,60 @@ public class Choreographer implements ActionListener {
     mUpdate = update;
   }
 
+  /**
+   * Steps every registered component once, dirty or not.
+   */
   public void step() {
-    step(DEFAULT_FRAME_LENGTH);
+    step(DEFAULT_FRAME_LENGTH, true);
   }
 
   public void reset() {
     mReset = true;
   }
 
-  private void step(float frameLength) {
+  private void step(float frameLength, boolean force) {
     mUpdating = true;
     if (mReset) {
       mComponents.forEach(Animatable::reset);
       mReset = false;
+      force = true;
     }
+    mFrameRequested = false;
 
-    mComponents.forEach(component -> component.animate(frameLength));
-    mComponents.forEach(Animatable::postAnimate);
+    // Components are checked right before they animate, so the ones registered after a range see its changes this frame.
+    boolean anyDirty = false;
+    long frameNs = 0;
+    List<Animatable> stepped = new LinkedList<>();
+    for (Animatable component : mComponents) {
+      FrameTiming timing = mTimings.get(component);
+      if (timing != null) {
+        // Draws happen after the previous step's repaint, collect them now.
+        frameNs += timing.collectDraw(component);
+      }
+      boolean dirty = component.isDirty();
+      anyDirty |= dirty;
+      if (!dirty && !force) {
+        continue;
+      }
+      long start = System.nanoTime();
+      component.animate(frameLength);
+      if (timing != null) {
+        frameNs += timing.addUpdate(System.nanoTime() - start, mFrameBudgetNs);
+      }
+      stepped.add(component);
+    }
+    for (Animatable component : stepped) {
+      long start = System.nanoTime();
+      component.postAnimate();
+      FrameTiming timing = mTimings.get(component);
+      if (timing != null) {
+        frameNs += timing.addPostAnimate(System.nanoTime() - start);
+      }
+    }
     mUpdating = false;
+    if (frameNs > mFrameBudgetNs) {
+      mOverBudgetFrameCount++;
+    }
 
     mToUnregister.forEach(this::unregister);
     mToRegister.forEach(this::register);
@@ -166,7 +297,125 @@ public class Choreographer implements ActionListener {
     mToUnregister.clear();
     mToRegister.clear();
 
-    mParentContainer.repaint();
+    if (anyDirty) {
+      mCleanFrameCount = 0;
+      setIdle(false);
+    }
+    else if (++mCleanFrameCount >= mIdleFrameThreshold) {
+      setIdle(true);
+    }
+
+    if (!stepped.isEmpty()) {
+      mParentContainer.repaint();
+    }
+  }
+
+  private void setIdle(boolean idle) {
+    if (mIdle == idle) {
+      return;
+    }
+    mIdle = idle;
+    mCleanFrameCount = 0;
+    mTimer.setDelay(idle ? 1000 / IDLE_FPS : mActiveDelayMs);
+    if (!idle && mTimer.isRunning()) {
+      // Don't wait for the rest of the idle delay.
+      mTimer.restart();
+    }
+  }
+
+  /**
+   * Update and draw times of a registered component, for diagnostics. The draw time is only known for
+   * {@link AnimatedComponent}s.
+   */
+  public static final class FrameTiming {
+    private int myUpdateCount;
+    private long myLastUpdateNs;
+    private long myMaxUpdateNs;
+    private long myTotalUpdateNs;
+    private int myDrawCount;
+    private long myLastDrawNs;
+    private long myMaxDrawNs;
+    private long myTotalDrawNs;
+    private int myOverBudgetCount;
+    private long myCollectedDrawTime;
+
+    private long addUpdate(long updateNs, long budgetNs) {
+      myUpdateCount++;
+      myLastUpdateNs = updateNs;
+      myMaxUpdateNs = Math.max(myMaxUpdateNs, updateNs);
+      myTotalUpdateNs += updateNs;
+      if (updateNs > budgetNs) {
+        myOverBudgetCount++;
+      }
+      return updateNs;
+    }
+
+    private long addPostAnimate(long postAnimateNs) {
+      myLastUpdateNs += postAnimateNs;
+      myMaxUpdateNs = Math.max(myMaxUpdateNs, myLastUpdateNs);
+      myTotalUpdateNs += postAnimateNs;
+      return postAnimateNs;
+    }
+
+    private long collectDraw(@NotNull Animatable component) {
+      if (!(component instanceof AnimatedComponent)) {
+        return 0;
+      }
+      AnimatedComponent animated = (AnimatedComponent)component;
+      long drawTime = animated.getLastDrawTime();
+      if (drawTime == myCollectedDrawTime) {
+        return 0;
+      }
+      myCollectedDrawTime = drawTime;
+      long drawNs = animated.getLastDrawDuration();
+      myDrawCount++;
+      myLastDrawNs = drawNs;
+      myMaxDrawNs = Math.max(myMaxDrawNs, drawNs);
+      myTotalDrawNs += drawNs;
+      return drawNs;
+    }
+
+    public int getUpdateCount() {
+      return myUpdateCount;
+    }
+
+    /**
+     * @return the time the last {@link Animatable#animate(float)} and {@link Animatable#postAnimate()} took.
+     */
+    public long getLastUpdateNs() {
+      return myLastUpdateNs;
+    }
+
+    public long getMaxUpdateNs() {
+      return myMaxUpdateNs;
+    }
+
+    public long getAverageUpdateNs() {
+      return myUpdateCount == 0 ? 0 : myTotalUpdateNs / myUpdateCount;
+    }
+
+    public int getDrawCount() {
+      return myDrawCount;
+    }
+
+    public long getLastDrawNs() {
+      return myLastDrawNs;
+    }
+
+    public long getMaxDrawNs() {
+      return myMaxDrawNs;
+    }
+
+    public long getAverageDrawNs() {
+      return myDrawCount == 0 ? 0 : myTotalDrawNs / myDrawCount;
+    }
+
+    /**
+     * @return the number of updates that took longer than a whole frame on their own.
+     */
+    public int getOverBudgetCount() {
+      return myOverBudgetCount;
+    }
   }
 
   /**
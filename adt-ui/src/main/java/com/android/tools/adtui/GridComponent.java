@@ -17,11 +17,14 @@ package com.android.tools.adtui;
 
 import com.android.tools.adtui.common.AdtUiUtils;
 import gnu.trove.TFloatArrayList;
+import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -41,6 +44,13 @@ public final class GridComponent extends AnimatedComponent {
     mAxes.add(axis);
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    // The lines are read from the axes when drawing, which are repainted along with the axes whenever those move.
+    return Collections.emptyList();
+  }
+
   @Override
   protected void updateData() {
   }
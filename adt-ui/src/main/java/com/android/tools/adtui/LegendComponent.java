@@ -17,7 +17,9 @@
 package com.android.tools.adtui;
 
 import com.android.tools.adtui.common.AdtUiUtils;
+import com.android.tools.adtui.model.Range;
 import com.intellij.ui.components.JBLabel;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -96,12 +98,25 @@ public class LegendComponent extends AnimatedComponent {
       label.setFont(AdtUiUtils.DEFAULT_FONT);
       mLabelsToDraw.add(label);
     }
+    markDirty();
+  }
+
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    List<Range> ranges = new ArrayList<>();
+    if (mLegendRenderData != null) {
+      for (LegendRenderData data : mLegendRenderData) {
+        ranges.addAll(data.getInputRanges());
+      }
+    }
+    return ranges;
   }
 
   @Override
   protected void updateData() {
     long now = System.currentTimeMillis();
-    if (now - mLastUpdate > mFrequencyMillis) {
+    if (now - mLastUpdate >= mFrequencyMillis) {
       mLastUpdate = now;
       for (int i = 0; i < mLegendRenderData.size(); ++i) {
         LegendRenderData data = mLegendRenderData.get(i);
@@ -131,6 +146,10 @@ public class LegendComponent extends AnimatedComponent {
         revalidate();
       }
     }
+    else {
+      // The inputs moved but the labels can't change yet, check again on the next frame.
+      markDirty();
+    }
   }
 
   @Override
@@ -15,9 +15,12 @@
  */
 package com.android.tools.adtui;
 
+import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Class to store all the render data needed to render a legend.
@@ -75,4 +78,12 @@ public class LegendRenderData {
   public String getFormattedData() {
     return "";
   }
+
+  /**
+   * The ranges {@link #getFormattedData()} depends on, the legend only updates its labels when one of them moves.
+   */
+  @NotNull
+  public List<Range> getInputRanges() {
+    return Collections.emptyList();
+  }
 }
@@ -23,7 +23,9 @@ import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -70,4 +72,10 @@ public final class LineChartLegendRenderData extends LegendRenderData {
 
     return myFormatter.getFormattedString(mySeries.getYRange().getLength(), data.get(index).value, true);
   }
+
+  @NotNull
+  @Override
+  public List<Range> getInputRanges() {
+    return Arrays.asList(myRange, mySeries.getYRange());
+  }
 }
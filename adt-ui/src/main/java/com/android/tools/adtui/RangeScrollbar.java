@@ -23,6 +23,7 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 
@@ -78,6 +79,11 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
 
   private double mCurrentViewLength;
 
+  /**
+   * The ranges and width as of the last animation, the scrollbar only needs updating once any of them change.
+   */
+  private final double[] mLastValues = new double[5];
+
   public RangeScrollbar(@NotNull Range globalRange, @NotNull Range range) {
     super(HORIZONTAL);
 
@@ -85,6 +91,7 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
     mRange = range;
     mScrollingMode = ScrollingMode.STREAMING;
     mCurrentViewLength = DEFAULT_VIEW_LENGTH_US;
+    Arrays.fill(mLastValues, Double.NaN);
 
     addMouseListener(new MouseAdapter() {
       @Override
@@ -100,6 +107,8 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
           // When the user switches back to STREAMING mode, use the current length as the view length.
           mCurrentViewLength = mRange.getLength();
         }
+        // The thumb needs placing for the new mode even if the ranges didn't move.
+        Arrays.fill(mLastValues, Double.NaN);
       }
     });
   }
@@ -128,6 +137,16 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
     mRange.set(now, now);
   }
 
+  @Override
+  public boolean isDirty() {
+    return mScrollingMode == ScrollingMode.SCROLLING || !Arrays.equals(mLastValues, getValues());
+  }
+
+  @NotNull
+  private double[] getValues() {
+    return new double[]{mGlobalRange.getMin(), mGlobalRange.getMax(), mRange.getMin(), mRange.getMax(), getWidth()};
+  }
+
   @Override
   public void animate(float frameLength) {
     if (mScrollingMode == ScrollingMode.STREAMING) {
@@ -190,6 +209,7 @@ public final class RangeScrollbar extends JBScrollBar implements Animatable {
         mRange.set(newMin, newMin + currentLength);
         break;
     }
+    System.arraycopy(getValues(), 0, mLastValues, 0, mLastValues.length);
   }
 
   /**
@@ -23,13 +23,26 @@ public class RangedTable implements Animatable {
   private final RangedTableModel myModel;
   private final Range myRange;
 
+  /**
+   * The range as of the last update, the model is only updated again once it moves.
+   */
+  private double myLastMin = Double.NaN;
+  private double myLastMax = Double.NaN;
+
   public RangedTable(@NotNull Range range, @NotNull RangedTableModel model) {
     myModel = model;
     myRange = range;
   }
 
+  @Override
+  public boolean isDirty() {
+    return myRange.getMin() != myLastMin || myRange.getMax() != myLastMax;
+  }
+
   @Override
   public void animate(float frameLength) {
+    myLastMin = myRange.getMin();
+    myLastMax = myRange.getMax();
     myModel.update(myRange);
   }
 }
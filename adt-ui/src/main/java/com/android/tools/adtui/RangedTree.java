@@ -27,13 +27,26 @@ public class RangedTree implements Animatable {
   @Nullable
   private RangedTreeModel myModel;
 
+  /**
+   * The range as of the last update, the model is only updated again once it moves.
+   */
+  private double myLastMin = Double.NaN;
+  private double myLastMax = Double.NaN;
+
   public RangedTree(@NotNull Range range) {
     myModel = null;
     myRange = range;
   }
 
+  @Override
+  public boolean isDirty() {
+    return myRange.getMin() != myLastMin || myRange.getMax() != myLastMax;
+  }
+
   @Override
   public void animate(float frameLength) {
+    myLastMin = myRange.getMin();
+    myLastMax = myRange.getMax();
     if (myModel != null) {
       myModel.update(myRange);
     }
@@ -41,5 +54,7 @@ public class RangedTree implements Animatable {
 
   public void setModel(@Nullable RangedTreeModel model) {
     myModel = model;
+    myLastMin = Double.NaN;
+    myLastMax = Double.NaN;
   }
 }
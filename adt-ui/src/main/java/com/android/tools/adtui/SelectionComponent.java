@@ -18,6 +18,7 @@ package com.android.tools.adtui;
 import com.android.tools.adtui.model.Range;
 import com.intellij.ui.JBColor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.event.ChangeEvent;
 import java.awt.*;
@@ -25,6 +26,7 @@ import java.awt.event.*;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -118,6 +120,8 @@ public final class SelectionComponent extends AnimatedComponent {
           myMode = Mode.CREATE;
         }
         myMousePressed = e.getX();
+        // The handles are hidden while creating a selection, which the ranges don't show.
+        markDirty();
       }
 
       @Override
@@ -126,6 +130,7 @@ public final class SelectionComponent extends AnimatedComponent {
           fireSelectionEvent();
         }
         myMode = Mode.NONE;
+        markDirty();
       }
     });
     this.addMouseMotionListener(new MouseMotionAdapter() {
@@ -183,6 +188,12 @@ public final class SelectionComponent extends AnimatedComponent {
     return x / getSize().getWidth() * myRange.getLength() + myRange.getMin();
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    return Arrays.asList(mySelectionRange, myRange);
+  }
+
   @Override
   protected void updateData() {
     myEmpty = mySelectionRange.isEmpty();
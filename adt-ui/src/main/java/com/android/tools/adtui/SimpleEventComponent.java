@@ -17,14 +17,18 @@
 package com.android.tools.adtui;
 
 import com.android.tools.adtui.model.EventAction;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -52,6 +56,12 @@ public class SimpleEventComponent<E extends Enum<E>> extends AnimatedComponent {
     mIconsToDraw = new ArrayList<>();
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    return Collections.singletonList(mData.getXRange());
+  }
+
   @Override
   protected void updateData() {
     //TODO Pull logic of combining events out of component and into EventHandler
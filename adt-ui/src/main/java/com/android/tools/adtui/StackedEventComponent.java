@@ -18,16 +18,19 @@ package com.android.tools.adtui;
 
 import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.model.EventAction;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
 import com.google.common.primitives.Ints;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -64,6 +67,12 @@ public class StackedEventComponent extends AnimatedComponent {
     setFont(AdtUiUtils.DEFAULT_FONT);
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    return Collections.singletonList(mData.getXRange());
+  }
+
   @Override
   protected void updateData() {
     double min = mData.getXRange().getMin();
@@ -181,6 +190,7 @@ public class StackedEventComponent extends AnimatedComponent {
 
   public void setLineThickness(float lineThickness) {
     myLineThickness = lineThickness;
+    markDirty();
   }
 
   private static class EventRenderData {
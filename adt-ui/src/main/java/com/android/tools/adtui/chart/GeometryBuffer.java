@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart;
+
+import com.android.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Double buffer of a chart's render list: the geometry the chart draws, already laid out in pixels. New lists are built
+ * on a background thread from a snapshot of the chart's inputs taken during the update, while the EDT keeps drawing the
+ * last completed one, so painting never waits on data. The chart is repainted whenever a new list is published.
+ *
+ * Only one list is built at a time per chart; updates arriving meanwhile replace each other and only the latest one is
+ * built next. Render lists must not be modified once built, as the EDT reads them without locking.
+ */
+public final class GeometryBuffer<R> {
+
+  private static final Executor BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Chart Geometry Builder");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @NotNull
+  private final JComponent myComponent;
+
+  @NotNull
+  private final Executor myExecutor;
+
+  @Nullable
+  private volatile R myFront;
+
+  /**
+   * Sequence number of {@link #myFront}, so a slow background build doesn't overwrite a newer synchronous one.
+   */
+  private long myFrontSequence;
+
+  private long mySequence;
+
+  @Nullable
+  private Supplier<R> myPending;
+
+  private long myPendingSequence;
+
+  private boolean myBuilding;
+
+  public GeometryBuffer(@NotNull JComponent component) {
+    this(component, BUILDER);
+  }
+
+  @VisibleForTesting
+  GeometryBuffer(@NotNull JComponent component, @NotNull Executor executor) {
+    myComponent = component;
+    myExecutor = executor;
+  }
+
+  /**
+   * Schedules a new render list. The builder runs on another thread, so it must only read the snapshot it captured
+   * and data sources that allow concurrent reads.
+   */
+  public void update(@NotNull Supplier<R> builder) {
+    if (!myComponent.isShowing()) {
+      // Nothing waits on the frames of a component that isn't on screen, e.g. one painted into an image, so build it
+      // right away and keep the next paint consistent with the update that preceded it.
+      long sequence;
+      synchronized (this) {
+        sequence = ++mySequence;
+      }
+      publish(builder.get(), sequence);
+      return;
+    }
+
+    synchronized (this) {
+      myPending = builder;
+      myPendingSequence = ++mySequence;
+      if (myBuilding) {
+        return;
+      }
+      myBuilding = true;
+    }
+    myExecutor.execute(this::buildPending);
+  }
+
+  /**
+   * @return the last completed render list, or null if none was built yet.
+   */
+  @Nullable
+  public R get() {
+    return myFront;
+  }
+
+  private void buildPending() {
+    while (true) {
+      Supplier<R> builder;
+      long sequence;
+      synchronized (this) {
+        builder = myPending;
+        sequence = myPendingSequence;
+        myPending = null;
+        if (builder == null) {
+          myBuilding = false;
+          return;
+        }
+      }
+
+      boolean built = false;
+      try {
+        R renderList = builder.get();
+        built = true;
+        if (publish(renderList, sequence)) {
+          myComponent.repaint();
+        }
+      }
+      finally {
+        if (!built) {
+          // Let the exception reach the thread's handler, the next update starts over.
+          synchronized (this) {
+            myPending = null;
+            myBuilding = false;
+          }
+        }
+      }
+    }
+  }
+
+  private synchronized boolean publish(@NotNull R renderList, long sequence) {
+    if (sequence < myFrontSequence) {
+      return false;
+    }
+    myFrontSequence = sequence;
+    myFront = renderList;
+    return true;
+  }
+}
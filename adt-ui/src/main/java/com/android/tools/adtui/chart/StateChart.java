@@ -21,17 +21,18 @@ import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.common.datareducer.DefaultStateChartReducer;
 import com.android.tools.adtui.common.datareducer.StateChartReducer;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedSeries;
 import com.android.tools.adtui.model.SeriesData;
-import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -59,11 +60,11 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
 
   private float mHeightGap;
 
+  /**
+   * The state rectangles, built on the geometry thread from the state captured in {@link #updateData()}.
+   */
   @NotNull
-  private final ArrayList<RoundRectangle2D.Float> mRectangles;
-
-  @NotNull
-  private final List<E> mValues;
+  private final GeometryBuffer<StateRenderList<E>> mRenderList;
 
   @NotNull
   private RenderMode mRenderMode;
@@ -84,8 +85,7 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
   @VisibleForTesting
   public StateChart(@NotNull Map<E, Color> colors, @NotNull StateChartReducer<E> reducer) {
     mColors = colors;
-    mRectangles = new ArrayList<>();
-    mValues = new ArrayList<>();
+    mRenderList = new GeometryBuffer<>(this);
     mSeriesList = new ArrayList<>();
     mRenderMode = RenderMode.BAR;
     myReducer = reducer;
@@ -94,10 +94,12 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
 
   public void setRenderMode(RenderMode mode) {
     mRenderMode = mode;
+    markDirty();
   }
 
   public void addSeries(@NotNull RangedSeries<E> series) {
     mSeriesList.add(series);
+    markDirty();
   }
 
   /**
@@ -105,6 +107,7 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
    */
   public void setArcWidth(float arcWidth) {
     mArcWidth = arcWidth;
+    markDirty();
   }
 
   /**
@@ -112,6 +115,7 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
    */
   public void setArcHeight(float arcHeight) {
     mArcHeight = arcHeight;
+    markDirty();
   }
 
   /**
@@ -121,6 +125,17 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
    */
   public void setHeightGap(float gap) {
     mHeightGap = gap;
+    markDirty();
+  }
+
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    List<Range> ranges = new ArrayList<>(mSeriesList.size());
+    for (RangedSeries<E> series : mSeriesList) {
+      ranges.add(series.getXRange());
+    }
+    return ranges;
   }
 
   @Override
@@ -131,17 +146,51 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
       return;
     }
 
-    // TODO support adding series on the fly and interpolation.
-    float height = 1f / seriesSize;
-    float gap = height * mHeightGap;
-    mValues.clear();
-
-    int seriesIndex = 0, rectCount = 0;
+    // Capture the ranges and the states in them, the rectangles are built on the geometry thread while the EDT keeps drawing the
+    // previous ones. The states are copied here because series are generally not safe to read from another thread.
+    List<List<SeriesData<E>>> series = new ArrayList<>(seriesSize);
+    List<Range> ranges = new ArrayList<>(seriesSize);
     for (RangedSeries<E> data : mSeriesList) {
-      double min = data.getXRange().getMin();
-      double max = data.getXRange().getMax();
-      ImmutableList<SeriesData<E>> seriesDataList = data.getSeries();
+      Range range = new Range(data.getXRange().getMin(), data.getXRange().getMax());
+      series.add(new ArrayList<>(data.getDataSeries().getDataForXRange(range)));
+      ranges.add(range);
+    }
+    float width = getWidth();
+    float height = getHeight();
+    float heightGap = mHeightGap;
+    float arcWidth = mArcWidth * width;
+    float arcHeight = mArcHeight * height;
+    StateChartReducer<E> reducer = myReducer;
+    mRenderList.update(() -> buildRenderList(series, ranges, width, height, heightGap, arcWidth, arcHeight, reducer));
+  }
+
+  /**
+   * Builds the rectangles of the states in pixels. Runs on the geometry thread, so it only reads its arguments.
+   */
+  @NotNull
+  private static <E extends Enum<E>> StateRenderList<E> buildRenderList(@NotNull List<List<SeriesData<E>>> seriesList,
+                                                                        @NotNull List<Range> ranges,
+                                                                        float width,
+                                                                        float height,
+                                                                        float heightGap,
+                                                                        float arcWidth,
+                                                                        float arcHeight,
+                                                                        @NotNull StateChartReducer<E> reducer) {
+    // TODO support adding series on the fly and interpolation.
+    float seriesHeight = 1f / seriesList.size();
+    float gap = seriesHeight * heightGap;
+    List<Shape> shapes = new ArrayList<>();
+    List<E> values = new ArrayList<>();
+
+    for (int seriesIndex = 0; seriesIndex < seriesList.size(); seriesIndex++) {
+      Range range = ranges.get(seriesIndex);
+      double min = range.getMin();
+      double max = range.getMax();
+      List<SeriesData<E>> seriesDataList = seriesList.get(seriesIndex);
       int size = seriesDataList.size();
+      float startHeight = 1 - (seriesHeight * (seriesIndex + 1));
+      float rectY = (startHeight + gap * 0.5f) * height;
+      float rectHeight = (seriesHeight - gap) * height;
 
       // Construct rectangles.
       long previousX = -1;
@@ -152,20 +201,11 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
         long x = seriesData.x;
         E value = seriesData.value;
 
-        float startHeight = 1 - (height * (seriesIndex + 1));
-
         // Don't draw if this block doesn't intersect with [min..max]
         if (i > 0 && x >= min) {
           // Draw the previous block.
-          setRectangleAndValueData(rectCount,
-                                   Math.max(min, previousX),
-                                   Math.min(max, x),
-                                   min,
-                                   max,
-                                   previousValue,
-                                   startHeight + gap * 0.5f,
-                                   height - gap);
-          rectCount++;
+          shapes.add(createRectangle(Math.max(min, previousX), Math.min(max, x), min, max, width, rectY, rectHeight, arcWidth, arcHeight));
+          values.add(previousValue);
         }
 
         // Start a new block.
@@ -178,45 +218,30 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
         }
         else if (i == size - 1) {
           // Reached the end, assumes the last data point continues till max.
-          setRectangleAndValueData(rectCount,
-                                   Math.max(min, previousX),
-                                   max,
-                                   min,
-                                   max,
-                                   previousValue,
-                                   startHeight + gap * 0.5f,
-                                   height - gap);
-          rectCount++;
+          shapes.add(createRectangle(Math.max(min, previousX), max, min, max, width, rectY, rectHeight, arcWidth, arcHeight));
+          values.add(previousValue);
         }
       }
-      seriesIndex++;
     }
 
-    if (rectCount < mRectangles.size()) {
-      mRectangles.subList(rectCount, mRectangles.size()).clear();
-    }
+    reducer.reduce(shapes, values);
+    assert shapes.size() == values.size();
+    return new StateRenderList<>(shapes, values);
   }
 
   @Override
   protected void draw(Graphics2D g2d, Dimension dim) {
+    StateRenderList<E> states = mRenderList.get();
+    if (states == null) {
+      return;
+    }
+
     g2d.setFont(getFont());
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-    assert mRectangles.size() == mValues.size();
-
-    List<Shape> transformedShapes = new ArrayList<>(mRectangles.size());
-    List<E> transformedValues = new ArrayList<>(mRectangles.size());
-    AffineTransform scale = AffineTransform.getScaleInstance(dim.getWidth(), dim.getHeight());
-    for (int i = 0; i < mRectangles.size(); ++i) {
-      transformedShapes.add(scale.createTransformedShape(mRectangles.get(i)));
-      transformedValues.add(mValues.get(i));
-    }
-    myReducer.reduce(transformedShapes, transformedValues);
-    assert transformedShapes.size() == transformedValues.size();
-
-    for (int i = 0; i < transformedShapes.size(); i++) {
-      Shape shape = transformedShapes.get(i);
-      E value = transformedValues.get(i);
+    for (int i = 0; i < states.myShapes.size(); i++) {
+      Shape shape = states.myShapes.get(i);
+      E value = states.myValues.get(i);
       g2d.setColor(mColors.get(value));
 
       switch (mRenderMode) {
@@ -238,35 +263,38 @@ public class StateChart<E extends Enum<E>> extends AnimatedComponent {
       }
     }
 
-    addDebugInfo("# of drawn rects: %d", transformedShapes.size());
+    addDebugInfo("# of drawn rects: %d", states.myShapes.size());
   }
 
-  private void setRectangleAndValueData(int rectCount,
-                                        double previousX,
-                                        double currentX,
-                                        double minX,
-                                        double maxX,
-                                        E previousValue,
-                                        float rectY,
-                                        float rectHeight) {
-    RoundRectangle2D.Float rect;
-
-    //Reuse existing Rectangle objects when possible to avoid unnecessary allocations.
-    if (rectCount == mRectangles.size()) {
-      rect = new RoundRectangle2D.Float();
-      mRectangles.add(rect);
-    } else {
-      rect = mRectangles.get(rectCount);
-    }
+  @NotNull
+  private static RoundRectangle2D.Float createRectangle(double previousX,
+                                                        double currentX,
+                                                        double minX,
+                                                        double maxX,
+                                                        float width,
+                                                        float rectY,
+                                                        float rectHeight,
+                                                        float arcWidth,
+                                                        float arcHeight) {
+    return new RoundRectangle2D.Float((float)((previousX - minX) / (maxX - minX) * width),
+                                      rectY,
+                                      (float)((currentX - previousX) / (maxX - minX) * width),
+                                      rectHeight,
+                                      arcWidth,
+                                      arcHeight);
+  }
 
-    mValues.add(previousValue);
+  /**
+   * The rectangles of the states in pixels, and the state each one is for.
+   */
+  private static final class StateRenderList<E> {
+    @NotNull private final List<Shape> myShapes;
+    @NotNull private final List<E> myValues;
 
-    rect.setRoundRect((previousX - minX) / (maxX - minX),
-                      rectY,
-                      (currentX - previousX) / (maxX - minX),
-                      rectHeight,
-                      mArcWidth,
-                      mArcHeight);
+    private StateRenderList(@NotNull List<Shape> shapes, @NotNull List<E> values) {
+      myShapes = Collections.unmodifiableList(shapes);
+      myValues = Collections.unmodifiableList(values);
+    }
   }
 }
 
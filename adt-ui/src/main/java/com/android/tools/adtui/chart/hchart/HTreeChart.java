@@ -17,6 +17,7 @@
 package com.android.tools.adtui.chart.hchart;
 
 import com.android.tools.adtui.AnimatedComponent;
+import com.android.tools.adtui.chart.GeometryBuffer;
 import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
@@ -27,6 +28,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
 
 public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListener, MouseListener {
@@ -51,12 +56,15 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   private Range mXRange;
   @NotNull
   private Range mYRange;
+  /**
+   * The visible nodes laid out in pixels, built on the geometry thread from the state captured in {@link #updateData()}.
+   */
   @NotNull
-  private Rectangle2D.Float mRect;
+  private final GeometryBuffer<HRenderList<T>> mRenderList;
 
   public HTreeChart() {
     mRoot = new HNode<>();
-    mRect = new Rectangle2D.Float();
+    mRenderList = new GeometryBuffer<>(this);
     mYRange = new Range(0, 0);
     addMouseWheelListener(this);
     mOrientation = HTreeChart.Orientation.TOP_DOWN;
@@ -69,8 +77,28 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
     mOrientation = orientation;
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    return mXRange == null ? Collections.singletonList(mYRange) : Arrays.asList(mXRange, mYRange);
+  }
+
   @Override
   protected void updateData() {
+    HNode<T> root = mRoot;
+    if (root == null || root.getChildren().size() == 0 || mXRange == null || mXRange.getLength() == 0) {
+      return;
+    }
+
+    // Capture the view, the nodes are laid out on the geometry thread while the EDT keeps drawing the previous layout.
+    double xMin = mXRange.getMin();
+    double xMax = mXRange.getMax();
+    double yMin = mYRange.getMin();
+    int width = getWidth();
+    int height = getHeight();
+    int rowHeight = mDefaultFontMetrics.getHeight();
+    Orientation orientation = mOrientation;
+    mRenderList.update(() -> buildRenderList(root, xMin, xMax, yMin, width, height, rowHeight, orientation));
   }
 
   @Override
@@ -90,56 +118,64 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
       return;
     }
 
-    // Render using a LIFO Stack instead of recursion to limit the depth of the Java call
+    HRenderList<T> nodes = mRenderList.get();
+    if (nodes == null || mHRenderer == null) {
+      return;
+    }
+    for (int i = 0; i < nodes.myData.size(); i++) {
+      mHRenderer.render(g, nodes.myData.get(i), nodes.myRects.get(i));
+    }
+  }
+
+  /**
+   * Culls and lays out the nodes of the tree in pixels. Runs on the geometry thread, so it only reads its arguments and the
+   * tree, which isn't modified once set.
+   */
+  @NotNull
+  private static <T> HRenderList<T> buildRenderList(@NotNull HNode<T> root,
+                                                    double xMin,
+                                                    double xMax,
+                                                    double yMin,
+                                                    int width,
+                                                    int height,
+                                                    int rowHeight,
+                                                    @NotNull Orientation orientation) {
+    List<T> data = new ArrayList<>();
+    List<Rectangle2D.Float> rects = new ArrayList<>();
+    double scale = width / (xMax - xMin);
+
+    // Lay out using a LIFO Stack instead of recursion to limit the depth of the Java call
     // stack.
     Stack<HNode<T>> stack = new Stack<>();
-    stack.addAll(mRoot.getChildren());
+    stack.addAll(root.getChildren());
     while (!stack.isEmpty()) {
       HNode<T> n = stack.pop();
-      renderHNode(g, n);
       stack.addAll(n.getChildren());
-    }
-  }
 
-  // This method is not thread-safe: It re-uses mRect.
-  private void renderHNode(Graphics2D g, HNode<T> n) {
+      // 1. Cull node to view Range.
+      if (n.getStart() > xMax || n.getEnd() < xMin) {
+        continue;
+      }
 
-    // 1. Cull node to view Range.
-    if (n.getStart() > getXRange().getMax() || n.getEnd() < getXRange().getMin()) {
-      return;
-    }
+      // 2. Clip node.
+      double leftEdge = Math.max(0, (n.getStart() - xMin) * scale);
+      double rightEdge = Math.min(width, (n.getEnd() - xMin) * scale);
 
-    // 2. Clip node.
-    double leftEdge = rangeToPosition(n.getStart());
-    if (leftEdge < 0) {
-      leftEdge = 0;
-    }
-    double rightEdge = rangeToPosition(n.getEnd());
-    if (rightEdge > getWidth()) {
-      rightEdge = getWidth();
-    }
-    double width = rightEdge - leftEdge;
+      // 3. Calculate node position and dimension.
+      Rectangle2D.Float rect = new Rectangle2D.Float();
+      rect.x = (float)leftEdge;
+      rect.y = (float)((rowHeight + BORDER_PLUS_PADDING) * n.getDepth() - yMin);
+      rect.width = (float)(rightEdge - leftEdge) - BORDER_PLUS_PADDING;
+      rect.height = rowHeight;
 
-    // 3. Calculate node position and dimension.
-    mRect.x = (float)leftEdge;
-    mRect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * n.getDepth()
-                      - getYRange().getMin());
-    mRect.width = (float)width - BORDER_PLUS_PADDING;
-    mRect.height = mDefaultFontMetrics.getHeight();
+      if (orientation == HTreeChart.Orientation.BOTTOM_UP) {
+        rect.y = (float)(height - rect.y - rect.getHeight());
+      }
 
-    if (mOrientation == HTreeChart.Orientation.BOTTOM_UP) {
-      mRect.y = (float)(getHeight() - mRect.y - mRect.getHeight());
+      data.add(n.getData());
+      rects.add(rect);
     }
-
-    // 4. Render node
-    mHRenderer.render(g, n.getData(), mRect);
-  }
-
-  // This could be done with an Axis. But that seems overkill. A simple method will do for now.
-  private double rangeToPosition(double v) {
-    double translate = -getXRange().getMin();
-    double scale = this.getWidth() / (getXRange().getMax() - getXRange().getMin());
-    return (v + translate) * scale;
+    return new HRenderList<>(data, rects);
   }
 
   private double positionToRange(double x) {
@@ -149,10 +185,12 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   public void setHRenderer(HRenderer<T> r) {
     this.mHRenderer = r;
     this.mHRenderer.setFont(AdtUiUtils.DEFAULT_FONT);
+    markDirty();
   }
 
   public void setHTree(@Nullable HNode<T> root) {
     this.mRoot = root;
+    markDirty();
   }
 
   public Range getXRange() {
@@ -161,6 +199,7 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
 
   public void setXRange(Range XRange) {
     mXRange = XRange;
+    markDirty();
 
     getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), ACTION_ZOOM_IN);
     getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), ACTION_ZOOM_OUT);
@@ -263,4 +302,17 @@ public class HTreeChart<T> extends AnimatedComponent implements MouseWheelListen
   }
 
   public enum Orientation {TOP_DOWN, BOTTOM_UP}
-}
\ No newline at end of file
+
+  /**
+   * The visible nodes' data and where to draw each of them.
+   */
+  private static final class HRenderList<T> {
+    @NotNull private final List<T> myData;
+    @NotNull private final List<Rectangle2D.Float> myRects;
+
+    private HRenderList(@NotNull List<T> data, @NotNull List<Rectangle2D.Float> rects) {
+      myData = Collections.unmodifiableList(data);
+      myRects = Collections.unmodifiableList(rects);
+    }
+  }
+}
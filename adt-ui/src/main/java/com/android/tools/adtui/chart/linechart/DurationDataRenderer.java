@@ -77,6 +77,17 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
   private Point myMousePosition;
   private boolean myClick;
 
+  /**
+   * The ranges and the {@link RangedSeries#getModificationCount() modification count} of the series as of the last
+   * {@link #postAnimate()}, the caches are only rebuilt once any of them change.
+   */
+  private double myLastXMin = Double.NaN;
+  private double myLastXMax = Double.NaN;
+  private double myLastYMin = Double.NaN;
+  private double myLastYMax = Double.NaN;
+  private long myLastModificationCount = DataSeries.UNKNOWN_MODIFICATION_COUNT;
+  private boolean myHasOngoingDuration;
+
   public DurationDataRenderer(@NotNull Builder builder) {
     mySeries = builder.mySeries;
     myColor = builder.myColor;
@@ -93,6 +104,26 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
     myLabelTextColor = builder.myLabelTextColor;
   }
 
+  @Override
+  public boolean isDirty() {
+    Range xRange = mySeries.getXRange();
+    if (xRange.getMin() != myLastXMin || xRange.getMax() != myLastXMax) {
+      return true;
+    }
+    if (myAttachedLineSeries != null) {
+      Range yRange = myAttachedLineSeries.getYRange();
+      if (yRange.getMin() != myLastYMin || yRange.getMax() != myLastYMax) {
+        return true;
+      }
+    }
+    long count = mySeries.getModificationCount();
+    if (count != DataSeries.UNKNOWN_MODIFICATION_COUNT) {
+      return count != myLastModificationCount;
+    }
+    // Series that can't report changes only get new durations at the end of the data, while the last one is still ongoing.
+    return myHasOngoingDuration;
+  }
+
   @Override
   public void animate(float frameLength) {
     // No-op - do everything in postAnimate in case we are attaching to a line series which needs to perform logic in its animate first.
@@ -109,6 +140,14 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
     double xMin = mySeries.getXRange().getMin();
     double xMax = mySeries.getXRange().getMax();
     double xLength = mySeries.getXRange().getLength();
+    myLastXMin = xMin;
+    myLastXMax = xMax;
+    if (myAttachedLineSeries != null) {
+      myLastYMin = myAttachedLineSeries.getYRange().getMin();
+      myLastYMax = myAttachedLineSeries.getYRange().getMax();
+    }
+    myLastModificationCount = mySeries.getModificationCount();
+    myHasOngoingDuration = false;
     ImmutableList<SeriesData<E>> seriesList = mySeries.getSeries();
     ImmutableList<SeriesData<Long>> attachedSeriesList = myAttachedLineSeries != null ? myAttachedLineSeries.getSeries() : null;
     int j = 0;
@@ -116,6 +155,7 @@ public final class DurationDataRenderer<E extends DurationData> implements Anima
     for (int i = 0; i < seriesList.size(); i++) {
       Rectangle2D.Float rect = new Rectangle2D.Float();
       SeriesData<E> data = seriesList.get(i);
+      myHasOngoingDuration |= data.value.getDuration() == UNSPECIFIED_DURATION;
       double xStart = (data.x - xMin) / (xMax - xMin);
       double xDuration = data.value.getDuration() == UNSPECIFIED_DURATION ?
                          (xMax - data.x) / xLength : data.value.getDuration() / xLength;
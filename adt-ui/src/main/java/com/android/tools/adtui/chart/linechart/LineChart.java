@@ -20,14 +20,16 @@ import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.Choreographer;
 import com.android.tools.adtui.LegendRenderData;
 import com.android.tools.adtui.LineChartLegendRenderData;
+import com.android.tools.adtui.chart.GeometryBuffer;
 import com.android.tools.adtui.common.datareducer.DataReducer;
 import com.android.tools.adtui.common.formatter.BaseAxisFormatter;
+import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.adtui.model.SeriesCursor;
 import gnu.trove.TDoubleArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.awt.*;
@@ -47,11 +49,17 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final Map<RangedContinuousSeries, LineConfig> myLinesConfig = new LinkedHashMap<>();
 
+  /**
+   * The lines' paths, built on the geometry thread from the state captured in {@link #postAnimate()}.
+   */
   @NotNull
-  private final ArrayList<Path2D> myLinePaths;
+  private final GeometryBuffer<LineRenderList> myRenderList;
 
+  /**
+   * The {@link DataSeries#getModificationCount() modification counts} of the series as of the last {@link #postAnimate()}.
+   */
   @NotNull
-  private final ArrayList<LineConfig> myLinePathConfigs;
+  private final Map<RangedContinuousSeries, Long> myModificationCounts = new HashMap<>();
 
   @NotNull
   private final List<LineChartCustomRenderer> myCustomRenderers = new ArrayList<>();
@@ -71,8 +79,7 @@ public class LineChart extends AnimatedComponent {
   private boolean myFirstUpdate = true;
 
   public LineChart() {
-    myLinePaths = new ArrayList<>();
-    myLinePathConfigs = new ArrayList<>();
+    myRenderList = new GeometryBuffer<>(this);
     // TODO: Replace with myReducer = new LineChartReducer
     // Having a real reducer will be important for the final release, but we don't want to risk
     // unintentional side effects to distract us as we prepare to meet an initial milestone.
@@ -105,6 +112,7 @@ public class LineChart extends AnimatedComponent {
    */
   public void addLine(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
     myLinesConfig.put(series, config);
+    markDirty();
   }
 
   /**
@@ -125,6 +133,7 @@ public class LineChart extends AnimatedComponent {
 
   public void addCustomRenderer(@NotNull LineChartCustomRenderer renderer) {
     myCustomRenderers.add(renderer);
+    markDirty();
   }
 
   @NotNull
@@ -138,6 +147,7 @@ public class LineChart extends AnimatedComponent {
   public void clearConfigs() {
     myLinesConfig.clear();
     myCustomRenderers.clear();
+    markDirty();
   }
 
   @NotNull
@@ -145,6 +155,44 @@ public class LineChart extends AnimatedComponent {
     return new ArrayList<>(myLinesConfig.keySet());
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    List<Range> ranges = new ArrayList<>(myLinesConfig.size() * 2);
+    for (RangedContinuousSeries series : myLinesConfig.keySet()) {
+      ranges.add(series.getXRange());
+      ranges.add(series.getYRange());
+    }
+    return ranges;
+  }
+
+  @Override
+  public boolean isDirty() {
+    return super.isDirty() || isDataStale();
+  }
+
+  /**
+   * Whether samples may have been added to the lines' ranges since their paths were built, which the input ranges don't show.
+   */
+  private boolean isDataStale() {
+    boolean unknownChanges = false;
+    for (RangedContinuousSeries series : myLinesConfig.keySet()) {
+      long count = series.getModificationCount();
+      Long builtCount = myModificationCounts.get(series);
+      if (builtCount == null || builtCount != count) {
+        return true;
+      }
+      unknownChanges |= count == DataSeries.UNKNOWN_MODIFICATION_COUNT;
+    }
+    if (!unknownChanges) {
+      return false;
+    }
+    // Samples arrive in x order, so series that can't report changes are complete once a sample at or past the end of their range
+    // was read.
+    LineRenderList lines = myRenderList.get();
+    return lines == null || !lines.myComplete;
+  }
+
   @Override
   protected void updateData() {
     Map<Range, Double> max = new HashMap<>();
@@ -153,9 +201,10 @@ public class LineChart extends AnimatedComponent {
       Range range = ranged.getYRange();
       double yMax = Double.MIN_VALUE;
 
-      ImmutableList<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        double value = seriesList.get(i).value;
+      // Aggregated series keep their max, so a zoomed out chart doesn't have to read every sample to find it.
+      SeriesCursor cursor = getWidth() > 0 ? ranged.getCursor(getWidth()) : ranged.getCursor();
+      while (cursor.next()) {
+        double value = cursor.getY();
         if (yMax < value) {
           yMax = value;
         }
@@ -214,40 +263,74 @@ public class LineChart extends AnimatedComponent {
 
   @Override
   public void postAnimate() {
-    long duration = System.nanoTime();
+    // Capture what the paths depend on, they are built on the geometry thread while the EDT keeps drawing the previous ones.
+    List<LineSnapshot> lines = new ArrayList<>(myLinesConfig.size());
+    myModificationCounts.clear();
     int p = 0;
+    for (Map.Entry<RangedContinuousSeries, LineConfig> lineConfig : myLinesConfig.entrySet()) {
+      RangedContinuousSeries ranged = lineConfig.getKey();
+      // Read before the snapshot, so samples added in between make the chart dirty again rather than go unnoticed.
+      myModificationCounts.put(ranged, ranged.getModificationCount());
+      lines.add(new LineSnapshot(ranged, lineConfig.getValue()));
+      addDebugInfo("Range[%d] Max: %.2f", p, ranged.getXRange().getMax());
+      p++;
+    }
+
+    int width = getWidth();
+    int height = getHeight();
+    DataReducer reducer = myReducer;
+    boolean countPoints = isDrawDebugInfo();
+    myRenderList.update(() -> buildRenderList(lines, width, height, reducer, countPoints));
+  }
+
+  /**
+   * Builds the paths of the lines in pixels. Runs on the geometry thread, so it only reads the snapshots and their cursors.
+   */
+  @NotNull
+  private static LineRenderList buildRenderList(@NotNull List<LineSnapshot> lines,
+                                                int width,
+                                                int height,
+                                                @NotNull DataReducer reducer,
+                                                boolean countPoints) {
+    long duration = System.nanoTime();
 
     // Store the Y coordinates of the last stacked series to use them to increment the Y values
     // of the current stacked series.
     TDoubleArrayList lastStackedSeriesY = null;
 
-    Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
-    Deque<LineConfig> orderedConfigs = new ArrayDeque<>(myLinesConfig.size());
+    Deque<Path2D> orderedPaths = new ArrayDeque<>(lines.size());
+    Deque<LineConfig> orderedConfigs = new ArrayDeque<>(lines.size());
+    boolean complete = true;
 
-    for (Map.Entry<RangedContinuousSeries, LineConfig> lineConfig : myLinesConfig.entrySet()) {
-      final RangedContinuousSeries ranged = lineConfig.getKey();
-      final LineConfig config = lineConfig.getValue();
+    for (LineSnapshot line : lines) {
+      final LineConfig config = line.myConfig;
       // Stores the y coordinates of the current series in case it's used as a stacked series
       final TDoubleArrayList currentSeriesY = new TDoubleArrayList();
 
       Path2D path = new Path2D.Float();
 
-      double xMin = ranged.getXRange().getMin();
-      double xMax = ranged.getXRange().getMax();
-      double yMin = ranged.getYRange().getMin();
-      double yMax = ranged.getYRange().getMax();
+      double xMin = line.myXRange.getMin();
+      double xMax = line.myXRange.getMax();
 
       // X coordinate of the first point
-      double firstXd = 0f;
-
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      for (int i = 0; i < seriesList.size(); i++) {
-        // TODO: refactor to allow different types (e.g. double)
-        SeriesData<Long> seriesData = seriesList.get(i);
-        long currX = seriesData.x;
-        long currY = seriesData.value;
+      double firstX = 0f;
+      long lastX = Long.MIN_VALUE;
+
+      // Stacked series are added up point by point, so they need the raw samples of every series. Other series only need about one
+      // point per pixel.
+      SeriesCursor cursor = line.myCursor;
+      if (config.isStacked() || width <= 0) {
+        cursor.seek(line.myXRange);
+      }
+      else {
+        cursor.seek(line.myXRange, width);
+      }
+      for (int i = 0; cursor.next(); i++) {
+        long currX = cursor.getX();
+        double currY = cursor.getY();
+        lastX = currX;
         double xd = (currX - xMin) / (xMax - xMin);
-        double yd = (currY - yMin) / (yMax - yMin);
+        double yd = (currY - line.myYMin) / (line.myYMax - line.myYMin);
 
         // If the current series is stacked, increment its yd by the yd of the last stacked
         // series if it's not null.
@@ -260,35 +343,40 @@ public class LineChart extends AnimatedComponent {
         }
         currentSeriesY.add(yd);
         // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        float adjustedYd = 1 - (float)yd;
+        float x = (float)(xd * width);
+        float y = (float)(1 - yd) * height;
 
         if (i == 0) {
-          path.moveTo(xd, adjustedYd);
-          firstXd = xd;
+          path.moveTo(x, y);
+          firstX = x;
         }
         else {
           // If the chart is stepped, a horizontal line should be drawn from the current
           // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
           // drawing a line to the destination point itself (e.g. (x1, y1)).
           if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
+            path.lineTo(x, path.getCurrentPoint().getY());
           }
-          path.lineTo(xd, adjustedYd);
+          path.lineTo(x, y);
         }
       }
 
+      if (line.myModificationCount == DataSeries.UNKNOWN_MODIFICATION_COUNT && lastX < xMax) {
+        complete = false;
+      }
+
       if (config.isFilled() && path.getCurrentPoint() != null) {
         // If the chart is filled, but not stacked, draw a line from the last point to X
         // axis and another one from this new point to the first destination point.
-        path.lineTo(path.getCurrentPoint().getX(), 1f);
-        path.lineTo(firstXd, 1f);
+        path.lineTo(path.getCurrentPoint().getX(), height);
+        path.lineTo(firstX, height);
       }
 
       if (config.isStacked()) {
         lastStackedSeriesY = currentSeriesY;
       }
 
+      path = reducer.reduce(path, config);
       if (config.isFilled()) {
         // Draw the filled lines first, otherwise other lines won't be visible.
         // Also, to draw stacked and filled lines correctly, they need to be drawn in reverse order to their adding order.
@@ -299,54 +387,61 @@ public class LineChart extends AnimatedComponent {
         orderedPaths.addLast(path);
         orderedConfigs.addLast(config);
       }
-
-      addDebugInfo("Range[%d] Max: %.2f", p, xMax);
-      p++;
     }
 
-    myLinePaths.clear();
-    myLinePaths.addAll(orderedPaths);
-
-    myLinePathConfigs.clear();
-    myLinePathConfigs.addAll(orderedConfigs);
+    int[] pointCounts = null;
+    if (countPoints) {
+      pointCounts = new int[orderedPaths.size()];
+      int i = 0;
+      for (Path2D path : orderedPaths) {
+        for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+          pointCounts[i]++;
+        }
+        i++;
+      }
+    }
 
-    addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
+    return new LineRenderList(new ArrayList<>(orderedPaths), new ArrayList<>(orderedConfigs), width, height, complete, pointCounts,
+                              System.nanoTime() - duration);
   }
 
   @Override
   protected void draw(Graphics2D g2d, Dimension dim) {
-    if (myLinePaths.size() != myLinesConfig.size()) {
-      // Early return if the cached paths have not been sync'd with the configs.
+    LineRenderList lines = myRenderList.get();
+    if (lines == null || lines.myPaths.size() != myLinesConfig.size()) {
+      // Early return if the paths have not been built for the current configs.
       // e.g. updateData/postAnimate has not been invoked before this draw call.
       return;
     }
 
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    AffineTransform scale = AffineTransform.getScaleInstance(dim.getWidth(), dim.getHeight());
-
-    // Cache the transformed line paths for reuse below.
-    List<Path2D> transformedPaths = new ArrayList<>(myLinePaths.size());
-    for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
-      scaledPath = myReducer.reduce(scaledPath, myLinePathConfigs.get(i));
-      transformedPaths.add(scaledPath);
-
-      if (isDrawDebugInfo()) {
-        int count = 0;
-        PathIterator it = scaledPath.getPathIterator(null);
-        while (!it.isDone()) {
-          ++count;
-          it.next();
-        }
+
+    List<Path2D> paths = lines.myPaths;
+    if (dim.width != lines.myWidth || dim.height != lines.myHeight) {
+      if (lines.myWidth <= 0 || lines.myHeight <= 0) {
+        return;
+      }
+      // Resized since the paths were built, stretch them until the next ones arrive.
+      AffineTransform scale = AffineTransform.getScaleInstance(dim.getWidth() / lines.myWidth, dim.getHeight() / lines.myHeight);
+      paths = new ArrayList<>(lines.myPaths.size());
+      for (Path2D path : lines.myPaths) {
+        paths.add(new Path2D.Float(path, scale));
+      }
+    }
+
+    if (lines.myPointCounts != null) {
+      for (int count : lines.myPointCounts) {
         addDebugInfo("# of points drawn: %d", count);
       }
     }
+    addDebugInfo("Path build time: %d ms", TimeUnit.NANOSECONDS.toMillis(lines.myBuildTimeNs));
 
     // 1st pass - draw all the lines in the background.
-    drawLines(g2d, transformedPaths, myLinePathConfigs, false);
+    drawLines(g2d, paths, lines.myConfigs, false);
 
     // 2nd pass - call each custom renderer instances to redraw any regions/lines as needed.
-    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, myLinePathConfigs));
+    List<Path2D> drawnPaths = paths;
+    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, drawnPaths, lines.myConfigs));
   }
 
   public static void drawLines(Graphics2D g2d, List<Path2D> transformedPaths, List<LineConfig> configs, boolean grayScale) {
@@ -374,5 +469,60 @@ public class LineChart extends AnimatedComponent {
       }
     }
   }
-}
 
+  /**
+   * What the path of a line depends on, as of the last {@link #postAnimate()}.
+   */
+  private static final class LineSnapshot {
+    /**
+     * Reads the series directly if it allows concurrent reads, otherwise a copy of the samples in range taken on the EDT.
+     */
+    @NotNull private final SeriesCursor myCursor;
+    @NotNull private final LineConfig myConfig;
+    @NotNull private final Range myXRange;
+    private final double myYMin;
+    private final double myYMax;
+    private final long myModificationCount;
+
+    private LineSnapshot(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
+      myModificationCount = series.getModificationCount();
+      myCursor = series.createConcurrentCursor();
+      myConfig = config;
+      myXRange = new Range(series.getXRange().getMin(), series.getXRange().getMax());
+      myYMin = series.getYRange().getMin();
+      myYMax = series.getYRange().getMax();
+    }
+  }
+
+  /**
+   * The paths of the lines in pixels, in drawing order, for a component of the given size.
+   */
+  private static final class LineRenderList {
+    @NotNull private final List<Path2D> myPaths;
+    @NotNull private final List<LineConfig> myConfigs;
+    private final int myWidth;
+    private final int myHeight;
+    /**
+     * Whether every line whose series can't report changes had a sample at or past the end of its x range.
+     */
+    private final boolean myComplete;
+    @Nullable private final int[] myPointCounts;
+    private final long myBuildTimeNs;
+
+    private LineRenderList(@NotNull List<Path2D> paths,
+                           @NotNull List<LineConfig> configs,
+                           int width,
+                           int height,
+                           boolean complete,
+                           @Nullable int[] pointCounts,
+                           long buildTimeNs) {
+      myPaths = Collections.unmodifiableList(paths);
+      myConfigs = Collections.unmodifiableList(configs);
+      myWidth = width;
+      myHeight = height;
+      myComplete = complete;
+      myPointCounts = pointCounts;
+      myBuildTimeNs = buildTimeNs;
+    }
+  }
+}
@@ -16,7 +16,9 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.AnimatedComponent;
+import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.event.MouseEvent;
@@ -25,6 +27,8 @@ import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A custom component that handles drawing and mouse interaction with DurationData
@@ -84,6 +88,13 @@ public final class OverlayComponent extends AnimatedComponent {
     myDurationRenderers.add(renderer);
   }
 
+  @Nullable
+  @Override
+  protected List<Range> getInputRanges() {
+    // The renderers are animated on their own, this only draws what they built, and is repainted along with them.
+    return Collections.emptyList();
+  }
+
   @Override
   protected void updateData() {
     // No-op - each DurationDataRenderer is supposed to animate on their own.
@@ -99,6 +110,8 @@ public final class OverlayComponent extends AnimatedComponent {
   }
 
   private void handleOrDispatchEvent(MouseEvent e) {
+    // The renderers highlight what is under the mouse, which needs drawing even while the choreographer is idle.
+    repaint();
     boolean handled = false;
     for (DurationDataRenderer renderer : myDurationRenderers) {
       // TODO make this an interface
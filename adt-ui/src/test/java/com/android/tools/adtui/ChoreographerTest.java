@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui;
+
+import com.android.tools.adtui.chart.StateChart;
+import com.android.tools.adtui.chart.linechart.DurationDataRenderer;
+import com.android.tools.adtui.chart.linechart.LineChart;
+import com.android.tools.adtui.chart.linechart.OverlayComponent;
+import com.android.tools.adtui.common.formatter.SingleUnitAxisFormatter;
+import com.android.tools.adtui.common.formatter.TimeAxisFormatter;
+import com.android.tools.adtui.model.*;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ChoreographerTest {
+
+  @Test
+  public void testCleanComponentsAreSkipped() throws Exception {
+    Choreographer choreographer = new Choreographer(60, new JPanel());
+    choreographer.stop();
+    CountingAnimatable dirty = new CountingAnimatable(true);
+    CountingAnimatable clean = new CountingAnimatable(false);
+    choreographer.register(dirty);
+    choreographer.register(clean);
+
+    // Registering requests a frame, which steps everything once.
+    tick(choreographer);
+    assertThat(dirty.myAnimateCount).isEqualTo(1);
+    assertThat(clean.myAnimateCount).isEqualTo(1);
+
+    tick(choreographer);
+    tick(choreographer);
+    assertThat(dirty.myAnimateCount).isEqualTo(3);
+    assertThat(dirty.myPostAnimateCount).isEqualTo(3);
+    assertThat(clean.myAnimateCount).isEqualTo(1);
+    assertThat(clean.myPostAnimateCount).isEqualTo(1);
+
+    // An explicit step animates everything.
+    choreographer.step();
+    assertThat(clean.myAnimateCount).isEqualTo(2);
+  }
+
+  @Test
+  public void testIdleAfterCleanFrames() throws Exception {
+    Choreographer choreographer = new Choreographer(10, new JPanel());
+    choreographer.stop();
+    CountingAnimatable component = new CountingAnimatable(false);
+    choreographer.register(component);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(choreographer.isIdle()).isFalse();
+      tick(choreographer);
+    }
+    assertThat(choreographer.isIdle()).isTrue();
+    assertThat(component.myAnimateCount).isEqualTo(1);
+
+    // Idle ticks only check whether anything became dirty.
+    tick(choreographer);
+    assertThat(component.myAnimateCount).isEqualTo(1);
+    assertThat(choreographer.isIdle()).isTrue();
+
+    // Anything becoming dirty brings the full frame rate back.
+    component.myDirty = true;
+    tick(choreographer);
+    assertThat(choreographer.isIdle()).isFalse();
+
+    component.myDirty = false;
+    for (int i = 0; i < 10; i++) {
+      tick(choreographer);
+    }
+    assertThat(choreographer.isIdle()).isTrue();
+    choreographer.requestFrame();
+    assertThat(choreographer.isIdle()).isFalse();
+  }
+
+  @Test
+  public void testStageGoesIdle() throws Exception {
+    // The components of a profiler stage like the memory one, over a view range that isn't streaming.
+    Range viewRange = new Range(0, 100);
+    Range yRange = new Range(0, 100);
+    Range selectionRange = new Range();
+    DefaultDataSeries<Long> samples = new DefaultDataSeries<>();
+    for (int i = 0; i <= 100; i++) {
+      samples.add(i, (long)i);
+    }
+    RangedContinuousSeries line = new RangedContinuousSeries("line", viewRange, yRange, samples);
+    DefaultDataSeries<DefaultDurationData> durations = new DefaultDataSeries<>();
+    durations.add(10, new DefaultDurationData(20));
+    DefaultDataSeries<State> states = new DefaultDataSeries<>();
+    states.add(0, State.ON);
+    states.add(50, State.OFF);
+
+    LineChart lineChart = new LineChart();
+    lineChart.addLine(line);
+    DurationDataRenderer<DefaultDurationData> durationRenderer =
+      new DurationDataRenderer.Builder<>(new RangedSeries<>(viewRange, durations), Color.BLACK).setAttachLineSeries(line).build();
+    lineChart.addCustomRenderer(durationRenderer);
+    SelectionComponent selection = new SelectionComponent(selectionRange, viewRange);
+    OverlayComponent overlay = new OverlayComponent(selection);
+    overlay.addDurationDataRenderer(durationRenderer);
+    AxisComponent timeAxis =
+      new AxisComponent.Builder(viewRange, new TimeAxisFormatter(1, 5, 10), AxisComponent.AxisOrientation.BOTTOM).build();
+    AxisComponent yAxis =
+      new AxisComponent.Builder(yRange, new SingleUnitAxisFormatter(1, 5, 10, ""), AxisComponent.AxisOrientation.RIGHT).build();
+    GridComponent grid = new GridComponent();
+    grid.addAxis(timeAxis);
+    grid.addAxis(yAxis);
+    // Not throttled, so the legend doesn't stay dirty waiting for its next update.
+    LegendComponent legend = new LegendComponent(LegendComponent.Orientation.HORIZONTAL, 0);
+    legend.setLegendData(Collections.singletonList(
+      new LineChartLegendRenderData(LegendRenderData.IconType.LINE, Color.BLACK, viewRange, line, new TimeAxisFormatter(1, 5, 10))));
+    StateChart<State> stateChart = new StateChart<>(Collections.singletonMap(State.ON, Color.GREEN));
+    stateChart.addSeries(new RangedSeries<>(viewRange, states));
+
+    Choreographer choreographer = new Choreographer(10, new JPanel());
+    choreographer.stop();
+    choreographer.register(Arrays.asList(timeAxis, lineChart, durationRenderer, overlay, selection, yAxis, grid, legend, stateChart));
+
+    // Once the first frames settled everything, nothing is dirty anymore.
+    for (int i = 0; i < 20; i++) {
+      tick(choreographer);
+    }
+    assertThat(choreographer.isIdle()).isTrue();
+
+    // Making a selection wakes the loop up, and it goes back to idle once the selection stops changing.
+    selectionRange.set(20, 30);
+    tick(choreographer);
+    assertThat(choreographer.isIdle()).isFalse();
+    for (int i = 0; i < 20; i++) {
+      tick(choreographer);
+    }
+    assertThat(choreographer.isIdle()).isTrue();
+
+    // So does moving the view.
+    viewRange.shift(10);
+    tick(choreographer);
+    assertThat(choreographer.isIdle()).isFalse();
+    for (int i = 0; i < 20; i++) {
+      tick(choreographer);
+    }
+    assertThat(choreographer.isIdle()).isTrue();
+  }
+
+  @Test
+  public void testAnimatedRangeIsDirtyUntilItReachesItsTarget() throws Exception {
+    AnimatedRange range = new AnimatedRange(0, 100);
+    assertThat(range.isDirty()).isFalse();
+
+    range.setMax(200);
+    assertThat(range.isDirty()).isTrue();
+
+    range.setLerpFraction(1f);
+    range.animate(1);
+    assertThat(range.isDirty()).isFalse();
+  }
+
+  @Test
+  public void testOverBudgetFramesAreCounted() throws Exception {
+    Choreographer choreographer = new Choreographer(60, new JPanel());
+    choreographer.stop();
+    CountingAnimatable component = new CountingAnimatable(true);
+    choreographer.register(component);
+    component.mySleepMs = 2 * choreographer.getFrameBudgetNs() / 1000000;
+    tick(choreographer);
+    assertThat(choreographer.getOverBudgetFrameCount()).isEqualTo(1);
+    assertThat(choreographer.getTimings().get(component).getOverBudgetCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testTimingsAreRecorded() throws Exception {
+    Choreographer choreographer = new Choreographer(60, new JPanel());
+    choreographer.stop();
+    CountingAnimatable component = new CountingAnimatable(true);
+    choreographer.register(component);
+    tick(choreographer);
+    tick(choreographer);
+
+    Choreographer.FrameTiming timing = choreographer.getTimings().get(component);
+    assertThat(timing.getUpdateCount()).isEqualTo(2);
+    assertThat(timing.getMaxUpdateNs()).isAtLeast(timing.getAverageUpdateNs());
+    assertThat(timing.getDrawCount()).isEqualTo(0);
+
+    choreographer.unregister(component);
+    assertThat(choreographer.getTimings().containsKey(component)).isFalse();
+  }
+
+  private enum State {
+    ON,
+    OFF
+  }
+
+  private static void tick(Choreographer choreographer) {
+    choreographer.actionPerformed(null);
+  }
+
+  private static class CountingAnimatable implements Animatable {
+    private boolean myDirty;
+    private long mySleepMs;
+    private int myAnimateCount;
+    private int myPostAnimateCount;
+
+    private CountingAnimatable(boolean dirty) {
+      myDirty = dirty;
+    }
+
+    @Override
+    public boolean isDirty() {
+      return myDirty;
+    }
+
+    @Override
+    public void animate(float frameLength) {
+      myAnimateCount++;
+      if (mySleepMs > 0) {
+        try {
+          Thread.sleep(mySleepMs);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    public void postAnimate() {
+      myPostAnimateCount++;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart;
+
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class GeometryBufferTest {
+
+  @Test
+  public void testOffscreenComponentsBuildSynchronously() throws Exception {
+    QueuedExecutor executor = new QueuedExecutor();
+    GeometryBuffer<String> buffer = new GeometryBuffer<>(new JPanel(), executor);
+    assertThat(buffer.get()).isNull();
+
+    buffer.update(() -> "first");
+    assertThat(buffer.get()).isEqualTo("first");
+    assertThat(executor.myTasks).isEmpty();
+  }
+
+  @Test
+  public void testShowingComponentsBuildInBackground() throws Exception {
+    QueuedExecutor executor = new QueuedExecutor();
+    GeometryBuffer<String> buffer = new GeometryBuffer<>(new ShowingPanel(), executor);
+
+    buffer.update(() -> "first");
+    // The previous list, none yet, stays visible until the new one is built.
+    assertThat(buffer.get()).isNull();
+    assertThat(executor.myTasks).hasSize(1);
+
+    executor.runAll();
+    assertThat(buffer.get()).isEqualTo("first");
+  }
+
+  @Test
+  public void testUpdatesAreCoalesced() throws Exception {
+    QueuedExecutor executor = new QueuedExecutor();
+    GeometryBuffer<String> buffer = new GeometryBuffer<>(new ShowingPanel(), executor);
+
+    buffer.update(() -> "first");
+    buffer.update(() -> "second");
+    buffer.update(() -> "third");
+    // Only one build is scheduled at a time, and it picks up the latest update.
+    assertThat(executor.myTasks).hasSize(1);
+
+    executor.runAll();
+    assertThat(buffer.get()).isEqualTo("third");
+  }
+
+  private static class ShowingPanel extends JPanel {
+    @Override
+    public boolean isShowing() {
+      return true;
+    }
+  }
+
+  private static class QueuedExecutor implements Executor {
+    private final Queue<Runnable> myTasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable command) {
+      myTasks.add(command);
+    }
+
+    private void runAll() {
+      while (!myTasks.isEmpty()) {
+        myTasks.poll().run();
+      }
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.Choreographer;
+import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.DefaultDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -49,4 +50,108 @@ public class LineChartTest {
     assertThat(yRange.getMax()).isWithin(0.0).of(100);  // after update.
     choreographer.stop();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIdleChartBuildsNoGeometry() throws Exception {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 100);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 101; i++) {
+      testSeries.add(i, (long)i);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", xRange, yRange, testSeries);
+    Choreographer choreographer = new Choreographer(10, new JPanel());
+    choreographer.stop();
+
+    // The reducer runs once per line every time the paths are built.
+    int[] buildCount = new int[1];
+    LineChart lineChart = new LineChart((path, config) -> {
+      buildCount[0]++;
+      return path;
+    });
+    lineChart.addLine(rangedSeries);
+    choreographer.register(lineChart);
+
+    // Registering requests a frame, the chart's first paths are built on the next tick.
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(1);
+
+    // Nothing moves, so the chart isn't stepped again and the loop goes idle.
+    for (int i = 0; i < 20; i++) {
+      choreographer.actionPerformed(null);
+    }
+    assertThat(buildCount[0]).isEqualTo(1);
+    assertThat(choreographer.isIdle()).isTrue();
+
+    // Moving the view brings it back.
+    xRange.shift(10);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(2);
+    assertThat(choreographer.isIdle()).isFalse();
+
+    // So does a change to the chart's configuration.
+    lineChart.addLine(new RangedContinuousSeries("other", xRange, yRange, testSeries));
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(4);
+  }
+
+  @Test
+  public void testSamplesAddedInRangeRebuildGeometry() throws Exception {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 100);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    testSeries.add(0, 0L);
+    Choreographer choreographer = new Choreographer(10, new JPanel());
+    choreographer.stop();
+    int[] buildCount = new int[1];
+    LineChart lineChart = new LineChart((path, config) -> {
+      buildCount[0]++;
+      return path;
+    });
+    lineChart.addLine(new RangedContinuousSeries("test", xRange, yRange, testSeries));
+    choreographer.register(lineChart);
+    choreographer.actionPerformed(null);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(1);
+
+    // The range doesn't move, but the series tells the chart its samples changed.
+    testSeries.add(50, 50L);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(2);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(2);
+  }
+
+  @Test
+  public void testSeriesWithoutModificationCountRebuildUntilRangeIsCovered() throws Exception {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 100);
+    DefaultDataSeries<Long> samples = new DefaultDataSeries<>();
+    samples.add(0, 0L);
+    // Like a series loading from an RPC, it can't tell the chart when samples arrive.
+    DataSeries<Long> testSeries = samples::getDataForXRange;
+    Choreographer choreographer = new Choreographer(10, new JPanel());
+    choreographer.stop();
+    int[] buildCount = new int[1];
+    LineChart lineChart = new LineChart((path, config) -> {
+      buildCount[0]++;
+      return path;
+    });
+    lineChart.addLine(new RangedContinuousSeries("test", xRange, yRange, testSeries));
+    choreographer.register(lineChart);
+
+    // Samples may still arrive before the end of the range, so the chart keeps reading the series.
+    choreographer.actionPerformed(null);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(2);
+
+    // Once a sample at the end of the range was read, nothing can be added to the range anymore.
+    samples.add(100, 50L);
+    choreographer.actionPerformed(null);
+    assertThat(buildCount[0]).isEqualTo(3);
+    for (int i = 0; i < 5; i++) {
+      choreographer.actionPerformed(null);
+    }
+    assertThat(buildCount[0]).isEqualTo(3);
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.SdkConstants;
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.idea.apk.viewer.dex.DexParser;
+import com.android.tools.idea.apk.viewer.dex.DexParser.DexFileStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * The expensive parts of analyzing an APK: how small each entry gets when compressed with "zip -9", how small the whole APK gets with
+ * "gzip -9", which is roughly what Google Play serves, and statistics about its dex files. These are computed in parallel, without writing
+ * a compressed copy of the APK, and cached on disk keyed by a hash of the APK's contents, so that reopening an APK is instant.
+ *
+ * The parallel work is done by at most {@link #PARALLELISM} threads, the calling one and workers submitted to the given executor, which
+ * pull entries and chunks from a shared queue rather than getting a task each.
+ */
+public final class ApkAnalysis {
+  private static final File CACHE_PATH = new File(PathManager.getSystemPath(), "apk-analyzer");
+  private static final int CACHE_VERSION = 1;
+  private static final int MAX_CACHED_APKS = 64;
+
+  private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\" + SdkConstants.DOT_DEX);
+
+  /**
+   * The APK is gzipped in chunks of this size in parallel, each one primed with the end of the previous one, as pigz does.
+   */
+  private static final int GZIP_CHUNK_SIZE = 1024 * 1024;
+  private static final int DEFLATE_WINDOW_SIZE = 32 * 1024;
+  private static final int GZIP_HEADER_AND_TRAILER_SIZE = 18;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  @NotNull private final Map<String, Long> myCompressedSizes;
+  private final long myGzipSize;
+  @NotNull private final Map<String, DexFileStats> myDexFileStats;
+
+  private ApkAnalysis(@NotNull Map<String, Long> compressedSizes, long gzipSize, @NotNull Map<String, DexFileStats> dexFileStats) {
+    myCompressedSizes = compressedSizes;
+    myGzipSize = gzipSize;
+    myDexFileStats = dexFileStats;
+  }
+
+  /**
+   * Returns the analysis of {@code apk}, from the cache if it was analyzed before. Otherwise, the work is split into tasks that run on
+   * {@code executor}, and the results are cached.
+   */
+  @NotNull
+  public static ApkAnalysis analyze(@NotNull File apk, @NotNull ExecutorService executor) throws IOException {
+    return analyze(apk, executor, CACHE_PATH);
+  }
+
+  @VisibleForTesting
+  @NotNull
+  static ApkAnalysis analyze(@NotNull File apk, @NotNull ExecutorService executor, @NotNull File cacheDir) throws IOException {
+    try (ApkZip zip = ApkZip.open(apk)) {
+      File cacheFile = new File(cacheDir, contentHash(zip, apk.length()));
+      ApkAnalysis cached = read(cacheFile);
+      if (cached != null) {
+        return cached;
+      }
+
+      List<ApkZip.Entry> files = new ArrayList<>();
+      List<ApkZip.Entry> dexFiles = new ArrayList<>();
+      for (ApkZip.Entry entry : zip.getEntries()) {
+        if (!entry.isDirectory()) {
+          files.add(entry);
+          if (DEX_ENTRY.matcher(entry.getName()).matches()) {
+            dexFiles.add(entry);
+          }
+        }
+      }
+
+      List<Long> compressedSizes = runParallel(files, executor, entry -> {
+        try (InputStream in = zip.getInputStream(entry)) {
+          return deflatedSize(in);
+        }
+      });
+      List<DexFileStats> dexFileStats = runParallel(dexFiles, executor, entry -> DexParser.getDexFileStats(zip.getBytes(entry)));
+      long gzipSize = estimateGzipSize(apk, executor);
+      ApkAnalysis analysis = new ApkAnalysis(toMap(files, compressedSizes), gzipSize, toMap(dexFiles, dexFileStats));
+      analysis.write(cacheFile);
+      return analysis;
+    }
+  }
+
+  /**
+   * @return the size of the entry at {@code path} when compressed at the maximum level, or -1 if there is no such entry.
+   */
+  public long getCompressedSize(@NotNull String path) {
+    Long size = myCompressedSizes.get(path);
+    return size == null ? -1 : size;
+  }
+
+  /**
+   * @return the size of the whole APK when compressed using "gzip -9".
+   */
+  public long getGzipSize() {
+    return myGzipSize;
+  }
+
+  /**
+   * @return the statistics of the dex file at {@code path}, if it is one of the APK's top level dex files.
+   */
+  @Nullable
+  public DexFileStats getDexFileStats(@NotNull String path) {
+    return myDexFileStats.get(path);
+  }
+
+  /**
+   * Hashes the names, checksums and sizes of the APK's entries, which are all in the zip's central directory, so that the hash doesn't
+   * require reading the whole APK.
+   */
+  @NotNull
+  private static String contentHash(@NotNull ApkZip zip, long length) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putLong(length);
+    for (ApkZip.Entry entry : zip.getEntries()) {
+      hasher.putString(entry.getName(), StandardCharsets.UTF_8);
+      hasher.putLong(entry.getCrc());
+      hasher.putLong(entry.getSize());
+      hasher.putLong(entry.getCompressedSize());
+    }
+    return hasher.hash().toString();
+  }
+
+  @VisibleForTesting
+  static long deflatedSize(@NotNull InputStream in) throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    try {
+      byte[] input = new byte[BUFFER_SIZE];
+      byte[] output = new byte[BUFFER_SIZE];
+      long size = 0;
+      int n;
+      while ((n = in.read(input)) > 0) {
+        deflater.setInput(input, 0, n);
+        while (!deflater.needsInput()) {
+          size += deflater.deflate(output);
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        size += deflater.deflate(output);
+      }
+      return size;
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Estimates the size of {@code file} compressed with "gzip -9" by compressing chunks of it in parallel. Each chunk is primed with the
+   * window that precedes it, so the estimate is only off by the few bytes it takes to flush each chunk.
+   */
+  @VisibleForTesting
+  static long estimateGzipSize(@NotNull File file, @NotNull ExecutorService executor) throws IOException {
+    long length = file.length();
+    List<Long> chunkStarts = new ArrayList<>();
+    for (long start = 0; start < length || start == 0; start += GZIP_CHUNK_SIZE) {
+      chunkStarts.add(start);
+    }
+    List<Long> chunkSizes = runParallel(chunkStarts, executor, start -> {
+      boolean last = start + GZIP_CHUNK_SIZE >= length;
+      return deflatedChunkSize(file, start, (int)Math.min(GZIP_CHUNK_SIZE, length - start), last);
+    });
+
+    long size = GZIP_HEADER_AND_TRAILER_SIZE;
+    for (long chunkSize : chunkSizes) {
+      size += chunkSize;
+    }
+    return size;
+  }
+
+  private static long deflatedChunkSize(@NotNull File file, long start, int length, boolean last) throws IOException {
+    int dictionaryLength = (int)Math.min(start, DEFLATE_WINDOW_SIZE);
+    ByteBuffer buffer = ByteBuffer.allocate(dictionaryLength + length);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      int n = 0;
+      while (buffer.hasRemaining() && n >= 0) {
+        n = channel.read(buffer, start - dictionaryLength + buffer.position());
+      }
+    }
+    byte[] bytes = buffer.array();
+
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    try {
+      if (dictionaryLength > 0) {
+        deflater.setDictionary(bytes, 0, dictionaryLength);
+      }
+      deflater.setInput(bytes, dictionaryLength, buffer.position() - dictionaryLength);
+      byte[] output = new byte[BUFFER_SIZE];
+      long size = 0;
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          size += deflater.deflate(output);
+        }
+      }
+      else {
+        int n;
+        do {
+          n = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+          size += n;
+        }
+        while (n == output.length || !deflater.needsInput());
+      }
+      return size;
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  @VisibleForTesting
+  interface ItemTask<T, R> {
+    R run(@NotNull T item) throws IOException;
+  }
+
+  @NotNull
+  private static <T, R> List<R> runParallel(@NotNull List<T> items, @NotNull ExecutorService executor, @NotNull ItemTask<T, R> task)
+    throws IOException {
+    return runParallel(items, executor, PARALLELISM, task);
+  }
+
+  /**
+   * Runs {@code task} on each of {@code items}, on the calling thread and up to {@code parallelism} - 1 workers submitted to
+   * {@code executor}. Items are handed out from a shared queue, so the calling thread gets through all of them on its own if the executor
+   * has no thread to spare. Each worker claims itself when it starts; the ones the calling thread claims first never run and are
+   * cancelled, the others are waited for, so that every item is done before this returns.
+   *
+   * @return the results, in the order of {@code items}.
+   */
+  @VisibleForTesting
+  @NotNull
+  static <T, R> List<R> runParallel(@NotNull List<T> items,
+                                    @NotNull ExecutorService executor,
+                                    int parallelism,
+                                    @NotNull ItemTask<T, R> task) throws IOException {
+    AtomicReferenceArray<R> results = new AtomicReferenceArray<>(items.size());
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Runnable worker = () -> {
+      for (int i = next.getAndIncrement(); i < items.size() && failure.get() == null; i = next.getAndIncrement()) {
+        try {
+          results.set(i, task.run(items.get(i)));
+        }
+        catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      }
+    };
+
+    List<Future<?>> workers = new ArrayList<>();
+    List<AtomicBoolean> claims = new ArrayList<>();
+    for (int i = 1; i < Math.min(parallelism, items.size()); i++) {
+      AtomicBoolean claimed = new AtomicBoolean();
+      claims.add(claimed);
+      workers.add(executor.submit(() -> {
+        if (claimed.compareAndSet(false, true)) {
+          worker.run();
+        }
+      }));
+    }
+    try {
+      worker.run();
+    }
+    finally {
+      for (int i = 0; i < workers.size(); i++) {
+        if (claims.get(i).compareAndSet(false, true)) {
+          workers.get(i).cancel(false);
+        }
+        else {
+          get(workers.get(i));
+        }
+      }
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof IOException) {
+      throw (IOException)t;
+    }
+    if (t != null) {
+      throw new IOException(t);
+    }
+    List<R> list = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      list.add(results.get(i));
+    }
+    return list;
+  }
+
+  @NotNull
+  private static <T> Map<String, T> toMap(@NotNull List<ApkZip.Entry> entries, @NotNull List<T> values) {
+    ImmutableMap.Builder<String, T> results = ImmutableMap.builder();
+    for (int i = 0; i < entries.size(); i++) {
+      results.put(entries.get(i).getName(), values.get(i));
+    }
+    return results.build();
+  }
+
+  private static void get(@NotNull Future<?> future) throws IOException {
+    try {
+      future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Nullable
+  private static ApkAnalysis read(@NotNull File cacheFile) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != CACHE_VERSION) {
+        return null;
+      }
+      long gzipSize = in.readLong();
+      ImmutableMap.Builder<String, Long> compressedSizes = ImmutableMap.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        compressedSizes.put(in.readUTF(), in.readLong());
+      }
+      ImmutableMap.Builder<String, DexFileStats> dexFileStats = ImmutableMap.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        dexFileStats.put(in.readUTF(), new DexFileStats(in.readInt(), in.readInt(), in.readInt()));
+      }
+
+      // Keeps recently used APKs from being pruned.
+      //noinspection ResultOfMethodCallIgnored
+      cacheFile.setLastModified(System.currentTimeMillis());
+      return new ApkAnalysis(compressedSizes.build(), gzipSize, dexFileStats.build());
+    }
+    catch (IOException e) {
+      Logger.getInstance(ApkAnalysis.class).warn("Ignoring unreadable APK analysis cache " + cacheFile, e);
+      return null;
+    }
+  }
+
+  private void write(@NotNull File cacheFile) {
+    File dir = cacheFile.getParentFile();
+    try {
+      FileUtil.createDirectory(dir);
+      File tempFile = FileUtil.createTempFile(dir, cacheFile.getName(), null, true, true);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(CACHE_VERSION);
+        out.writeLong(myGzipSize);
+        out.writeInt(myCompressedSizes.size());
+        for (Map.Entry<String, Long> entry : myCompressedSizes.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue());
+        }
+        out.writeInt(myDexFileStats.size());
+        for (Map.Entry<String, DexFileStats> entry : myDexFileStats.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue().classCount);
+          out.writeInt(entry.getValue().definedMethodCount);
+          out.writeInt(entry.getValue().referencedMethodCount);
+        }
+      }
+      // Written to a temporary file first, so that concurrent readers never see a partial file.
+      FileUtil.rename(tempFile, cacheFile);
+    }
+    catch (IOException e) {
+      Logger.getInstance(ApkAnalysis.class).warn("Unable to cache APK analysis", e);
+      return;
+    }
+
+    File[] cached = dir.listFiles();
+    if (cached != null && cached.length > MAX_CACHED_APKS) {
+      Arrays.sort(cached, Comparator.comparingLong(File::lastModified));
+      for (int i = 0; i < cached.length - MAX_CACHED_APKS; i++) {
+        FileUtil.delete(cached[i]);
+      }
+    }
+  }
+}
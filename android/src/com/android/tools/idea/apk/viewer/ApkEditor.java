@@ -18,9 +18,11 @@ package com.android.tools.idea.apk.viewer;
 import com.android.SdkConstants;
 import com.android.tools.idea.apk.viewer.arsc.ArscViewer;
 import com.android.tools.idea.apk.viewer.dex.DexFileViewer;
+import com.android.tools.idea.apk.viewer.dex.DexParser;
 import com.android.tools.idea.apk.viewer.diff.ApkDiffPanel;
 import com.android.tools.idea.apk.viewer.diff.ApkDiffParser;
 import com.android.tools.idea.editors.NinePatchEditorProvider;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.codeHighlighting.BackgroundEditorHighlighter;
 import com.intellij.ide.structureView.StructureViewBuilder;
 import com.intellij.openapi.fileChooser.FileChooser;
@@ -44,11 +46,13 @@ import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkViewPanel.Listener {
   private final Project myProject;
   private final VirtualFile myBaseFile;
   private final VirtualFile myRoot;
+  private final ApkParser myApkParser;
   private final ApkViewPanel myApkViewPanel;
 
   private JBSplitter mySplitter;
@@ -62,7 +66,8 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
     mySplitter = new JBSplitter(true, "android.apk.viewer", 0.62f);
     mySplitter.setName("apkViwerContainer");
 
-    myApkViewPanel = new ApkViewPanel(new ApkParser(baseFile, root));
+    myApkParser = new ApkParser(baseFile, root);
+    myApkViewPanel = new ApkViewPanel(myApkParser);
     myApkViewPanel.setListener(this);
 
     mySplitter.setFirstComponent(myApkViewPanel.getContainer());
@@ -179,6 +184,24 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
     }
   }
 
+  /**
+   * Returns the statistics of a dex file if the analysis of the apk already computed them, so that the viewer doesn't parse it again.
+   */
+  @Nullable
+  private DexParser.DexFileStats getAnalyzedDexFileStats(@NotNull VirtualFile file) {
+    ListenableFuture<ApkAnalysis> analysis = myApkParser.getAnalysis();
+    if (!analysis.isDone()) {
+      return null;
+    }
+
+    try {
+      return analysis.get().getDexFileStats(ApkFileSystem.getInstance().getRelativePath(file));
+    }
+    catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
   @NotNull
   private ApkFileEditorComponent getEditor(@Nullable VirtualFile file) {
     if (file == null) {
@@ -197,7 +220,7 @@ public class ApkEditor extends UserDataHolderBase implements FileEditor, ApkView
     }
 
     if (SdkConstants.EXT_DEX.equals(file.getExtension())) {
-      return new DexFileViewer(file);
+      return new DexFileViewer(file, getAnalyzedDexFileStats(file));
     }
 
     Optional<FileEditorProvider> providers = getFileEditorProviders(file);
@@ -27,7 +27,6 @@ import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.impl.ArchiveHandler;
-import com.intellij.openapi.vfs.impl.jar.JarHandler;
 import com.intellij.openapi.vfs.newvfs.ArchiveFileSystem;
 import com.intellij.openapi.vfs.newvfs.VfsImplUtil;
 import com.intellij.util.io.URLUtil;
@@ -83,7 +82,7 @@ public class ApkFileSystem extends ArchiveFileSystem {
   @NotNull
   @Override
   protected ArchiveHandler getHandler(@NotNull VirtualFile entryFile) {
-    return VfsImplUtil.getHandler(this, entryFile, JarHandler::new);
+    return VfsImplUtil.getHandler(this, entryFile, ApkHandler::new);
   }
 
   /**
@@ -151,10 +150,15 @@ public class ApkFileSystem extends ArchiveFileSystem {
   }
 
   /**
-   * Extracts a zip file within an APK file, and returns the virtual file pointing to the contents of that zip file.
+   * Returns the virtual file pointing to the contents of a zip file within an APK file. {@link ApkHandler} already lists such zip files
+   * as directories of their contents, so the zip file is only extracted if it couldn't be read that way.
    */
   @Nullable
   public VirtualFile extractAndGetContentRoot(VirtualFile file) {
+    if (file.isDirectory()) {
+      return file;
+    }
+
     File tempFile;
     try {
       tempFile = FileUtil.createTempFile(file.getName(), APKZIP_SUFFIX, true);
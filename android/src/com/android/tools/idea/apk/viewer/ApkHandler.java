@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.SdkConstants;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.impl.ArchiveHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads APKs for {@link ApkFileSystem} through {@link ApkZip}: listing an APK only reads its central directory, from the file itself
+ * rather than a copy of it, and an entry is only read when its contents are asked for. The file is kept open, without being mapped, until
+ * the handler is disposed. Zip files inside the APK, such as instant-run.zip, are listed as directories of their entries, with the size of
+ * the zip file, so that they don't need to be extracted.
+ */
+final class ApkHandler extends ArchiveHandler {
+  private static final String DOT_ZIP = "." + SdkConstants.EXT_ZIP;
+
+  private final Object myLock = new Object();
+  @Nullable private volatile ApkZip myZip;
+
+  /**
+   * Zip files inside the APK, by their path in it.
+   */
+  private final Map<String, ApkZip> myNestedZips = new ConcurrentHashMap<>();
+
+  ApkHandler(@NotNull String path) {
+    super(path);
+  }
+
+  @NotNull
+  @Override
+  protected Map<String, EntryInfo> createEntriesMap() throws IOException {
+    ApkZip zip = getZip();
+    Map<String, EntryInfo> map = new HashMap<>();
+    map.put("", createRootEntry());
+    for (ApkZip.Entry entry : zip.getEntries()) {
+      String path = StringUtil.trimEnd(entry.getName(), "/");
+      if (entry.isDirectory()) {
+        getOrCreate(map, path, true, DEFAULT_LENGTH, entry.getTime());
+        continue;
+      }
+
+      ApkZip nested = StringUtil.endsWithIgnoreCase(path, DOT_ZIP) ? openNested(zip, entry) : null;
+      if (nested == null) {
+        getOrCreate(map, path, false, entry.getSize(), entry.getTime());
+        continue;
+      }
+
+      myNestedZips.put(path, nested);
+      getOrCreate(map, path, true, entry.getSize(), entry.getTime());
+      for (ApkZip.Entry nestedEntry : nested.getEntries()) {
+        String nestedPath = path + "/" + StringUtil.trimEnd(nestedEntry.getName(), "/");
+        getOrCreate(map, nestedPath, nestedEntry.isDirectory(), nestedEntry.isDirectory() ? DEFAULT_LENGTH : nestedEntry.getSize(),
+                    nestedEntry.getTime());
+      }
+    }
+    return map;
+  }
+
+  @NotNull
+  private EntryInfo getOrCreate(@NotNull Map<String, EntryInfo> map,
+                                @NotNull String path,
+                                boolean isDirectory,
+                                long length,
+                                long timestamp) {
+    EntryInfo info = map.get(path);
+    if (info == null) {
+      Pair<String, String> parentAndName = splitPath(path);
+      EntryInfo parent = getOrCreate(map, parentAndName.first, true, DEFAULT_LENGTH, DEFAULT_TIMESTAMP);
+      info = new EntryInfo(parentAndName.second, isDirectory, length, timestamp, parent);
+      map.put(path, info);
+    }
+    return info;
+  }
+
+  @Nullable
+  private static ApkZip openNested(@NotNull ApkZip zip, @NotNull ApkZip.Entry entry) {
+    try {
+      return zip.openNested(entry);
+    }
+    catch (IOException e) {
+      // Not a valid zip after all, so list it as a file.
+      Logger.getInstance(ApkHandler.class).info("Unable to read " + entry.getName() + " as a zip file", e);
+      return null;
+    }
+  }
+
+  @NotNull
+  @Override
+  public byte[] contentsToByteArray(@NotNull String relativePath) throws IOException {
+    Pair<ApkZip, ApkZip.Entry> entry = findEntry(relativePath);
+    return entry == null ? new byte[0] : entry.first.getBytes(entry.second);
+  }
+
+  @NotNull
+  @Override
+  public InputStream getInputStream(@NotNull String relativePath) throws IOException {
+    Pair<ApkZip, ApkZip.Entry> entry = findEntry(relativePath);
+    return entry == null ? new ByteArrayInputStream(new byte[0]) : entry.first.getInputStream(entry.second);
+  }
+
+  @Nullable
+  private Pair<ApkZip, ApkZip.Entry> findEntry(@NotNull String relativePath) throws IOException {
+    ApkZip zip = getZip();
+    ApkZip.Entry entry = zip.getEntry(relativePath);
+    if (entry != null) {
+      return Pair.create(zip, entry);
+    }
+
+    getEntriesMap(); // Opens the nested zips, if that wasn't done yet.
+    for (int i = relativePath.indexOf('/'); i >= 0; i = relativePath.indexOf('/', i + 1)) {
+      ApkZip nested = myNestedZips.get(relativePath.substring(0, i));
+      if (nested != null) {
+        entry = nested.getEntry(relativePath.substring(i + 1));
+        return entry == null ? null : Pair.create(nested, entry);
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private ApkZip getZip() throws IOException {
+    ApkZip zip = myZip;
+    if (zip == null) {
+      synchronized (myLock) {
+        zip = myZip;
+        if (zip == null) {
+          zip = ApkZip.open(getFile());
+          myZip = zip;
+        }
+      }
+    }
+    return zip;
+  }
+
+  @Override
+  public void dispose() {
+    super.dispose();
+    synchronized (myLock) {
+      ApkZip zip = myZip;
+      myZip = null;
+      myNestedZips.clear();
+      if (zip != null) {
+        try {
+          zip.close();
+        }
+        catch (IOException e) {
+          Logger.getInstance(ApkHandler.class).warn("Unable to close " + getFile(), e);
+        }
+      }
+    }
+  }
+}
@@ -25,7 +25,6 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.process.ProcessOutput;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -33,12 +32,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.ide.PooledThreadExecutor;
 
 import javax.swing.tree.DefaultMutableTreeNode;
-import java.io.*;
-import java.nio.file.Files;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.*;
 
 public class ApkParser {
   private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
@@ -50,7 +47,7 @@ public class ApkParser {
   private ListenableFuture<DefaultMutableTreeNode> myTreeStructureWithCompressedSizes;
 
   private ListenableFuture<AndroidApplicationInfo> myApplicationInfo;
-  private ListenableFuture<Long> myCompressedFullApkSize;
+  private ListenableFuture<ApkAnalysis> myAnalysis;
 
   public ApkParser(@NotNull VirtualFile baseFile, @NotNull VirtualFile apkRoot) {
     if (!apkRoot.getFileSystem().equals(ApkFileSystem.getInstance())) {
@@ -73,15 +70,9 @@ public class ApkParser {
   @NotNull
   public synchronized ListenableFuture<DefaultMutableTreeNode> constructTreeStructureWithCompressedSizes() {
     if (myTreeStructureWithCompressedSizes == null) {
-      myTreeStructureWithCompressedSizes = ourExecutorService.submit(() -> {
-        // first obtain the compressed apk
-        File compressedApk = getZipCompressedApk(myApk);
-
-        // then update the existing tree structure with info about size of each file in the apk when it is compressed
-        try (ZipFile zip = new ZipFile(compressedApk)) {
-          return updateTreeStructure(constructTreeStructure().get(), zip);
-        }
-      });
+      // update the existing tree structure with info about size of each file in the apk when it is compressed
+      myTreeStructureWithCompressedSizes =
+        ourExecutorService.submit(() -> updateTreeStructure(constructTreeStructure().get(), getAnalysis().get()));
     }
 
     return myTreeStructureWithCompressedSizes;
@@ -108,11 +99,19 @@ public class ApkParser {
 
   @NotNull
   public synchronized ListenableFuture<Long> getCompressedFullApkSize() {
-    if (myCompressedFullApkSize == null) {
-      myCompressedFullApkSize = ourExecutorService.submit(() -> getApkServedByPlay(myApk).length());
+    return Futures.transform(getAnalysis(), (Function<ApkAnalysis, Long>)ApkAnalysis::getGzipSize);
+  }
+
+  /**
+   * Returns the compressed sizes and dex file statistics of the apk, which are computed in parallel the first time an apk is analyzed.
+   */
+  @NotNull
+  public synchronized ListenableFuture<ApkAnalysis> getAnalysis() {
+    if (myAnalysis == null) {
+      myAnalysis = ourExecutorService.submit(() -> ApkAnalysis.analyze(myApk, ourExecutorService));
     }
 
-    return myCompressedFullApkSize;
+    return myAnalysis;
   }
 
   @VisibleForTesting
@@ -160,7 +159,7 @@ public class ApkParser {
    * Updates and returns the given tree structure with info about the compressed size of each node.
    */
   @NotNull
-  private static DefaultMutableTreeNode updateTreeStructure(@NotNull DefaultMutableTreeNode treeNode, @NotNull ZipFile compressedApk) {
+  private static DefaultMutableTreeNode updateTreeStructure(@NotNull DefaultMutableTreeNode treeNode, @NotNull ApkAnalysis analysis) {
     long compressedSize = 0;
 
     ApkEntry entry = ApkEntry.fromNode(treeNode);
@@ -168,19 +167,13 @@ public class ApkParser {
 
     if (treeNode.getChildCount() > 0) {
       for (int i = 0; i < treeNode.getChildCount(); i++) {
-        DefaultMutableTreeNode childNode = updateTreeStructure((DefaultMutableTreeNode)treeNode.getChildAt(i), compressedApk);
+        DefaultMutableTreeNode childNode = updateTreeStructure((DefaultMutableTreeNode)treeNode.getChildAt(i), analysis);
         compressedSize += ((ApkEntry)childNode.getUserObject()).getCompressedSize();
       }
     }
     else {
-      ZipEntry ze = compressedApk.getEntry(ApkFileSystem.getInstance().getRelativePath(entry.getFile()));
-      if (ze == null) {
-        // happens if such a relative path is not present inside the apk (e.g. zip files such as instant-run.zip are unzipped to a tempfile)
-        compressedSize = -1;
-      }
-      else {
-        compressedSize = ze.getCompressedSize();
-      }
+      // -1 if such a relative path is not present inside the apk (e.g. the entries of zip files such as instant-run.zip)
+      compressedSize = analysis.getCompressedSize(ApkFileSystem.getInstance().getRelativePath(entry.getFile()));
     }
 
     entry.setCompressedSize(compressedSize);
@@ -228,91 +221,4 @@ public class ApkParser {
       return AndroidApplicationInfo.UNKNOWN;
     }
   }
-
-  /**
-   * @return the input file compressed using "gzip -9" and saved in a temporary location
-   */
-  private static File getApkServedByPlay(@NotNull File apk) {
-    File compressedFile;
-    try {
-      compressedFile =
-        FileUtil.createTempFile("compressed", SdkConstants.DOT_ANDROID_PACKAGE, true);
-    }
-    catch (IOException e) {
-      Logger.getInstance(ApkParser.class).warn(e);
-      return apk;
-    }
-
-    // There is a difference between uncompressing the apk, and then compressing again using gzip -9, versus just compressing the apk
-    // itself using gzip -9. But the difference seems to be negligible, and we are only aiming at an estimate of what Play provides, so
-    // this should suffice. This also seems to be the same approach taken by https://github.com/googlesamples/apk-patch-size-estimator
-
-    try (GZIPOutputStream zos = new MaxGzipOutputStream(new FileOutputStream(compressedFile))) {
-      Files.copy(apk.toPath(), zos);
-      zos.flush();
-    }
-    catch (IOException e) {
-      Logger.getInstance(ApkParser.class).warn(e);
-      return apk;
-    }
-
-    return compressedFile;
-  }
-
-  /**
-   * Provides a zip archive that is compressed at level 9, but still maintains archive information. This implies that it will be slightly
-   * larger than compressing using gzip (which only compresses a single file, not an archive). But having compression information per file
-   * is sometimes useful to get an approximate idea of how well each file compresses.
-   *
-   * @return the input file compressed using "zip -9" and saved in a temporary location.
-   */
-  static File getZipCompressedApk(@NotNull File apk) {
-    File compressedFile;
-    try {
-      compressedFile =
-        FileUtil.createTempFile(FileUtil.getNameWithoutExtension(apk), SdkConstants.DOT_ANDROID_PACKAGE, true);
-    }
-    catch (IOException e) {
-      return apk;
-    }
-
-    // copy entire contents of one zip file to another, where the destination zip is written to with the maximum compression level
-    try (
-      ZipInputStream zis = new ZipInputStream(new FileInputStream(apk));
-      ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(compressedFile))) {
-
-      ZipEntry ze;
-      while ((ze = zis.getNextEntry()) != null) {
-        ZipEntry compressedZe = new ZipEntry(ze.getName());
-        compressedZe.setMethod(ZipEntry.DEFLATED);
-        compressedZe.setTime(ze.getTime());
-        zos.putNextEntry(compressedZe);
-
-        byte[] buf = new byte[4096];
-        int n;
-        while ((n = zis.read(buf)) > 0) {
-          zos.write(buf, 0, n);
-        }
-      }
-    }
-    catch (IOException e) {
-      return apk;
-    }
-
-    return compressedFile;
-  }
-
-  private static final class MaxGzipOutputStream extends GZIPOutputStream {
-    public MaxGzipOutputStream(OutputStream out) throws IOException {
-      super(out);
-      def.setLevel(Deflater.BEST_COMPRESSION); // Currently, Google Play serves an APK that is compressed using gzip -9
-    }
-  }
-
-  private static final class MaxZipOutputStream extends ZipOutputStream {
-    public MaxZipOutputStream(OutputStream out) throws IOException {
-      super(out);
-      def.setLevel(Deflater.BEST_COMPRESSION);
-    }
-  }
 }
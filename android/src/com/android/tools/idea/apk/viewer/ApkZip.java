@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A read-only view of a zip archive, such as an APK, that only reads its central directory up front. The archive is read through a file
+ * channel, with positional reads so that it can be used from multiple threads, and entries are only read, and inflated if need be, when
+ * asked for. The channel stays open, with no mapping of the file, until {@link #close()}.
+ */
+final class ApkZip implements Closeable {
+  private static final int EOCD_SIGNATURE = 0x06054b50;
+  private static final int EOCD_SIZE = 22;
+  private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+  private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+  static final class Entry {
+    @NotNull private final String myName;
+    private final int myMethod;
+    private final long myCrc;
+    private final long myCompressedSize;
+    private final long mySize;
+    private final long myLocalHeaderOffset;
+    private final long myTime;
+
+    private Entry(@NotNull String name, int method, long crc, long compressedSize, long size, long localHeaderOffset, long time) {
+      myName = name;
+      myMethod = method;
+      myCrc = crc;
+      myCompressedSize = compressedSize;
+      mySize = size;
+      myLocalHeaderOffset = localHeaderOffset;
+      myTime = time;
+    }
+
+    @NotNull
+    String getName() {
+      return myName;
+    }
+
+    boolean isDirectory() {
+      return myName.endsWith("/");
+    }
+
+    long getCrc() {
+      return myCrc;
+    }
+
+    long getCompressedSize() {
+      return myCompressedSize;
+    }
+
+    long getSize() {
+      return mySize;
+    }
+
+    /**
+     * @return the last modification time, in milliseconds since the epoch.
+     */
+    long getTime() {
+      return myTime;
+    }
+  }
+
+  private static final int READ_BUFFER_SIZE = 65536;
+
+  /**
+   * The file, shared with the archives stored in it, and where this archive is in it.
+   */
+  @NotNull private final FileChannel myChannel;
+  private final boolean myOwnsChannel;
+  private final long myOffset;
+  private final long mySize;
+
+  /**
+   * For an archive that is a compressed entry of another one, that archive and the entry, which can only be read by inflating it from the
+   * start, so its entries are read by streaming through it rather than through a central directory.
+   */
+  @Nullable private final ApkZip myContainer;
+  @Nullable private final Entry myContainerEntry;
+
+  @NotNull private final List<Entry> myEntries;
+  @NotNull private final Map<String, Entry> myEntriesByName;
+
+  private ApkZip(@NotNull FileChannel channel, boolean ownsChannel, long offset, long size) throws IOException {
+    myChannel = channel;
+    myOwnsChannel = ownsChannel;
+    myOffset = offset;
+    mySize = size;
+    myContainer = null;
+    myContainerEntry = null;
+    myEntries = Collections.unmodifiableList(readCentralDirectory());
+    myEntriesByName = indexByName(myEntries);
+  }
+
+  private ApkZip(@NotNull ApkZip container, @NotNull Entry containerEntry, @NotNull List<Entry> entries) {
+    myChannel = container.myChannel;
+    myOwnsChannel = false;
+    myOffset = -1;
+    mySize = containerEntry.getSize();
+    myContainer = container;
+    myContainerEntry = containerEntry;
+    myEntries = Collections.unmodifiableList(entries);
+    myEntriesByName = indexByName(myEntries);
+  }
+
+  @NotNull
+  private static Map<String, Entry> indexByName(@NotNull List<Entry> entries) {
+    Map<String, Entry> entriesByName = new HashMap<>();
+    for (Entry entry : entries) {
+      entriesByName.putIfAbsent(entry.getName(), entry);
+    }
+    return entriesByName;
+  }
+
+  /**
+   * Opens {@code file} and reads its central directory. The file stays open until {@link #close()}.
+   */
+  @NotNull
+  static ApkZip open(@NotNull File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      return new ApkZip(channel, true, 0, channel.size());
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Closes the file, after which neither this archive nor the ones opened with {@link #openNested(Entry)} can be read.
+   */
+  @Override
+  public void close() throws IOException {
+    if (myOwnsChannel) {
+      myChannel.close();
+    }
+  }
+
+  /**
+   * Opens an archive stored as an entry of this one, which shares this archive's file. A stored archive is read in place. A compressed
+   * one is listed by inflating it once as a stream, without keeping it in memory, and each read of one of its entries inflates it again
+   * up to that entry.
+   */
+  @NotNull
+  ApkZip openNested(@NotNull Entry entry) throws IOException {
+    if (myContainer != null) {
+      throw new ZipException("Archives nested more than one level deep are not supported: " + entry.getName());
+    }
+    if (entry.myMethod == ZipEntry.STORED) {
+      return new ApkZip(myChannel, false, myOffset + getDataOffset(entry), entry.getCompressedSize());
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    try (ZipInputStream in = new ZipInputStream(getInputStream(entry))) {
+      for (ZipEntry nested = in.getNextEntry(); nested != null; nested = in.getNextEntry()) {
+        // Reading through the entry fills in its sizes and crc when they follow its data.
+        in.closeEntry();
+        entries.add(new Entry(nested.getName(), nested.getMethod(), nested.getCrc(), nested.getCompressedSize(), nested.getSize(), -1,
+                              nested.getTime()));
+      }
+    }
+    return new ApkZip(this, entry, entries);
+  }
+
+  @NotNull
+  List<Entry> getEntries() {
+    return myEntries;
+  }
+
+  @Nullable
+  Entry getEntry(@NotNull String name) {
+    return myEntriesByName.get(name);
+  }
+
+  @NotNull
+  InputStream getInputStream(@NotNull Entry entry) throws IOException {
+    if (myContainer != null) {
+      return getStreamedInputStream(entry);
+    }
+    if (entry.myMethod != ZipEntry.STORED && entry.myMethod != ZipEntry.DEFLATED) {
+      throw new ZipException("Unsupported compression method " + entry.myMethod + " for " + entry.getName());
+    }
+
+    InputStream in = new ChannelInputStream(myChannel, myOffset + getDataOffset(entry), entry.getCompressedSize());
+    if (entry.myMethod == ZipEntry.STORED) {
+      return in;
+    }
+    // With no zlib header, the inflater may need an extra byte past the end of the data, as java.util.zip.ZipFile also provides.
+    in = new SequenceInputStream(in, new ByteArrayInputStream(new byte[1]));
+    return new InflaterInputStream(in, new Inflater(true), READ_BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        inf.end();
+      }
+    };
+  }
+
+  /**
+   * @return the contents of {@code entry} of a compressed nested archive, found by inflating that archive up to the entry.
+   */
+  @NotNull
+  private InputStream getStreamedInputStream(@NotNull Entry entry) throws IOException {
+    assert myContainer != null && myContainerEntry != null;
+    int index = -1;
+    for (int i = 0; i < myEntries.size(); i++) {
+      if (myEntries.get(i) == entry) {
+        index = i;
+        break;
+      }
+    }
+    if (index < 0) {
+      throw new ZipException("Not an entry of this archive: " + entry.getName());
+    }
+
+    ZipInputStream in = new ZipInputStream(myContainer.getInputStream(myContainerEntry));
+    try {
+      for (int i = 0; i <= index; i++) {
+        if (in.getNextEntry() == null) {
+          throw new ZipException("Truncated archive " + myContainerEntry.getName());
+        }
+      }
+      return in;
+    }
+    catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  @NotNull
+  byte[] getBytes(@NotNull Entry entry) throws IOException {
+    try (InputStream in = getInputStream(entry)) {
+      long size = entry.getSize();
+      if (size < 0 || size > Integer.MAX_VALUE) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+          out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+      }
+
+      byte[] bytes = new byte[(int)size];
+      int n = 0;
+      while (n < bytes.length) {
+        int read = in.read(bytes, n, bytes.length - n);
+        if (read < 0) {
+          throw new ZipException("Truncated entry " + entry.getName());
+        }
+        n += read;
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * @return where the data of {@code entry} starts in this archive, found through its local header.
+   */
+  private long getDataOffset(@NotNull Entry entry) throws IOException {
+    long headerOffset = entry.myLocalHeaderOffset;
+    if (headerOffset < 0 || headerOffset + LOCAL_HEADER_SIZE > mySize) {
+      throw new ZipException("Invalid local header for " + entry.getName());
+    }
+    ByteBuffer header = read(headerOffset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header for " + entry.getName());
+    }
+    long dataOffset = headerOffset + LOCAL_HEADER_SIZE + unsignedShort(header, 26) + unsignedShort(header, 28);
+    if (entry.getCompressedSize() < 0 || dataOffset + entry.getCompressedSize() > mySize) {
+      throw new ZipException("Truncated entry " + entry.getName());
+    }
+    return dataOffset;
+  }
+
+  /**
+   * @return {@code length} bytes read from {@code position} in this archive, as a little-endian buffer.
+   */
+  @NotNull
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (myChannel.read(buffer, myOffset + position + buffer.position()) < 0) {
+        throw new EOFException("Archive was truncated while reading it");
+      }
+    }
+    buffer.rewind();
+    return buffer;
+  }
+
+  @NotNull
+  private List<Entry> readCentralDirectory() throws IOException {
+    // The end of central directory record is at most a maximum comment away from the end, and may be preceded by a zip64 locator.
+    int tailSize = (int)Math.min(mySize, ZIP64_EOCD_LOCATOR_SIZE + EOCD_SIZE + MAX_COMMENT_SIZE);
+    long tailOffset = mySize - tailSize;
+    ByteBuffer tail = read(tailOffset, tailSize);
+    int eocdInTail = findEndOfCentralDirectory(tail);
+    long eocd = tailOffset + eocdInTail;
+    long count = unsignedShort(tail, eocdInTail + 10);
+    long offset = unsignedInt(tail, eocdInTail + 16);
+
+    int locator = eocdInTail - ZIP64_EOCD_LOCATOR_SIZE;
+    if (locator >= 0 && tail.getInt(locator) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+      long zip64Eocd = tail.getLong(locator + 8);
+      if (zip64Eocd >= 0 && zip64Eocd + 56 <= eocd) {
+        ByteBuffer record = read(zip64Eocd, 56);
+        if (record.getInt(0) == ZIP64_EOCD_SIGNATURE) {
+          count = record.getLong(32);
+          offset = record.getLong(48);
+        }
+      }
+    }
+    if (offset < 0 || offset > eocd || count < 0 || count > (eocd - offset) / CENTRAL_DIRECTORY_ENTRY_SIZE) {
+      throw new ZipException("Invalid central directory");
+    }
+    if (eocd - offset > Integer.MAX_VALUE) {
+      throw new ZipException("Central directory too large");
+    }
+
+    ByteBuffer buffer = read(offset, (int)(eocd - offset));
+    int end = buffer.limit();
+    List<Entry> entries = new ArrayList<>((int)count);
+    int position = 0;
+    for (long i = 0; i < count; i++) {
+      if (position + CENTRAL_DIRECTORY_ENTRY_SIZE > end || buffer.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new ZipException("Invalid central directory entry " + i);
+      }
+      int method = unsignedShort(buffer, position + 10);
+      long time = dosToJavaTime(unsignedShort(buffer, position + 14), unsignedShort(buffer, position + 12));
+      long crc = unsignedInt(buffer, position + 16);
+      long compressedSize = unsignedInt(buffer, position + 20);
+      long size = unsignedInt(buffer, position + 24);
+      int nameLength = unsignedShort(buffer, position + 28);
+      int extraLength = unsignedShort(buffer, position + 30);
+      int commentLength = unsignedShort(buffer, position + 32);
+      long localHeaderOffset = unsignedInt(buffer, position + 42);
+      int nameStart = position + CENTRAL_DIRECTORY_ENTRY_SIZE;
+      int next = nameStart + nameLength + extraLength + commentLength;
+      if (next > end) {
+        throw new ZipException("Invalid central directory entry " + i);
+      }
+
+      byte[] nameBytes = new byte[nameLength];
+      ByteBuffer name = buffer.duplicate();
+      name.position(nameStart);
+      name.get(nameBytes);
+
+      // Sizes and offsets that don't fit in 32 bits are in the zip64 extra field, in this order.
+      int extra = nameStart + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = unsignedShort(buffer, extra);
+        int length = unsignedShort(buffer, extra + 2);
+        if (id == ZIP64_EXTRA_FIELD_ID) {
+          int field = extra + 4;
+          int fieldEnd = Math.min(field + length, extraEnd);
+          if (size == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+            size = buffer.getLong(field);
+            field += 8;
+          }
+          if (compressedSize == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+            compressedSize = buffer.getLong(field);
+            field += 8;
+          }
+          if (localHeaderOffset == 0xFFFFFFFFL && field + 8 <= fieldEnd) {
+            localHeaderOffset = buffer.getLong(field);
+          }
+          break;
+        }
+        extra += 4 + length;
+      }
+
+      entries.add(new Entry(new String(nameBytes, StandardCharsets.UTF_8), method, crc, compressedSize, size, localHeaderOffset, time));
+      position = next;
+    }
+    return entries;
+  }
+
+  private static int findEndOfCentralDirectory(@NotNull ByteBuffer buffer) throws ZipException {
+    int last = buffer.limit() - EOCD_SIZE;
+    for (int position = last; position >= 0 && position >= last - MAX_COMMENT_SIZE; position--) {
+      if (buffer.getInt(position) == EOCD_SIGNATURE && position + EOCD_SIZE + unsignedShort(buffer, position + 20) == buffer.limit()) {
+        return position;
+      }
+    }
+    throw new ZipException("Not a zip archive, or the end of its central directory is missing");
+  }
+
+  private static int unsignedShort(@NotNull ByteBuffer buffer, int position) {
+    return buffer.getShort(position) & 0xFFFF;
+  }
+
+  private static long unsignedInt(@NotNull ByteBuffer buffer, int position) {
+    return buffer.getInt(position) & 0xFFFFFFFFL;
+  }
+
+  private static long dosToJavaTime(int date, int time) {
+    try {
+      LocalDateTime dateTime = LocalDateTime.of(((date >> 9) & 0x7f) + 1980, (date >> 5) & 0x0f, date & 0x1f,
+                                                (time >> 11) & 0x1f, (time >> 5) & 0x3f, (time << 1) & 0x3e);
+      return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    catch (RuntimeException e) {
+      return -1; // Not a valid date, as can happen with zeroed out timestamps.
+    }
+  }
+
+  /**
+   * Reads a range of a file with positional reads, which don't affect, nor are affected by, other readers of the channel.
+   */
+  private static final class ChannelInputStream extends InputStream {
+    @NotNull private final FileChannel myChannel;
+    private final long myEnd;
+    private long myPosition;
+
+    private ChannelInputStream(@NotNull FileChannel channel, long position, long length) {
+      myChannel = channel;
+      myPosition = position;
+      myEnd = position + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] bytes = new byte[1];
+      return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (myPosition >= myEnd) {
+        return -1;
+      }
+      int n = myChannel.read(ByteBuffer.wrap(bytes, offset, (int)Math.min(length, myEnd - myPosition)), myPosition);
+      if (n < 0) {
+        throw new EOFException("Archive was truncated while reading it");
+      }
+      myPosition += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min(Integer.MAX_VALUE, myEnd - myPosition);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import com.intellij.ui.components.JBLoadingPanel;
 import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.PlatformIcons;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.ide.PooledThreadExecutor;
 
 import javax.swing.*;
@@ -43,7 +44,10 @@ public class DexFileViewer implements ApkFileEditorComponent {
 
   private final Tree myTree;
 
-  public DexFileViewer(@NotNull VirtualFile dexFile) {
+  /**
+   * @param dexFileStats the statistics of the dex file, if they are already known.
+   */
+  public DexFileViewer(@NotNull VirtualFile dexFile, @Nullable DexParser.DexFileStats dexFileStats) {
     //noinspection Convert2Lambda // we need a new instance of this disposable every time, not just a lambda method
     myDisposable = new Disposable() {
       @Override
@@ -105,7 +109,9 @@ public class DexFileViewer implements ApkFileEditorComponent {
     }, EdtExecutor.INSTANCE);
 
     SimpleColoredComponent titleComponent = new SimpleColoredComponent();
-    Futures.addCallback(dexParser.getDexFileStats(), new FutureCallback<DexParser.DexFileStats>() {
+    ListenableFuture<DexParser.DexFileStats> stats =
+      dexFileStats != null ? Futures.immediateFuture(dexFileStats) : dexParser.getDexFileStats();
+    Futures.addCallback(stats, new FutureCallback<DexParser.DexFileStats>() {
       @Override
       public void onSuccess(DexParser.DexFileStats result) {
         titleComponent.setIcon(AllIcons.General.Information);
@@ -107,6 +107,19 @@ public class DexParser {
       return new DexFileStats(-1, -1, -1);
     }
 
+    return getDexStats(dexFile);
+  }
+
+  /**
+   * Parses a dex file just to compute its {@link DexFileStats}.
+   */
+  @NotNull
+  public static DexFileStats getDexFileStats(@NotNull byte[] contents) {
+    return getDexStats(getDexFile(contents));
+  }
+
+  @NotNull
+  private static DexFileStats getDexStats(@NotNull DexBackedDexFile dexFile) {
     int definedMethodCount = 0;
     Set<? extends DexBackedClassDef> classes = dexFile.getClasses();
     for (DexBackedClassDef dexBackedClassDef : classes) {
@@ -132,7 +145,7 @@ public class DexParser {
     public final int definedMethodCount;
     public final int referencedMethodCount;
 
-    private DexFileStats(int classCount, int definedMethodCount, int referencedMethodCount) {
+    public DexFileStats(int classCount, int definedMethodCount, int referencedMethodCount) {
       this.classCount = classCount;
       this.definedMethodCount = definedMethodCount;
       this.referencedMethodCount = referencedMethodCount;
@@ -33,6 +33,8 @@ import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -52,6 +54,11 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
    */
   private final StringBuilder myMessageSoFar = new StringBuilder();
 
+  /**
+   * The same as {@link #myMessageSoFar}, for messages processed by {@link #processMessage(LogCatMessage)}.
+   */
+  private final List<LogCatMessage> myMessagesSoFar = new ArrayList<>();
+
   @Nullable private LogCatHeader myPrevHeader;
   @Nullable private LogCatTimestamp myRejectBeforeTime;
 
@@ -201,6 +208,16 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
     return null;
   }
 
+  /**
+   * Returns a query for the messages that may pass the current filters, which {@link AndroidLogcatService} uses to narrow down replays.
+   */
+  @NotNull
+  final LogcatQuery createQuery() {
+    LogFilter selectedLogLevelFilter = getSelectedLogLevelFilter();
+    Log.LogLevel minLevel = selectedLogLevelFilter == null ? null : ((AndroidLogLevelFilter)selectedLogLevelFilter).myLogLevel;
+    return new LogcatQuery(minLevel, myConfiguredFilter, myCustomPattern);
+  }
+
   @Override
   public boolean isFilterSelected(LogFilter filter) {
     return filter == getSelectedLogLevelFilter();
@@ -220,11 +237,74 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
 
   @Override
   public void processingStarted() {
-    myPrevHeader = null;
     myRejectBeforeTime = null;
+    replayStarted();
+  }
+
+  /**
+   * Like {@link #processingStarted()}, but keeps rejecting old messages if {@link #beginRejectingOldMessages()} was called. Call this
+   * before messages that were already processed are processed again, for example after a filter changed.
+   */
+  public void replayStarted() {
+    myPrevHeader = null;
     myCustomApplicable = false;
     myConfiguredApplicable = false;
     myMessageSoFar.setLength(0);
+    myMessagesSoFar.clear();
+  }
+
+  /**
+   * Filters a line of logcat without going through its text form, unlike {@link #processLine(String)}. The line is the continuation of
+   * the previous one if they share the same header.
+   *
+   * @return the lines that should be shown, in order, which is empty if this one is filtered out. If an earlier line of the same
+   * message was filtered out but this one is not, the earlier line is returned too, as with {@link MyProcessingResult#getMessagePrefix()}.
+   */
+  @NotNull
+  public final List<LogCatMessage> processMessage(@NotNull LogCatMessage message) {
+    LogCatHeader header = message.getHeader();
+    String text = message.getMessage();
+    if (!header.equals(myPrevHeader)) {
+      myPrevHeader = header;
+      myCustomApplicable = isApplicable(header, text, false);
+      myConfiguredApplicable = isApplicableByConfiguredFilter(text);
+      myMessagesSoFar.clear();
+    }
+    else {
+      myCustomApplicable = myCustomApplicable || isApplicable(header, text, true);
+      myConfiguredApplicable = myConfiguredApplicable || isApplicableByConfiguredFilter(text);
+    }
+
+    boolean isApplicable = myCustomApplicable && myConfiguredApplicable;
+    if (isApplicable && myRejectBeforeTime != null) {
+      isApplicable = !header.getTimestamp().isBefore(myRejectBeforeTime);
+    }
+
+    if (!isApplicable) {
+      myMessagesSoFar.add(message);
+      return Collections.emptyList();
+    }
+    if (myMessagesSoFar.isEmpty()) {
+      return Collections.singletonList(message);
+    }
+    myMessagesSoFar.add(message);
+    List<LogCatMessage> lines = new ArrayList<>(myMessagesSoFar);
+    myMessagesSoFar.clear();
+    return lines;
+  }
+
+  /**
+   * The same as {@link #isApplicable(String)}, except that the line is only formatted if there is a custom pattern to test it against.
+   */
+  private boolean isApplicable(@NotNull LogCatHeader header, @NotNull String message, boolean isContinuation) {
+    if (myCustomPattern != null) {
+      String line = isContinuation ? message : AndroidLogcatFormatter.formatMessageFull(header, message);
+      if (!myCustomPattern.matcher(line).find()) {
+        return false;
+      }
+    }
+    final LogFilter selectedLogLevelFilter = getSelectedLogLevelFilter();
+    return selectedLogLevelFilter == null || selectedLogLevelFilter.isAcceptable(message);
   }
 
   @Override
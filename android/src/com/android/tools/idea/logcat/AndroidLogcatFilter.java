@@ -34,4 +34,33 @@ public interface AndroidLogcatFilter {
    * Returns {@code true} if the current logcat message should be accepted, {@code false} otherwise.
    */
   boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel);
+
+  /**
+   * Returns {@code false} if no message with this tag can be accepted, whatever the rest of it. Together with the other
+   * {@code accepts} methods, this lets buffered messages be skipped without decoding their text. The defaults accept everything.
+   */
+  default boolean acceptsTag(@NotNull String tag) {
+    return true;
+  }
+
+  /**
+   * @see #acceptsTag(String)
+   */
+  default boolean acceptsPackage(@NotNull String pkg) {
+    return true;
+  }
+
+  /**
+   * @see #acceptsTag(String)
+   */
+  default boolean acceptsPid(int pid) {
+    return true;
+  }
+
+  /**
+   * @see #acceptsTag(String)
+   */
+  default boolean acceptsLogLevel(@NotNull Log.LogLevel logLevel) {
+    return true;
+  }
 }
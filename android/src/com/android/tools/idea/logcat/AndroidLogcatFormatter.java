@@ -198,6 +198,22 @@ public final class AndroidLogcatFormatter extends DefaultLogFormatter {
     return matcher.group(1);
   }
 
+  /**
+   * Formats a line of logcat the same way as {@link #formatMessage(String)}, without going through its text form. Continuation lines are
+   * indented to line up with the message of the line before them.
+   */
+  @NotNull
+  public String formatMessage(@NotNull LogCatMessage message, boolean isContinuation) {
+    if (isContinuation) {
+      return Strings.repeat(" ", myLastHeaderLength) + message.getMessage();
+    }
+
+    String format = myPreferences.LOGCAT_FORMAT_STRING;
+    String formatted = formatMessage(format.isEmpty() ? FULL_FORMAT : format, message.getHeader(), message.getMessage());
+    myLastHeaderLength = formatted.length() - message.getMessage().length();
+    return formatted;
+  }
+
   @Override
   public String formatPrefix(String prefix) {
     if (prefix.isEmpty()) {
@@ -23,7 +23,6 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.ddmlib.logcat.LogCatTimestamp;
 import com.android.tools.idea.run.LoggingReceiver;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.intellij.execution.impl.ConsoleBuffer;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
@@ -35,17 +34,31 @@ import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.android.util.AndroidUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * {@link AndroidLogcatService} is the class that manages logs in all connected devices and emulators.
  * Other classes can call {@link AndroidLogcatService#addListener(IDevice, LogcatListener)} to listen for logs of specific device/emulator.
- * Listeners invoked in a pooled thread and this class is thread safe.
+ * Listeners invoked in a pooled thread, one call at a time for each listener, and this class is thread safe.
+ *
+ * Locks are taken in this order: {@link #myLock}, then the buffer of a device, then a {@link Delivery}. Listeners are never called while
+ * holding any of them, so they may call back into this service.
  */
 @ThreadSafe
 public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceChangeListener, Disposable {
@@ -53,39 +66,48 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   public interface LogcatListener {
     default void onLogLineReceived(@NotNull LogCatMessage line) {}
     default void onCleared() {}
+
+    /**
+     * Called by {@link #replayLogs(IDevice, LogcatListener)} before the lines received so far are sent again.
+     */
+    default void onReplayStarted() {}
+
+    /**
+     * Called during a replay before a line that doesn't follow the previous one, because the lines in between can't pass the listener's
+     * filters. Also called at the end of a replay that skipped the last lines.
+     */
+    default void onLinesSkipped() {}
   }
 
+  private static final int OLD_LOGS_BATCH_SIZE = 1024;
+
+  /**
+   * How many messages a replay searches at a time while holding the device's buffer.
+   */
+  private static final int REPLAY_CHUNK_SIZE = 4096;
+
   private final Object myLock = new Object();
 
-  @GuardedBy("myLock")
-  private final Map<IDevice, List<LogcatListener>> myListeners = new HashMap<>();
+  /**
+   * Read without {@link #myLock} when delivering lines, so that chatty devices don't contend with each other or with the UI. Changed while
+   * holding the device's buffer as well, if it has one, so that no line is sent to a listener after it's removed.
+   */
+  private final Map<IDevice, List<LogcatListener>> myListeners = new ConcurrentHashMap<>();
 
   @GuardedBy("myLock")
   private final Map<IDevice, LogcatBuffer> myLogBuffers = new HashMap<>();
 
+  /**
+   * The deliveries of the listeners that have something to be sent. An entry is dropped by its delivery once it's done.
+   */
+  private final Map<LogcatListener, Delivery> myDeliveries = new ConcurrentHashMap<>();
+
+  private final ExecutorService myDeliveryExecutor =
+    Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("logcat-listener-%d").setDaemon(true).build());
+
   @GuardedBy("myLock")
   private final Map<IDevice, AndroidLogcatReceiver> myLogReceivers = new HashMap<>();
 
@@ -113,9 +135,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         return;
       }
       connect(device);
-      final AndroidLogcatReceiver receiver = createReceiver(device);
+      LogcatBuffer buffer = new LogcatBuffer();
+      final AndroidLogcatReceiver receiver = createReceiver(device, buffer);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, buffer);
       ExecutorService executor = myExecutors.get(device);
       executor.submit((() -> {
         try {
@@ -133,19 +156,20 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   }
 
   @NotNull
-  private AndroidLogcatReceiver createReceiver(@NotNull final IDevice device) {
+  private AndroidLogcatReceiver createReceiver(@NotNull final IDevice device, @NotNull final LogcatBuffer buffer) {
     final LogcatListener logcatListener = new LogcatListener() {
       @Override
       public void onLogLineReceived(@NotNull LogCatMessage line) {
-        synchronized (myLock) {
-          if (myListeners.containsKey(device)) {
-            for (LogcatListener listener : myListeners.get(device)) {
-              listener.onLogLineReceived(line);
+        // The buffer's own monitor serializes appends, and orders them with the replays and old logs posted to the listeners, so that
+        // these don't send a line that is also posted on its own.
+        synchronized (buffer) {
+          buffer.append(line);
+          List<LogcatListener> listeners = myListeners.get(device);
+          if (listeners != null) {
+            for (LogcatListener listener : listeners) {
+              post(listener, () -> false, sender -> sender.send(l -> l.onLogLineReceived(line)));
             }
           }
-          if (myLogBuffers.containsKey(device)) {
-            myLogBuffers.get(device).addMessage(line);
-          }
         }
       }
     };
@@ -205,9 +229,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
           }
 
           synchronized (myLock) {
-            if (myListeners.containsKey(device)) {
-              for (LogcatListener listener : myListeners.get(device)) {
-                listener.onCleared();
+            List<LogcatListener> listeners = myListeners.get(device);
+            if (listeners != null) {
+              for (LogcatListener listener : listeners) {
+                post(listener, () -> false, sender -> sender.send(LogcatListener::onCleared));
               }
             }
           }
@@ -227,27 +252,180 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * first: "Line1" with a header, second: "Line2" with the same header.
    * Listeners are invoked in a pooled thread, and they are triggered A LOT. You should be very careful if delegating this text
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
+   * The old logs are sent after this returns, after anything else that was sent to the listener before, and before the lines received
+   * from now on.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
     synchronized (myLock) {
-      if (addOldLogs && myLogBuffers.containsKey(device)) {
-        for (LogCatMessage line : myLogBuffers.get(device).getMessages()) {
-          listener.onLogLineReceived(line);
+      List<LogcatListener> listeners = myListeners.computeIfAbsent(device, key -> new CopyOnWriteArrayList<>());
+      LogcatBuffer buffer = myLogBuffers.get(device);
+      if (buffer != null) {
+        synchronized (buffer) {
+          if (addOldLogs) {
+            long start = buffer.getStartSequence();
+            long end = buffer.getEndSequence();
+            post(listener, () -> false, sender -> sendRange(buffer, sender, start, end));
+          }
+          listeners.add(listener);
         }
       }
-
-      if (!myListeners.containsKey(device)) {
-        myListeners.put(device, new ArrayList<>());
+      else {
+        listeners.add(listener);
       }
 
-      myListeners.get(device).add(listener);
-
       if (device.isOnline()) {
         startReceiving(device);
       }
     }
   }
 
+  /**
+   * Sends every log message received so far from the specified device to a listener again, for example because the listener is now
+   * filtering them differently. Lines received in the meantime are sent after the replay, so that the listener gets them in order and
+   * exactly once. Returns once the replay is done, unless called by the listener itself, in which case the replay is sent after the
+   * current call.
+   */
+  public void replayLogs(@NotNull IDevice device, @NotNull LogcatListener listener) {
+    replayLogs(device, listener, LogcatQuery.ALL, () -> false);
+  }
+
+  /**
+   * Like {@link #replayLogs(IDevice, LogcatListener)}, but only sends the messages that may pass {@code query}, which the buffer's index
+   * finds without decoding the others. The replay stops early once {@code isCancelled} returns {@code true}, for example because the
+   * filters changed again.
+   *
+   * The buffer is searched {@link #REPLAY_CHUNK_SIZE} messages at a time while holding it, and the messages found are read and sent to
+   * the listener without it, so the device's receiver is only blocked for the search of each chunk. Like anything else sent to the
+   * listener, the replay runs in its {@link Delivery}, so lines received meanwhile are sent to it after the replay, and replays to the
+   * same listener run one at a time.
+   *
+   * Removing the listener from a device also cancels its replays. Once removed, it isn't sent any other line of a replay that started
+   * before, nor the lines received meanwhile: whoever cancelled it is expected to clear the listener or replay to it again.
+   */
+  void replayLogs(@NotNull IDevice device,
+                  @NotNull LogcatListener listener,
+                  @NotNull LogcatQuery query,
+                  @NotNull BooleanSupplier isCancelled) {
+    CountDownLatch done = new CountDownLatch(1);
+    LogcatBuffer buffer;
+    synchronized (myLock) {
+      buffer = myLogBuffers.get(device);
+    }
+    Delivery delivery;
+    if (buffer == null) {
+      delivery = post(listener, isCancelled, sender -> {
+        try {
+          sender.send(LogcatListener::onReplayStarted);
+        }
+        finally {
+          done.countDown();
+        }
+      });
+    }
+    else {
+      // Posted while holding the buffer, so that the lines received before the end are replayed, and the others are sent after.
+      synchronized (buffer) {
+        long end = buffer.getEndSequence();
+        delivery = post(listener, isCancelled, sender -> {
+          try {
+            if (sender.send(LogcatListener::onReplayStarted)) {
+              sendMatchingLogs(buffer, sender, query, end);
+            }
+          }
+          finally {
+            done.countDown();
+          }
+        });
+      }
+    }
+    delivery.await(done);
+  }
+
+  /**
+   * Queues a job to the delivery of a listener, whose sender stops calling it once {@code isCancelled} returns {@code true} or once the
+   * listener is removed from a device.
+   */
+  @NotNull
+  private Delivery post(@NotNull LogcatListener listener, @NotNull BooleanSupplier isCancelled, @NotNull Job job) {
+    while (true) {
+      Delivery delivery = myDeliveries.computeIfAbsent(listener, Delivery::new);
+      if (delivery.post(isCancelled, job)) {
+        return delivery;
+      }
+    }
+  }
+
+  /**
+   * Waits until everything sent to the listener so far was sent.
+   */
+  @TestOnly
+  void waitForDelivery(@NotNull LogcatListener listener) {
+    CountDownLatch done = new CountDownLatch(1);
+    post(listener, () -> false, sender -> done.countDown()).await(done);
+  }
+
+  /**
+   * Sends the messages before {@code end} that may pass {@code query}, chunk by chunk, calling {@link LogcatListener#onLinesSkipped}
+   * wherever some are left out.
+   */
+  private static void sendMatchingLogs(@NotNull LogcatBuffer buffer, @NotNull Sender sender, @NotNull LogcatQuery query, long end) {
+    // The sequence number after the last message sent.
+    long next = buffer.getStartSequence();
+    for (long from = next; from < end; ) {
+      List<long[]> ranges = new ArrayList<>();
+      long to;
+      synchronized (buffer) {
+        // Chunks end where a message starts, so that multi-line messages are found whole.
+        to = Math.min(buffer.nextMessageStart(from + REPLAY_CHUNK_SIZE), end);
+        if (!buffer.search(query, from, to, sender::isCancelled, (rangeFrom, rangeTo) -> ranges.add(new long[]{rangeFrom, rangeTo}))) {
+          return;
+        }
+      }
+      for (long[] range : ranges) {
+        if (range[0] != next && !sender.send(LogcatListener::onLinesSkipped)) {
+          return;
+        }
+        next = sendRange(buffer, sender, range[0], range[1]);
+        if (next < 0) {
+          return;
+        }
+      }
+      from = to;
+    }
+    if (next != end) {
+      sender.send(LogcatListener::onLinesSkipped);
+    }
+  }
+
+  /**
+   * Sends the messages from {@code from} inclusive to {@code to} exclusive that haven't been evicted since they were found, a batch at a
+   * time.
+   *
+   * @return the sequence number after the last message sent, or -1 if the sender was cancelled.
+   */
+  private static long sendRange(@NotNull LogcatBuffer buffer, @NotNull Sender sender, long from, long to) {
+    long sequence = from;
+    while (sequence < to) {
+      List<LogCatMessage> lines = new ArrayList<>();
+      long next = buffer.read(sequence, (int)Math.min(to - sequence, OLD_LOGS_BATCH_SIZE), lines::add);
+      long first = next - lines.size();
+      if (lines.isEmpty() || first >= to) {
+        break;
+      }
+      if (first != sequence && !sender.send(LogcatListener::onLinesSkipped)) {
+        return -1;
+      }
+      // Reading past evicted messages starts at the oldest one left, and may go beyond the range.
+      for (LogCatMessage line : lines.subList(0, (int)Math.min(lines.size(), to - first))) {
+        if (!sender.send(listener -> listener.onLogLineReceived(line))) {
+          return -1;
+        }
+      }
+      sequence = Math.min(next, to);
+    }
+    return sequence;
+  }
+
   /**
    * @see #addListener(IDevice, LogcatListener, boolean)
    */
@@ -255,16 +433,45 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     addListener(device, listener, false);
   }
 
+  /**
+   * Stops sending anything to the listener that was posted to it before, from any device, and returns once it isn't being called, unless
+   * called by the listener itself. The listener must not wait for the thread removing it.
+   */
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
+    Delivery delivery = null;
     synchronized (myLock) {
-      if (myListeners.containsKey(device)) {
-        myListeners.get(device).remove(listener);
+      List<LogcatListener> listeners = myListeners.get(device);
+      if (listeners != null) {
+        LogcatBuffer buffer = myLogBuffers.get(device);
+        if (buffer != null) {
+          synchronized (buffer) {
+            listeners.remove(listener);
+            delivery = cancelDelivery(listener);
+          }
+        }
+        else {
+          listeners.remove(listener);
+          delivery = cancelDelivery(listener);
+        }
 
-        if (myListeners.get(device).isEmpty()) {
+        if (listeners.isEmpty()) {
           stopReceiving(device);
         }
       }
     }
+    // Outside of the locks, which the listener may need to finish its call.
+    if (delivery != null) {
+      delivery.awaitCall();
+    }
+  }
+
+  @Nullable
+  private Delivery cancelDelivery(@NotNull LogcatListener listener) {
+    Delivery delivery = myDeliveries.get(listener);
+    if (delivery != null) {
+      delivery.cancel();
+    }
+    return delivery;
   }
 
   @Override
@@ -299,4 +506,177 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       }
     }
   }
+
+  /**
+   * Something sent to a listener by its {@link Delivery}.
+   */
+  private interface Job {
+    void run(@NotNull Sender sender);
+  }
+
+  /**
+   * Calls a listener from a pooled thread, one job at a time in the order they were posted, so that it is never called while holding a
+   * lock of this service, nor from two threads at once. Dropped once it runs out of jobs, the next job posted creates another one.
+   */
+  private final class Delivery implements Runnable {
+    @NotNull private final LogcatListener myListener;
+
+    @GuardedBy("this")
+    private final Queue<Runnable> myJobs = new ArrayDeque<>();
+
+    /**
+     * The thread running the jobs, null until it starts and once they are all done.
+     */
+    @GuardedBy("this")
+    private Thread myThread;
+
+    @GuardedBy("this")
+    private boolean myDone;
+
+    /**
+     * How many times the listener was removed from a device. The senders of the jobs posted before stop calling it.
+     */
+    @GuardedBy("this")
+    private int myRemovals;
+
+    /**
+     * How many times the listener was called, and whether it is being called.
+     */
+    @GuardedBy("this")
+    private int myCalls;
+
+    @GuardedBy("this")
+    private boolean myCalling;
+
+    private Delivery(@NotNull LogcatListener listener) {
+      myListener = listener;
+    }
+
+    /**
+     * @return false if this delivery is done, in which case the job is dropped.
+     */
+    private synchronized boolean post(@NotNull BooleanSupplier isCancelled, @NotNull Job job) {
+      if (myDone) {
+        return false;
+      }
+      if (myJobs.isEmpty() && myThread == null) {
+        myDeliveryExecutor.execute(this);
+      }
+      Sender sender = new Sender(this, myRemovals, isCancelled);
+      myJobs.add(() -> job.run(sender));
+      return true;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable job;
+        synchronized (this) {
+          job = myJobs.poll();
+          if (job == null) {
+            myThread = null;
+            myDone = true;
+            myDeliveries.remove(myListener, this);
+            return;
+          }
+          myThread = Thread.currentThread();
+        }
+        try {
+          job.run();
+        }
+        catch (RuntimeException | Error e) {
+          getLog().warn(e);
+        }
+      }
+    }
+
+    private synchronized void cancel() {
+      myRemovals++;
+    }
+
+    private synchronized boolean isCancelled(int removals) {
+      return myRemovals != removals;
+    }
+
+    private synchronized boolean startCall(int removals) {
+      if (myRemovals != removals) {
+        return false;
+      }
+      myCalls++;
+      myCalling = true;
+      return true;
+    }
+
+    private synchronized void endCall() {
+      myCalling = false;
+      notifyAll();
+    }
+
+    /**
+     * Waits for the call to the listener in progress, if any, unless called by the listener itself.
+     */
+    private synchronized void awaitCall() {
+      int call = myCalls;
+      try {
+        while (myCalling && myCalls == call && myThread != Thread.currentThread()) {
+          wait();
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Waits for a job that counts {@code done} down, unless called by the listener itself, which this would block.
+     */
+    private void await(@NotNull CountDownLatch done) {
+      synchronized (this) {
+        if (myThread == Thread.currentThread()) {
+          return;
+        }
+      }
+      try {
+        done.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Sends the events of a job to the listener, until it is cancelled.
+   */
+  private static final class Sender {
+    @NotNull private final Delivery myDelivery;
+    private final int myRemovals;
+    @NotNull private final BooleanSupplier myIsCancelled;
+
+    private Sender(@NotNull Delivery delivery, int removals, @NotNull BooleanSupplier isCancelled) {
+      myDelivery = delivery;
+      myRemovals = removals;
+      myIsCancelled = isCancelled;
+    }
+
+    private boolean isCancelled() {
+      return myIsCancelled.getAsBoolean() || myDelivery.isCancelled(myRemovals);
+    }
+
+    /**
+     * @return false if the sender was cancelled, in which case the listener isn't called.
+     */
+    private boolean send(@NotNull Consumer<LogcatListener> event) {
+      if (myIsCancelled.getAsBoolean() || !myDelivery.startCall(myRemovals)) {
+        return false;
+      }
+      try {
+        event.accept(myDelivery.myListener);
+      }
+      finally {
+        myDelivery.endCall();
+      }
+      return true;
+    }
+  }
 }
@@ -18,15 +18,19 @@ package com.android.tools.idea.logcat;
 import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.actions.BrowserHelpAction;
 import com.android.tools.idea.ddms.DeviceContext;
 import com.intellij.diagnostic.logging.LogConsoleBase;
-import com.intellij.diagnostic.logging.LogFormatter;
+import com.intellij.diagnostic.logging.LogFilter;
 import com.intellij.execution.impl.ConsoleViewImpl;
 import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -49,6 +53,7 @@ import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static javax.swing.BoxLayout.X_AXIS;
 
@@ -70,9 +75,14 @@ public abstract class AndroidLogcatView implements Disposable {
 
   private volatile IDevice myDevice;
   private final AndroidLogConsole myLogConsole;
-  private final FormattedLogcatReceiver myLogcatReceiver;
+  private final AndroidLogcatService.LogcatListener myLogcatReceiver;
   private final AndroidLogFilterModel myLogFilterModel;
 
+  /**
+   * Incremented whenever a replay starts or the device changes, which cancels any replay still running.
+   */
+  private final AtomicInteger myReplayGeneration = new AtomicInteger();
+
   private final IDevice myPreselectedDevice;
 
   /**
@@ -153,10 +163,10 @@ public abstract class AndroidLogcatView implements Disposable {
 
     AndroidLogcatFormatter logFormatter = new AndroidLogcatFormatter(AndroidLogcatPreferences.getInstance(project));
     myLogConsole = new AndroidLogConsole(project, myLogFilterModel, logFormatter);
-    myLogcatReceiver = new FormattedLogcatReceiver() {
+    myLogcatReceiver = new AndroidLogcatService.LogcatListener() {
       @Override
-      protected void receiveFormattedLogLine(@NotNull String line) {
-        myLogConsole.addLogLine(line);
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        myLogConsole.addLogMessage(line);
       }
 
       @Override
@@ -167,6 +177,19 @@ public abstract class AndroidLogcatView implements Disposable {
           myLogConsole.clear();
         }
       }
+
+      @Override
+      public void onReplayStarted() {
+        myLogFilterModel.replayStarted();
+        if (myLogConsole.getConsole() != null) {
+          myLogConsole.clear();
+        }
+      }
+
+      @Override
+      public void onLinesSkipped() {
+        myLogFilterModel.replayStarted();
+      }
     };
 
     if (preselectedDevice == null && deviceContext != null) {
@@ -314,6 +337,7 @@ public abstract class AndroidLogcatView implements Disposable {
     if (myDevice != device) {
       AndroidLogcatService androidLogcatService = AndroidLogcatService.getInstance();
       if (myDevice != null) {
+        // Also stops any replay from the previous device, none of its lines are sent once this returns.
         androidLogcatService.removeListener(myDevice, myLogcatReceiver);
       }
       // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
@@ -321,6 +345,7 @@ public abstract class AndroidLogcatView implements Disposable {
         myLogConsole.clear();
       }
       myLogFilterModel.processingStarted();
+      myReplayGeneration.incrementAndGet();
       myDevice = device;
       androidLogcatService.addListener(myDevice, myLogcatReceiver, true);
     }
@@ -340,6 +365,24 @@ public abstract class AndroidLogcatView implements Disposable {
   }
 
 
+  /**
+   * Clears the console and sends it every message received so far again, through the current filters. The console doesn't keep the
+   * text of filtered out lines, so re-filtering goes back to the messages buffered by {@link AndroidLogcatService}, whose index skips
+   * those that can't pass. The buffer is searched a chunk at a time, and the matching lines of each chunk show up before the next one is
+   * searched. Starting another replay cancels this one, which stops it before the next chunk.
+   */
+  private void replayLogs() {
+    IDevice device = myDevice;
+    if (device == null) {
+      return;
+    }
+    int generation = myReplayGeneration.incrementAndGet();
+    LogcatQuery query = myLogFilterModel.createQuery();
+    ApplicationManager.getApplication().executeOnPooledThread(
+      () -> AndroidLogcatService.getInstance()
+        .replayLogs(device, myLogcatReceiver, query, () -> myReplayGeneration.get() != generation));
+  }
+
   private void applySelectedFilter() {
     final Object filter = myFilterComboBoxModel.getSelectedItem();
     if (filter instanceof AndroidLogcatFilter) {
@@ -456,9 +499,17 @@ public abstract class AndroidLogcatView implements Disposable {
   final class AndroidLogConsole extends LogConsoleBase {
     private final RegexFilterComponent myRegexFilterComponent = new RegexFilterComponent("LOG_FILTER_HISTORY", 5);
     private final AndroidLogcatPreferences myPreferences;
+    private final AndroidLogcatFormatter myFormatter;
 
-    public AndroidLogConsole(Project project, AndroidLogFilterModel logFilterModel, LogFormatter logFormatter) {
+    /**
+     * The header of the last line printed, to tell whether the next one continues the same message. Only accessed while delivering
+     * logcat lines, which {@link AndroidLogcatService} does one at a time.
+     */
+    @Nullable private LogCatHeader myLastPrintedHeader;
+
+    public AndroidLogConsole(Project project, AndroidLogFilterModel logFilterModel, AndroidLogcatFormatter logFormatter) {
       super(project, null, "", false, logFilterModel, GlobalSearchScope.allScope(project), logFormatter);
+      myFormatter = logFormatter;
       ConsoleView console = getConsole();
       if (console instanceof ConsoleViewImpl) {
         ConsoleViewImpl c = ((ConsoleViewImpl)console);
@@ -498,8 +549,38 @@ public abstract class AndroidLogcatView implements Disposable {
       return myRegexFilterComponent;
     }
 
-    public void addLogLine(@NotNull String line) {
-      super.addMessage(line);
+    /**
+     * Filters a line of logcat and prints it if it passes, along with any earlier lines of the same message that were held back. Unlike
+     * {@link #addMessage(String)}, this neither formats lines that are filtered out nor parses lines back from their text.
+     */
+    public void addLogMessage(@NotNull LogCatMessage message) {
+      ConsoleView console = getConsole();
+      if (console == null) {
+        return;
+      }
+      for (LogCatMessage line : myLogFilterModel.processMessage(message)) {
+        LogCatHeader header = line.getHeader();
+        boolean isContinuation = header.equals(myLastPrintedHeader);
+        myLastPrintedHeader = header;
+        Key outputType = AndroidLogcatUtils.getProcessOutputType(header.getLogLevel());
+        console.print(myFormatter.formatMessage(line, isContinuation) + "\n", ConsoleViewContentType.getConsoleViewType(outputType));
+      }
+    }
+
+    @Override
+    public void clear() {
+      myLastPrintedHeader = null;
+      super.clear();
+    }
+
+    @Override
+    public void onFilterStateChange(LogFilter filter) {
+      replayLogs();
+    }
+
+    @Override
+    public void onTextFilterChange() {
+      replayLogs();
     }
 
     /**
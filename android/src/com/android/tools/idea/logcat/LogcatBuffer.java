@@ -0,0 +1,575 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.execution.impl.ConsoleBuffer;
+import gnu.trove.TObjectIntHashMap;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A ring buffer of logcat messages, stored column by column instead of as {@link LogCatMessage} objects: message text is kept as packed
+ * UTF-8 bytes in a single circular array, and tags and app names are interned. Every message gets a sequence number, which readers use
+ * to pick up where they left off.
+ *
+ * Messages are appended by a single writer at a time, which callers are responsible for. Readers never block the writer: they copy
+ * messages out optimistically, and only retry under a read lock if the writer evicted or reallocated storage in the meantime. To keep
+ * that rare, a full buffer evicts a fraction of its messages at once, rather than one message per append.
+ *
+ * Messages are also indexed as they are appended, in blocks of {@link #BLOCK_SIZE}: each block keeps a mask of its messages per log
+ * level, and a Bloom filter of the trigrams in their text, tags and app names. {@link #search} uses these to skip blocks, and the
+ * level, tag, app name and pid columns to skip messages, so that re-filtering only decodes the messages that may pass.
+ */
+@ThreadSafe
+final class LogcatBuffer {
+  private static final int MIN_ENTRY_CAPACITY = 1024;
+  private static final int UNBOUNDED_INITIAL_BYTE_CAPACITY = 64 * 1024;
+
+  /**
+   * Assume messages of at least this many bytes on average when sizing the columns for a given byte capacity.
+   */
+  private static final int AVERAGE_MESSAGE_BYTES = 32;
+
+  /**
+   * When full, 1/EVICTION_DIVISOR of the messages are evicted at once.
+   */
+  private static final int EVICTION_DIVISOR = 8;
+
+  private static final LogLevel[] LEVELS = LogLevel.values();
+
+  private static final int BLOCK_SHIFT = 6;
+  private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+  /**
+   * The size of each block's trigram Bloom filter, in longs, which is a power of 2.
+   */
+  private static final int BLOOM_WORDS = 128;
+  private static final int BLOOM_BITS_SHIFT = Integer.numberOfTrailingZeros(BLOOM_WORDS * Long.SIZE);
+
+  private final StampedLock myLock = new StampedLock();
+
+  /**
+   * Whether old messages are evicted once the buffer is full. Otherwise, the buffer grows.
+   */
+  private final boolean myBounded;
+
+  // The columns, indexed by sequence number modulo their length, which is a power of 2. They are only replaced under the write lock.
+  private byte[] myLevels;
+  private int[] myPids;
+  private int[] myTids;
+  private int[] myAppNames;
+  private int[] myTags;
+  private long[] myTimestamps;
+  private long[] myOffsets;
+  private int[] myLengths;
+
+  // The index, by block number modulo the number of blocks, which is one more than fits in the columns. This way, a block is only reused
+  // once all of its messages have been evicted. Only the writer and search use it, and they don't run concurrently.
+  private int myBlockCount;
+  private long[] myLevelMasks;
+  private long[] myBlooms;
+
+  /**
+   * Message text, indexed by offset modulo its length. Offsets only ever grow, and a message never wraps around the end of the array.
+   */
+  private byte[] myBytes;
+
+  private volatile long myStart;
+  private volatile long myEnd;
+  private long myEndOffset;
+
+  // Writer only, except for myStrings which readers index into with ids they have read.
+  private final TObjectIntHashMap<String> myStringIds = new TObjectIntHashMap<>();
+  private volatile String[] myStrings = new String[16];
+  private int myStringCount;
+  private int[][] myStringTrigrams = new int[16][];
+
+  // Lines of a multi-line message share their header, so only resolve it once.
+  @Nullable private LogCatHeader myLastHeader;
+  private int myLastAppName;
+  private int myLastTag;
+  private long myLastTimestamp;
+
+  /**
+   * Creates a buffer sized after the console's cycle buffer, or an unbounded one if the console doesn't use a cycle buffer.
+   */
+  LogcatBuffer() {
+    this(ConsoleBuffer.useCycleBuffer(), ConsoleBuffer.getCycleBufferSize());
+  }
+
+  LogcatBuffer(boolean bounded, int byteCapacity) {
+    myBounded = bounded;
+    int bytes = bounded ? Math.max(byteCapacity, 1) : UNBOUNDED_INITIAL_BYTE_CAPACITY;
+    allocateColumns(Math.max(MIN_ENTRY_CAPACITY, Integer.highestOneBit(Math.max(bytes / AVERAGE_MESSAGE_BYTES, 1)) * 2));
+    myBytes = new byte[bytes];
+  }
+
+  /**
+   * @return the sequence number of the oldest message still in the buffer.
+   */
+  long getStartSequence() {
+    return myStart;
+  }
+
+  /**
+   * @return the sequence number the next appended message will get.
+   */
+  long getEndSequence() {
+    return myEnd;
+  }
+
+  /**
+   * Appends a message, evicting the oldest ones if the buffer is full. Must not be called concurrently with itself.
+   *
+   * @return the sequence number of the message.
+   */
+  long append(@NotNull LogCatMessage message) {
+    LogCatHeader header = message.getHeader();
+    if (header != myLastHeader) {
+      myLastHeader = header;
+      myLastAppName = intern(header.getAppName());
+      myLastTag = intern(header.getTag());
+      myLastTimestamp = packTimestamp(header.getTimestamp());
+    }
+
+    byte[] text = message.getMessage().getBytes(StandardCharsets.UTF_8);
+    int length = myBounded ? Math.min(text.length, myBytes.length) : text.length;
+    long offset = reserve(length);
+
+    long sequence = myEnd;
+    int slot = (int)sequence & (myLevels.length - 1);
+    myLevels[slot] = (byte)header.getLogLevel().ordinal();
+    myPids[slot] = header.getPid();
+    myTids[slot] = header.getTid();
+    myAppNames[slot] = myLastAppName;
+    myTags[slot] = myLastTag;
+    myTimestamps[slot] = myLastTimestamp;
+    myOffsets[slot] = offset;
+    myLengths[slot] = length;
+    System.arraycopy(text, 0, myBytes, (int)(offset % myBytes.length), length);
+    index(sequence, slot, message.getMessage());
+
+    // Publishes the message to readers.
+    myEnd = sequence + 1;
+    return sequence;
+  }
+
+  /**
+   * Reads up to {@code maxCount} messages, starting at {@code fromSequence}, or at the oldest message if that one has been evicted.
+   * Messages are copied out of the buffer before {@code consumer} is called, so it may take its time.
+   *
+   * @return the sequence number to continue reading from.
+   */
+  long read(long fromSequence, int maxCount, @NotNull Consumer<LogCatMessage> consumer) {
+    List<LogCatMessage> messages = new ArrayList<>(Math.min(maxCount, MIN_ENTRY_CAPACITY));
+    long stamp = myLock.tryOptimisticRead();
+    long next = copy(fromSequence, maxCount, messages);
+    if (!myLock.validate(stamp)) {
+      messages.clear();
+      stamp = myLock.readLock();
+      try {
+        next = copy(fromSequence, maxCount, messages);
+      }
+      finally {
+        myLock.unlockRead(stamp);
+      }
+    }
+    messages.forEach(consumer);
+    return next;
+  }
+
+  /**
+   * Finds the messages that may pass {@code query}, oldest first, without decoding the others. Multi-line messages are found whole if any
+   * of their lines may pass. Ranges of consecutive messages are passed to {@code consumer} as soon as they are found, so that it can
+   * {@link #read} them while the search goes on. Must not be called concurrently with {@link #append}.
+   *
+   * @return {@code false} if the search was cancelled.
+   */
+  boolean search(@NotNull LogcatQuery query, @NotNull BooleanSupplier isCancelled, @NotNull RangeConsumer consumer) {
+    return search(query, myStart, myEnd, isCancelled, consumer);
+  }
+
+  /**
+   * Like {@link #search(LogcatQuery, BooleanSupplier, RangeConsumer)}, but only looks at the messages from {@code fromSequence} inclusive
+   * to {@code toSequence} exclusive that are still in the buffer. Multi-line messages are only found whole if both ends are
+   * {@link #nextMessageStart message starts}.
+   */
+  boolean search(@NotNull LogcatQuery query,
+                 long fromSequence,
+                 long toSequence,
+                 @NotNull BooleanSupplier isCancelled,
+                 @NotNull RangeConsumer consumer) {
+    long start = Math.max(fromSequence, myStart);
+    long end = Math.min(toSequence, myEnd);
+    if (start >= end) {
+      return true;
+    }
+    boolean[] tags = new boolean[myStringCount];
+    boolean[] appNames = new boolean[myStringCount];
+    for (int id = 0; id < myStringCount; id++) {
+      tags[id] = query.acceptsTag(myStrings[id]);
+      appNames[id] = query.acceptsAppName(myStrings[id]);
+    }
+    int[] trigrams = query.getTrigrams();
+    int mask = myLevels.length - 1;
+
+    // The range of messages found but not passed to consumer yet.
+    long rangeStart = start;
+    long rangeEnd = start;
+    for (long block = start >> BLOCK_SHIFT; block << BLOCK_SHIFT < end; block++) {
+      if (isCancelled.getAsBoolean()) {
+        return false;
+      }
+      int blockIndex = (int)(block % myBlockCount);
+      long first = block << BLOCK_SHIFT;
+      long candidates = 0;
+      for (int level = 0; level < LEVELS.length; level++) {
+        if (query.acceptsLevel(level)) {
+          candidates |= myLevelMasks[blockIndex * LEVELS.length + level];
+        }
+      }
+      candidates &= (-1L << Math.max(start - first, 0)) & (end - first >= BLOCK_SIZE ? -1L : (1L << (end - first)) - 1);
+      if (candidates != 0 && !bloomContainsAll(blockIndex, trigrams)) {
+        candidates = 0;
+      }
+
+      for (; candidates != 0; candidates &= candidates - 1) {
+        long sequence = first + Long.numberOfTrailingZeros(candidates);
+        int slot = (int)sequence & mask;
+        if (sequence < rangeEnd || !tags[myTags[slot]] || !appNames[myAppNames[slot]] || !query.acceptsPid(myPids[slot])) {
+          continue;
+        }
+
+        long messageStart = sequence;
+        while (messageStart > rangeEnd && sameHeader(slot, (int)(messageStart - 1) & mask)) {
+          messageStart--;
+        }
+        long messageEnd = sequence + 1;
+        while (messageEnd < end && sameHeader(slot, (int)messageEnd & mask)) {
+          messageEnd++;
+        }
+
+        if (messageStart != rangeEnd || rangeEnd - rangeStart >= BLOCK_SIZE * BLOCK_SIZE) {
+          if (rangeEnd > rangeStart) {
+            consumer.accept(rangeStart, rangeEnd);
+          }
+          rangeStart = messageStart;
+        }
+        rangeEnd = messageEnd;
+      }
+    }
+    if (rangeEnd > rangeStart) {
+      consumer.accept(rangeStart, rangeEnd);
+    }
+    return true;
+  }
+
+  /**
+   * @return the first sequence number from {@code sequence} on, up to the end of the buffer, at which a message starts, rather than
+   * continuing the lines of the one before. Must not be called concurrently with {@link #append}.
+   */
+  long nextMessageStart(long sequence) {
+    long start = myStart;
+    long end = myEnd;
+    int mask = myLevels.length - 1;
+    sequence = Math.max(sequence, start);
+    while (sequence > start && sequence < end && sameHeader((int)sequence & mask, (int)(sequence - 1) & mask)) {
+      sequence++;
+    }
+    return Math.min(sequence, end);
+  }
+
+  interface RangeConsumer {
+    /**
+     * Called with the sequence numbers of a range of messages, {@code from} inclusive and {@code to} exclusive.
+     */
+    void accept(long from, long to);
+  }
+
+  private boolean sameHeader(int slot, int otherSlot) {
+    return myLevels[slot] == myLevels[otherSlot] && myPids[slot] == myPids[otherSlot] && myTids[slot] == myTids[otherSlot] &&
+           myAppNames[slot] == myAppNames[otherSlot] && myTags[slot] == myTags[otherSlot] &&
+           myTimestamps[slot] == myTimestamps[otherSlot];
+  }
+
+  private boolean bloomContainsAll(int blockIndex, @NotNull int[] trigrams) {
+    int base = blockIndex * BLOOM_WORDS;
+    for (int trigram : trigrams) {
+      int first = bloomBit(trigram, 0x9E3779B9);
+      int second = bloomBit(trigram, 0x85EBCA6B);
+      if ((myBlooms[base + (first >>> 6)] & (1L << first)) == 0 || (myBlooms[base + (second >>> 6)] & (1L << second)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int bloomBit(int trigram, int multiplier) {
+    return (trigram * multiplier) >>> (Integer.SIZE - BLOOM_BITS_SHIFT);
+  }
+
+  /**
+   * Adds the message in {@code slot} to the index, starting a new block if it's the first of one.
+   */
+  private void index(long sequence, int slot, @NotNull CharSequence text) {
+    int blockIndex = (int)((sequence >> BLOCK_SHIFT) % myBlockCount);
+    int base = blockIndex * BLOOM_WORDS;
+    if ((sequence & (BLOCK_SIZE - 1)) == 0) {
+      Arrays.fill(myLevelMasks, blockIndex * LEVELS.length, (blockIndex + 1) * LEVELS.length, 0);
+      Arrays.fill(myBlooms, base, base + BLOOM_WORDS, 0);
+    }
+    myLevelMasks[blockIndex * LEVELS.length + myLevels[slot]] |= 1L << sequence;
+
+    for (int trigram : myStringTrigrams[myTags[slot]]) {
+      addToBloom(base, trigram);
+    }
+    for (int trigram : myStringTrigrams[myAppNames[slot]]) {
+      addToBloom(base, trigram);
+    }
+    for (int i = 0; i + 3 <= text.length(); i++) {
+      addToBloom(base, LogcatQuery.trigram(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)));
+    }
+  }
+
+  private void addToBloom(int base, int trigram) {
+    int first = bloomBit(trigram, 0x9E3779B9);
+    int second = bloomBit(trigram, 0x85EBCA6B);
+    myBlooms[base + (first >>> 6)] |= 1L << first;
+    myBlooms[base + (second >>> 6)] |= 1L << second;
+  }
+
+  /**
+   * Decodes messages into {@code messages}. When called without a lock, the writer may be modifying the buffer at the same time, in which
+   * case the result is discarded, so this must not fail on inconsistent data.
+   */
+  private long copy(long fromSequence, int maxCount, @NotNull List<LogCatMessage> messages) {
+    long end = myEnd;
+    long sequence = Math.max(fromSequence, myStart);
+    long last = Math.min(end, sequence + maxCount);
+
+    byte[] levels = myLevels;
+    int[] pids = myPids;
+    int[] tids = myTids;
+    int[] appNames = myAppNames;
+    int[] tags = myTags;
+    long[] timestamps = myTimestamps;
+    long[] offsets = myOffsets;
+    int[] lengths = myLengths;
+    byte[] bytes = myBytes;
+    String[] strings = myStrings;
+    int mask = levels.length - 1;
+
+    // Consecutive messages with the same header fields, such as the lines of a multi-line message, share a header.
+    LogCatHeader header = null;
+    int headerLevel = -1;
+    int headerPid = 0;
+    int headerTid = 0;
+    int headerAppName = -1;
+    int headerTag = -1;
+    long headerTimestamp = -1;
+    for (; sequence < last; sequence++) {
+      int slot = (int)sequence & mask;
+      int level = levels[slot];
+      int pid = pids[slot];
+      int tid = tids[slot];
+      int appName = appNames[slot];
+      int tag = tags[slot];
+      long timestamp = timestamps[slot];
+      if (header == null || level != headerLevel || pid != headerPid || tid != headerTid || appName != headerAppName ||
+          tag != headerTag || timestamp != headerTimestamp) {
+        if (level < 0 || level >= LEVELS.length || appName < 0 || appName >= strings.length || tag < 0 || tag >= strings.length ||
+            strings[appName] == null || strings[tag] == null) {
+          break;
+        }
+        header = new LogCatHeader(LEVELS[level], pid, tid, strings[appName], strings[tag], unpackTimestamp(timestamp));
+        headerLevel = level;
+        headerPid = pid;
+        headerTid = tid;
+        headerAppName = appName;
+        headerTag = tag;
+        headerTimestamp = timestamp;
+      }
+
+      int index = (int)(Math.max(offsets[slot], 0) % bytes.length);
+      int length = Math.max(0, Math.min(lengths[slot], bytes.length - index));
+      messages.add(new LogCatMessage(header, new String(bytes, index, length, StandardCharsets.UTF_8)));
+    }
+    return sequence;
+  }
+
+  /**
+   * Makes room for {@code length} bytes of text and one more message, evicting or growing as needed.
+   *
+   * @return the offset at which the text should be written.
+   */
+  private long reserve(int length) {
+    while (true) {
+      int capacity = myBytes.length;
+      long offset = myEndOffset;
+      int index = (int)(offset % capacity);
+      if (index + length > capacity) {
+        // Skip the end of the array rather than splitting the text.
+        offset += capacity - index;
+      }
+
+      long start = myStart == myEnd ? offset : myOffsets[(int)myStart & (myLevels.length - 1)];
+      boolean entriesFull = myEnd - myStart >= myLevels.length;
+      boolean bytesFull = offset + length - start > capacity;
+      if (!entriesFull && !bytesFull) {
+        myEndOffset = offset + length;
+        return offset;
+      }
+
+      long stamp = myLock.writeLock();
+      try {
+        if (myBounded) {
+          myStart += Math.max(1, (myEnd - myStart) / EVICTION_DIVISOR);
+        }
+        else {
+          grow(entriesFull, bytesFull ? Math.max(capacity * 2, length * 2) : capacity);
+        }
+      }
+      finally {
+        myLock.unlockWrite(stamp);
+      }
+    }
+  }
+
+  /**
+   * Reallocates the columns, if {@code growEntries}, and the text, laying it out again from offset 0. Must hold the write lock.
+   */
+  private void grow(boolean growEntries, int byteCapacity) {
+    byte[] oldLevels = myLevels;
+    int[] oldPids = myPids;
+    int[] oldTids = myTids;
+    int[] oldAppNames = myAppNames;
+    int[] oldTags = myTags;
+    long[] oldTimestamps = myTimestamps;
+    long[] oldOffsets = myOffsets;
+    int[] oldLengths = myLengths;
+    byte[] oldBytes = myBytes;
+    int oldMask = oldLevels.length - 1;
+
+    allocateColumns(growEntries ? oldLevels.length * 2 : oldLevels.length);
+    myBytes = new byte[byteCapacity];
+    int mask = myLevels.length - 1;
+
+    long offset = 0;
+    for (long sequence = myStart; sequence < myEnd; sequence++) {
+      int oldSlot = (int)sequence & oldMask;
+      int slot = (int)sequence & mask;
+      myLevels[slot] = oldLevels[oldSlot];
+      myPids[slot] = oldPids[oldSlot];
+      myTids[slot] = oldTids[oldSlot];
+      myAppNames[slot] = oldAppNames[oldSlot];
+      myTags[slot] = oldTags[oldSlot];
+      myTimestamps[slot] = oldTimestamps[oldSlot];
+      myOffsets[slot] = offset;
+      myLengths[slot] = oldLengths[oldSlot];
+      System.arraycopy(oldBytes, (int)(oldOffsets[oldSlot] % oldBytes.length), myBytes, (int)offset, oldLengths[oldSlot]);
+      index(sequence, slot, new String(myBytes, (int)offset, oldLengths[oldSlot], StandardCharsets.UTF_8));
+      offset += oldLengths[oldSlot];
+    }
+    myEndOffset = offset;
+  }
+
+  private void allocateColumns(int entryCapacity) {
+    myLevels = new byte[entryCapacity];
+    myPids = new int[entryCapacity];
+    myTids = new int[entryCapacity];
+    myAppNames = new int[entryCapacity];
+    myTags = new int[entryCapacity];
+    myTimestamps = new long[entryCapacity];
+    myOffsets = new long[entryCapacity];
+    myLengths = new int[entryCapacity];
+    myBlockCount = entryCapacity / BLOCK_SIZE + 1;
+    myLevelMasks = new long[myBlockCount * LEVELS.length];
+    myBlooms = new long[myBlockCount * BLOOM_WORDS];
+  }
+
+  private int intern(@NotNull String string) {
+    if (myStringIds.containsKey(string)) {
+      return myStringIds.get(string);
+    }
+    int id = myStringCount++;
+    String[] strings = myStrings;
+    if (id == strings.length) {
+      strings = Arrays.copyOf(strings, id * 2);
+    }
+    strings[id] = string;
+    if (id == myStringTrigrams.length) {
+      myStringTrigrams = Arrays.copyOf(myStringTrigrams, id * 2);
+    }
+    myStringTrigrams[id] = trigrams(string);
+    // Published to readers along with the message that uses it, by the write to myEnd.
+    myStrings = strings;
+    myStringIds.put(string, id);
+    return id;
+  }
+
+  @NotNull
+  private static int[] trigrams(@NotNull String string) {
+    int[] trigrams = new int[Math.max(string.length() - 2, 0)];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] = LogcatQuery.trigram(string.charAt(i), string.charAt(i + 1), string.charAt(i + 2));
+    }
+    return trigrams;
+  }
+
+  /**
+   * Packs a timestamp into a long whose decimal digits read "MMddHHmmssSSS", the order {@link LogCatTimestamp#toString()} prints it in.
+   * {@link LogCatTimestamp} has no accessors, so this parses that string; {@link #append} only does it once per header.
+   */
+  private static long packTimestamp(@NotNull LogCatTimestamp timestamp) {
+    String text = timestamp.toString();
+    long packed = 0;
+    packed = packed * 100 + Integer.parseInt(text.substring(0, 2));
+    packed = packed * 100 + Integer.parseInt(text.substring(3, 5));
+    packed = packed * 100 + Integer.parseInt(text.substring(6, 8));
+    packed = packed * 100 + Integer.parseInt(text.substring(9, 11));
+    packed = packed * 100 + Integer.parseInt(text.substring(12, 14));
+    packed = packed * 1000 + Integer.parseInt(text.substring(15, 18));
+    return packed;
+  }
+
+  @NotNull
+  private static LogCatTimestamp unpackTimestamp(long packed) {
+    int milli = (int)(packed % 1000);
+    packed /= 1000;
+    int second = (int)(packed % 100);
+    packed /= 100;
+    int minute = (int)(packed % 100);
+    packed /= 100;
+    int hour = (int)(packed % 100);
+    packed /= 100;
+    int day = (int)(packed % 100);
+    packed /= 100;
+    return new LogCatTimestamp((int)(packed % 100), day, hour, minute, second, milli);
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * What a replay of buffered logcat can be narrowed down to without decoding any message: the levels, tags, app names and pids that can
+ * pass the current filters, and trigrams that any line matching the search pattern must contain. A message that is rejected by a query
+ * would never have been shown, but one that isn't may still be filtered out by {@link AndroidLogFilterModel}.
+ */
+final class LogcatQuery {
+  private static final LogLevel[] LEVELS = LogLevel.values();
+  private static final int[] NO_TRIGRAMS = new int[0];
+
+  static final LogcatQuery ALL = new LogcatQuery(null, null, null);
+
+  /**
+   * Characters that separate the fields of a formatted header. Pieces of the search pattern between them lie within a single field, so
+   * they're found either in the message text or in its tag or app name, which are the parts that get indexed.
+   */
+  private static final String SEPARATORS = " /:";
+
+  private final boolean[] myLevels = new boolean[LEVELS.length];
+  @Nullable private final AndroidLogcatFilter myFilter;
+  @NotNull private final int[] myTrigrams;
+
+  LogcatQuery(@Nullable LogLevel minLevel, @Nullable AndroidLogcatFilter filter, @Nullable Pattern pattern) {
+    for (LogLevel level : LEVELS) {
+      myLevels[level.ordinal()] =
+        (minLevel == null || level.getPriority() >= minLevel.getPriority()) && (filter == null || filter.acceptsLogLevel(level));
+    }
+    myFilter = filter;
+    myTrigrams = pattern == null ? NO_TRIGRAMS : requiredTrigrams(pattern);
+  }
+
+  boolean acceptsLevel(int ordinal) {
+    return myLevels[ordinal];
+  }
+
+  boolean acceptsTag(@NotNull String tag) {
+    return myFilter == null || myFilter.acceptsTag(tag);
+  }
+
+  boolean acceptsAppName(@NotNull String appName) {
+    return myFilter == null || myFilter.acceptsPackage(appName);
+  }
+
+  boolean acceptsPid(int pid) {
+    return myFilter == null || myFilter.acceptsPid(pid);
+  }
+
+  /**
+   * @return the trigrams, as computed by {@link #trigram(char, char, char)}, that a line must contain to match the search pattern.
+   */
+  @NotNull
+  int[] getTrigrams() {
+    return myTrigrams;
+  }
+
+  /**
+   * Hashes three consecutive characters, ignoring ASCII case.
+   */
+  static int trigram(char first, char second, char third) {
+    return (fold(first) * 31 + fold(second)) * 31 + fold(third);
+  }
+
+  private static char fold(char c) {
+    return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+  }
+
+  /**
+   * Returns trigrams that every line matching {@code pattern} contains, by looking for runs of literal characters that every match must
+   * include. This is conservative: anything it doesn't understand, such as alternation or inline flags, yields fewer trigrams or none.
+   */
+  @NotNull
+  static int[] requiredTrigrams(@NotNull Pattern pattern) {
+    int flags = pattern.flags();
+    if ((flags & (Pattern.COMMENTS | Pattern.UNICODE_CASE | Pattern.CANON_EQ)) != 0) {
+      return NO_TRIGRAMS;
+    }
+
+    List<String> literals = new ArrayList<>();
+    if ((flags & Pattern.LITERAL) != 0) {
+      literals.add(pattern.pattern());
+    }
+    else if (!findLiterals(pattern.pattern(), literals)) {
+      return NO_TRIGRAMS;
+    }
+
+    TIntHashSet trigrams = new TIntHashSet();
+    for (String literal : literals) {
+      int pieceStart = 0;
+      for (int i = 0; i <= literal.length(); i++) {
+        if (i == literal.length() || SEPARATORS.indexOf(literal.charAt(i)) >= 0 || literal.charAt(i) > 0x7F) {
+          addTrigrams(literal, pieceStart, i, trigrams);
+          pieceStart = i + 1;
+        }
+      }
+    }
+    return trigrams.toArray();
+  }
+
+  private static void addTrigrams(@NotNull String literal, int start, int end, @NotNull TIntHashSet trigrams) {
+    // Only digits, dots and dashes may well come from the timestamp or the pid and tid, which aren't indexed.
+    boolean inIndexedField = false;
+    for (int i = start; i < end && !inIndexedField; i++) {
+      char c = literal.charAt(i);
+      inIndexedField = !(c >= '0' && c <= '9') && c != '.' && c != '-';
+    }
+    if (!inIndexedField) {
+      return;
+    }
+    for (int i = start; i + 3 <= end; i++) {
+      trigrams.add(trigram(literal.charAt(i), literal.charAt(i + 1), literal.charAt(i + 2)));
+    }
+  }
+
+  /**
+   * Adds the runs of literal characters outside of any group in {@code regex} to {@code literals}.
+   *
+   * @return {@code false} if the pattern is such that none of them are required.
+   */
+  private static boolean findLiterals(@NotNull String regex, @NotNull List<String> literals) {
+    StringBuilder run = new StringBuilder();
+    int depth = 0;
+    int i = 0;
+    while (i < regex.length()) {
+      char c = regex.charAt(i++);
+      switch (c) {
+        case '\\':
+          if (i == regex.length()) {
+            return false;
+          }
+          char escaped = regex.charAt(i++);
+          if (escaped == 'Q') {
+            int end = regex.indexOf("\\E", i);
+            String quoted = end < 0 ? regex.substring(i) : regex.substring(i, end);
+            if (depth == 0) {
+              run.append(quoted);
+            }
+            i = end < 0 ? regex.length() : end + 2;
+          }
+          else if (Character.isLetterOrDigit(escaped)) {
+            // A character class, boundary, back reference or escaped code point; skip it along with anything that might belong to it.
+            endRun(run, literals);
+            if (escaped == 'c') {
+              i++;
+            }
+            else if (i < regex.length() && (regex.charAt(i) == '{' || regex.charAt(i) == '<')) {
+              int end = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+              i = end < 0 ? regex.length() : end + 1;
+            }
+            else {
+              while (i < regex.length() && Character.isLetterOrDigit(regex.charAt(i))) {
+                i++;
+              }
+            }
+          }
+          else if (depth == 0) {
+            run.append(escaped);
+          }
+          break;
+        case '[':
+          endRun(run, literals);
+          i = skipClass(regex, i);
+          break;
+        case '(':
+          if (i < regex.length() && regex.charAt(i) == '?' && i + 1 < regex.length() && ":=!<>".indexOf(regex.charAt(i + 1)) < 0) {
+            return false; // Inline flags, which may change how literals match.
+          }
+          endRun(run, literals);
+          depth++;
+          break;
+        case ')':
+          endRun(run, literals);
+          depth = Math.max(0, depth - 1);
+          break;
+        case '|':
+          if (depth == 0) {
+            return false;
+          }
+          break;
+        case '?':
+        case '*':
+        case '{':
+          // The previous character is optional, so the run ends before it.
+          if (run.length() > 0) {
+            run.setLength(run.length() - 1);
+          }
+          endRun(run, literals);
+          if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+          }
+          break;
+        case '+':
+        case '.':
+        case '^':
+        case '$':
+          endRun(run, literals);
+          break;
+        default:
+          if (depth == 0) {
+            run.append(c);
+          }
+      }
+    }
+    endRun(run, literals);
+    return true;
+  }
+
+  private static void endRun(@NotNull StringBuilder run, @NotNull List<String> literals) {
+    if (run.length() > 0) {
+      literals.add(run.toString());
+      run.setLength(0);
+    }
+  }
+
+  /**
+   * @return the index after the character class whose opening bracket is just before {@code i}.
+   */
+  private static int skipClass(@NotNull String regex, int i) {
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < regex.length() && regex.charAt(i) == ']') {
+      i++;
+    }
+    int depth = 1;
+    while (i < regex.length() && depth > 0) {
+      char c = regex.charAt(i++);
+      if (c == '\\') {
+        i++;
+      }
+      else if (c == '[') {
+        depth++;
+      }
+      else if (c == ']') {
+        depth--;
+      }
+    }
+    return i;
+  }
+}
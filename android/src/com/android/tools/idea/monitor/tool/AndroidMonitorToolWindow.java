@@ -22,6 +22,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowManager;
 import org.jetbrains.annotations.NotNull;
@@ -44,6 +45,7 @@ public class AndroidMonitorToolWindow implements Disposable {
     try {
       myProject = project;
       StudioProfilerDeviceManager manager = new StudioProfilerDeviceManager(project);
+      Disposer.register(this, manager);
       myProfilers = new StudioProfilers(manager.getClient());
       myProfilers.setPreferredProcessName(getPreferredProcessName(project));
       StudioProfilersView view = new StudioProfilersView(myProfilers);
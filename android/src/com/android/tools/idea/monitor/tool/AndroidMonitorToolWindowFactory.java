@@ -32,6 +32,7 @@ public class AndroidMonitorToolWindowFactory implements DumbAware, ToolWindowFac
 
     ContentFactory contentFactory = ContentFactory.SERVICE.getInstance();
     Content content = contentFactory.createContent(view.getComponent(), "", false);
+    content.setDisposer(view);
     toolWindow.getContentManager().addContent(content);
   }
 }
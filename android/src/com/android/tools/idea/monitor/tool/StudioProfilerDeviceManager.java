@@ -30,6 +30,7 @@ import com.google.common.base.Charsets;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
@@ -54,7 +55,8 @@ import static com.android.ddmlib.IDevice.CHANGE_STATE;
  */
 class StudioProfilerDeviceManager implements AndroidDebugBridge.IClientChangeListener,
                                              AndroidDebugBridge.IDeviceChangeListener,
-                                             AndroidDebugBridge.IDebugBridgeChangeListener {
+                                             AndroidDebugBridge.IDebugBridgeChangeListener,
+                                             Disposable {
 
   private static final int DEVICE_PORT = 12389;
   private static final String DATASTORE_NAME = "DataStoreService";
@@ -96,6 +98,14 @@ class StudioProfilerDeviceManager implements AndroidDebugBridge.IClientChangeLis
     myDataStoreService.setLegacyAllocationTracker(myLegacyAllocationTracker);
   }
 
+  @Override
+  public void dispose() {
+    AndroidDebugBridge.removeClientChangeListener(this);
+    AndroidDebugBridge.removeDeviceChangeListener(this);
+    AndroidDebugBridge.removeDebugBridgeChangeListener(this);
+    myDataStoreService.shutdown();
+  }
+
   private static Logger getLogger() {
     return Logger.getInstance(StudioProfilerDeviceManager.class);
   }
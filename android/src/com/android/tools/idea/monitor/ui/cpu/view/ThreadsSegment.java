@@ -241,6 +241,11 @@ public class ThreadsSegment extends BaseSegment implements Animatable {
     mLegendComponent.reset();
   }
 
+  @Override
+  public boolean isDirty() {
+    return mLegendComponent.isDirty() || mThreadsStateCharts.values().stream().anyMatch(AnimatedComponent::isDirty);
+  }
+
   @Override
   public void animate(float frameLength) {
     mThreadsStateCharts.values().forEach(chart -> chart.animate(frameLength));
@@ -185,6 +185,23 @@ public class ImagePool {
     return image;
   }
 
+  /**
+   * Returns an image of the given size and type with the contents drawn by the given painter. The image is transparent when the
+   * painter is called.
+   */
+  @NotNull
+  public Image createPainted(final int w, final int h, final int type, @NotNull Consumer<Graphics2D> painter) {
+    ImageImpl image = create(w, h, type, null);
+    Graphics2D g = image.myBuffer.createGraphics();
+    try {
+      painter.accept(g);
+    } finally {
+      g.dispose();
+    }
+
+    return image;
+  }
+
   public void dispose() {
     isDisposed = true;
     myFinalizableReferenceQueue.close();
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Render thread used by {@link RenderService#runRenderAction}.
+ * <p/>
+ * Layoutlib is not thread safe, and the render sandbox replaces the process wide security manager while an action runs, so render actions
+ * run one at a time on a single worker. Pending actions are run by {@link Priority}, so a render requested by the visible editor goes
+ * ahead of queued background previews. Running actions are never interrupted.
+ * <p/>
+ * The worker is started on demand, and stops after being idle for a while.
+ */
+public final class RenderExecutor {
+  private static final Logger LOG = Logger.getInstance(RenderExecutor.class);
+
+  /**
+   * Priority of a render action. Actions with a higher priority (lower ordinal) are run first; actions with the same priority are run
+   * in submission order.
+   */
+  public enum Priority {
+    /** Renders for an editor that is currently showing */
+    FOREGROUND,
+    DEFAULT,
+    /** Renders nobody is looking at yet, like thumbnails or palette previews */
+    BACKGROUND
+  }
+
+  private final String myThreadName;
+  private final long myIdleTimeoutMs;
+
+  private final Object myLock = new Object();
+  /** Pending actions, sorted by priority and then by submission order. Guarded by {@link #myLock} */
+  private final PriorityQueue<Action<?>> myQueue = new PriorityQueue<>();
+  /** Guarded by {@link #myLock} */
+  @Nullable private Thread myWorker;
+  /** Whether the worker is running an action. Guarded by {@link #myLock} */
+  private boolean myBusy;
+  /** Guarded by {@link #myLock} */
+  private boolean myShutdown;
+
+  private final AtomicLong mySequence = new AtomicLong();
+  private final Statistics[] myStatistics;
+
+  public RenderExecutor(@NotNull String threadName, long idleTimeoutMs) {
+    myThreadName = threadName;
+    myIdleTimeoutMs = idleTimeoutMs;
+    myStatistics = new Statistics[Priority.values().length];
+    for (Priority priority : Priority.values()) {
+      myStatistics[priority.ordinal()] = new Statistics(priority);
+    }
+  }
+
+  /**
+   * Queues the given callable to be run once no other action is running and no action of a higher priority is pending.
+   *
+   * @throws RejectedExecutionException if the executor has been shut down
+   */
+  @NotNull
+  public <T> Action<T> submit(@NotNull Callable<T> callable, @NotNull Priority priority) {
+    Action<T> action = new Action<>(callable, priority, mySequence.getAndIncrement());
+    synchronized (myLock) {
+      if (myShutdown) {
+        throw new RejectedExecutionException("Render executor has been shut down");
+      }
+      myQueue.add(action);
+      if (myWorker == null) {
+        myWorker = new Thread(null, this::runWorker, myThreadName);
+        myWorker.setDaemon(true);
+        myWorker.start();
+      }
+      else {
+        myLock.notifyAll();
+      }
+    }
+    return action;
+  }
+
+  /**
+   * Stops the worker and drops the pending actions.
+   */
+  public void shutdownNow() {
+    synchronized (myLock) {
+      myShutdown = true;
+      for (Action<?> action : myQueue) {
+        action.cancel(false);
+      }
+      myQueue.clear();
+      if (myWorker != null) {
+        myWorker.interrupt();
+      }
+      myLock.notifyAll();
+    }
+  }
+
+  /**
+   * Returns the queue and render time statistics for the given priority.
+   */
+  @NotNull
+  public Statistics getStatistics(@NotNull Priority priority) {
+    return myStatistics[priority.ordinal()];
+  }
+
+  private void runWorker() {
+    while (true) {
+      Action<?> action;
+      synchronized (myLock) {
+        action = waitForAction();
+        if (action == null) {
+          myWorker = null;
+          return;
+        }
+        myBusy = true;
+      }
+
+      try {
+        action.run();
+      }
+      finally {
+        synchronized (myLock) {
+          myBusy = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes and returns the queued action with the highest priority, waiting for one if needed. Returns null when the worker should stop.
+   */
+  @Nullable
+  private Action<?> waitForAction() {
+    long deadline = System.currentTimeMillis() + myIdleTimeoutMs;
+    while (!myShutdown) {
+      Action<?> action = myQueue.poll();
+      if (action != null) {
+        return action;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return null;
+      }
+      try {
+        myLock.wait(remaining);
+      }
+      catch (InterruptedException ignored) {
+        // Only shutdownNow is expected to interrupt the worker, and that is checked by the loop
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A render action queued in a {@link RenderExecutor}.
+   */
+  public final class Action<T> extends FutureTask<T> implements Comparable<Action<?>> {
+    private final Priority myPriority;
+    private final long mySequence;
+    private final long mySubmitTimeNs = System.nanoTime();
+
+    private Action(@NotNull Callable<T> callable, @NotNull Priority priority, long sequence) {
+      super(callable);
+      myPriority = priority;
+      mySequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      long startTimeNs = System.nanoTime();
+      try {
+        super.run();
+      }
+      finally {
+        long endTimeNs = System.nanoTime();
+        long queueTimeNs = startTimeNs - mySubmitTimeNs;
+        long renderTimeNs = endTimeNs - startTimeNs;
+        getStatistics(myPriority).add(queueTimeNs, renderTimeNs);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("%1$s render action: queued %2$d ms, ran %3$d ms", myPriority,
+                                  TimeUnit.NANOSECONDS.toMillis(queueTimeNs), TimeUnit.NANOSECONDS.toMillis(renderTimeNs)));
+        }
+      }
+    }
+
+    /**
+     * Returns the render thread if it is running this action or, if this action has not started yet, the one that is keeping it waiting.
+     */
+    @Nullable
+    public Thread getThread() {
+      synchronized (myLock) {
+        return myBusy ? myWorker : null;
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull Action<?> other) {
+      int delta = myPriority.compareTo(other.myPriority);
+      return delta != 0 ? delta : Long.compare(mySequence, other.mySequence);
+    }
+  }
+
+  /**
+   * Accumulated time that render actions of one {@link Priority} spent waiting in the queue and running.
+   */
+  public static final class Statistics {
+    private final Priority myPriority;
+    private long myCount;
+    private long myTotalQueueTimeNs;
+    private long myMaxQueueTimeNs;
+    private long myTotalRenderTimeNs;
+    private long myMaxRenderTimeNs;
+
+    private Statistics(@NotNull Priority priority) {
+      myPriority = priority;
+    }
+
+    private synchronized void add(long queueTimeNs, long renderTimeNs) {
+      myCount++;
+      myTotalQueueTimeNs += queueTimeNs;
+      myMaxQueueTimeNs = Math.max(myMaxQueueTimeNs, queueTimeNs);
+      myTotalRenderTimeNs += renderTimeNs;
+      myMaxRenderTimeNs = Math.max(myMaxRenderTimeNs, renderTimeNs);
+    }
+
+    public synchronized long getCount() {
+      return myCount;
+    }
+
+    public synchronized long getTotalQueueTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(myTotalQueueTimeNs);
+    }
+
+    public synchronized long getMaxQueueTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(myMaxQueueTimeNs);
+    }
+
+    public synchronized long getTotalRenderTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(myTotalRenderTimeNs);
+    }
+
+    public synchronized long getMaxRenderTimeMs() {
+      return TimeUnit.NANOSECONDS.toMillis(myMaxRenderTimeNs);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%1$s: %2$d actions, queued %3$d ms (max %4$d ms), ran %5$d ms (max %6$d ms)", myPriority, myCount,
+                           getTotalQueueTimeMs(), getMaxQueueTimeMs(), getTotalRenderTimeMs(), getMaxRenderTimeMs());
+    }
+  }
+}
@@ -125,6 +125,18 @@ public class RenderResult {
       Collections.emptyMap());
   }
 
+  /**
+   * Returns a copy of this result that can be kept once its {@link RenderTask} is disposed, to paint while the layout renders again. The
+   * copy only has the image and the status of the render: it refers neither to the task nor to the views created by layoutlib, which would
+   * keep the render session and its class loader alive, and has no view hierarchy, as one without the view objects can't update the
+   * components.
+   */
+  @NotNull
+  public RenderResult createPlaceholderCopy() {
+    return new RenderResult(myFile, myModule, myLogger, null, myRenderResult, Collections.emptyList(), Collections.emptyList(), myImage,
+                            Collections.emptyMap());
+  }
+
   @NotNull
   public Result getRenderResult() {
     return myRenderResult;
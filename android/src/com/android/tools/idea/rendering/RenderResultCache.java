@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.res.AppResourceRepository;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of recent successful {@link RenderResult}s, indexed by everything the render depends on: the contents of the layout,
+ * the configuration and the version of the project resources. Going back to a device, theme or locale, or to a layout, that was rendered
+ * recently shows the previous image right away, while the layout is rendered again.
+ * <p/>
+ * Results are cached as {@link RenderResult#createPlaceholderCopy() placeholder copies}, which only keep the image, so the cache does not
+ * keep disposed render sessions alive. They have no view hierarchy, so they must not replace the result of a real render.
+ * <p/>
+ * Changes that are not part of the key, like new classes after a build, must {@link #clear()} the cache.
+ */
+public class RenderResultCache {
+  /** Maximum number of pixels kept in cached images; about 64MB for ARGB images */
+  private static final long MAX_CACHED_PIXELS = 16_000_000;
+  private static final int MAX_CACHED_RESULTS = 32;
+
+  private final long myMaxCachedPixels;
+  private final int myMaxCachedResults;
+
+  /** Cached results, in least recently used order. Guarded by this */
+  private final LinkedHashMap<Key, RenderResult> myResults = new LinkedHashMap<>(16, 0.75f, true);
+  /** Guarded by this */
+  private long myCachedPixels;
+
+  public RenderResultCache() {
+    this(MAX_CACHED_PIXELS, MAX_CACHED_RESULTS);
+  }
+
+  @VisibleForTesting
+  RenderResultCache(long maxCachedPixels, int maxCachedResults) {
+    myMaxCachedPixels = maxCachedPixels;
+    myMaxCachedResults = maxCachedResults;
+  }
+
+  /**
+   * The state a {@link RenderResult} was rendered from.
+   */
+  public static final class Key {
+    @NotNull private final String myFilePath;
+    private final long myLayoutSignature;
+    @NotNull private final String myConfigurationKey;
+    private final long myResourceModificationCount;
+    @NotNull private final String myRenderOptions;
+
+    @VisibleForTesting
+    Key(@NotNull String filePath,
+        long layoutSignature,
+        @NotNull String configurationKey,
+        long resourceModificationCount,
+        @NotNull String renderOptions) {
+      myFilePath = filePath;
+      myLayoutSignature = layoutSignature;
+      myConfigurationKey = configurationKey;
+      myResourceModificationCount = resourceModificationCount;
+      myRenderOptions = renderOptions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key)o;
+      return myLayoutSignature == key.myLayoutSignature &&
+             myResourceModificationCount == key.myResourceModificationCount &&
+             myFilePath.equals(key.myFilePath) &&
+             myConfigurationKey.equals(key.myConfigurationKey) &&
+             myRenderOptions.equals(key.myRenderOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = myFilePath.hashCode();
+      result = 31 * result + (int)(myLayoutSignature ^ (myLayoutSignature >>> 32));
+      result = 31 * result + myConfigurationKey.hashCode();
+      result = 31 * result + (int)(myResourceModificationCount ^ (myResourceModificationCount >>> 32));
+      result = 31 * result + myRenderOptions.hashCode();
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Key{" + myFilePath + ", " + Long.toHexString(myLayoutSignature) + ", " + myConfigurationKey + ", " +
+             myResourceModificationCount + ", " + myRenderOptions + "}";
+    }
+  }
+
+  /**
+   * Creates the key for rendering the current contents of the given file with the given configuration, or null if the file can not be
+   * rendered.
+   *
+   * @param renderOptions anything else the caller changes about the render, like whether it uses design mode
+   */
+  @Nullable
+  public static Key createKey(@NotNull AndroidFacet facet,
+                              @NotNull XmlFile file,
+                              @NotNull Configuration configuration,
+                              @NotNull String renderOptions) {
+    VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null) {
+      return null;
+    }
+    Long layoutSignature = ApplicationManager.getApplication().runReadAction((Computable<Long>)() -> {
+      XmlTag rootTag = file.isValid() ? file.getRootTag() : null;
+      return rootTag != null ? TagSnapshot.createTagSnapshot(rootTag).getTreeSignature() : null;
+    });
+    if (layoutSignature == null) {
+      return null;
+    }
+
+    StringBuilder configurationKey = new StringBuilder();
+    Device device = configuration.getDevice();
+    State state = configuration.getDeviceState();
+    IAndroidTarget target = configuration.getTarget();
+    configurationKey.append(device != null ? device.getId() : null).append('|')
+      .append(state != null ? state.getName() : null).append('|')
+      .append(configuration.getFullConfig().getUniqueKey()).append('|')
+      .append(configuration.getTheme()).append('|')
+      .append(target != null ? target.hashString() : null).append('|')
+      .append(configuration.getActivity());
+
+    long resourceModificationCount = AppResourceRepository.getAppResources(facet, true).getModificationCount();
+    return new Key(virtualFile.getPath(), layoutSignature, configurationKey.toString(), resourceModificationCount, renderOptions);
+  }
+
+  /**
+   * Returns the result cached for the given key, if any and if its file is still valid.
+   */
+  @Nullable
+  public RenderResult get(@NotNull Key key) {
+    RenderResult result;
+    synchronized (this) {
+      result = myResults.get(key);
+    }
+    // Checked without holding the lock, since it needs a read action
+    if (result != null && !isValid(result)) {
+      synchronized (this) {
+        if (myResults.get(key) == result) {
+          remove(key);
+        }
+      }
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Caches a placeholder copy of the given result if it was successful and has an image, evicting the least recently used results to stay
+   * within bounds.
+   */
+  public synchronized void put(@NotNull Key key, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.hasImage()) {
+      return;
+    }
+    long pixels = getPixels(result);
+    if (pixels > myMaxCachedPixels) {
+      return;
+    }
+
+    remove(key);
+    myResults.put(key, result.createPlaceholderCopy());
+    myCachedPixels += pixels;
+
+    Iterator<Map.Entry<Key, RenderResult>> iterator = myResults.entrySet().iterator();
+    while ((myCachedPixels > myMaxCachedPixels || myResults.size() > myMaxCachedResults) && iterator.hasNext()) {
+      myCachedPixels -= getPixels(iterator.next().getValue());
+      iterator.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    myResults.clear();
+    myCachedPixels = 0;
+  }
+
+  private void remove(@NotNull Key key) {
+    RenderResult previous = myResults.remove(key);
+    if (previous != null) {
+      myCachedPixels -= getPixels(previous);
+    }
+  }
+
+  private static long getPixels(@NotNull RenderResult result) {
+    ImagePool.Image image = result.getRenderedImage();
+    return (long)image.getWidth() * image.getHeight();
+  }
+
+  private static boolean isValid(@NotNull RenderResult result) {
+    return ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> result.getFile().isValid());
+  }
+}
@@ -59,7 +59,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -77,26 +76,12 @@ public class RenderService {
   /** Number of ms that we will keep the render thread alive when idle */
   private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
 
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static final ExecutorService ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                                                                                     RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                                                                                     new LinkedBlockingQueue<>(),
-                                                                                     (Runnable r) -> {
-                                                                                       Thread renderingThread =
-                                                                                         new Thread(null, r, "Layoutlib Render Thread");
-                                                                                       renderingThread.setDaemon(true);
-                                                                                       ourRenderingThread.set(renderingThread);
-
-                                                                                       return renderingThread;
-                                                                                     });
+  private static final RenderExecutor ourRenderingExecutor = new RenderExecutor("Layoutlib Render Thread", RENDER_THREAD_IDLE_TIMEOUT_MS);
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   static {
     // Register the executor to be shutdown on close
-    ShutDownTracker.getInstance().registerShutdownTask(() -> {
-      ourRenderingExecutor.shutdownNow();
-      ourRenderingThread.set(null);
-    });
+    ShutDownTracker.getInstance().registerShutdownTask(ourRenderingExecutor::shutdownNow);
   }
 
   private static final String JDK_INSTALL_URL = "https://developer.android.com/preview/setup-sdk.html#java8";
@@ -105,6 +90,7 @@ public class RenderService {
   private final AndroidFacet myFacet;
 
   private final Object myCredential = new Object();
+  private final RenderResultCache myResultCache = new RenderResultCache();
 
   public RenderService(@NotNull AndroidFacet facet) {
     myFacet = facet;
@@ -266,6 +252,14 @@ public class RenderService {
     return getModule().getProject();
   }
 
+  /**
+   * Returns the cache of recent render results for layouts of this module
+   */
+  @NotNull
+  public RenderResultCache getResultCache() {
+    return myResultCache;
+  }
+
   @Nullable
   public AndroidPlatform getPlatform() {
     return AndroidPlatform.getInstance(getModule());
@@ -395,14 +389,29 @@ public class RenderService {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, RenderExecutor.Priority.DEFAULT);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock. Render actions never run concurrently; higher priority actions are run before any
+   * queued lower priority ones.
+   */
+  public static <T> T runRenderAction(@NotNull Callable<T> callable, @NotNull RenderExecutor.Priority priority) throws Exception {
+    RenderExecutor.Action<?> action = null;
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        action = ourRenderingExecutor.submit(() -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }, priority);
+        action.get(50, TimeUnit.MILLISECONDS);
       }
 
-      T result = ourRenderingExecutor.submit(callable).get(DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      RenderExecutor.Action<T> renderAction = ourRenderingExecutor.submit(callable, priority);
+      action = renderAction;
+      T result = renderAction.get(DEFAULT_RENDER_THREAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -411,7 +420,7 @@ public class RenderService {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = action != null ? action.getThread() : null;
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -422,6 +431,14 @@ public class RenderService {
     }
   }
 
+  /**
+   * Returns the time that render actions of the given priority spent waiting for the render thread and running on it.
+   */
+  @NotNull
+  public static RenderExecutor.Statistics getRenderStatistics(@NotNull RenderExecutor.Priority priority) {
+    return ourRenderingExecutor.getStatistics(priority);
+  }
+
   /**
    * Given a {@link ViewInfo} from a layoutlib rendering, checks that the view info provides
    * valid bounds. This is normally the case. However, there are known scenarios, where
@@ -70,6 +70,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.SdkConstants.APPCOMPAT_LIB_ARTIFACT;
@@ -92,7 +93,7 @@ public class RenderTask implements IImageFactory {
   private XmlFile myPsiFile;
 
   @NotNull
-  private final RenderLogger myLogger;
+  private RenderLogger myLogger;
 
   @NotNull
   private final LayoutlibCallbackImpl myLayoutlibCallback;
@@ -131,6 +132,7 @@ public class RenderTask implements IImageFactory {
 
   @Nullable
   private EditorDesignSurface mySurface;
+  @Nullable private RenderExecutor.Priority myPriority;
 
   @NotNull
   private final Locale myLocale;
@@ -262,7 +264,7 @@ public class RenderTask implements IImageFactory {
              !ApplicationManager.getApplication().isReadAccessAllowed() : "Do not hold read lock during dispose!";
 
       try {
-        RenderService.runRenderAction(myRenderSession::dispose);
+        runRenderAction(myRenderSession::dispose);
         myRenderSession = null;
       }
       catch (Exception ignored) {
@@ -271,6 +273,20 @@ public class RenderTask implements IImageFactory {
     myImageFactoryDelegate = null;
   }
 
+  /**
+   * Runs a render action with this task's priority.
+   */
+  private void runRenderAction(@NotNull Runnable runnable) throws Exception {
+    runRenderAction(Executors.callable(runnable));
+  }
+
+  /**
+   * Runs a render action with this task's priority.
+   */
+  private <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return RenderService.runRenderAction(callable, getPriority());
+  }
+
   /**
    * Overrides the width and height to be used during rendering (which might be adjusted if
    * the {@link #setRenderingMode(com.android.ide.common.rendering.api.SessionParams.RenderingMode)} is
@@ -378,6 +394,34 @@ public class RenderTask implements IImageFactory {
     return this;
   }
 
+  /**
+   * Returns the priority of the render actions of this task. Unless set explicitly, tasks for a design surface that is showing run in
+   * the foreground and tasks without a design surface run in the background.
+   */
+  @NotNull
+  public RenderExecutor.Priority getPriority() {
+    if (myPriority != null) {
+      return myPriority;
+    }
+    if (mySurface == null) {
+      return RenderExecutor.Priority.BACKGROUND;
+    }
+    // Called on render threads, so this doesn't ask Swing.
+    return mySurface.isShowingCached() ? RenderExecutor.Priority.FOREGROUND : RenderExecutor.Priority.DEFAULT;
+  }
+
+  /**
+   * Sets the priority of the render actions of this task, or null to pick one from the design surface.
+   *
+   * @param priority the priority of the render actions
+   * @return this, for constructor chaining
+   */
+  @NotNull
+  public RenderTask setPriority(@Nullable RenderExecutor.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
   /**
    * Sets the nodes to expand during rendering. These will be padded with approximately
    * 20 pixels. The default is null.
@@ -677,7 +721,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      return RenderService.runRenderAction(() -> createRenderSession((width, height) -> {
+      return runRenderAction(() -> createRenderSession((width, height) -> {
         if (myImageFactoryDelegate != null) {
           return myImageFactoryDelegate.getImage(width, height);
         }
@@ -695,6 +739,28 @@ public class RenderTask implements IImageFactory {
     }
   }
 
+  /**
+   * Inflates the layout again, replacing the session from the previous inflation. The task keeps its class loader, layoutlib callback
+   * and image pool, which makes this much cheaper than creating a new task, but only changes to the layout file itself are picked up:
+   * configuration, resource or class changes still need a new task.
+   *
+   * @param logger the logger for the new inflation, so problems reported by the previous one are not carried over
+   * @return A {@link RenderResult} with the result of the inflate call. The result might not contain a result bitmap.
+   */
+  @Nullable
+  public RenderResult reinflate(@NotNull RenderLogger logger) {
+    if (myRenderSession != null) {
+      try {
+        runRenderAction(myRenderSession::dispose);
+      }
+      catch (Exception ignored) {
+      }
+      myRenderSession = null;
+    }
+    myLogger = logger;
+    return inflate();
+  }
+
   /**
    * Only do a measure pass using the current render session
    */
@@ -704,7 +770,7 @@ public class RenderTask implements IImageFactory {
       return null;
     }
     try {
-      return RenderService.runRenderAction(() -> {
+      return runRenderAction(() -> {
         myRenderSession.measure();
         return RenderResult.create(this, myRenderSession, myPsiFile, myLogger, ImagePool.NULL_POOLED_IMAGE);
       });
@@ -748,7 +814,7 @@ public class RenderTask implements IImageFactory {
     assert myPsiFile != null;
 
     try {
-      return RenderService.runRenderAction(() -> {
+      return runRenderAction(() -> {
         myRenderSession.render();
         RenderResult result =
           RenderResult.create(this, myRenderSession, myPsiFile, myLogger, myImagePool.copyOf(myRenderSession.getImage()));
@@ -852,7 +918,7 @@ public class RenderTask implements IImageFactory {
     params.setAssetRepository(myAssetRepository);
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = runRenderAction(new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -901,7 +967,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      Result result = RenderService.runRenderAction(new Callable<Result>() {
+      Result result = runRenderAction(new Callable<Result>() {
         @Override
         public Result call() throws Exception {
           return myLayoutLib.renderDrawable(params);
@@ -1033,7 +1099,7 @@ public class RenderTask implements IImageFactory {
     Map<XmlTag, ViewInfo> map = Maps.newHashMap();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = runRenderAction(() -> measure(modelParser));
     }
     catch (Exception ignored) {
     }
@@ -1056,7 +1122,7 @@ public class RenderTask implements IImageFactory {
         return map;
       } finally {
         try {
-          RenderService.runRenderAction(session::dispose);
+          runRenderAction(session::dispose);
         }
         catch (Exception ignored) {
         }
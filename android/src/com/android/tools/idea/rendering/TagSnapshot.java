@@ -167,4 +167,40 @@ public class TagSnapshot {
     }
     return hasher.hash().asLong();
   }
+
+  /**
+   * Creates a signature/fingerprint of this tag snapshot and all its descendants. Unlike {@link #getSignature()}, this also covers
+   * namespaces and the children, so it can be used to tell whether a whole layout is the same as a previously seen one.
+   */
+  public long getTreeSignature() {
+    Hasher hasher = Hashing.goodFastHash(64).newHasher();
+    putTree(hasher);
+    return hasher.hash().asLong();
+  }
+
+  private void putTree(@NotNull Hasher hasher) {
+    putNullableString(hasher, namespace);
+    putNullableString(hasher, tagName);
+    hasher.putInt(attributes.size());
+    for (AttributeSnapshot attribute : attributes) {
+      putNullableString(hasher, attribute.namespace);
+      putNullableString(hasher, attribute.name);
+      putNullableString(hasher, attribute.value);
+    }
+    hasher.putInt(children.size());
+    for (TagSnapshot child : children) {
+      child.putTree(hasher);
+    }
+  }
+
+  private static void putNullableString(@NotNull Hasher hasher, @Nullable String string) {
+    // Include the length so that adjacent strings can not be confused with each other
+    if (string == null) {
+      hasher.putInt(-1);
+    }
+    else {
+      hasher.putInt(string.length());
+      hasher.putString(string, UTF_8);
+    }
+  }
 }
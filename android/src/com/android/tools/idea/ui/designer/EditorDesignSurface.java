@@ -19,13 +19,32 @@ import com.android.tools.idea.configurations.Configuration;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.HierarchyEvent;
 
 /**
  * A layout editor design surface.
  */
 public abstract class EditorDesignSurface extends JPanel {
+  /**
+   * Whether the surface is showing, updated on the EDT whenever that changes, so that render threads don't have to call
+   * {@link #isShowing()}, which walks the Swing hierarchy.
+   */
+  private volatile boolean myShowing;
+
   public EditorDesignSurface(LayoutManager layout) {
     super(layout);
+    addHierarchyListener(e -> {
+      if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+        myShowing = isShowing();
+      }
+    });
+  }
+
+  /**
+   * Returns whether the surface was showing the last time that changed. Unlike {@link #isShowing()}, this can be called from any thread.
+   */
+  public boolean isShowingCached() {
+    return myShowing;
   }
 
   abstract public Configuration getConfiguration();
@@ -337,7 +337,7 @@ public class GraphicsLayoutRenderer {
               }
             }
           }
-        });
+        }, RenderExecutor.Priority.FOREGROUND);
       }
       catch (Exception e) {
         LOG.warn("Exception running render action", e);
@@ -401,7 +401,7 @@ public class GraphicsLayoutRenderer {
             }
           }
         }
-      });
+      }, RenderExecutor.Priority.FOREGROUND);
 
       if (session == null) {
         LOG.warn("initRenderSession failed (returned null)");
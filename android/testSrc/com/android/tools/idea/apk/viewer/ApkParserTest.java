@@ -15,15 +15,27 @@
  */
 package com.android.tools.idea.apk.viewer;
 
-import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.tree.DefaultMutableTreeNode;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ApkParserTest extends AndroidTestCase {
   public void testTreeCreation() throws IOException {
@@ -39,23 +51,112 @@ public class ApkParserTest extends AndroidTestCase {
                  "      fade.xml 6\n", dumpTree(treeNode));
   }
 
-  public void testRezipHasSameContents() throws IOException {
+  public void testAnalysisCoversEveryEntry() throws IOException {
     VirtualFile virtualFile = myFixture.copyFileToProject("apk/1.apk");
+    File apk = VfsUtilCore.virtualToIoFile(virtualFile);
+    File cacheDir = FileUtil.createTempDirectory("apk-analyzer", null);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ApkAnalysis analysis = ApkAnalysis.analyze(apk, executor, cacheDir);
+      try (ZipFile zip = new ZipFile(apk)) {
+        for (ZipEntry entry : Collections.list(zip.entries())) {
+          if (!entry.isDirectory()) {
+            assertTrue(entry.getName(), analysis.getCompressedSize(entry.getName()) > 0);
+          }
+        }
+      }
+      assertEquals(-1, analysis.getCompressedSize("instant-run.zip"));
 
-    File compressedFile = ApkParser.getZipCompressedApk(VfsUtilCore.virtualToIoFile(virtualFile));
-    VirtualFile compressedVirtualFile = VfsUtil.findFileByIoFile(compressedFile, true);
-    assertNotNull(compressedVirtualFile);
+      // The analysis is cached, keyed by the contents of the apk.
+      File[] cached = cacheDir.listFiles();
+      assertNotNull(cached);
+      assertEquals(1, cached.length);
+      ApkAnalysis cachedAnalysis = ApkAnalysis.analyze(apk, executor, cacheDir);
+      assertEquals(analysis.getGzipSize(), cachedAnalysis.getGzipSize());
+      assertEquals(analysis.getCompressedSize("AndroidManifest.xml"), cachedAnalysis.getCompressedSize("AndroidManifest.xml"));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testGzipSizeEstimate() throws IOException {
+    // Large enough to be compressed in several chunks, and compressible enough for the chunks to matter.
+    File file = FileUtil.createTempFile("apk", ".bin", true);
+    Random random = new Random(1);
+    try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+      for (int i = 0; i < 200000; i++) {
+        writer.write("line " + random.nextInt(1000) + " of " + random.nextInt(10) + "\n");
+      }
+    }
+
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+      Files.copy(file.toPath(), out);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      long estimate = ApkAnalysis.estimateGzipSize(file, executor);
+      assertTrue(estimate + " vs " + gzipped.size(), Math.abs(estimate - gzipped.size()) < gzipped.size() / 100);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
 
-    VirtualFile uncompressedRoot = ApkFileSystem.getInstance().getRootByLocal(virtualFile);
-    VirtualFile compressedRoot = ApkFileSystem.getInstance().getRootByLocal(compressedVirtualFile);
+  public void testAnalysisDoesNotWaitForBusyExecutor() throws Exception {
+    File file = FileUtil.createTempFile("apk", ".bin", true);
+    byte[] bytes = new byte[3 * 1024 * 1024];
+    new Random(1).nextBytes(bytes);
+    Files.write(file.toPath(), bytes);
 
-    String compressedTree = dumpTree(ApkParser.createTreeNode(compressedRoot));
-    String uncompressedTree = dumpTree(ApkParser.createTreeNode(uncompressedRoot));
+    // The executor's only thread is taken, so the calling thread has to do all the work itself.
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    CountDownLatch busy = new CountDownLatch(1);
+    executor.submit(() -> {
+      busy.await();
+      return null;
+    });
+    try {
+      assertTrue(ApkAnalysis.estimateGzipSize(file, executor) > bytes.length);
+    }
+    finally {
+      busy.countDown();
+      executor.shutdownNow();
+    }
+  }
 
-    // skip the first line in both versions since they will be different due to file names being different
-    compressedTree = compressedTree.substring(compressedTree.indexOf('\n'));
-    uncompressedTree = uncompressedTree.substring(uncompressedTree.indexOf('\n'));
-    assertEquals(compressedTree, uncompressedTree);
+  public void testParallelRunWaitsForWorkersMidItem() throws Exception {
+    Thread caller = Thread.currentThread();
+    CountDownLatch workerStarted = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // The calling thread is done with its item while the worker is still on the other one.
+      List<Integer> results = ApkAnalysis.runParallel(Arrays.asList(1, 2), executor, 2, item -> {
+        if (Thread.currentThread() == caller) {
+          try {
+            workerStarted.await(5, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+          return item * 10;
+        }
+        workerStarted.countDown();
+        try {
+          Thread.sleep(200);
+        }
+        catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        return item * 10;
+      });
+      assertEquals(Arrays.asList(10, 20), results);
+    }
+    finally {
+      executor.shutdownNow();
+    }
   }
 
   public void testApkWithZip() throws IOException {
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import org.jetbrains.android.AndroidTestBase;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ApkZipTest {
+  @Test
+  public void sameEntriesAsZipFile() throws IOException {
+    for (String name : new String[]{"apk/1.apk", "apk/2.apk"}) {
+      File file = new File(AndroidTestBase.getTestDataPath(), name);
+      try (ApkZip apkZip = ApkZip.open(file); ZipFile zip = new ZipFile(file)) {
+        List<? extends ZipEntry> expected = Collections.list(zip.entries());
+        List<ApkZip.Entry> actual = apkZip.getEntries();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          ZipEntry expectedEntry = expected.get(i);
+          ApkZip.Entry entry = actual.get(i);
+          assertEquals(expectedEntry.getName(), entry.getName());
+          assertEquals(expectedEntry.isDirectory(), entry.isDirectory());
+          assertEquals(expectedEntry.getCrc(), entry.getCrc());
+          assertEquals(expectedEntry.getSize(), entry.getSize());
+          assertEquals(expectedEntry.getCompressedSize(), entry.getCompressedSize());
+          assertSame(entry, apkZip.getEntry(entry.getName()));
+
+          byte[] bytes = readAll(zip.getInputStream(expectedEntry));
+          assertArrayEquals(entry.getName(), bytes, apkZip.getBytes(entry));
+          assertArrayEquals(entry.getName(), bytes, readAll(apkZip.getInputStream(entry)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void nestedZips() throws IOException {
+    byte[] inner = zip(ZipEntry.DEFLATED, "classes.dex", "dex contents".getBytes("UTF-8"), "classes2.dex", "more dex".getBytes("UTF-8"));
+    for (int method : new int[]{ZipEntry.STORED, ZipEntry.DEFLATED}) {
+      File file = File.createTempFile("outer", ".apk");
+      try {
+        Files.write(file.toPath(), zip(method, "instant-run.zip", inner));
+        try (ApkZip outer = ApkZip.open(file)) {
+          ApkZip.Entry entry = outer.getEntry("instant-run.zip");
+          assertNotNull(entry);
+          ApkZip nested = outer.openNested(entry);
+          assertEquals(2, nested.getEntries().size());
+          ApkZip.Entry dex = nested.getEntry("classes.dex");
+          assertNotNull(dex);
+          assertEquals("dex contents".length(), dex.getSize());
+          assertEquals("dex contents", new String(nested.getBytes(dex), "UTF-8"));
+          ApkZip.Entry dex2 = nested.getEntry("classes2.dex");
+          assertNotNull(dex2);
+          assertEquals("more dex", new String(readAll(nested.getInputStream(dex2)), "UTF-8"));
+          assertNull(nested.getEntry("instant-run.zip"));
+        }
+      }
+      finally {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+      }
+    }
+  }
+
+  @Test
+  public void closeReleasesFile() throws IOException {
+    File file = File.createTempFile("closed", ".apk");
+    try {
+      Files.write(file.toPath(), zip(ZipEntry.STORED, "classes.dex", "dex contents".getBytes("UTF-8")));
+      ApkZip zip = ApkZip.open(file);
+      ApkZip.Entry entry = zip.getEntry("classes.dex");
+      assertNotNull(entry);
+      zip.close();
+      try {
+        zip.getBytes(entry);
+        fail("Read from a closed archive");
+      }
+      catch (IOException expected) {
+      }
+    }
+    finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  @Test
+  public void truncatedWhileOpen() throws IOException {
+    File file = File.createTempFile("truncated", ".apk");
+    try {
+      Files.write(file.toPath(), zip(ZipEntry.STORED, "classes.dex", new byte[4096]));
+      try (ApkZip zip = ApkZip.open(file)) {
+        ApkZip.Entry entry = zip.getEntry("classes.dex");
+        assertNotNull(entry);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+          channel.truncate(100);
+        }
+        try {
+          zip.getBytes(entry);
+          fail("Read past the end of a truncated archive");
+        }
+        catch (IOException expected) {
+        }
+      }
+    }
+    finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void notAZip() throws IOException {
+    ApkZip.open(new File(AndroidTestBase.getTestDataPath(), "apk/Test.dex")).close();
+  }
+
+  @NotNull
+  private static byte[] zip(int method, @NotNull Object... namesAndContents) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        putEntry(out, method, (String)namesAndContents[i], (byte[])namesAndContents[i + 1]);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void putEntry(@NotNull ZipOutputStream out, int method, @NotNull String name, @NotNull byte[] contents)
+    throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(method);
+    if (method == ZipEntry.STORED) {
+      CRC32 crc = new CRC32();
+      crc.update(contents);
+      entry.setCrc(crc.getValue());
+      entry.setSize(contents.length);
+      entry.setCompressedSize(contents.length);
+    }
+    out.putNextEntry(entry);
+    out.write(contents);
+    out.closeEntry();
+  }
+
+  @NotNull
+  private static byte[] readAll(@NotNull InputStream in) throws IOException {
+    try (InputStream stream = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = stream.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+}
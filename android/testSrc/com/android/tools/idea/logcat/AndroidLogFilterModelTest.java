@@ -17,6 +17,9 @@
 package com.android.tools.idea.logcat;
 
 import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
 import com.intellij.diagnostic.logging.LogFilterModel;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -175,6 +178,61 @@ public class AndroidLogFilterModelTest {
     assertThat(result.isApplicable()).isFalse();
   }
 
+  @Test
+  public void processMessageFiltersWithoutParsing() throws Exception {
+    LogCatHeader header = new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "DummyTag", LogCatTimestamp.fromString("01-23 12:34:56.789"));
+    LogCatMessage message = new LogCatMessage(header, "Dummy Message");
+    assertThat(myFilterModel.processMessage(message)).containsExactly(message);
+
+    myFilterModel.setMinimumLevel(LogLevel.ERROR);
+    myFilterModel.replayStarted();
+    assertThat(myFilterModel.processMessage(message)).isEmpty();
+  }
+
+  @Test
+  public void processMessageMatchesCustomPatternAgainstFormattedLine() throws Exception {
+    myFilterModel.updateCustomPattern(Pattern.compile("^.+/DummyTag: Dummy Message$"));
+    LogCatTimestamp timestamp = LogCatTimestamp.fromString("01-23 12:34:56.789");
+
+    LogCatMessage message = new LogCatMessage(new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "DummyTag", timestamp), "Dummy Message");
+    assertThat(myFilterModel.processMessage(message)).containsExactly(message);
+
+    message = new LogCatMessage(new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "InvalidTag", timestamp), "Dummy Message");
+    assertThat(myFilterModel.processMessage(message)).isEmpty();
+  }
+
+  @Test
+  public void processMessageReturnsEarlierLinesOnceAMultiLineMessageMatches() throws Exception {
+    PersistentAndroidLogFilters.FilterData filterData = new PersistentAndroidLogFilters.FilterData();
+    filterData.setLogMessagePattern("line 2");
+    myFilterModel.updateLogcatFilter(DefaultAndroidLogcatFilter.compile(filterData, "(Unused Name)"));
+
+    LogCatHeader header = new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "DummyTag", LogCatTimestamp.fromString("01-23 12:34:56.789"));
+    LogCatMessage line1 = new LogCatMessage(header, "line 1");
+    LogCatMessage line2 = new LogCatMessage(header, "line 2");
+    LogCatMessage line3 = new LogCatMessage(header, "line 3");
+
+    assertThat(myFilterModel.processMessage(line1)).isEmpty();
+    assertThat(myFilterModel.processMessage(line2)).containsExactly(line1, line2).inOrder();
+    assertThat(myFilterModel.processMessage(line3)).containsExactly(line3);
+  }
+
+  @Test
+  public void replayKeepsRejectingOldMessages() throws Exception {
+    LogCatMessage old = new LogCatMessage(
+      new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "DummyTag", LogCatTimestamp.fromString("01-22 12:34:56.789")), "Old");
+    LogCatMessage now = new LogCatMessage(
+      new LogCatHeader(LogLevel.INFO, 1234, 5678, "?", "DummyTag", LogCatTimestamp.fromString("01-23 12:34:56.789")), "Now");
+
+    myFilterModel.processMessage(old);
+    myFilterModel.processMessage(now);
+    myFilterModel.beginRejectingOldMessages();
+
+    myFilterModel.replayStarted();
+    assertThat(myFilterModel.processMessage(old)).isEmpty();
+    assertThat(myFilterModel.processMessage(now)).containsExactly(now);
+  }
+
   private static class TestFilterModel extends AndroidLogFilterModel {
 
     @NotNull private LogLevel myMinimumLevel = LogLevel.VERBOSE; // Allow all messages by default
@@ -22,9 +22,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 
 public class AndroidLogcatServiceTest {
@@ -100,6 +106,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceConnected(mockDevice);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     verify(mockDevice, times(2)).isOnline();
@@ -119,6 +126,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.addListener(mockDevice, myLogcatListener, true);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     verify(mockDevice, times(1)).isOnline();
@@ -139,6 +147,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.addListener(mockDevice, myLogcatListener, true);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
 
     myLogcatListener.assertAllReceived();
     verify(mockDevice, times(2)).isOnline();
@@ -157,6 +166,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceConnected(mockDevice);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     when(mockDevice.isOnline()).thenReturn(false);
@@ -169,6 +179,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceConnected(mockDevice);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     verify(mockDevice, times(3)).isOnline();
@@ -185,6 +196,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceConnected(mockDevice);
     myLogcatService.addListener(mockDevice, myLogcatListener, true);
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     myExecuteShellCommandLatch = new CountDownLatch(1);
@@ -195,6 +207,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceChanged(mockDevice, 0);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     verify(mockDevice, times(4)).isOnline();
@@ -211,6 +224,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.deviceConnected(mockDevice);
     myLogcatService.addListener(mockDevice, myLogcatListener, true);
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     myLogcatService.removeListener(mockDevice, myLogcatListener);
@@ -223,9 +237,10 @@ public class AndroidLogcatServiceTest {
     when(mockDevice.isOnline()).thenReturn(true);
     myLogcatService.deviceConnected(mockDevice);
     TestLogcatListener otherListener = new TestLogcatListener();
-    myLogcatService.addListener(mockDevice, otherListener);
+    myLogcatService.addListener(mockDevice, otherListener, true);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(otherListener);
     otherListener.assertAllReceived();
     myLogcatListener.assertNothingReceived();
 
@@ -236,6 +251,151 @@ public class AndroidLogcatServiceTest {
     verifyNoMoreInteractions(mockDevice);
   }
 
+  @Test
+  public void testReplayLogs() throws Exception {
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myLogcatService.addListener(mockDevice, myLogcatListener, true);
+    myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
+    myLogcatListener.assertAllReceived();
+
+    myLogcatListener.reset();
+    myLogcatService.replayLogs(mockDevice, myLogcatListener);
+    myLogcatListener.assertAllReceived();
+  }
+
+  @Test
+  public void testOverlappingReplaysRunOneAtATime() throws Exception {
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myLogcatService.addListener(mockDevice, myLogcatListener, true);
+    myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
+    myLogcatListener.assertAllReceived();
+
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch secondStarted = new CountDownLatch(1);
+    AtomicReference<Thread> second = new AtomicReference<>();
+    AndroidLogcatService.LogcatListener listener = new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onReplayStarted() {
+        events.add("started");
+        if (second.get() == null) {
+          // Another replay to the same listener starts while this one is running.
+          Thread thread = new Thread(() -> {
+            secondStarted.countDown();
+            try {
+              myLogcatService.replayLogs(mockDevice, this);
+            }
+            catch (Throwable t) {
+              error.set(t);
+            }
+          });
+          second.set(thread);
+          thread.start();
+          try {
+            secondStarted.await();
+            Thread.sleep(50);
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        events.add(line.getMessage());
+      }
+    };
+    myLogcatService.replayLogs(mockDevice, listener);
+    second.get().join();
+
+    assertNull(error.get());
+    List<String> replay = Arrays.asList("started", "First Line1", "First Line2", "First Line3", "Second Line1");
+    List<String> expected = new ArrayList<>(replay);
+    expected.addAll(replay);
+    assertEquals(expected, events);
+  }
+
+  @Test
+  public void testRemoveListenerCancelsReplay() throws Exception {
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myLogcatService.addListener(mockDevice, myLogcatListener, true);
+    myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
+    myLogcatListener.assertAllReceived();
+
+    List<String> events = new ArrayList<>();
+    AndroidLogcatService.LogcatListener listener = new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onReplayStarted() {
+        events.add("started");
+        // For example, another device was selected.
+        myLogcatService.removeListener(mockDevice, this);
+      }
+
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        events.add(line.getMessage());
+      }
+
+      @Override
+      public void onLinesSkipped() {
+        events.add("skipped");
+      }
+    };
+    myLogcatService.addListener(mockDevice, listener);
+    myLogcatService.replayLogs(mockDevice, listener);
+
+    assertEquals(Collections.singletonList("started"), events);
+  }
+
+  @Test
+  public void testListenerCanWaitForAnotherThreadCallingTheService() throws Exception {
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.deviceConnected(mockDevice);
+    myLogcatService.addListener(mockDevice, myLogcatListener, true);
+    myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
+    myLogcatListener.assertAllReceived();
+
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    AndroidLogcatService.LogcatListener listener = new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onReplayStarted() {
+        events.add("started");
+        // For example, the listener hands some work over to another thread and waits for it.
+        Thread thread = new Thread(() -> myLogcatService.addListener(mockDevice, this, true));
+        thread.start();
+        try {
+          thread.join();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        events.add(line.getMessage());
+      }
+    };
+    myLogcatService.replayLogs(mockDevice, listener);
+    myLogcatService.waitForDelivery(listener);
+
+    // The old logs are sent after the replay.
+    List<String> lines = Arrays.asList("First Line1", "First Line2", "First Line3", "Second Line1");
+    List<String> expected = new ArrayList<>();
+    expected.add("started");
+    expected.addAll(lines);
+    expected.addAll(lines);
+    assertEquals(expected, events);
+  }
+
   /**
    * Tests {@link AndroidLogcatService} to verify that when no one is interested in a device logs, AndroidLogcatService should
    * stop receiving logs from the device. Subsequently, if a listener will be interested in the device, it should receive all logs
@@ -247,6 +407,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.addListener(mockDevice, myLogcatListener, true);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     myLogcatService.removeListener(mockDevice, myLogcatListener);
@@ -255,6 +416,7 @@ public class AndroidLogcatServiceTest {
     myLogcatService.addListener(mockDevice, myLogcatListener, false);
 
     myExecuteShellCommandLatch.await();
+    myLogcatService.waitForDelivery(myLogcatListener);
     myLogcatListener.assertAllReceived();
 
     verify(mockDevice, times(3)).isOnline();
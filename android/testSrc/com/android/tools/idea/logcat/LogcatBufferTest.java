@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LogcatBufferTest {
+  private static final LogCatHeader HEADER =
+    new LogCatHeader(LogLevel.WARN, 1493, 1595, "com.example", "DummyTag", LogCatTimestamp.fromString("08-18 16:39:11.439"));
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 1024);
+    LogCatHeader other =
+      new LogCatHeader(LogLevel.ERROR, 7, 8, "?", "Other", LogCatTimestamp.fromString("12-31 23:59:59.999"));
+    assertEquals(0, buffer.append(new LogCatMessage(HEADER, "First")));
+    assertEquals(1, buffer.append(new LogCatMessage(HEADER, "Zweite Zeile ü☃")));
+    assertEquals(2, buffer.append(new LogCatMessage(other, "")));
+
+    List<LogCatMessage> messages = readAll(buffer, 0);
+    assertEquals(3, messages.size());
+    assertEquals(new LogCatMessage(HEADER, "First").toString(), messages.get(0).toString());
+    assertEquals("Zweite Zeile ü☃", messages.get(1).getMessage());
+    assertEquals(new LogCatMessage(other, "").toString(), messages.get(2).toString());
+
+    LogCatHeader header = messages.get(2).getHeader();
+    assertEquals(LogLevel.ERROR, header.getLogLevel());
+    assertEquals(7, header.getPid());
+    assertEquals(8, header.getTid());
+    assertEquals("?", header.getAppName());
+    assertEquals(LogCatTimestamp.fromString("12-31 23:59:59.999"), header.getTimestamp());
+
+    // Lines of the same message share their header.
+    assertSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+  }
+
+  @Test
+  public void testReadBySequence() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 1024);
+    for (int i = 0; i < 10; i++) {
+      buffer.append(new LogCatMessage(HEADER, "Line" + i));
+    }
+
+    List<LogCatMessage> messages = new ArrayList<>();
+    assertEquals(7, buffer.read(4, 3, messages::add));
+    assertEquals(3, messages.size());
+    assertEquals("Line4", messages.get(0).getMessage());
+    assertEquals("Line6", messages.get(2).getMessage());
+
+    messages.clear();
+    assertEquals(10, buffer.read(7, 100, messages::add));
+    assertEquals(3, messages.size());
+  }
+
+  @Test
+  public void testEvictsOldestWhenFull() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 100);
+    for (int i = 0; i < 100; i++) {
+      buffer.append(new LogCatMessage(HEADER, String.format("Line%03d", i)));
+    }
+    assertEquals(100, buffer.getEndSequence());
+    long start = buffer.getStartSequence();
+    assertTrue(start > 0);
+    assertTrue((buffer.getEndSequence() - start) * "Line000".length() <= 100);
+
+    // Reading from an evicted sequence number starts at the oldest message still in the buffer.
+    List<LogCatMessage> messages = readAll(buffer, 0);
+    assertEquals(100 - start, messages.size());
+    assertEquals(String.format("Line%03d", start), messages.get(0).getMessage());
+    assertEquals("Line099", messages.get(messages.size() - 1).getMessage());
+  }
+
+  @Test
+  public void testTruncatesMessagesLargerThanBuffer() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 8);
+    buffer.append(new LogCatMessage(HEADER, "0123456789"));
+    assertEquals("01234567", readAll(buffer, 0).get(0).getMessage());
+  }
+
+  @Test
+  public void testUnboundedBufferGrows() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(false, 0);
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      longLine.append('x');
+    }
+    for (int i = 0; i < 5000; i++) {
+      buffer.append(new LogCatMessage(HEADER, i == 2500 ? longLine.toString() : "Line" + i));
+    }
+
+    List<LogCatMessage> messages = readAll(buffer, 0);
+    assertEquals(0, buffer.getStartSequence());
+    assertEquals(5000, messages.size());
+    assertEquals("Line0", messages.get(0).getMessage());
+    assertEquals(longLine.toString(), messages.get(2500).getMessage());
+    assertEquals("Line4999", messages.get(4999).getMessage());
+  }
+
+  @Test
+  public void testConcurrentReadersSeeConsistentMessages() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 4096);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      long next = 0;
+      while (!done.get() || next < buffer.getEndSequence()) {
+        long from = Math.max(next, buffer.getStartSequence());
+        List<LogCatMessage> messages = new ArrayList<>();
+        next = buffer.read(next, 64, messages::add);
+        for (LogCatMessage message : messages) {
+          // Each message encodes its own sequence number, and its pid is derived from it.
+          long sequence = Long.parseLong(message.getMessage());
+          if (sequence < from || message.getHeader().getPid() != (int)(sequence % 1000)) {
+            failure.set("Inconsistent message " + message.getMessage() + " with pid " + message.getHeader().getPid());
+          }
+          from = sequence + 1;
+        }
+      }
+    });
+    reader.start();
+    for (int i = 0; i < 200000; i++) {
+      LogCatHeader header = new LogCatHeader(LogLevel.INFO, i % 1000, 1, "app", "Tag" + (i % 7), HEADER.getTimestamp());
+      buffer.append(new LogCatMessage(header, Integer.toString(i)));
+    }
+    done.set(true);
+    reader.join();
+    assertNull(failure.get());
+  }
+
+  @Test
+  public void testSearchSkipsMessagesThatCannotPass() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 64 * 1024);
+    for (int i = 0; i < 1000; i++) {
+      LogLevel level = i % 2 == 0 ? LogLevel.DEBUG : LogLevel.ERROR;
+      String tag = i % 3 == 0 ? "Wanted" : "Other";
+      LogCatHeader header = new LogCatHeader(level, 100 + i % 5, 1, "com.example", tag, HEADER.getTimestamp());
+      buffer.append(new LogCatMessage(header, i == 501 ? "Found a needle" : "Line " + i));
+    }
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("Wanted").setTagPattern(Pattern.compile("^Wanted$")).build();
+    List<Long> found = search(buffer, new LogcatQuery(LogLevel.WARN, filter, Pattern.compile("NEEDLE", Pattern.CASE_INSENSITIVE)));
+    assertTrue(found.contains(501L));
+    for (long sequence : found) {
+      // Text is only indexed per block of messages, but levels and tags are checked per message.
+      assertTrue(sequence >= 448 && sequence < 512);
+      assertTrue(sequence % 2 == 1 && sequence % 3 == 0);
+    }
+  }
+
+  @Test
+  public void testSearchFindsWholeMultiLineMessages() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 64 * 1024);
+    LogCatHeader other = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example", "Other", HEADER.getTimestamp());
+    for (int i = 0; i < 100; i++) {
+      buffer.append(new LogCatMessage(other, "Line " + i));
+    }
+    // The matching line is in a later block than the start of its message.
+    for (int i = 0; i < 30; i++) {
+      buffer.append(new LogCatMessage(HEADER, i == 29 ? "needle" : "Line " + i));
+    }
+    buffer.append(new LogCatMessage(other, "Line"));
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("Dummy").setTagPattern(Pattern.compile("Dummy")).build();
+    List<long[]> ranges = new ArrayList<>();
+    assertTrue(buffer.search(new LogcatQuery(null, filter, Pattern.compile("needle")), () -> false,
+                             (from, to) -> ranges.add(new long[]{from, to})));
+    assertEquals(1, ranges.size());
+    assertArrayEquals(new long[]{100, 130}, ranges.get(0));
+  }
+
+  @Test
+  public void testSearchInChunksEndingAtMessageStarts() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 64 * 1024);
+    LogCatHeader other = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example", "Other", HEADER.getTimestamp());
+    for (int i = 0; i < 100; i++) {
+      buffer.append(new LogCatMessage(other, "Line " + i));
+    }
+    for (int i = 0; i < 30; i++) {
+      buffer.append(new LogCatMessage(HEADER, i == 29 ? "needle" : "Line " + i));
+    }
+    buffer.append(new LogCatMessage(other, "Line"));
+
+    assertEquals(0, buffer.nextMessageStart(0));
+    assertEquals(100, buffer.nextMessageStart(100));
+    assertEquals(130, buffer.nextMessageStart(110));
+    assertEquals(131, buffer.nextMessageStart(200));
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("Dummy").setTagPattern(Pattern.compile("Dummy")).build();
+    LogcatQuery query = new LogcatQuery(null, filter, Pattern.compile("needle"));
+    List<long[]> ranges = new ArrayList<>();
+    long to = buffer.nextMessageStart(110);
+    assertTrue(buffer.search(query, 0, to, () -> false, (from, end) -> ranges.add(new long[]{from, end})));
+    assertTrue(buffer.search(query, to, buffer.getEndSequence(), () -> false, (from, end) -> ranges.add(new long[]{from, end})));
+    assertEquals(1, ranges.size());
+    assertArrayEquals(new long[]{100, 130}, ranges.get(0));
+  }
+
+  @Test
+  public void testSearchAfterGrowing() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(false, 0);
+    for (int i = 0; i < 5000; i++) {
+      LogCatHeader header = new LogCatHeader(LogLevel.INFO, i, 1, "com.example", "DummyTag", HEADER.getTimestamp());
+      buffer.append(new LogCatMessage(header, i == 4321 ? "needle" : "Line" + i));
+    }
+
+    List<Long> found = search(buffer, new LogcatQuery(null, null, Pattern.compile("needle")));
+    assertTrue(found.contains(4321L));
+    assertTrue(found.size() <= 64);
+  }
+
+  @Test
+  public void testSearchStopsWhenCancelled() throws Exception {
+    LogcatBuffer buffer = new LogcatBuffer(true, 64 * 1024);
+    for (int i = 0; i < 1000; i++) {
+      buffer.append(new LogCatMessage(HEADER, "Line" + i));
+    }
+
+    AtomicInteger checks = new AtomicInteger();
+    List<Long> found = new ArrayList<>();
+    assertFalse(buffer.search(LogcatQuery.ALL, () -> checks.incrementAndGet() > 2, (from, to) -> found.add(from)));
+    assertEquals(3, checks.get());
+    assertTrue(found.isEmpty());
+  }
+
+  private static List<Long> search(LogcatBuffer buffer, LogcatQuery query) {
+    List<Long> found = new ArrayList<>();
+    assertTrue(buffer.search(query, () -> false, (from, to) -> {
+      for (long sequence = from; sequence < to; sequence++) {
+        found.add(sequence);
+      }
+    }));
+    return found;
+  }
+
+  private static List<LogCatMessage> readAll(LogcatBuffer buffer, long from) {
+    List<LogCatMessage> messages = new ArrayList<>();
+    long next = from;
+    while (next < buffer.getEndSequence()) {
+      next = buffer.read(next, 16, messages::add);
+    }
+    return messages;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.intellij.diagnostic.logging.LogFilterModel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many logcat lines per second the console pipeline can take, between carrying {@link LogCatMessage}s through filtering and
+ * formatting only visible lines, and the previous pipeline, which formatted every line and parsed it back to filter and format it.
+ *
+ * Devices can log 10k messages per second, which the structured pipeline needs to keep up with. This is not part of the unit tests, as
+ * it depends on the machine it runs on; run {@link #main(String[])} and compare the printed rates. {@link LogcatPipelineTest} checks
+ * that both pipelines show the same lines.
+ */
+public class LogcatPipelineBenchmark {
+  private static final int INGEST_RATE = 10_000;
+  private static final int MESSAGE_COUNT = 200_000;
+  private static final int ROUNDS = 5;
+
+  private interface Pipeline {
+    int run(@NotNull List<LogCatMessage> lines);
+  }
+
+  public static void main(String[] args) {
+    List<LogCatMessage> lines = LogcatPipelineTest.generateLines(MESSAGE_COUNT, INGEST_RATE);
+
+    double structured = 0;
+    double legacy = 0;
+    // The first rounds warm up the JIT, only keep the best of each.
+    for (int round = 0; round < ROUNDS; round++) {
+      structured = Math.max(structured, measure(lines, LogcatPipelineBenchmark::runStructured));
+      legacy = Math.max(legacy, measure(lines, LogcatPipelineBenchmark::runLegacy));
+    }
+
+    System.out.println(String.format("Logcat pipeline, %d lines: structured %.0f lines/s, format and parse %.0f lines/s (%.1fx)",
+                                     lines.size(), structured, legacy, structured / legacy));
+    System.out.println(structured >= INGEST_RATE
+                       ? "The structured pipeline keeps up with " + INGEST_RATE + " messages/s"
+                       : "The structured pipeline falls behind " + INGEST_RATE + " messages/s");
+  }
+
+  private static double measure(@NotNull List<LogCatMessage> lines, @NotNull Pipeline pipeline) {
+    long start = System.nanoTime();
+    int visible = pipeline.run(lines);
+    long elapsed = System.nanoTime() - start;
+    if (visible == 0 || visible == lines.size()) {
+      throw new IllegalStateException("The filter should show some of the lines, not " + visible);
+    }
+    return lines.size() / (elapsed / (double)TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * What {@link AndroidLogcatService} and the view do with each line now.
+   */
+  private static int runStructured(@NotNull List<LogCatMessage> lines) {
+    LogcatBuffer buffer = new LogcatBuffer(true, 4 * 1024 * 1024);
+    AndroidLogFilterModel model = LogcatPipelineTest.createFilterModel(null);
+    AndroidLogcatFormatter formatter = new AndroidLogcatFormatter(new AndroidLogcatPreferences());
+    LogCatHeader lastPrinted = null;
+    int visible = 0;
+    for (LogCatMessage line : lines) {
+      buffer.append(line);
+      for (LogCatMessage shown : model.processMessage(line)) {
+        boolean isContinuation = shown.getHeader().equals(lastPrinted);
+        lastPrinted = shown.getHeader();
+        formatter.formatMessage(shown, isContinuation);
+        visible++;
+      }
+    }
+    return visible;
+  }
+
+  /**
+   * What {@link FormattedLogcatReceiver} and the console used to do with each line.
+   */
+  private static int runLegacy(@NotNull List<LogCatMessage> lines) {
+    List<LogCatMessage> buffer = new LinkedList<>();
+    AndroidLogFilterModel model = LogcatPipelineTest.createFilterModel(null);
+    AndroidLogcatFormatter formatter = new AndroidLogcatFormatter(new AndroidLogcatPreferences());
+    LogCatHeader activeHeader = null;
+    int visible = 0;
+    for (LogCatMessage line : lines) {
+      buffer.add(line);
+      String text;
+      if (!line.getHeader().equals(activeHeader)) {
+        activeHeader = line.getHeader();
+        text = AndroidLogcatFormatter.formatMessageFull(activeHeader, line.getMessage());
+      }
+      else {
+        text = AndroidLogcatFormatter.formatContinuation(line.getMessage());
+      }
+      LogFilterModel.MyProcessingResult result = model.processLine(text);
+      if (result.isApplicable()) {
+        String prefix = result.getMessagePrefix();
+        if (prefix != null && !prefix.isEmpty()) {
+          formatter.formatPrefix(prefix);
+        }
+        formatter.formatMessage(text);
+        visible++;
+      }
+    }
+    return visible;
+  }
+}
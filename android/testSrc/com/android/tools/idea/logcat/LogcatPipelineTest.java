@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.diagnostic.logging.LogFilterModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that carrying {@link LogCatMessage}s through filtering shows the same lines as the previous pipeline, which formatted every line
+ * and parsed it back to filter it, over a backlog of multi-line messages with a mix of levels and tags.
+ */
+public class LogcatPipelineTest {
+  private static final int MESSAGE_COUNT = 5_000;
+  private static final int INGEST_RATE = 1_000;
+
+  @Test
+  public void configuredFilterShowsSameLines() throws Exception {
+    assertSameLinesShown(null);
+  }
+
+  @Test
+  public void customPatternShowsSameLines() throws Exception {
+    // Only matches continuation lines, so the earlier lines of their messages are shown as a prefix.
+    assertSameLinesShown(Pattern.compile("line [12]"));
+  }
+
+  private static void assertSameLinesShown(@Nullable Pattern customPattern) {
+    List<LogCatMessage> lines = generateLines(MESSAGE_COUNT, INGEST_RATE);
+    List<String> structured = runStructured(lines, customPattern);
+    List<String> legacy = runLegacy(lines, customPattern);
+    assertTrue(!structured.isEmpty() && structured.size() < lines.size());
+    assertEquals(legacy, structured);
+  }
+
+  /**
+   * What {@link AndroidLogcatService} and the view do with each line now.
+   *
+   * @return the messages of the lines shown.
+   */
+  @NotNull
+  private static List<String> runStructured(@NotNull List<LogCatMessage> lines, @Nullable Pattern customPattern) {
+    AndroidLogFilterModel model = createFilterModel(customPattern);
+    List<String> shown = new ArrayList<>();
+    for (LogCatMessage line : lines) {
+      for (LogCatMessage message : model.processMessage(line)) {
+        shown.add(message.getMessage());
+      }
+    }
+    return shown;
+  }
+
+  /**
+   * What {@link FormattedLogcatReceiver} and the console used to do with each line.
+   *
+   * @return the messages of the lines shown, parsed back from their text.
+   */
+  @NotNull
+  private static List<String> runLegacy(@NotNull List<LogCatMessage> lines, @Nullable Pattern customPattern) {
+    AndroidLogFilterModel model = createFilterModel(customPattern);
+    LogCatHeader activeHeader = null;
+    List<String> shown = new ArrayList<>();
+    for (LogCatMessage line : lines) {
+      String text;
+      if (!line.getHeader().equals(activeHeader)) {
+        activeHeader = line.getHeader();
+        text = AndroidLogcatFormatter.formatMessageFull(activeHeader, line.getMessage());
+      }
+      else {
+        text = AndroidLogcatFormatter.formatContinuation(line.getMessage());
+      }
+      LogFilterModel.MyProcessingResult result = model.processLine(text);
+      if (result.isApplicable()) {
+        String prefix = result.getMessagePrefix();
+        if (prefix != null && !prefix.isEmpty()) {
+          for (String prefixLine : prefix.split("\n")) {
+            shown.add(parseMessage(prefixLine));
+          }
+        }
+        shown.add(parseMessage(text));
+      }
+    }
+    return shown;
+  }
+
+  @NotNull
+  private static String parseMessage(@NotNull String text) {
+    LogCatMessage message = AndroidLogcatFormatter.tryParseMessage(text);
+    if (message != null) {
+      return message.getMessage();
+    }
+    String continuation = AndroidLogcatFormatter.tryParseContinuation(text);
+    assertTrue(text, continuation != null);
+    return continuation;
+  }
+
+  @NotNull
+  static AndroidLogFilterModel createFilterModel(@Nullable Pattern customPattern) {
+    AndroidLogFilterModel model = new AndroidLogFilterModel() {
+      @Override
+      protected void saveConfiguredFilterName(String filterName) {
+      }
+
+      @Override
+      protected void saveLogLevel(String logLevelName) {
+      }
+
+      @Override
+      public String getSelectedLogLevelName() {
+        return LogLevel.INFO.getStringValue();
+      }
+    };
+    model.processingStarted();
+    model.updateLogcatFilter(new DefaultAndroidLogcatFilter.Builder("Pipeline").setTagPattern(Pattern.compile("Tag[0-4]")).build());
+    model.updateCustomPattern(customPattern);
+    return model;
+  }
+
+  /**
+   * Messages of one to three lines, from a few processes, with a mix of levels and tags.
+   *
+   * @param ingestRate how many messages per second the timestamps are spread over.
+   */
+  @NotNull
+  static List<LogCatMessage> generateLines(int messageCount, int ingestRate) {
+    Random random = new Random(0);
+    LogLevel[] levels = {LogLevel.VERBOSE, LogLevel.DEBUG, LogLevel.INFO, LogLevel.WARN, LogLevel.ERROR};
+    List<LogCatMessage> lines = new ArrayList<>();
+    for (int i = 0; i < messageCount; i++) {
+      int millis = (int)((long)i * 1000 / ingestRate);
+      LogCatTimestamp timestamp = new LogCatTimestamp(1, 23, 12, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+      int pid = 1000 + random.nextInt(4);
+      LogCatHeader header =
+        new LogCatHeader(levels[random.nextInt(levels.length)], pid, pid + random.nextInt(8), "com.example.app" + (pid % 4),
+                         "Tag" + random.nextInt(20), timestamp);
+      int lineCount = 1 + (random.nextInt(10) == 0 ? random.nextInt(3) : 0);
+      for (int j = 0; j < lineCount; j++) {
+        lines.add(new LogCatMessage(header, "Message " + i + " line " + j + " with some payload " + random.nextInt()));
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LogcatQueryTest {
+  @Test
+  public void testLiteralPatterns() throws Exception {
+    assertTrigrams(RegexFilterComponent.pattern("Needle", false), "nee", "eed", "edl", "dle");
+    assertTrigrams(Pattern.compile("needle", Pattern.LITERAL), "nee", "eed", "edl", "dle");
+    assertTrigrams(Pattern.compile("\\Qa.b\\E"), "a.b");
+  }
+
+  @Test
+  public void testOnlyRequiredLiteralsAreUsed() throws Exception {
+    assertTrigrams(Pattern.compile("abcd?e"), "abc");
+    assertTrigrams(Pattern.compile("x[abc]yzw+"), "yzw");
+    assertTrigrams(Pattern.compile("\\d+fooo\\s(bar)?"), "foo", "ooo");
+    assertTrigrams(Pattern.compile("a\\.bc"), "a.b", ".bc");
+    assertTrigrams(Pattern.compile("foo|bar"));
+    assertTrigrams(Pattern.compile("(?i)foo"));
+    assertTrigrams(Pattern.compile("\\p{Lu}foo"), "foo");
+  }
+
+  @Test
+  public void testHeaderFieldsAreNotRequired() throws Exception {
+    // Separators and numbers may be part of the header, which isn't indexed as formatted.
+    assertTrigrams(Pattern.compile("Tag: message"), "tag", "mes", "ess", "ssa", "sag", "age");
+    assertTrigrams(Pattern.compile("12-34 56.789"));
+  }
+
+  @Test
+  public void testFilterIsApplied() throws Exception {
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("Filter")
+      .setTagPattern(Pattern.compile("^Tag$"))
+      .setPid("42")
+      .setLogLevel(LogLevel.INFO)
+      .build();
+    LogcatQuery query = new LogcatQuery(LogLevel.WARN, filter, null);
+    assertFalse(query.acceptsLevel(LogLevel.INFO.ordinal()));
+    assertTrue(query.acceptsLevel(LogLevel.ERROR.ordinal()));
+    assertTrue(query.acceptsTag("Tag"));
+    assertFalse(query.acceptsTag("OtherTag"));
+    assertTrue(query.acceptsPid(42));
+    assertFalse(query.acceptsPid(43));
+    assertTrue(query.acceptsAppName("com.example"));
+    assertEquals(0, query.getTrigrams().length);
+  }
+
+  private static void assertTrigrams(Pattern pattern, String... expected) {
+    int[] expectedTrigrams = Arrays.stream(expected).mapToInt(t -> LogcatQuery.trigram(t.charAt(0), t.charAt(1), t.charAt(2))).toArray();
+    int[] trigrams = LogcatQuery.requiredTrigrams(pattern);
+    Arrays.sort(expectedTrigrams);
+    Arrays.sort(trigrams);
+    assertArrayEquals(pattern.pattern(), expectedTrigrams, trigrams);
+  }
+}
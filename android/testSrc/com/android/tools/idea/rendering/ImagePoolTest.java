@@ -137,6 +137,21 @@ public class ImagePoolTest {
     ImageDiffUtil.assertImageSimilar("pooledimage", original, copy, 0.0);
   }
 
+  @Test
+  public void testPaintedImage() throws IOException {
+    BufferedImage original = getSampleImage();
+    ImagePool.Image source = myPool.copyOf(original);
+
+    // Paint the right half of the source image, the way tiles of a larger image are painted
+    ImagePool.Image tile = myPool.createPainted(25, 50, BufferedImage.TYPE_INT_ARGB, g -> {
+      g.translate(-25, 0);
+      source.drawImageTo(g, 0, 0, 50, 50, 0, 0, 50, 50);
+    });
+    assertEquals(25, tile.getWidth());
+    assertEquals(50, tile.getHeight());
+    ImageDiffUtil.assertImageSimilar("tile", original.getSubimage(25, 0, 25, 50), tile.getCopy(), 0.0);
+  }
+
   @Test
   public void testNullImage() throws IOException {
     ImagePool.Image image = myPool.copyOf(null);
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.rendering.RenderExecutor.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RenderExecutorTest {
+  private static final long TIMEOUT_S = 10;
+
+  private RenderExecutor myExecutor;
+
+  @After
+  public void tearDown() {
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testHigherPriorityActionsRunFirst() throws Exception {
+    myExecutor = new RenderExecutor("Render Test", TimeUnit.SECONDS.toMillis(10));
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> blocker = myExecutor.submit(() -> release.await(TIMEOUT_S, TimeUnit.SECONDS), Priority.DEFAULT);
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    List<Future<?>> actions = new ArrayList<>();
+    actions.add(myExecutor.submit(() -> order.add("background"), Priority.BACKGROUND));
+    actions.add(myExecutor.submit(() -> order.add("default"), Priority.DEFAULT));
+    actions.add(myExecutor.submit(() -> order.add("foreground 1"), Priority.FOREGROUND));
+    actions.add(myExecutor.submit(() -> order.add("foreground 2"), Priority.FOREGROUND));
+    release.countDown();
+
+    blocker.get(TIMEOUT_S, TimeUnit.SECONDS);
+    for (Future<?> action : actions) {
+      action.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+    assertEquals(Arrays.asList("foreground 1", "foreground 2", "default", "background"), order);
+  }
+
+  @Test
+  public void testActionsNeverOverlap() throws Exception {
+    myExecutor = new RenderExecutor("Render Test", TimeUnit.SECONDS.toMillis(10));
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<Future<?>> actions = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      actions.add(myExecutor.submit(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(1);
+        return running.decrementAndGet();
+      }, i % 2 == 0 ? Priority.DEFAULT : Priority.FOREGROUND));
+    }
+    for (Future<?> action : actions) {
+      action.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+    assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  public void testPendingActionReportsTheThreadKeepingItWaiting() throws Exception {
+    myExecutor = new RenderExecutor("Render Test", TimeUnit.SECONDS.toMillis(10));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RenderExecutor.Action<Thread> first = myExecutor.submit(() -> {
+      started.countDown();
+      release.await(TIMEOUT_S, TimeUnit.SECONDS);
+      return Thread.currentThread();
+    }, Priority.DEFAULT);
+    assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+    RenderExecutor.Action<?> pending = myExecutor.submit(() -> null, Priority.FOREGROUND);
+
+    Thread renderThread = pending.getThread();
+    assertNotNull(renderThread);
+    assertSame(renderThread, first.getThread());
+    release.countDown();
+    assertSame(renderThread, first.get(TIMEOUT_S, TimeUnit.SECONDS));
+    pending.get(TIMEOUT_S, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testIdleWorkerStops() throws Exception {
+    myExecutor = new RenderExecutor("Render Test", 50);
+    Thread worker = myExecutor.submit(Thread::currentThread, Priority.DEFAULT).get(TIMEOUT_S, TimeUnit.SECONDS);
+    worker.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+    assertFalse(worker.isAlive());
+
+    // A new worker is started for the next action
+    Thread next = myExecutor.submit(Thread::currentThread, Priority.DEFAULT).get(TIMEOUT_S, TimeUnit.SECONDS);
+    assertNotSame(worker, next);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.Result;
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+
+public class RenderResultCacheTest extends AndroidTestCase {
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_width=\"match_parent\"\n" +
+                                       "    android:layout_height=\"match_parent\">\n" +
+                                       "  <TextView android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"/>\n" +
+                                       "</LinearLayout>\n";
+
+  private XmlFile myFile;
+  private ImagePool myImagePool;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myFile = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    myImagePool = new ImagePool();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      myImagePool.dispose();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testKeyEquality() {
+    String path = myFile.getVirtualFile().getPath();
+    RenderResultCache.Key key = new RenderResultCache.Key(path, 1, "config", 2, "options");
+    RenderResultCache.Key same = new RenderResultCache.Key(path, 1, "config", 2, "options");
+    assertEquals(key, same);
+    assertEquals(key.hashCode(), same.hashCode());
+
+    assertFalse(key.equals(new RenderResultCache.Key(path + "2", 1, "config", 2, "options")));
+    assertFalse(key.equals(new RenderResultCache.Key(path, 3, "config", 2, "options")));
+    assertFalse(key.equals(new RenderResultCache.Key(path, 1, "other config", 2, "options")));
+    assertFalse(key.equals(new RenderResultCache.Key(path, 1, "config", 3, "options")));
+    assertFalse(key.equals(new RenderResultCache.Key(path, 1, "config", 2, "other options")));
+  }
+
+  public void testLeastRecentlyUsedResultIsEvicted() {
+    RenderResultCache cache = new RenderResultCache(Long.MAX_VALUE, 2);
+    cache.put(key(1), createResult(10, 10));
+    cache.put(key(2), createResult(10, 10));
+    // Makes 1 more recently used than 2
+    assertNotNull(cache.get(key(1)));
+
+    cache.put(key(3), createResult(10, 10));
+    assertNotNull(cache.get(key(1)));
+    assertNull(cache.get(key(2)));
+    assertNotNull(cache.get(key(3)));
+  }
+
+  public void testPixelBudget() {
+    RenderResultCache cache = new RenderResultCache(250, 10);
+    cache.put(key(1), createResult(10, 10));
+    cache.put(key(2), createResult(10, 10));
+    cache.put(key(3), createResult(10, 10));
+    assertNull(cache.get(key(1)));
+    assertNotNull(cache.get(key(2)));
+    assertNotNull(cache.get(key(3)));
+
+    // A result larger than the whole budget is not cached, and does not evict anything
+    cache.put(key(4), createResult(20, 20));
+    assertNull(cache.get(key(4)));
+    assertNotNull(cache.get(key(2)));
+    assertNotNull(cache.get(key(3)));
+  }
+
+  public void testResultOfDeletedFileIsDropped() {
+    RenderResultCache cache = new RenderResultCache();
+    cache.put(key(1), createResult(10, 10));
+    assertNotNull(cache.get(key(1)));
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> myFile.delete());
+    assertNull(cache.get(key(1)));
+  }
+
+  public void testCachedResultIsPlaceholder() {
+    RenderResultCache cache = new RenderResultCache();
+    RenderResult result = createResult(10, 10);
+    cache.put(key(1), result);
+
+    RenderResult cached = cache.get(key(1));
+    assertNotNull(cached);
+    assertNull(cached.getRenderTask());
+    assertSame(result.getRenderedImage(), cached.getRenderedImage());
+    assertTrue(cached.getRenderResult().isSuccess());
+    assertEmpty(cached.getRootViews());
+    assertEmpty(cached.getSystemRootViews());
+  }
+
+  @NotNull
+  private RenderResultCache.Key key(long layoutSignature) {
+    return new RenderResultCache.Key(myFile.getVirtualFile().getPath(), layoutSignature, "config", 0, "options");
+  }
+
+  @NotNull
+  private RenderResult createResult(int width, int height) {
+    XmlTag rootTag = myFile.getRootTag();
+    assertNotNull(rootTag);
+    ViewInfo root = new ViewInfo("LinearLayout", rootTag, 0, 0, width, height, new Object(), new Object());
+    root.setChildren(Collections.singletonList(
+      new ViewInfo("TextView", rootTag.getSubTags()[0], 0, 0, width, height / 2, new Object(), new Object())));
+    return new RenderResult(myFile, myModule, new RenderLogger(null, myModule), null, Result.Status.SUCCESS.createResult(),
+                            Collections.singletonList(root), Collections.emptyList(),
+                            myImagePool.create(width, height, BufferedImage.TYPE_INT_ARGB, null), Collections.emptyMap());
+  }
+}
@@ -51,6 +51,26 @@ public class TagSnapshotTest extends TestCase {
                  synthetic.toString());
   }
 
+  public void testTreeSignature() {
+    TagSnapshot snapshot = TagSnapshot.createTagSnapshot(createLayout(VALUE_VERTICAL, VALUE_WRAP_CONTENT));
+    assertEquals(snapshot.getTreeSignature(),
+                 TagSnapshot.createTagSnapshot(createLayout(VALUE_VERTICAL, VALUE_WRAP_CONTENT)).getTreeSignature());
+    // Changes in the root or in a child are both picked up
+    assertFalse(snapshot.getTreeSignature() ==
+                TagSnapshot.createTagSnapshot(createLayout(VALUE_HORIZONTAL, VALUE_WRAP_CONTENT)).getTreeSignature());
+    assertFalse(snapshot.getTreeSignature() ==
+                TagSnapshot.createTagSnapshot(createLayout(VALUE_VERTICAL, VALUE_MATCH_PARENT)).getTreeSignature());
+    // Attribute names and values are not mixed up
+    TagSnapshot first = TagSnapshot.createTagSnapshot(setAttributes(createTag("View"), androidAttribute("ab", "c")));
+    TagSnapshot second = TagSnapshot.createTagSnapshot(setAttributes(createTag("View"), androidAttribute("a", "bc")));
+    assertFalse(first.getTreeSignature() == second.getTreeSignature());
+  }
+
+  private static XmlTag createLayout(String orientation, String childWidth) {
+    XmlTag button = setAttributes(createTag("Button"), androidAttribute(ATTR_LAYOUT_WIDTH, childWidth));
+    return setAttributes(createTag("LinearLayout", button), androidAttribute(ATTR_ORIENTATION, orientation));
+  }
+
   private static XmlAttribute androidAttribute(String localName, String value) {
     return createAttribute(ANDROID_URI, PREFIX_ANDROID, localName, value);
   }
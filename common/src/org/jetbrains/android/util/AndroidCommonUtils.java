@@ -164,31 +164,15 @@ public class AndroidCommonUtils {
                                                 @NotNull String outputFilePath,
                                                 @NotNull final Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
     final BaseOSProcessHandler handler = new BaseOSProcessHandler(process, commandLine, null);
+    final DexOutputParser parser = new DexOutputParser(messages);
     handler.addProcessListener(new ProcessAdapter() {
-      private AndroidCompilerMessageKind myCategory = null;
-
       @Override
       public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
-        String[] msgs = event.getText().split("\\n");
-        for (String msg : msgs) {
-          msg = msg.trim();
-          String msglc = msg.toLowerCase();
-          if (outputType == ProcessOutputTypes.STDERR) {
-            if (WARNING_PATTERN.matcher(msglc).matches()) {
-              myCategory = AndroidCompilerMessageKind.WARNING;
-            }
-            if (ERROR_PATTERN.matcher(msglc).matches() || EXCEPTION_PATTERN.matcher(msglc).matches() || myCategory == null) {
-              myCategory = AndroidCompilerMessageKind.ERROR;
-            }
-            messages.get(myCategory).add(msg);
-          }
-          else if (outputType == ProcessOutputTypes.STDOUT) {
-            if (!msglc.startsWith("processing")) {
-              messages.get(AndroidCompilerMessageKind.INFORMATION).add(msg);
-            }
-          }
-
-          LOG.debug(msg);
+        if (outputType == ProcessOutputTypes.STDERR) {
+          parser.parse(event.getText(), true);
+        }
+        else if (outputType == ProcessOutputTypes.STDOUT) {
+          parser.parse(event.getText(), false);
         }
       }
     });
@@ -196,6 +180,25 @@ public class AndroidCommonUtils {
     handler.startNotify();
     handler.waitFor();
 
+    checkDexOutput(outputFilePath, messages, multiDex);
+  }
+
+  /**
+   * Same as {@link #handleDexCompilationResult(Process, String, String, Map, boolean)}, for a dx run whose output was collected already,
+   * such as one in the dx daemon.
+   */
+  public static void handleDexCompilationResult(@NotNull String stdout,
+                                                @NotNull String stderr,
+                                                @NotNull String outputFilePath,
+                                                @NotNull Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
+    final DexOutputParser parser = new DexOutputParser(messages);
+    parser.parse(stderr, true);
+    parser.parse(stdout, false);
+    checkDexOutput(outputFilePath, messages, multiDex);
+  }
+
+  private static void checkDexOutput(@NotNull String outputFilePath,
+                                     @NotNull Map<AndroidCompilerMessageKind, List<String>> messages, boolean multiDex) {
     final List<String> errors = messages.get(AndroidCompilerMessageKind.ERROR);
 
     if (new File(outputFilePath).isFile()) {
@@ -208,6 +211,42 @@ public class AndroidCommonUtils {
     }
   }
 
+  private static class DexOutputParser {
+    private final Map<AndroidCompilerMessageKind, List<String>> myMessages;
+    private AndroidCompilerMessageKind myCategory = null;
+
+    DexOutputParser(@NotNull Map<AndroidCompilerMessageKind, List<String>> messages) {
+      myMessages = messages;
+    }
+
+    void parse(@NotNull String text, boolean isStderr) {
+      if (text.length() == 0) {
+        return;
+      }
+      String[] msgs = text.split("\\n");
+      for (String msg : msgs) {
+        msg = msg.trim();
+        String msglc = msg.toLowerCase();
+        if (isStderr) {
+          if (WARNING_PATTERN.matcher(msglc).matches()) {
+            myCategory = AndroidCompilerMessageKind.WARNING;
+          }
+          if (ERROR_PATTERN.matcher(msglc).matches() || EXCEPTION_PATTERN.matcher(msglc).matches() || myCategory == null) {
+            myCategory = AndroidCompilerMessageKind.ERROR;
+          }
+          myMessages.get(myCategory).add(msg);
+        }
+        else {
+          if (!msglc.startsWith("processing")) {
+            myMessages.get(AndroidCompilerMessageKind.INFORMATION).add(msg);
+          }
+        }
+
+        LOG.debug(msg);
+      }
+    }
+  }
+
   @NotNull
   public static List<String> packClassFilesIntoJar(@NotNull String[] firstPackageDirPaths,
                                                  @NotNull String[] libFirstPackageDirPaths,
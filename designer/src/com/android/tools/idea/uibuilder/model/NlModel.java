@@ -142,6 +142,23 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   private AndroidPreviewProgressIndicator myCurrentIndicator;
   private static final Object PROGRESS_LOCK = new Object();
   private RenderTask myRenderTask;
+  /**
+   * Set when a change since {@link #myRenderTask} was created can not be picked up by just inflating the layout again with the same task,
+   * like resource, build or configuration changes
+   */
+  private volatile boolean myRenderTaskStale;
+  /** Configuration modification count when {@link #myRenderTask} was created */
+  private long myRenderTaskConfigurationModificationCount;
+  /** Modification stamp of the file the last time {@link #myRenderTask} inflated it */
+  private long myInflatedModificationStamp = -1;
+  /** State of the layout and configuration the last time {@link #myRenderTask} inflated it, used to cache its render results */
+  @Nullable private RenderResultCache.Key myRenderTaskKey;
+  /**
+   * Cached result for the state being rendered, shown until the render completes. It is a placeholder copy
+   * ({@link RenderResult#createPlaceholderCopy()}) with no view hierarchy, so it is only used to paint the image, never to update the
+   * components.
+   */
+  @Nullable private volatile RenderResult myPlaceholderResult;
   private final NlLayoutType myType;
   private long myConfigurationModificationCount;
 
@@ -196,6 +213,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         if (theme != null && !theme.startsWith(ANDROID_STYLE_RESOURCE_PREFIX) && !myProjectResourceRepository.hasResourceItem(theme)) {
           myConfiguration.setTheme(myConfiguration.getConfigurationManager().computePreferredTheme(myConfiguration));
         }
+        myRenderTaskStale = true;
         requestModelUpdate();
         myModelVersion.myResourceVersion.incrementAndGet();
       }
@@ -307,7 +325,11 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
   private final Object myRenderingQueueLock = new Object();
   private MergingUpdateQueue myRenderingQueue;
-  private static final Object RENDERING_LOCK = new Object();
+  /**
+   * Guards {@link #myRenderTask}. Access to layoutlib itself is serialized by {@link RenderService#runRenderAction}, so this does not need
+   * to be shared with other models.
+   */
+  private final Object myRenderingLock = new Object();
 
   /**
    * Whether we should render just the viewport
@@ -326,13 +348,25 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   protected void setupRenderTask(@Nullable RenderTask task) {
   }
 
+  /**
+   * Returns the task that last inflated the layout, or null if there is none.
+   */
+  @VisibleForTesting
+  @Nullable
+  RenderTask getRenderTask() {
+    synchronized (myRenderingLock) {
+      return myRenderTask;
+    }
+  }
+
   /**
    * Synchronously inflates the model and updates the view hierarchy
    *
    * @param force forces the model to be re-inflated even if a previous version was already inflated
+   * @param key     state of the layout and configuration being inflated, see {@link #createRenderResultKey(XmlFile, Configuration)}
    * @returns whether the model was inflated in this call or not
    */
-  private boolean inflate(boolean force) {
+  private boolean inflate(boolean force, @Nullable RenderResultCache.Key key) {
     Configuration configuration = myConfiguration;
     if (configuration == null) {
       return false;
@@ -347,7 +381,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     LayoutPullParserFactory.saveFileIfNecessary(file);
 
     RenderResult result = null;
-    synchronized (RENDERING_LOCK) {
+    synchronized (myRenderingLock) {
       if (myRenderTask != null && !force) {
         // No need to inflate
         return false;
@@ -359,23 +393,43 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
       RenderService renderService = RenderService.get(myFacet);
       RenderLogger logger = renderService.createLogger();
-      if (myRenderTask != null) {
-        myRenderTask.dispose();
-      }
-      myRenderTask = renderService.createTask(file, configuration, logger, mySurface);
-      setupRenderTask(myRenderTask);
-      if (myRenderTask != null) {
-        if (!isRenderViewPort()) {
-          myRenderTask.useDesignMode(file);
+      long modificationStamp = ApplicationManager.getApplication().runReadAction((Computable<Long>)file::getModificationStamp);
+      if (myRenderTask != null &&
+          !myRenderTaskStale &&
+          myRenderTaskConfigurationModificationCount == configuration.getModificationCount()) {
+        if (modificationStamp == myInflatedModificationStamp) {
+          // Neither the layout nor anything else the render depends on changed, the current session is still up to date
+          return false;
         }
-        result = myRenderTask.inflate();
-        if (result == null || !result.getRenderResult().isSuccess()) {
+        // Only the layout file changed: inflate it again without paying for a new task (class loader, R class, layoutlib callback)
+        myInflatedModificationStamp = modificationStamp;
+        myRenderTaskKey = key;
+        result = myRenderTask.reinflate(logger);
+      }
+      else {
+        // Clear the flag before creating the task so changes made while this is running mark the new task as stale
+        myRenderTaskStale = false;
+        myRenderTaskConfigurationModificationCount = configuration.getModificationCount();
+        myInflatedModificationStamp = modificationStamp;
+        myRenderTaskKey = key;
+        if (myRenderTask != null) {
           myRenderTask.dispose();
-          myRenderTask = null;
-
-          if (result == null) {
-            result = RenderResult.createBlank(file);
+        }
+        myRenderTask = renderService.createTask(file, configuration, logger, mySurface);
+        setupRenderTask(myRenderTask);
+        if (myRenderTask != null) {
+          if (!isRenderViewPort()) {
+            myRenderTask.useDesignMode(file);
           }
+          result = myRenderTask.inflate();
+        }
+      }
+      if (myRenderTask != null && (result == null || !result.getRenderResult().isSuccess())) {
+        myRenderTask.dispose();
+        myRenderTask = null;
+
+        if (result == null) {
+          result = RenderResult.createBlank(file);
         }
       }
 
@@ -392,6 +446,34 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
   }
 
+  @Nullable
+  private RenderResultCache.Key createRenderResultKey(@NotNull XmlFile file, @Nullable Configuration configuration) {
+    if (configuration == null) {
+      return null;
+    }
+    return RenderResultCache.createKey(myFacet, file, configuration, myType + (isRenderViewPort() ? "|viewport" : "|design"));
+  }
+
+  /**
+   * Shows the recent render result for the given state of the layout and its configuration, if there is one and the render task was
+   * inflated from a different state, until the layout has been rendered again.
+   */
+  private void showCachedRenderResult(@Nullable RenderResultCache.Key key) {
+    if (key == null) {
+      return;
+    }
+    synchronized (myRenderingLock) {
+      if (key.equals(myRenderTaskKey)) {
+        return;
+      }
+    }
+    RenderResult result = RenderService.get(myFacet).getResultCache().get(key);
+    if (result != null) {
+      myPlaceholderResult = result;
+      notifyListenersRenderComplete();
+    }
+  }
+
   @NotNull
   Set<String> getPendingIds() {
     return myPendingIds;
@@ -425,7 +507,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    * {@link ModelListener#modelChanged(NlModel)}.
    */
   protected void updateModel() {
-    inflate(true);
+    inflate(true, createRenderResultKey(getFile(), myConfiguration));
     notifyListenersModelUpdateComplete();
   }
 
@@ -554,11 +636,17 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     ChangeType changeType = myModificationTrigger;
     myModificationTrigger = null;
     long renderStartTimeMs = System.currentTimeMillis();
-    boolean inflated = inflate(false);
+    // The key snapshots the whole layout, so it is only built once per render
+    RenderResultCache.Key key = createRenderResultKey(getFile(), myConfiguration);
+    showCachedRenderResult(key);
+    boolean inflated = inflate(false, key);
 
-    synchronized (RENDERING_LOCK) {
+    synchronized (myRenderingLock) {
       if (myRenderTask != null) {
         RenderResult result = myRenderTask.render();
+        if (result != null && myRenderTaskKey != null) {
+          RenderService.get(myFacet).getResultCache().put(myRenderTaskKey, result);
+        }
         // When the layout was inflated in this same call, we do not have to update the hierarchy again
         if (!inflated) {
           updateHierarchy(result);
@@ -566,6 +654,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
         myRenderResultLock.writeLock().lock();
         try {
           myRenderResult = result;
+          myPlaceholderResult = null;
           // Downgrade the write lock to read lock
           myRenderResultLock.readLock().lock();
         }
@@ -580,6 +669,9 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
           myRenderResultLock.readLock().unlock();
         }
       }
+      else {
+        myPlaceholderResult = null;
+      }
     }
 
     notifyListenersRenderComplete();
@@ -616,7 +708,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    */
   public void requestLayout(boolean animate) {
     if (myRenderTask != null) {
-      synchronized (RENDERING_LOCK) {
+      synchronized (myRenderingLock) {
         RenderResult result = myRenderTask.layout();
         if (result != null) {
           updateHierarchy(result);
@@ -631,7 +723,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
    */
   @SuppressWarnings("unused")
   public void paint(@NotNull Graphics2D graphics) {
-    synchronized (RENDERING_LOCK) {
+    synchronized (myRenderingLock) {
       if (myRenderTask != null) {
         myRenderTask.render(graphics);
       }
@@ -704,6 +796,15 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
   }
 
+  /**
+   * Returns a recent result for the state of the layout being rendered, to paint while that render is running, or null. It has no view
+   * hierarchy, only an image.
+   */
+  @Nullable
+  public RenderResult getPlaceholderResult() {
+    return myPlaceholderResult;
+  }
+
   @NotNull
   public Map<Object, PropertiesMap> getDefaultProperties() {
     myRenderResultLock.readLock().lock();
@@ -1859,7 +1960,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
     // dispose is called by the project close using the read lock. Invoke the render task dispose later without the lock.
     ApplicationManager.getApplication().invokeLater(() -> {
-      synchronized (RENDERING_LOCK) {
+      synchronized (myRenderingLock) {
         if (myRenderTask != null) {
           myRenderTask.dispose();
           myRenderTask = null;
@@ -1868,6 +1969,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       myRenderResultLock.writeLock().lock();
       try {
         myRenderResult = null;
+        myPlaceholderResult = null;
       } finally {
         myRenderResultLock.writeLock().unlock();
       }
@@ -1892,6 +1994,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
           notifyModified(ChangeType.EDIT);
           break;
         case IMAGE_RESOURCE_CHANGED:
+          RenderService.get(myFacet).getResultCache().clear();
           RefreshRenderAction.clearCache(mySurface);
           break;
         case GRADLE_SYNC:
@@ -1978,9 +2081,34 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
     myModelVersion.increase(reason);
     myModificationTrigger = reason;
+    if (!isLayoutEdit(reason)) {
+      myRenderTaskStale = true;
+      if (reason != ChangeType.CONFIGURATION_CHANGE) {
+        // Cached results are keyed by layout contents, configuration and resource repository version; builds, edits of other
+        // resources (like included layouts) and explicit refreshes are not covered by that
+        RenderService.get(myFacet).getResultCache().clear();
+      }
+    }
     requestModelUpdate();
   }
 
+  /**
+   * Returns whether the given change only affects the layout file itself, in which case the current {@link RenderTask} can be reused
+   * to inflate it again.
+   */
+  private static boolean isLayoutEdit(@NotNull ChangeType reason) {
+    switch (reason) {
+      case RESOURCE_EDIT:
+      case RESOURCE_CHANGED:
+      case BUILD:
+      case CONFIGURATION_CHANGE:
+      case REQUEST_RENDER: // Explicit refresh requests should not reuse anything
+        return false;
+      default:
+        return true;
+    }
+  }
+
   /**
    * Updates the saved values that are used to log user changes to the configuration toolbar.
    */
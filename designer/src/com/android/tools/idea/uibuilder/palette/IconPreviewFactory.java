@@ -45,6 +45,7 @@ import com.intellij.psi.XmlElementFactory;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.PathUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -55,8 +56,12 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.uibuilder.api.PaletteComponentHandler.NO_PREVIEW;
@@ -72,11 +77,16 @@ public class IconPreviewFactory implements Disposable {
   private static final Logger LOG = Logger.getInstance(IconPreviewFactory.class);
   @AndroidDpCoordinate
   private static final int SHADOW_SIZE = 6;
-  private static final int PREVIEW_LIMIT = 4000;
+  /** Number of configurations whose preview images are kept on disk; the least recently used ones are deleted */
+  @VisibleForTesting
+  static final int MAX_CACHED_CONFIGURATIONS = 8;
   private static final int DEFAULT_X_DIMENSION = 1080;
   private static final int DEFAULT_Y_DIMENSION = 1920;
   private static final String DEFAULT_THEME = "AppTheme";
   private static final String PREVIEW_PLACEHOLDER_FILE = "preview.xml";
+  /** File written in a cache directory once all its preview images have been generated */
+  @VisibleForTesting
+  static final String COMPLETE_MARKER_FILE = ".complete";
   private static final String CONTAINER_ID = "TopLevelContainer";
   private static final String LINEAR_LAYOUT = "<LinearLayout\n" +
                                               "    xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
@@ -99,6 +109,26 @@ public class IconPreviewFactory implements Disposable {
   @VisibleForTesting
   long myRenderTimeoutSeconds = 1L;
 
+  /**
+   * Runs {@link #loadInBackground}. Each load renders with its own {@link RenderTask}, so drag images do not wait for it.
+   */
+  @VisibleForTesting
+  final ExecutorService myLoadExecutorService = new ThreadPoolExecutor(0, 1,
+                                                                       60L, TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<>());
+  /**
+   * Adds the render timeout to the preview renders. This is not {@link #myExecutorService}, so drag images are not queued
+   * behind a preview render that hangs.
+   */
+  private final ExecutorService myPreviewRenderExecutorService = new ThreadPoolExecutor(0, 1,
+                                                                                        60L, TimeUnit.SECONDS,
+                                                                                        new LinkedBlockingQueue<>());
+  /** Cache directories of the loads queued or running in {@link #myLoadExecutorService} */
+  private final Set<File> myLoadingCacheDirs = ContainerUtil.newConcurrentSet();
+  /** Cache directories whose background load has finished, so painting the palette does not look at them on disk again */
+  private final Set<File> myLoadedCacheDirs = ContainerUtil.newConcurrentSet();
+  private volatile boolean myDisposed;
+
   private RenderTask myRenderTask;
 
   @Nullable
@@ -124,14 +154,23 @@ public class IconPreviewFactory implements Disposable {
       if (facet == null) {
         return null;
       }
-      RenderService renderService = RenderService.get(facet);
-      RenderLogger logger = renderService.createLogger();
-      myRenderTask = renderService.createTask(null, configuration, logger, null);
+      myRenderTask = createRenderTask(facet, configuration);
+      if (myRenderTask != null) {
+        // Drag images are rendered while the user waits
+        myRenderTask.setPriority(RenderExecutor.Priority.FOREGROUND);
+      }
     }
 
     return myRenderTask;
   }
 
+  @Nullable
+  private static RenderTask createRenderTask(@NotNull AndroidFacet facet, @NotNull Configuration configuration) {
+    RenderService renderService = RenderService.get(facet);
+    RenderLogger logger = renderService.createLogger();
+    return renderService.createTask(null, configuration, logger, null);
+  }
+
   /**
    * Return a component image to display while dragging a component from the palette.
    * Return null if such an image cannot be rendered. The palette must provide a fallback in this case.
@@ -223,12 +262,13 @@ public class IconPreviewFactory implements Disposable {
    * Drop the preview cache for this configuration.
    */
   public void dropCache() {
+    myLoadedCacheDirs.clear();
     FileUtil.delete(getPreviewCacheDir());
   }
 
   /**
    * Load preview images for each component into a file cache.
-   * Each combination of theme, device density, and API level will have its own cache.
+   * Each combination of theme, device density, API level and layoutlib version will have its own cache.
    *
    * @param configuration a hardware configuration to generate previews for
    * @param palette a palette will the components to generate previews of
@@ -243,7 +283,7 @@ public class IconPreviewFactory implements Disposable {
 
   /**
    * Load preview images for each component into a file cache.
-   * Each combination of theme, device density, and API level will have its own cache.
+   * Each combination of theme, device density, API level and layoutlib version will have its own cache.
    *
    * @param configuration a hardware configuration to generate previews for
    * @param palette a palette with the components to generate previews of
@@ -259,36 +299,201 @@ public class IconPreviewFactory implements Disposable {
                @Nullable final List<String> requestedIds,
                @Nullable final List<String> generatedIds) {
     File cacheDir = getPreviewCacheDirForConfiguration(configuration);
+    if (!prepareCacheDir(cacheDir, reload)) {
+      return false;
+    }
+    renderPreviews(configuration, palette, requestedIds, generatedIds, null);
+    return true;
+  }
+
+  /**
+   * Like {@link #load(Configuration, Palette, boolean)}, but renders the preview images on a background thread and returns immediately.
+   * Each category of the palette is rendered in a single layoutlib session; once its images have been saved, the given callback is
+   * invoked on the event dispatch thread, so the palette can show them while the following categories are rendered.
+   * <p>
+   * The cache directory is only looked at on disk by the first call for a configuration, on the background thread. Once that load
+   * has finished, later calls return false right away until the previews are reloaded. A load that did not complete, because a
+   * render timed out, is retried by the next call, e.g. when the palette is shown again.
+   *
+   * @return true if the images are being loaded, false if they have already been loaded
+   */
+  public boolean loadInBackground(@NotNull Configuration configuration,
+                                  @NotNull Palette palette,
+                                  boolean reload,
+                                  @NotNull Runnable categoryLoaded) {
+    return loadInBackground(configuration, palette, reload, categoryLoaded, true);
+  }
+
+  /**
+   * Like {@link #loadInBackground(Configuration, Palette, boolean, Runnable)}, but for testing the callback can be invoked on the
+   * background thread, right after the images of the category have been saved.
+   */
+  @VisibleForTesting
+  boolean loadInBackground(@NotNull Configuration configuration,
+                           @NotNull Palette palette,
+                           boolean reload,
+                           @NotNull Runnable categoryLoaded,
+                           boolean invokeLater) {
+    File cacheDir = getPreviewCacheDirForConfiguration(configuration);
+    if (myLoadingCacheDirs.contains(cacheDir)) {
+      return true;
+    }
+    if (!reload && myLoadedCacheDirs.contains(cacheDir)) {
+      return false;
+    }
+    if (!myLoadingCacheDirs.add(cacheDir)) {
+      return true;
+    }
+    myLoadedCacheDirs.remove(cacheDir);
+    Runnable categoryRendered = invokeLater ? () -> ApplicationManager.getApplication().invokeLater(categoryLoaded) : categoryLoaded;
+    try {
+      myLoadExecutorService.execute(() -> {
+        try {
+          if (!prepareCacheDir(cacheDir, reload) || renderPreviews(configuration, palette, null, null, categoryRendered)) {
+            myLoadedCacheDirs.add(cacheDir);
+          }
+        }
+        finally {
+          myLoadingCacheDirs.remove(cacheDir);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // Disposed
+      myLoadingCacheDirs.remove(cacheDir);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the preview images have to be generated in the given cache directory, deleting the existing ones when reloading.
+   */
+  private static boolean prepareCacheDir(@NotNull File cacheDir, boolean reload) {
     String[] files = cacheDir.list();
     if (files != null && files.length > 0) {
-      // The previews have already been generated.
-      if (!reload) {
+      // The previews have already been generated, unless the generation was interrupted.
+      if (!reload && new File(cacheDir, COMPLETE_MARKER_FILE).exists()) {
+        //noinspection ResultOfMethodCallIgnored
+        cacheDir.setLastModified(System.currentTimeMillis());
         return false;
       }
       FileUtil.delete(cacheDir);
     }
-    ApplicationManager.getApplication().runReadAction(new Computable<Void>() {
-      @Override
-      public Void compute() {
-        List<StringBuilder> sources = Lists.newArrayList();
-        loadSources(sources, requestedIds, palette.getItems());
-        for (StringBuilder source : sources) {
-          String preview = String.format(LINEAR_LAYOUT, CONTAINER_ID, source);
-          addResultToCache(renderImage(myExecutorService, myRenderTimeoutSeconds, getRenderTask(configuration), preview), generatedIds,
-                           configuration);
+    pruneCache(cacheDir);
+    return true;
+  }
+
+  /**
+   * Deletes the least recently used configuration caches, keeping room for the given one.
+   */
+  private static void pruneCache(@NotNull File keptCacheDir) {
+    File[] themeDirs = getPreviewCacheDir().listFiles(File::isDirectory);
+    if (themeDirs == null) {
+      return;
+    }
+    List<File> cacheDirs = Lists.newArrayList();
+    for (File themeDir : themeDirs) {
+      File[] dirs = themeDir.listFiles(File::isDirectory);
+      if (dirs != null) {
+        cacheDirs.addAll(Arrays.asList(dirs));
+      }
+    }
+    cacheDirs.remove(keptCacheDir);
+    if (cacheDirs.size() < MAX_CACHED_CONFIGURATIONS) {
+      return;
+    }
+    cacheDirs.sort(Comparator.comparingLong(File::lastModified).reversed());
+    for (File cacheDir : cacheDirs.subList(MAX_CACHED_CONFIGURATIONS - 1, cacheDirs.size())) {
+      FileUtil.delete(cacheDir);
+    }
+    for (File themeDir : themeDirs) {
+      String[] files = themeDir.list();
+      if (files != null && files.length == 0) {
+        FileUtil.delete(themeDir);
+      }
+    }
+  }
+
+  /**
+   * Renders the previews of the palette one category at a time, with a render task of its own, and saves them in the cache.
+   * A render that takes longer than {@link #myRenderTimeoutSeconds} ends the generation before it is marked complete.
+   *
+   * @return false if the generation was not marked complete because a render timed out or the factory was disposed
+   */
+  private boolean renderPreviews(@NotNull Configuration configuration,
+                                 @NotNull Palette palette,
+                                 @Nullable List<String> requestedIds,
+                                 @Nullable List<String> generatedIds,
+                                 @Nullable Runnable categoryRendered) {
+    AndroidFacet facet = AndroidFacet.getInstance(configuration.getModule());
+    if (facet == null) {
+      return true;
+    }
+    List<StringBuilder> sources = Lists.newArrayList();
+    ApplicationManager.getApplication().runReadAction(() -> loadSources(sources, requestedIds, palette.getItems()));
+    RenderTask renderTask = createRenderTask(facet, configuration);
+    if (renderTask == null) {
+      return true;
+    }
+    boolean timedOut = false;
+    try {
+      for (StringBuilder source : sources) {
+        if (myDisposed) {
+          return false;
+        }
+        if (source.length() == 0) {
+          continue;
+        }
+        String preview = String.format(LINEAR_LAYOUT, CONTAINER_ID, source);
+        ApplicationManager.getApplication().runReadAction(() -> setPreviewFile(renderTask, preview));
+        RenderResult result = null;
+        AtomicBoolean abandoned = new AtomicBoolean();
+        try {
+          result = myPreviewRenderExecutorService.submit(() -> inflateAndRender(renderTask, abandoned))
+            .get(myRenderTimeoutSeconds, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e) {
+          // http://b.android.com/229723: the render is still running with this task, so stop here and leave the task to it, unless it
+          // just returned. Without the marker the generation is redone next time.
+          LOG.debug(e);
+          timedOut = abandoned.compareAndSet(false, true);
+          return false;
+        }
+        catch (InterruptedException | ExecutionException e) {
+          LOG.debug(e);
+        }
+        RenderResult rendered = result;
+        ApplicationManager.getApplication().runReadAction(() -> {
+          addResultToCache(rendered, generatedIds, configuration);
+        });
+        if (categoryRendered != null) {
+          categoryRendered.run();
         }
-        return null;
       }
-    });
-    return true;
+      File marker = new File(getPreviewCacheDirForConfiguration(configuration), COMPLETE_MARKER_FILE);
+      FileUtil.createIfDoesntExist(marker);
+      return true;
+    }
+    finally {
+      // A render that timed out disposes the task once it returns
+      if (!timedOut) {
+        renderTask.dispose();
+      }
+    }
   }
 
-  private static void loadSources(@NotNull List<StringBuilder> sources, @Nullable List<String> ids, List<Palette.BaseItem> items) {
+  @VisibleForTesting
+  static void loadSources(@NotNull List<StringBuilder> sources, @Nullable List<String> ids, List<Palette.BaseItem> items) {
     boolean previousRenderedSeparately = false;
     for (Palette.BaseItem base : items) {
       if (base instanceof Palette.Group) {
         Palette.Group group = (Palette.Group) base;
+        // Render each category in its own session
+        sources.add(new StringBuilder());
         loadSources(sources, ids, group.getItems());
+        // and do not add the items following it to its session either
+        previousRenderedSeparately = true;
       }
       else if (base instanceof Palette.Item) {
         Palette.Item item = (Palette.Item) base;
@@ -296,7 +501,6 @@ public class IconPreviewFactory implements Disposable {
         if (!preview.equals(NO_PREVIEW)) {
           StringBuilder last = sources.isEmpty() ? null : sources.get(sources.size() - 1);
           if (last == null ||
-              last.length() > PREVIEW_LIMIT ||
               (last.length() > 0 && (item.isPreviewRenderedSeparately() || previousRenderedSeparately))) {
             last = new StringBuilder();
             sources.add(last);
@@ -311,8 +515,9 @@ public class IconPreviewFactory implements Disposable {
     }
   }
 
+  @VisibleForTesting
   @NotNull
-  private static File getPreviewCacheDir() {
+  static File getPreviewCacheDir() {
     return new File(
       PathUtil.getCanonicalPath(PathManager.getSystemPath()) + File.separator +
       ANDROID_PALETTE + File.separator +
@@ -320,8 +525,9 @@ public class IconPreviewFactory implements Disposable {
       "image-cache");
   }
 
+  @VisibleForTesting
   @NotNull
-  private static File getPreviewCacheDirForConfiguration(@NotNull Configuration configuration) {
+  static File getPreviewCacheDirForConfiguration(@NotNull Configuration configuration) {
     int density = configuration.getDensity().getDpiValue();
     State state = configuration.getDeviceState();
     Screen screen = state != null ? state.getHardware().getScreen() : null;
@@ -343,7 +549,7 @@ public class IconPreviewFactory implements Disposable {
     String theme = getTheme(configuration);
     String apiVersion = getApiVersion(configuration);
     String cacheFolder = theme + File.separator +
-                         xDimension + "x" + yDimension + "-" + density + "-" + apiVersion;
+                         xDimension + "x" + yDimension + "-" + density + "-" + apiVersion + "-" + getLayoutlibVersion(configuration);
     return new File(getPreviewCacheDir(), cacheFolder);
   }
 
@@ -365,6 +571,15 @@ public class IconPreviewFactory implements Disposable {
     return target == null ? SdkVersionInfo.HIGHEST_KNOWN_STABLE_API + "U" : target.getVersion().getApiString();
   }
 
+  /**
+   * Returns the revision of the platform the configuration renders with, which is also the version of its layoutlib.
+   */
+  @NotNull
+  private static String getLayoutlibVersion(@NotNull Configuration configuration) {
+    IAndroidTarget target = configuration.getTarget();
+    return target == null ? "rU" : "r" + target.getRevision();
+  }
+
   @Nullable
   private static BufferedImage addResultToCache(@Nullable RenderResult result, @Nullable List<String> ids, @NotNull Configuration configuration) {
     if (result == null || result.getRenderedImage() == null || result.getRootViews().isEmpty()) {
@@ -383,6 +598,19 @@ public class IconPreviewFactory implements Disposable {
     if (renderTask == null) {
       return null;
     }
+    setPreviewFile(renderTask, xml);
+
+    try {
+      return executorService.submit(() -> inflateAndRender(renderTask)).get(timeoutSeconds, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException | ExecutionException | TimeoutException e) {
+      LOG.debug(e);
+    }
+
+    return null;
+  }
+
+  private static void setPreviewFile(@NotNull RenderTask renderTask, @NotNull String xml) {
     PsiFile file = PsiFileFactory.getInstance(renderTask.getModule().getProject()).createFileFromText(PREVIEW_PLACEHOLDER_FILE, XmlFileType.INSTANCE, xml);
 
     renderTask.setPsiFile(file);
@@ -390,28 +618,44 @@ public class IconPreviewFactory implements Disposable {
     renderTask.setDecorations(false);
     renderTask.setRenderingMode(SessionParams.RenderingMode.V_SCROLL);
     renderTask.setFolderType(ResourceFolderType.LAYOUT);
+  }
+
+  @Nullable
+  private static RenderResult inflateAndRender(@NotNull RenderTask renderTask) {
+    renderTask.inflate();
+    //noinspection deprecation
+    return renderTask.render();
+  }
 
+  /**
+   * Like {@link #inflateAndRender(RenderTask)}, but disposes the task when it returns if the caller stopped waiting for it before, instead
+   * of releasing its session while layoutlib is still using it. This also runs after the factory was disposed, as shutting down the
+   * executor lets it finish.
+   *
+   * @param abandoned set by the caller when it stops waiting, unless this already set it on return
+   */
+  @Nullable
+  private static RenderResult inflateAndRender(@NotNull RenderTask renderTask, @NotNull AtomicBoolean abandoned) {
     try {
-      return executorService.submit(() -> {
-        renderTask.inflate();
-        //noinspection deprecation
-        return renderTask.render();
-      }).get(timeoutSeconds, TimeUnit.SECONDS);
+      return inflateAndRender(renderTask);
     }
-    catch (InterruptedException | ExecutionException | TimeoutException e) {
-      LOG.debug(e);
+    finally {
+      if (!abandoned.compareAndSet(false, true)) {
+        renderTask.dispose();
+      }
     }
-
-    return null;
   }
 
   @Override
   public void dispose() {
+    myDisposed = true;
     if (myRenderTask != null) {
       myRenderTask.dispose();
       myRenderTask = null;
     }
     myExecutorService.shutdown();
+    myLoadExecutorService.shutdown();
+    myPreviewRenderExecutorService.shutdown();
   }
 
   private static class ImageAccumulator {
@@ -636,14 +636,11 @@ public class NlOldPalettePanel extends JPanel
       if (myMode == Mode.PREVIEW && myDesignSurface != null) {
         if (myConfiguration != null) {
           // We want to delay the generation of the preview images as much as possible because it is time consuming.
-          // Do this just before the images are needed for painting.
-          if (myIconFactory.load(myConfiguration, myModel.getPalette(myDesignSurface.getLayoutType()), false)) {
-            // If we just generated the preview images, we must invalidate the row heights that the tree is
-            // caching internally. Then invalidate and wait for the next buildDisplayList.
-            // Otherwise some images may be cropped.
-            invalidateUI();
-            return;
-          }
+          // Do this just before the images are needed for painting. The images are generated in the background; as they
+          // become available we must invalidate the row heights that the tree is caching internally, otherwise some images
+          // may be cropped.
+          myIconFactory.loadInBackground(myConfiguration, myModel.getPalette(myDesignSurface.getLayoutType()), false,
+                                         NlOldPalettePanel.this::invalidateUI);
         }
       }
       super.paintComponent(g);
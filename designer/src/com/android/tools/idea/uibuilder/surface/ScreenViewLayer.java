@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.uibuilder.surface;
 
+import com.android.annotations.VisibleForTesting;
 import com.android.tools.idea.rendering.ImagePool;
 import com.android.tools.idea.rendering.ImageUtils;
 import com.android.tools.idea.rendering.RenderResult;
@@ -25,9 +26,31 @@ import org.jetbrains.annotations.Nullable;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-/** Responsible for painting a screen view */
+/**
+ * Responsible for painting a screen view.
+ * <p/>
+ * Small images are scaled as a whole. When the scaled image would be large, like a tall scrolling layout on a high density device or
+ * a zoomed in layout, it is split in tiles instead: only the tiles intersecting the visible part of the surface are scaled, and recently
+ * painted tiles are kept for a few zoom levels, within a bounded amount of memory per surface.
+ */
 public class ScreenViewLayer extends Layer {
+  /** Size of the tiles, in device pixels */
+  @VisibleForTesting
+  static final int TILE_SIZE = 512;
+  /** Scaled images with more pixels than this are painted in tiles */
+  private static final long MIN_TILED_PIXELS = 4_000_000;
+  /** Maximum number of pixels kept in cached tiles; about 32MB for ARGB images */
+  @VisibleForTesting
+  static final long MAX_TILE_PIXELS = 8_000_000;
+  /** Pool shared by all the layers, so released tiles of one surface can be reused by another */
+  private static final ImagePool TILE_POOL = new ImagePool();
+
   private final ScreenView myScreenView;
   /** The source image we scaled from */
   @Nullable private ImagePool.Image myImage;
@@ -38,6 +61,10 @@ public class ScreenViewLayer extends Layer {
   /** The scale at which we cached the scaled image  */
   private double myCachedScale;
 
+  /** Cached tiles of the source image, in least recently used order */
+  private final LinkedHashMap<TileKey, ImagePool.Image> myTiles = new LinkedHashMap<>(16, 0.75f, true);
+  private long myTilePixels;
+
   private Rectangle mySizeRectangle = new Rectangle();
   private Dimension myScreenViewSize = new Dimension();
 
@@ -97,11 +124,16 @@ public class ScreenViewLayer extends Layer {
       return;
     }
 
-    RenderResult renderResult = myScreenView.getModel().getRenderResult();
+    // While the model renders a state that was rendered recently, paint the cached image of that state
+    RenderResult renderResult = myScreenView.getModel().getPlaceholderResult();
+    if (renderResult == null || !renderResult.hasImage()) {
+      renderResult = myScreenView.getModel().getRenderResult();
+    }
     if (renderResult != null && renderResult.hasImage() && renderResult != myLastRenderResult) {
       myLastRenderResult = renderResult;
       myImage = renderResult.getRenderedImage();
       myScaledImage = null;
+      clearTiles();
     }
 
     if (myImage == null) {
@@ -109,7 +141,13 @@ public class ScreenViewLayer extends Layer {
     }
 
     double scale = myScreenView.getScale();
-    if (myScaledImage == null || myCachedScale != scale) {
+    double tileScale = getTileScale(scale);
+    boolean tiled = (long)(myImage.getWidth() * tileScale) * (long)(myImage.getHeight() * tileScale) > MIN_TILED_PIXELS;
+    if (tiled) {
+      myScaledImage = null;
+    }
+    else if (myScaledImage == null || myCachedScale != scale) {
+      clearTiles();
       setNewImage(myImage, scale);
     }
 
@@ -120,10 +158,149 @@ public class ScreenViewLayer extends Layer {
       g.clip(screenShape);
     }
 
-    UIUtil.drawImage(g, myScaledImage, myScreenView.getX(), myScreenView.getY(), null);
+    if (tiled) {
+      paintTiles(g, myImage, scale, tileScale, mySizeRectangle);
+    }
+    else {
+      UIUtil.drawImage(g, myScaledImage, myScreenView.getX(), myScreenView.getY(), null);
+    }
 
     if (prevClip != null) {
       g.setClip(prevClip);
     }
   }
+
+  /**
+   * Returns the scale of the tiles: like the retina scaled image, tiles have twice the resolution on retina displays, unless the image
+   * is being scaled up significantly.
+   */
+  private static double getTileScale(double scale) {
+    return scale <= 1.01 && UIUtil.isRetina() && ImageUtils.supportsRetina() ? 2 * scale : scale;
+  }
+
+  /**
+   * Paints the tiles of the given image intersecting the visible rectangle, scaling the ones that are not cached yet.
+   */
+  @VisibleForTesting
+  void paintTiles(@NotNull Graphics2D g,
+                  @NotNull ImagePool.Image image,
+                  double scale,
+                  double tileScale,
+                  @NotNull Rectangle visible) {
+    // Number of device pixels per surface pixel
+    double ratio = tileScale / scale;
+    int x = myScreenView.getX();
+    int y = myScreenView.getY();
+    int scaledWidth = (int)Math.ceil(image.getWidth() * tileScale);
+    int scaledHeight = (int)Math.ceil(image.getHeight() * tileScale);
+
+    int firstColumn = Math.max(0, (int)((visible.x - x) * ratio) / TILE_SIZE);
+    // Floor divisions, so a visible rectangle ending before the image does not select the first tile
+    int lastColumn = Math.min((scaledWidth - 1) / TILE_SIZE,
+                              Math.floorDiv((int)Math.ceil((visible.x + visible.width - x) * ratio - 1), TILE_SIZE));
+    int firstRow = Math.max(0, (int)((visible.y - y) * ratio) / TILE_SIZE);
+    int lastRow = Math.min((scaledHeight - 1) / TILE_SIZE,
+                           Math.floorDiv((int)Math.ceil((visible.y + visible.height - y) * ratio - 1), TILE_SIZE));
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        ImagePool.Image tile = getTile(image, tileScale, column, row, scaledWidth, scaledHeight);
+        int left = column * TILE_SIZE;
+        int top = row * TILE_SIZE;
+        tile.drawImageTo(g,
+                         x + (int)Math.round(left / ratio), y + (int)Math.round(top / ratio),
+                         x + (int)Math.round((left + tile.getWidth()) / ratio), y + (int)Math.round((top + tile.getHeight()) / ratio),
+                         0, 0, tile.getWidth(), tile.getHeight());
+      }
+    }
+  }
+
+  @NotNull
+  private ImagePool.Image getTile(@NotNull ImagePool.Image image, double tileScale, int column, int row, int scaledWidth, int scaledHeight) {
+    TileKey key = new TileKey(tileScale, column, row);
+    ImagePool.Image tile = myTiles.get(key);
+    if (tile != null) {
+      return tile;
+    }
+
+    int left = column * TILE_SIZE;
+    int top = row * TILE_SIZE;
+    int width = Math.min(TILE_SIZE, scaledWidth - left);
+    int height = Math.min(TILE_SIZE, scaledHeight - top);
+    // Fast scaling if in the middle of resizing
+    Object interpolation = myScreenView.getSurface().isCanvasResizing()
+                           ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                           : RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+    tile = TILE_POOL.createPainted(width, height, BufferedImage.TYPE_INT_ARGB, tileGraphics -> {
+      tileGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+      tileGraphics.translate(-left, -top);
+      tileGraphics.scale(tileScale, tileScale);
+      // Only the part of the image covered by the tile is scaled, the rest is clipped
+      image.drawImageTo(tileGraphics, 0, 0, image.getWidth(), image.getHeight(), 0, 0, image.getWidth(), image.getHeight());
+    });
+
+    myTiles.put(key, tile);
+    myTilePixels += (long)width * height;
+    Iterator<Map.Entry<TileKey, ImagePool.Image>> iterator = myTiles.entrySet().iterator();
+    // Never evict the tile that was just added; the tiles painted before it in this pass have already been drawn
+    while (myTilePixels > MAX_TILE_PIXELS && myTiles.size() > 1) {
+      ImagePool.Image evicted = iterator.next().getValue();
+      myTilePixels -= (long)evicted.getWidth() * evicted.getHeight();
+      iterator.remove();
+    }
+    return tile;
+  }
+
+  /**
+   * Returns the column and row of the cached tiles, from the least to the most recently painted
+   */
+  @VisibleForTesting
+  @NotNull
+  List<Point> getCachedTiles() {
+    List<Point> tiles = new ArrayList<>(myTiles.size());
+    for (TileKey key : myTiles.keySet()) {
+      tiles.add(new Point(key.myColumn, key.myRow));
+    }
+    return tiles;
+  }
+
+  @VisibleForTesting
+  long getCachedTilePixels() {
+    return myTilePixels;
+  }
+
+  private void clearTiles() {
+    // The images are returned to the pool once they are no longer referenced
+    myTiles.clear();
+    myTilePixels = 0;
+  }
+
+  private static final class TileKey {
+    private final double myScale;
+    private final int myColumn;
+    private final int myRow;
+
+    private TileKey(double scale, int column, int row) {
+      myScale = scale;
+      myColumn = column;
+      myRow = row;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      TileKey key = (TileKey)o;
+      return Double.compare(key.myScale, myScale) == 0 && myColumn == key.myColumn && myRow == key.myRow;
+    }
+
+    @Override
+    public int hashCode() {
+      long scaleBits = Double.doubleToLongBits(myScale);
+      int result = (int)(scaleBits ^ (scaleBits >>> 32));
+      result = 31 * result + myColumn;
+      result = 31 * result + myRow;
+      return result;
+    }
+  }
 }
@@ -17,6 +17,7 @@ package com.android.tools.idea;
 
 import com.android.testutils.JarTestSuiteRunner;
 import com.android.testutils.TestUtils;
+import com.android.tools.idea.uibuilder.model.NlModelRenderLatencyBenchmark;
 import com.android.tools.idea.uibuilder.property.editors.support.StyleFilterTest;
 import com.android.tools.idea.uibuilder.structure.NlComponentTreeTest;
 import com.android.tools.idea.uibuilder.surface.DesignSurfaceTest;
@@ -36,7 +37,8 @@ import java.nio.file.Paths;
   DesignSurfaceTest.class, // flaky in bazel
   StyleFilterTest.class,
   NlComponentTreeTest.class,
-  InteractionManagerTest.class
+  InteractionManagerTest.class,
+  NlModelRenderLatencyBenchmark.class // timings only, run on its own
 })
 public class DesignerTestSuite {
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.model;
+
+import com.android.tools.idea.uibuilder.fixtures.ComponentDescriptor;
+import com.intellij.openapi.command.WriteCommandAction;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_LAYOUT_WIDTH;
+
+/**
+ * Measures the time from an edit of the layout file to a render result that reflects it, on the layouts of
+ * {@link NlModelRenderTaskReuseTest}, against an explicit refresh with a new render task. The best time of each is printed.
+ * <p/>
+ * Timings depend on the machine, so this is excluded from {@link com.android.tools.idea.DesignerTestSuite} and run on its own, from the
+ * IDE or with the render-latency-benchmark target.
+ */
+public class NlModelRenderLatencyBenchmark extends NlModelRenderTaskReuseTest {
+  private static final int ROUNDS = 10;
+
+  @Override
+  protected void runEdits(@NotNull String name, @NotNull ComponentDescriptor root) {
+    NlModel model = render(name, root);
+
+    NlComponent edited = findById(model, "edited");
+    long editNs = Long.MAX_VALUE;
+    long refreshNs = Long.MAX_VALUE;
+    // The first rounds warm up the JIT and layoutlib, only keep the best of each.
+    for (int round = 1; round <= ROUNDS; round++) {
+      int width = 100 + round;
+      long start = System.nanoTime();
+      WriteCommandAction.runWriteCommandAction(getProject(), () -> edited.setAttribute(ANDROID_URI, ATTR_LAYOUT_WIDTH, width + "px"));
+      model.notifyModified(NlModel.ChangeType.EDIT);
+      model.render();
+      editNs = Math.min(editNs, System.nanoTime() - start);
+      assertTrue(model.getRenderResult().getRenderResult().isSuccess());
+      assertEquals(width, findById(model, "edited").w);
+
+      start = System.nanoTime();
+      model.notifyModified(NlModel.ChangeType.REQUEST_RENDER);
+      model.render();
+      refreshNs = Math.min(refreshNs, System.nanoTime() - start);
+      assertTrue(model.getRenderResult().getRenderResult().isSuccess());
+    }
+
+    System.out.println(String.format("%1$s: edit to pixels %2$d ms, refresh with a new render task %3$d ms", name,
+                                     TimeUnit.NANOSECONDS.toMillis(editNs), TimeUnit.NANOSECONDS.toMillis(refreshNs)));
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.model;
+
+import com.android.tools.idea.rendering.RenderTask;
+import com.android.tools.idea.uibuilder.LayoutTestCase;
+import com.android.tools.idea.uibuilder.fixtures.ComponentDescriptor;
+import com.android.tools.idea.uibuilder.surface.DesignSurface;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+
+import static com.android.SdkConstants.*;
+
+/**
+ * Checks that edits of the layout file inflate it again with the model's existing {@link RenderTask}, for a few representative layouts,
+ * while an explicit refresh creates a new task. {@link NlModelRenderLatencyBenchmark} times the same edits.
+ */
+public class NlModelRenderTaskReuseTest extends LayoutTestCase {
+  private static final int EDITS = 3;
+
+  private DesignSurface mySurface;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    mySurface = new DesignSurface(getProject(), false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      Disposer.dispose(mySurface);
+    } finally {
+      super.tearDown();
+    }
+  }
+
+  public void testFlatLayout() {
+    ComponentDescriptor[] children = new ComponentDescriptor[40];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = component(TEXT_VIEW)
+        .id(i == children.length / 2 ? "@+id/edited" : "@+id/text" + i)
+        .width(i == children.length / 2 ? "100px" : VALUE_WRAP_CONTENT)
+        .wrapContentHeight()
+        .text("Item " + i);
+    }
+    runEdits("flat.xml", component(LINEAR_LAYOUT)
+      .withAttribute(ANDROID_URI, ATTR_ORIENTATION, VALUE_VERTICAL)
+      .matchParentWidth()
+      .matchParentHeight()
+      .unboundedChildren(children));
+  }
+
+  public void testNestedLayout() {
+    ComponentDescriptor innermost = component(TEXT_VIEW)
+      .id("@+id/edited")
+      .width("100px")
+      .wrapContentHeight()
+      .text("Innermost");
+    ComponentDescriptor layout = innermost;
+    for (int depth = 0; depth < 12; depth++) {
+      layout = component(depth % 2 == 0 ? FRAME_LAYOUT : LINEAR_LAYOUT)
+        .matchParentWidth()
+        .wrapContentHeight()
+        .unboundedChildren(component(TEXT_VIEW).wrapContentWidth().wrapContentHeight().text("Level " + depth), layout);
+    }
+    runEdits("nested.xml", layout.matchParentHeight());
+  }
+
+  public void testRelativeLayout() {
+    ComponentDescriptor[] children = new ComponentDescriptor[20];
+    for (int i = 0; i < children.length; i++) {
+      ComponentDescriptor child = component(i % 2 == 0 ? TEXT_VIEW : BUTTON)
+        .id(i == children.length - 1 ? "@+id/edited" : "@+id/view" + i)
+        .width(i == children.length - 1 ? "100px" : VALUE_WRAP_CONTENT)
+        .wrapContentHeight()
+        .text("View " + i);
+      if (i > 0) {
+        child.withAttribute(ANDROID_URI, ATTR_LAYOUT_BELOW, "@id/view" + (i - 1));
+      }
+      children[i] = child;
+    }
+    runEdits("relative.xml", component(RELATIVE_LAYOUT)
+      .matchParentWidth()
+      .matchParentHeight()
+      .unboundedChildren(children));
+  }
+
+  /**
+   * Renders the layout, then edits the width of its "edited" view and renders it again.
+   */
+  protected void runEdits(@NotNull String name, @NotNull ComponentDescriptor root) {
+    NlModel model = render(name, root);
+    RenderTask task = model.getRenderTask();
+    assertNotNull(task);
+
+    NlComponent edited = findById(model, "edited");
+    for (int edit = 1; edit <= EDITS; edit++) {
+      int width = 100 + edit;
+      WriteCommandAction.runWriteCommandAction(getProject(), () -> edited.setAttribute(ANDROID_URI, ATTR_LAYOUT_WIDTH, width + "px"));
+      model.notifyModified(NlModel.ChangeType.EDIT);
+      model.render();
+      assertTrue(model.getRenderResult().getRenderResult().isSuccess());
+      assertEquals(width, findById(model, "edited").w);
+      assertSame(task, model.getRenderTask());
+    }
+
+    model.notifyModified(NlModel.ChangeType.REQUEST_RENDER);
+    model.render();
+    assertTrue(model.getRenderResult().getRenderResult().isSuccess());
+    RenderTask refreshed = model.getRenderTask();
+    assertNotNull(refreshed);
+    assertNotSame(task, refreshed);
+  }
+
+  @NotNull
+  protected NlModel render(@NotNull String name, @NotNull ComponentDescriptor root) {
+    NlModel model = model(name, root).build();
+    // Avoid rendering any other components (nav bar and similar) so we do not have dependencies on the Material theme
+    model.getConfiguration().setTheme("android:Theme.NoTitleBar.Fullscreen");
+    mySurface.setModel(model);
+    mySurface.requestRender();
+    assertTrue(model.getRenderResult().getRenderResult().isSuccess());
+    return model;
+  }
+
+  @NotNull
+  protected static NlComponent findById(@NotNull NlModel model, @NotNull String id) {
+    NlComponent component = model.flattenComponents().filter(c -> id.equals(c.getId())).findFirst().orElse(null);
+    assertNotNull("No component with id " + id, component);
+    return component;
+  }
+}
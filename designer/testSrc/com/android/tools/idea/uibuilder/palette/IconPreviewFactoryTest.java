@@ -40,12 +40,15 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.android.SdkConstants.RELATIVE_LAYOUT;
 import static java.io.File.separator;
 
 public class IconPreviewFactoryTest extends LayoutTestCase {
   private static final float MAX_PERCENT_DIFFERENT = 6.5f;
+  private Palette myPalette;
   private Palette.Item myItem;
   private ScreenView myScreenView;
   private IconPreviewFactory myFactory;
@@ -53,9 +56,9 @@ public class IconPreviewFactoryTest extends LayoutTestCase {
   @Override
   public void setUp() throws Exception {
     super.setUp();
-    Palette palette = loadPalette();
+    myPalette = loadPalette();
     List<Palette.Item> items = new ArrayList<>();
-    palette.accept(items::add);
+    myPalette.accept(items::add);
     myItem = items.get(0);
 
     NlModel model = createModel();
@@ -92,6 +95,138 @@ public class IconPreviewFactoryTest extends LayoutTestCase {
     assertNull(myFactory.renderDragImage(myItem, myScreenView));
   }
 
+  public void testLoad() throws Exception {
+    Configuration configuration = myScreenView.getConfiguration();
+    List<String> requestedIds = new ArrayList<>();
+    List<String> generatedIds = new ArrayList<>();
+    try {
+      assertTrue(myFactory.load(configuration, myPalette, true, requestedIds, generatedIds));
+      assertFalse(requestedIds.isEmpty());
+      assertFalse(generatedIds.isEmpty());
+
+      // The previews are cached until they are reloaded
+      assertFalse(myFactory.load(configuration, myPalette, false));
+      assertTrue(myFactory.load(configuration, myPalette, true));
+    }
+    finally {
+      myFactory.dropCache();
+    }
+  }
+
+  public void testLoadInBackgroundNotifiesEachCategory() throws Exception {
+    Configuration configuration = myScreenView.getConfiguration();
+    File marker = new File(IconPreviewFactory.getPreviewCacheDirForConfiguration(configuration), IconPreviewFactory.COMPLETE_MARKER_FILE);
+    AtomicInteger categories = new AtomicInteger();
+    AtomicBoolean markedEarly = new AtomicBoolean();
+    try {
+      assertTrue(myFactory.loadInBackground(configuration, myPalette, true, () -> {
+        categories.incrementAndGet();
+        if (marker.exists()) {
+          markedEarly.set(true);
+        }
+      }, false));
+      waitForLoads(myFactory);
+
+      List<StringBuilder> sources = new ArrayList<>();
+      IconPreviewFactory.loadSources(sources, null, myPalette.getItems());
+      assertEquals(sources.stream().filter(source -> source.length() > 0).count(), categories.get());
+      // The generation is only marked complete once the last category has been saved
+      assertFalse(markedEarly.get());
+      assertTrue(marker.exists());
+    }
+    finally {
+      myFactory.dropCache();
+    }
+  }
+
+  public void testLoadInBackgroundLooksAtCacheOnce() throws Exception {
+    Configuration configuration = myScreenView.getConfiguration();
+    File cacheDir = IconPreviewFactory.getPreviewCacheDirForConfiguration(configuration);
+    AtomicInteger categories = new AtomicInteger();
+    IconPreviewFactory nextSession = new IconPreviewFactory();
+    try {
+      assertTrue(myFactory.loadInBackground(configuration, myPalette, true, categories::incrementAndGet, false));
+      waitForLoads(myFactory);
+      int loaded = categories.get();
+      assertTrue(loaded > 0);
+
+      // Painting the palette again does not look at the cache directory
+      long lastModified = TimeUnit.DAYS.toMillis(1);
+      assertTrue(cacheDir.setLastModified(lastModified));
+      assertFalse(myFactory.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+      assertFalse(myFactory.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+      assertEquals(lastModified, cacheDir.lastModified());
+
+      // A new session finds the complete cache on disk, marks it as recently used and does not render it again
+      assertTrue(nextSession.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+      waitForLoads(nextSession);
+      assertTrue(cacheDir.lastModified() > lastModified);
+      assertEquals(loaded, categories.get());
+      assertFalse(nextSession.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+    }
+    finally {
+      Disposer.dispose(nextSession);
+      myFactory.dropCache();
+    }
+  }
+
+  public void testLoadInBackgroundRetriesAfterTimeout() throws Exception {
+    Configuration configuration = myScreenView.getConfiguration();
+    File marker = new File(IconPreviewFactory.getPreviewCacheDirForConfiguration(configuration), IconPreviewFactory.COMPLETE_MARKER_FILE);
+    AtomicInteger categories = new AtomicInteger();
+    try {
+      myFactory.myRenderTimeoutSeconds = 0L;
+      assertTrue(myFactory.loadInBackground(configuration, myPalette, true, categories::incrementAndGet, false));
+      waitForLoads(myFactory);
+      assertEquals(0, categories.get());
+      assertFalse(marker.exists());
+
+      // The timed out configuration is not marked as loaded, so showing the palette again renders it
+      myFactory.myRenderTimeoutSeconds = Long.MAX_VALUE;
+      assertTrue(myFactory.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+      waitForLoads(myFactory);
+      assertTrue(categories.get() > 0);
+      assertTrue(marker.exists());
+      assertFalse(myFactory.loadInBackground(configuration, myPalette, false, categories::incrementAndGet, false));
+    }
+    finally {
+      myFactory.dropCache();
+    }
+  }
+
+  public void testLoadInBackgroundPrunesLeastRecentlyUsedConfigurations() throws Exception {
+    Configuration configuration = myScreenView.getConfiguration();
+    File cacheRoot = IconPreviewFactory.getPreviewCacheDir();
+    myFactory.dropCache();
+    List<File> cacheDirs = new ArrayList<>();
+    for (int i = 0; i < IconPreviewFactory.MAX_CACHED_CONFIGURATIONS + 2; i++) {
+      // The two least recently used configurations are the only ones of their theme
+      File cacheDir = new File(cacheRoot, (i < 2 ? "OldTheme" : "Theme") + separator + "config" + i);
+      assertTrue(cacheDir.mkdirs());
+      assertTrue(cacheDir.setLastModified(TimeUnit.DAYS.toMillis(1) + TimeUnit.MINUTES.toMillis(i)));
+      cacheDirs.add(cacheDir);
+    }
+    try {
+      assertTrue(myFactory.loadInBackground(configuration, myPalette, false, () -> {}, false));
+      waitForLoads(myFactory);
+
+      assertTrue(IconPreviewFactory.getPreviewCacheDirForConfiguration(configuration).exists());
+      int kept = IconPreviewFactory.MAX_CACHED_CONFIGURATIONS - 1;
+      for (int i = 0; i < cacheDirs.size(); i++) {
+        assertEquals(cacheDirs.get(i).getName(), i >= cacheDirs.size() - kept, cacheDirs.get(i).exists());
+      }
+      assertFalse(new File(cacheRoot, "OldTheme").exists());
+    }
+    finally {
+      myFactory.dropCache();
+    }
+  }
+
+  private static void waitForLoads(@NotNull IconPreviewFactory factory) throws Exception {
+    // Loads run one at a time, so this runs after the ones already queued
+    factory.myLoadExecutorService.submit(() -> {}).get(60L, TimeUnit.SECONDS);
+  }
+
   private Palette loadPalette() throws Exception {
     NlPaletteModel model = NlPaletteModel.get(getProject());
 
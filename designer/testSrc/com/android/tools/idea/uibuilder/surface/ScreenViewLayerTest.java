@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.surface;
+
+import com.android.tools.idea.rendering.ImagePool;
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.android.tools.idea.uibuilder.surface.ScreenViewLayer.MAX_TILE_PIXELS;
+import static com.android.tools.idea.uibuilder.surface.ScreenViewLayer.TILE_SIZE;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScreenViewLayerTest extends TestCase {
+  private static final int SCREEN_X = 10;
+  private static final int SCREEN_Y = 20;
+
+  private final ImagePool myImagePool = new ImagePool();
+  private ScreenViewLayer myLayer;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    DesignSurface surface = mock(DesignSurface.class);
+    when(surface.isCanvasResizing()).thenReturn(false);
+    ScreenView screenView = mock(ScreenView.class);
+    when(screenView.getSurface()).thenReturn(surface);
+    when(screenView.getX()).thenReturn(SCREEN_X);
+    when(screenView.getY()).thenReturn(SCREEN_Y);
+    myLayer = new ScreenViewLayer(screenView);
+  }
+
+  public void testOnlyTilesIntersectingTheClipArePainted() {
+    ImagePool.Image image = createImage(2000, 2000, Color.RED);
+    Graphics2D g = createCanvas(3000, 3000).createGraphics();
+
+    // Device pixels 600 to 1100 horizontally, 0 to 100 vertically
+    myLayer.paintTiles(g, image, 1, 1, new Rectangle(SCREEN_X + 600, SCREEN_Y, 500, 100));
+    assertEquals(Arrays.asList(new Point(1, 0), new Point(2, 0)), myLayer.getCachedTiles());
+
+    // A clip ending exactly on a tile edge does not pull in the next tile
+    myLayer.paintTiles(g, image, 1, 1, new Rectangle(SCREEN_X, SCREEN_Y + TILE_SIZE, TILE_SIZE, TILE_SIZE));
+    assertEquals(Arrays.asList(new Point(1, 0), new Point(2, 0), new Point(0, 1)), myLayer.getCachedTiles());
+
+    // Clips outside of the image paint nothing
+    myLayer.paintTiles(g, image, 1, 1, new Rectangle(SCREEN_X + 2500, SCREEN_Y, 100, 100));
+    myLayer.paintTiles(g, image, 1, 1, new Rectangle(0, SCREEN_Y, SCREEN_X, 100));
+    myLayer.paintTiles(g, image, 1, 1, new Rectangle(SCREEN_X, 0, 100, SCREEN_Y));
+    assertEquals(3, myLayer.getCachedTiles().size());
+
+    // On retina displays, tiles have twice as many pixels as the surface
+    myLayer.paintTiles(g, image, 0.5, 1, new Rectangle(SCREEN_X + 300, SCREEN_Y + 300, 10, 10));
+    assertEquals(new Point(1, 1), last(myLayer.getCachedTiles()));
+  }
+
+  public void testTilesAreSeamless() {
+    checkSeamless(1000, 700, 1.37, 1.37);
+    // Retina: twice as many device pixels as surface pixels
+    checkSeamless(1000, 700, 0.75, 1.5);
+    checkSeamless(777, 1333, 0.33, 0.66);
+    // Tile edges only fall between surface pixels with the ratios above, check the rounding with another one
+    checkSeamless(1500, 1500, 0.7, 1);
+  }
+
+  public void testLeastRecentlyUsedTilesAreEvicted() {
+    // One column of 32 tiles once scaled, slightly more than fit in the cache
+    ImagePool.Image image = createImage(TILE_SIZE / 2, 16 * TILE_SIZE, Color.BLUE);
+    Graphics2D g = createCanvas(TILE_SIZE + SCREEN_X, 100).createGraphics();
+    int tileCount = 32;
+    int cachedTileCount = (int)(MAX_TILE_PIXELS / (TILE_SIZE * TILE_SIZE));
+    assertTrue(cachedTileCount < tileCount);
+
+    for (int row = 0; row < tileCount; row++) {
+      paintTile(g, image, row);
+      assertTrue(myLayer.getCachedTilePixels() <= MAX_TILE_PIXELS);
+    }
+    List<Point> expected = new ArrayList<>();
+    for (int row = tileCount - cachedTileCount; row < tileCount; row++) {
+      expected.add(new Point(0, row));
+    }
+    assertEquals(expected, myLayer.getCachedTiles());
+    assertEquals((long)cachedTileCount * TILE_SIZE * TILE_SIZE, myLayer.getCachedTilePixels());
+
+    // Painting a cached tile makes it the most recently used one
+    Point reused = expected.remove(0);
+    paintTile(g, image, reused.y);
+    expected.add(reused);
+    assertEquals(expected, myLayer.getCachedTiles());
+
+    // Painting an evicted tile evicts the least recently used one
+    paintTile(g, image, 0);
+    expected.remove(0);
+    expected.add(new Point(0, 0));
+    assertEquals(expected, myLayer.getCachedTiles());
+  }
+
+  /**
+   * Paints the whole image in tiles, and checks that there is no gap or overlap between them: the scaled image is fully covered, and
+   * nothing is painted outside of it. The last column and row may cover part of a pixel.
+   */
+  private void checkSeamless(int width, int height, double scale, double tileScale) {
+    ImagePool.Image image = createImage(width, height, Color.GREEN);
+    int scaledWidth = (int)(width * scale);
+    int scaledHeight = (int)(height * scale);
+    BufferedImage canvas = createCanvas(SCREEN_X + scaledWidth + 10, SCREEN_Y + scaledHeight + 10);
+    Graphics2D g = canvas.createGraphics();
+    // Tiles are painted half transparent: gaps stay fully transparent, and overlapping tiles are more opaque
+    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+
+    myLayer.paintTiles(g, image, scale, tileScale, new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+    assertTrue(myLayer.getCachedTiles().size() > 1);
+
+    int expectedColor = canvas.getRGB(SCREEN_X + scaledWidth / 2, SCREEN_Y + scaledHeight / 2);
+    for (int y = 0; y < canvas.getHeight(); y++) {
+      for (int x = 0; x < canvas.getWidth(); x++) {
+        boolean inside = x >= SCREEN_X && x < SCREEN_X + scaledWidth && y >= SCREEN_Y && y < SCREEN_Y + scaledHeight;
+        boolean edge = x == SCREEN_X + scaledWidth && y <= SCREEN_Y + scaledHeight ||
+                       y == SCREEN_Y + scaledHeight && x <= SCREEN_X + scaledWidth;
+        int rgb = canvas.getRGB(x, y);
+        if (inside) {
+          assertEquals("Pixel " + x + "," + y + " at scale " + scale, expectedColor, rgb);
+        }
+        else if (!edge) {
+          assertEquals("Pixel " + x + "," + y + " at scale " + scale, 0, rgb >>> 24);
+        }
+      }
+    }
+  }
+
+  private void paintTile(Graphics2D g, ImagePool.Image image, int row) {
+    myLayer.paintTiles(g, image, 1, 2, new Rectangle(SCREEN_X, SCREEN_Y + row * TILE_SIZE / 2, 1, 1));
+    assertEquals(new Point(0, row), last(myLayer.getCachedTiles()));
+  }
+
+  private ImagePool.Image createImage(int width, int height, Color color) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(color);
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+    return myImagePool.copyOf(image);
+  }
+
+  private static BufferedImage createCanvas(int width, int height) {
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  private static Point last(List<Point> points) {
+    return points.get(points.size() - 1);
+  }
+}
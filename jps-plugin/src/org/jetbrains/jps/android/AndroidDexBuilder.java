@@ -22,6 +22,7 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.HashMap;
@@ -43,6 +44,7 @@ import org.jetbrains.jps.android.model.JpsAndroidSdkProperties;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.BuildRootDescriptor;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
+import org.jetbrains.jps.builders.FileProcessor;
 import org.jetbrains.jps.cmdline.ClasspathBootstrap;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ExternalProcessUtil;
@@ -69,6 +71,7 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.android.AndroidDexBuilder");
   @NonNls private static final String DEX_BUILDER_NAME = "Android Dex";
   @NonNls private static final String PRO_GUARD_BUILDER_NAME = "ProGuard";
+  @NonNls private static final String DEX_INPUTS_FILE_NAME = "dex_inputs.txt";
 
   public AndroidDexBuilder() {
     super(Collections.singletonList(AndroidDexBuildTarget.MyTargetType.INSTANCE));
@@ -82,7 +85,22 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     assert !AndroidJpsUtil.isLightBuild(context);
 
     try {
-      if (!doDexBuild(buildTarget, context, holder.hasDirtyFiles() || holder.hasRemovedFiles(), outputConsumer)) {
+      final List<File> changedClassFiles = new ArrayList<File>();
+      final boolean[] onlyClassFilesChanged = {!holder.hasRemovedFiles() && !context.getScope().isBuildForced(buildTarget)};
+
+      holder.processDirtyFiles(new FileProcessor<BuildRootDescriptor, AndroidDexBuildTarget>() {
+        @Override
+        public boolean apply(AndroidDexBuildTarget target, File file, BuildRootDescriptor root) throws IOException {
+          if (!FileUtilRt.extensionEquals(file.getName(), "class")) {
+            onlyClassFilesChanged[0] = false;
+            return false;
+          }
+          changedClassFiles.add(file);
+          return true;
+        }
+      });
+      if (!doDexBuild(buildTarget, context, holder.hasDirtyFiles() || holder.hasRemovedFiles(), outputConsumer,
+                      onlyClassFilesChanged[0] ? changedClassFiles : null)) {
         throw new StopBuildException();
       }
     }
@@ -102,7 +120,8 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
   private static boolean doDexBuild(@NotNull AndroidDexBuildTarget target,
                                     @NotNull CompileContext context,
                                     boolean hasDirtyFiles,
-                                    @NotNull BuildOutputConsumer outputConsumer) throws IOException {
+                                    @NotNull BuildOutputConsumer outputConsumer,
+                                    @Nullable Collection<File> changedClassFiles) throws IOException {
     final JpsModule module = target.getModule();
 
     final JpsAndroidModuleExtension extension = AndroidJpsUtil.getExtension(module);
@@ -213,7 +232,9 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
         context.processMessage(new ProgressMessage(AndroidJpsBundle.message("android.jps.progress.dex", module.getName())));
         Arrays.sort(files);
 
-        success = runDex(platform, dexOutputDir.getPath(), files, context, module, outputConsumer);
+        // The ProGuard output is a new jar every time, so it can't be dexed incrementally.
+        success = runDex(platform, dexOutputDir.getPath(), files, context, target, outputConsumer,
+                         proGuardOptions == null ? changedClassFiles : null);
       }
       else {
         success = true;
@@ -236,15 +257,59 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     return DEX_BUILDER_NAME;
   }
 
+  /**
+   * @param changedClassFiles the class files changed since the last build, if nothing else changed; dx only dexes those and merges them
+   *                          into the existing output if it was built from the same inputs
+   */
   private static boolean runDex(@NotNull AndroidPlatform platform,
                                @NotNull String outputDir,
                                @NotNull String[] compileTargets,
                                @NotNull CompileContext context,
-                               @NotNull JpsModule module,
-                               @NotNull BuildOutputConsumer outputConsumer) throws IOException {
+                               @NotNull AndroidDexBuildTarget target,
+                               @NotNull BuildOutputConsumer outputConsumer,
+                               @Nullable Collection<File> changedClassFiles) throws IOException {
+    final JpsModule module = target.getModule();
     final String outFilePath = outputDir + File.separatorChar + AndroidCommonUtils.CLASSES_FILE_NAME;
-    return runDex(platform, outFilePath, compileTargets, context, module.getProject(), outputConsumer,
-                  DEX_BUILDER_NAME, module.getName(), module);
+    final DexInvocation invocation = createDexInvocation(platform, outFilePath, compileTargets, context, module.getProject(),
+                                                         outputConsumer, DEX_BUILDER_NAME, module.getName(), module);
+    if (invocation == null) {
+      return false;
+    }
+    final File inputsFile = new File(context.getProjectDescriptor().dataManager.getDataPaths().getTargetDataRoot(target),
+                                     DEX_INPUTS_FILE_NAME);
+    final String inputs = invocation.getInputsDescription();
+
+    if (changedClassFiles != null &&
+        areNewerThan(changedClassFiles, new File(outFilePath)) &&
+        inputsFile.isFile() &&
+        inputs.equals(FileUtil.loadFile(inputsFile, CharsetToolkit.UTF8)) &&
+        invocation.setIncrementalIfPossible()) {
+      LOG.debug("Dexing " + changedClassFiles.size() + " changed classes of " + module.getName() + " incrementally");
+    }
+    // Until dx succeeds, the output doesn't match any inputs.
+    FileUtil.delete(inputsFile);
+
+    final boolean success = invocation.processResult(context, invocation.execute());
+
+    if (success) {
+      FileUtil.writeToFile(inputsFile, inputs);
+    }
+    return success;
+  }
+
+  /**
+   * dx only dexes the classes newer than its existing output when it runs incrementally, so changed classes that are older than it would
+   * be missed.
+   */
+  private static boolean areNewerThan(@NotNull Collection<File> files, @NotNull File outFile) {
+    final long outTimestamp = outFile.lastModified();
+
+    for (File file : files) {
+      if (file.lastModified() <= outTimestamp) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public static boolean runDex(@NotNull AndroidPlatform platform,
@@ -255,9 +320,29 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
                                @NotNull String builderName,
                                @NotNull String srcTargetName,
                                @Nullable JpsModule module) throws IOException {
+    final DexInvocation invocation =
+      createDexInvocation(platform, outFilePath, compileTargets, context, project, outputConsumer, builderName, srcTargetName, module);
+    return invocation != null && invocation.processResult(context, invocation.execute());
+  }
+
+  /**
+   * Prepares a dx invocation like {@link #runDex}, so that it can be run with {@link AndroidParallelToolRunner}.
+   *
+   * @return null if dx cannot be run, which is reported to the context
+   */
+  @Nullable
+  static DexInvocation createDexInvocation(@NotNull AndroidPlatform platform,
+                                           @NotNull String outFilePath,
+                                           @NotNull String[] compileTargets,
+                                           @NotNull CompileContext context,
+                                           @NotNull JpsProject project,
+                                           @NotNull BuildOutputConsumer outputConsumer,
+                                           @NotNull String builderName,
+                                           @NotNull String srcTargetName,
+                                           @Nullable JpsModule module) {
     BuildToolInfo buildToolInfo = platform.getTarget().getBuildToolInfo();
     if (buildToolInfo == null) {
-      return false;
+      return null;
     }
 
     final String dxJarPath = FileUtil.toSystemDependentName(buildToolInfo.getPath(BuildToolInfo.PathId.DX_JAR));
@@ -267,7 +352,7 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     if (testingManager == null && !dxJar.isFile()) {
       context.processMessage(
         new CompilerMessage(builderName, BuildMessage.Kind.ERROR, AndroidJpsBundle.message("android.jps.cannot.find.file", dxJarPath)));
-      return false;
+      return null;
     }
 
     boolean multiDex = false;
@@ -327,66 +412,158 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     classPath.add(ClasspathBootstrap.getResourcePath(AndroidDxRunner.class));
     classPath.add(ClasspathBootstrap.getResourcePath(FileUtilRt.class));
 
-    final File outFile = new File(outFilePath);
-    if (outFile.exists() && !outFile.isDirectory() && !outFile.delete()) {
-      context.processMessage(new CompilerMessage(builderName, BuildMessage.Kind.WARNING,
-                                                 AndroidJpsBundle.message("android.jps.cannot.delete.file", outFilePath)));
-    }
     final String javaExecutable = getJavaExecutable(platform, context, builderName);
 
     if (javaExecutable == null) {
-      return false;
+      return null;
     }
-    final List<String> commandLine = ExternalProcessUtil
-      .buildJavaCommandLine(javaExecutable, AndroidDxRunner.class.getName(),
-                            Collections.<String>emptyList(), classPath, vmOptions, programParamList);
-
-    LOG.info(AndroidCommonUtils.command2string(commandLine));
+    return new DexInvocation(javaExecutable, vmOptions, classPath, programParamList, outFilePath, multiDex,
+                             compileTargets, outputConsumer, builderName, srcTargetName, AndroidParallelToolRunner.getMaxThreads(context));
+  }
 
-    final String[] commands = ArrayUtil.toStringArray(commandLine);
-    final Process process;
+  static final class DexInvocation extends AndroidParallelToolRunner.Invocation<Map<AndroidCompilerMessageKind, List<String>>> {
+    private final String myJavaExecutable;
+    private final List<String> myVmOptions;
+    private final List<String> myClassPath;
+    private final List<String> myProgramParams;
+    private final String myOutFilePath;
+    private final boolean myMultiDex;
+    private final String[] myCompileTargets;
+    private final BuildOutputConsumer myOutputConsumer;
+    private final String myBuilderName;
+    private final String mySrcTargetName;
+    private final int myBuildThreads;
+    private boolean myIncremental;
+
+    private DexInvocation(@NotNull String javaExecutable,
+                          @NotNull List<String> vmOptions,
+                          @NotNull List<String> classPath,
+                          @NotNull List<String> programParams,
+                          @NotNull String outFilePath,
+                          boolean multiDex,
+                          @NotNull String[] compileTargets,
+                          @NotNull BuildOutputConsumer outputConsumer,
+                          @NotNull String builderName,
+                          @NotNull String srcTargetName,
+                          int buildThreads) {
+      myJavaExecutable = javaExecutable;
+      myVmOptions = vmOptions;
+      myClassPath = classPath;
+      myProgramParams = programParams;
+      myOutFilePath = outFilePath;
+      myMultiDex = multiDex;
+      myCompileTargets = compileTargets;
+      myOutputConsumer = outputConsumer;
+      myBuilderName = builderName;
+      mySrcTargetName = srcTargetName;
+      myBuildThreads = buildThreads;
+    }
 
-    if (testingManager != null) {
-      process = testingManager.getCommandExecutor().createProcess(
-        commands, Collections.<String, String>emptyMap());
+    /**
+     * @return the dx arguments that determine the contents of the output, which an incremental run must share with the run that produced
+     * the existing output
+     */
+    @NotNull
+    String getInputsDescription() {
+      return StringUtil.join(myProgramParams, "\n");
     }
-    else {
-      process = Runtime.getRuntime().exec(commands);
+
+    /**
+     * Makes dx only dex the classes that are newer than the existing output, and merge them into it, if that output can be merged into.
+     *
+     * @return whether dx will run incrementally
+     */
+    boolean setIncrementalIfPossible() {
+      myIncremental = !myMultiDex && new File(myOutFilePath).isFile();
+      return myIncremental;
     }
-    final HashMap<AndroidCompilerMessageKind, List<String>> messages = new HashMap<AndroidCompilerMessageKind, List<String>>(3);
-    messages.put(AndroidCompilerMessageKind.ERROR, new ArrayList<String>());
-    messages.put(AndroidCompilerMessageKind.WARNING, new ArrayList<String>());
-    messages.put(AndroidCompilerMessageKind.INFORMATION, new ArrayList<String>());
 
-    AndroidCommonUtils.handleDexCompilationResult(process, StringUtil.join(commandLine, " "), outFilePath, messages, multiDex);
+    @NotNull
+    @Override
+    protected Map<AndroidCompilerMessageKind, List<String>> execute() throws IOException {
+      final HashMap<AndroidCompilerMessageKind, List<String>> messages = new HashMap<AndroidCompilerMessageKind, List<String>>(3);
+      messages.put(AndroidCompilerMessageKind.ERROR, new ArrayList<String>());
+      messages.put(AndroidCompilerMessageKind.WARNING, new ArrayList<String>());
+      messages.put(AndroidCompilerMessageKind.INFORMATION, new ArrayList<String>());
 
-    AndroidJpsUtil.addMessages(context, messages, builderName, srcTargetName);
-    final boolean success = messages.get(AndroidCompilerMessageKind.ERROR).size() == 0;
+      final List<String> programParams = new ArrayList<String>(myProgramParams);
 
-    if (success) {
-      final List<String> srcFiles = new ArrayList<String>();
+      if (myIncremental) {
+        // Options come right after the dx.jar and output paths.
+        programParams.add(2, "--incremental");
+      }
+      else {
+        final File outFile = new File(myOutFilePath);
+        if (outFile.exists() && !outFile.isDirectory() && !outFile.delete()) {
+          messages.get(AndroidCompilerMessageKind.WARNING).add(AndroidJpsBundle.message("android.jps.cannot.delete.file", myOutFilePath));
+        }
+      }
+      final AndroidBuildTestingManager testingManager = AndroidBuildTestingManager.getTestingManager();
 
-      for (String compileTargetPath : compileTargets) {
-        final File compileTarget = new File(compileTargetPath);
+      if (testingManager == null && AndroidDxDaemonClient.isEnabled()) {
+        final Pair<String, String> output = AndroidDxDaemonClient.runDex(myJavaExecutable, myVmOptions, myClassPath, programParams,
+                                                                               myBuildThreads);
 
-        if (compileTarget.isFile()) {
-          srcFiles.add(compileTargetPath);
+        if (output != null) {
+          AndroidCommonUtils.handleDexCompilationResult(output.getFirst(), output.getSecond(), myOutFilePath, messages, myMultiDex);
+          return messages;
         }
-        else if(compileTarget.isDirectory()) {
-          AndroidJpsUtil.processClassFilesAndJarsRecursively(compileTarget, new Processor<File>() {
-            @Override
-            public boolean process(File file) {
-              if (file.isFile()) {
-                srcFiles.add(file.getPath());
+      }
+      final List<String> commandLine = ExternalProcessUtil
+        .buildJavaCommandLine(myJavaExecutable, AndroidDxRunner.class.getName(),
+                              Collections.<String>emptyList(), myClassPath, myVmOptions, programParams);
+
+      LOG.info(AndroidCommonUtils.command2string(commandLine));
+
+      final String[] commands = ArrayUtil.toStringArray(commandLine);
+      final Process process;
+
+      if (testingManager != null) {
+        process = testingManager.getCommandExecutor().createProcess(
+          commands, Collections.<String, String>emptyMap());
+      }
+      else {
+        process = Runtime.getRuntime().exec(commands);
+      }
+      AndroidCommonUtils.handleDexCompilationResult(process, StringUtil.join(commandLine, " "), myOutFilePath, messages, myMultiDex);
+      return messages;
+    }
+
+    @Override
+    protected boolean processResult(@NotNull CompileContext context, @NotNull Map<AndroidCompilerMessageKind, List<String>> messages) {
+      AndroidJpsUtil.addMessages(context, messages, myBuilderName, mySrcTargetName);
+      final boolean success = messages.get(AndroidCompilerMessageKind.ERROR).size() == 0;
+
+      if (success) {
+        final List<String> srcFiles = new ArrayList<String>();
+
+        for (String compileTargetPath : myCompileTargets) {
+          final File compileTarget = new File(compileTargetPath);
+
+          if (compileTarget.isFile()) {
+            srcFiles.add(compileTargetPath);
+          }
+          else if(compileTarget.isDirectory()) {
+            AndroidJpsUtil.processClassFilesAndJarsRecursively(compileTarget, new Processor<File>() {
+              @Override
+              public boolean process(File file) {
+                if (file.isFile()) {
+                  srcFiles.add(file.getPath());
+                }
+                return true;
               }
-              return true;
-            }
-          });
+            });
+          }
         }
+        myOutputConsumer.registerOutputFile(new File(myOutFilePath), srcFiles);
       }
-      outputConsumer.registerOutputFile(outFile, srcFiles);
+      return success;
+    }
+
+    @Override
+    protected void processException(@NotNull CompileContext context, @NotNull IOException e) {
+      AndroidJpsUtil.reportExceptionError(context, null, e, myBuilderName);
     }
-    return success;
   }
 
   @Nullable
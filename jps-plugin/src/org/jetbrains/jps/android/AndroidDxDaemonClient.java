@@ -0,0 +1,257 @@
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.android.compiler.tools.AndroidDxDaemon;
+import org.jetbrains.android.util.AndroidCommonUtils;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.incremental.ExternalProcessUtil;
+import org.jetbrains.jps.incremental.Utils;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs dx in an {@link AndroidDxDaemon}, which outlives the build process, so that dex steps don't start a new JVM.
+ * There is a daemon for every combination of JVM and VM options that dx runs with, and of how many dx runs it does at once, which is
+ * started by the first build that needs it. The daemon gets the heap of a dx run for every invocation that the build may run at once
+ * with {@link AndroidParallelToolRunner}, within {@link AndroidDxDaemon#getMaxConcurrentRuns(int, long)}, so that pre-dexing still runs
+ * dx in parallel without a sequential build holding on to the heap of a parallel one.
+ */
+final class AndroidDxDaemonClient {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.android.AndroidDxDaemonClient");
+
+  @NonNls private static final String DAEMON_DIR_NAME = "android-dx-daemon";
+  @NonNls private static final String DISABLED_PROPERTY = "android.dx.daemon.disabled";
+
+  /**
+   * Long enough to span the builds of an edit and run cycle, short enough not to hold on to a JVM after the user has moved on.
+   */
+  private static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+  private static final long START_TIMEOUT_MS = 30 * 1000L;
+  private static final int CONNECT_TIMEOUT_MS = 5 * 1000;
+
+  private static final Object ourStartLock = new Object();
+
+  private AndroidDxDaemonClient() {
+  }
+
+  static boolean isEnabled() {
+    return !Boolean.getBoolean(DISABLED_PROPERTY);
+  }
+
+  /**
+   * Runs dx with the arguments of {@link org.jetbrains.android.compiler.tools.AndroidDxRunner#main} in a daemon.
+   *
+   * @param buildThreads how many tools the build may run at once, see {@link AndroidParallelToolRunner#getMaxThreads(boolean)}
+   * @return the output and error output of dx, or null if the daemon could not be used, in which case dx should run in a process of its
+   * own
+   */
+  @Nullable
+  static Pair<String, String> runDex(@NotNull String javaExecutable,
+                                     @NotNull List<String> vmOptions,
+                                     @NotNull List<String> classPath,
+                                     @NotNull List<String> programParams,
+                                     int buildThreads) {
+    final File daemonDir = new File(Utils.getSystemRoot(), DAEMON_DIR_NAME);
+    final int maxRuns = AndroidDxDaemon.getMaxConcurrentRuns(buildThreads, getHeapSizeMb(vmOptions));
+    final String key = Integer.toHexString((javaExecutable + '\n' + StringUtil.join(vmOptions, "\n") + '\n' +
+                                            StringUtil.join(classPath, "\n") + '\n' + maxRuns).hashCode());
+    final File portFile = new File(daemonDir, key + ".port");
+
+    try {
+      // A daemon that went away without removing its port file refuses the connection, and is then replaced.
+      for (int attempt = 0; attempt < 2; attempt++) {
+        String address = readPortFile(portFile);
+
+        if (address == null || attempt > 0) {
+          address = startDaemon(javaExecutable, vmOptions, classPath, maxRuns, portFile, address);
+        }
+        if (address == null) {
+          return null;
+        }
+        try {
+          return request(address, programParams);
+        }
+        catch (ConnectException e) {
+          LOG.info("Cannot connect to dx daemon " + portFile.getName(), e);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info("dx daemon failed, running dx in a new process", e);
+    }
+    return null;
+  }
+
+  @NotNull
+  private static Pair<String, String> request(@NotNull String address, @NotNull List<String> programParams) throws IOException {
+    final String[] lines = address.split("\n");
+    final Socket socket = new Socket();
+
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), Integer.parseInt(lines[0].trim())), CONNECT_TIMEOUT_MS);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(lines[1].trim());
+      out.writeInt(programParams.size());
+
+      for (String param : programParams) {
+        out.writeUTF(param);
+      }
+      out.flush();
+
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final int exitCode = in.readInt();
+      final String stdout = readString(in);
+      final String stderr = readString(in);
+      LOG.debug("dx daemon exited with " + exitCode);
+      return Pair.create(stdout, stderr);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Invalid dx daemon port file", e);
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Invalid dx daemon port file", e);
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Starts a daemon, unless another thread did since {@code staleAddress} was read.
+   *
+   * @return the address of the new daemon, or null if it did not start
+   */
+  @Nullable
+  private static String startDaemon(@NotNull String javaExecutable,
+                                    @NotNull List<String> vmOptions,
+                                    @NotNull List<String> classPath,
+                                    int maxRuns,
+                                    @NotNull File portFile,
+                                    @Nullable String staleAddress) throws IOException {
+    synchronized (ourStartLock) {
+      final String address = readPortFile(portFile);
+
+      if (address != null && !address.equals(staleAddress)) {
+        return address;
+      }
+      FileUtil.delete(portFile);
+      FileUtil.createDirectory(portFile.getParentFile());
+
+      final List<String> programParams = new ArrayList<String>();
+      programParams.add(portFile.getPath());
+      programParams.add(Long.toString(IDLE_TIMEOUT_MS));
+      final List<String> daemonVmOptions = new ArrayList<String>(vmOptions);
+      final long runHeapMb = getHeapSizeMb(vmOptions);
+
+      if (runHeapMb > 0) {
+        for (int i = 0; i < daemonVmOptions.size(); i++) {
+          if (daemonVmOptions.get(i).startsWith("-Xmx")) {
+            daemonVmOptions.set(i, "-Xmx" + runHeapMb * maxRuns + "M");
+          }
+        }
+        programParams.add(Integer.toString(maxRuns));
+      }
+      final List<String> commandLine = ExternalProcessUtil
+        .buildJavaCommandLine(javaExecutable, AndroidDxDaemon.class.getName(), Collections.<String>emptyList(), classPath,
+                              daemonVmOptions, programParams);
+      LOG.info("Starting dx daemon: " + AndroidCommonUtils.command2string(commandLine));
+
+      // The daemon outlives this process, so its output can't go to a pipe that nobody reads.
+      final File logFile = new File(portFile.getParentFile(), FileUtil.getNameWithoutExtension(portFile) + ".log");
+      final Process process = new ProcessBuilder(commandLine)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+        .start();
+
+      final long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+
+      while (System.currentTimeMillis() < deadline) {
+        final String newAddress = readPortFile(portFile);
+
+        if (newAddress != null) {
+          return newAddress;
+        }
+        if (!isAlive(process)) {
+          LOG.info("dx daemon exited on start, see " + logFile);
+          return null;
+        }
+        try {
+          //noinspection BusyWait
+          Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      LOG.info("dx daemon did not start in time, see " + logFile);
+      process.destroy();
+      return null;
+    }
+  }
+
+  /**
+   * @return the maximum heap size in MB set by the last -Xmx option, or 0 if there is none or it can't be parsed
+   */
+  static long getHeapSizeMb(@NotNull List<String> vmOptions) {
+    long heapSizeMb = 0;
+
+    for (String option : vmOptions) {
+      if (!option.startsWith("-Xmx") || option.length() == 4) {
+        continue;
+      }
+      final String value = option.substring(4);
+      final char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+      final long scale = unit == 'g' ? 1024L * 1024 * 1024 : unit == 'm' ? 1024L * 1024 : unit == 'k' ? 1024L : 1L;
+
+      try {
+        final long bytes = Long.parseLong(Character.isDigit(unit) ? value : value.substring(0, value.length() - 1)) * scale;
+        heapSizeMb = bytes / (1024 * 1024);
+      }
+      catch (NumberFormatException e) {
+        heapSizeMb = 0;
+      }
+    }
+    return heapSizeMb;
+  }
+
+  private static boolean isAlive(@NotNull Process process) {
+    try {
+      process.exitValue();
+      return false;
+    }
+    catch (IllegalThreadStateException e) {
+      return true;
+    }
+  }
+
+  @Nullable
+  private static String readPortFile(@NotNull File portFile) {
+    try {
+      return portFile.isFile() ? FileUtil.loadFile(portFile, CharsetToolkit.UTF8) : null;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  @NotNull
+  private static String readString(@NotNull DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, CharsetToolkit.UTF8_CHARSET);
+  }
+}
@@ -0,0 +1,213 @@
+package org.jetbrains.jps.android;
+
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.cmdline.BuildRunner;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.IncProjectBuilder;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent invocations of an external tool, such as aidl on a single file, on up to as many threads as the build may use for
+ * its own work. Only {@link Invocation#execute} runs on those threads: results are processed on the calling thread, in the order the
+ * invocations were given, so the build messages and outputs are the same whichever invocation finishes first.
+ */
+final class AndroidParallelToolRunner {
+  private static final long CANCEL_CHECK_INTERVAL_MS = 100;
+
+  private AndroidParallelToolRunner() {
+  }
+
+  abstract static class Invocation<T> {
+    /**
+     * Runs the tool. This may be called on a pool thread, so it must not report anything to the build.
+     */
+    @NotNull
+    protected abstract T execute() throws IOException;
+
+    /**
+     * Reports the result of {@link #execute} to the build.
+     *
+     * @return false if the tool failed
+     */
+    protected abstract boolean processResult(@NotNull CompileContext context, @NotNull T result) throws IOException;
+
+    protected abstract void processException(@NotNull CompileContext context, @NotNull IOException e);
+
+    /**
+     * Called once the invocation is processed, or skipped because the build was canceled.
+     */
+    protected void dispose() {
+    }
+  }
+
+  /**
+   * @return false if any of the invocations failed, or if the build was canceled before all of them were processed
+   */
+  static boolean runAll(@NotNull CompileContext context, @NotNull List<? extends Invocation<?>> invocations) {
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(@NotNull Runnable command) {
+        SharedThreadPool.getInstance().execute(command);
+      }
+    };
+    return runAll(context, invocations, getMaxThreads(context), executor);
+  }
+
+  /**
+   * Like {@link #runAll(CompileContext, List)}, on up to {@code maxThreads} threads: the calling one, and workers submitted to
+   * {@code executor}.
+   */
+  static boolean runAll(@NotNull CompileContext context,
+                        @NotNull List<? extends Invocation<?>> invocations,
+                        int maxThreads,
+                        @NotNull Executor executor) {
+    final List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(invocations.size());
+
+    for (final Invocation<?> invocation : invocations) {
+      tasks.add(new FutureTask<Object>(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return invocation.execute();
+        }
+      }));
+    }
+    final AtomicInteger nextTask = new AtomicInteger();
+    final int threadCount = Math.min(maxThreads, tasks.size());
+
+    // The calling thread runs tasks too while it waits, so it is one of the threads.
+    for (int i = 1; i < threadCount; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          int index;
+          while ((index = nextTask.getAndIncrement()) < tasks.size()) {
+            tasks.get(index).run();
+          }
+        }
+      });
+    }
+    boolean success = true;
+
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        //noinspection unchecked
+        final Invocation<Object> invocation = (Invocation<Object>)invocations.get(i);
+        final FutureTask<Object> task = tasks.get(i);
+
+        if (!waitFor(context, task, tasks, nextTask)) {
+          return false;
+        }
+        try {
+          if (!invocation.processResult(context, getResult(task))) {
+            success = false;
+          }
+        }
+        catch (IOException e) {
+          invocation.processException(context, e);
+          success = false;
+        }
+      }
+      return success;
+    }
+    finally {
+      // Tasks that were not started by now never will be, but the others have to finish before they are disposed.
+      final int startedCount = Math.min(nextTask.getAndSet(tasks.size()), tasks.size());
+
+      for (int i = 0; i < tasks.size(); i++) {
+        if (i < startedCount) {
+          try {
+            tasks.get(i).get();
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          catch (ExecutionException ignored) {
+          }
+        }
+        invocations.get(i).dispose();
+      }
+    }
+  }
+
+  /**
+   * Waits for {@code task} to be done, running other tasks that no thread has started yet in the meantime.
+   *
+   * @return false if the build was canceled first
+   */
+  private static boolean waitFor(@NotNull CompileContext context,
+                                 @NotNull FutureTask<Object> task,
+                                 @NotNull List<FutureTask<Object>> tasks,
+                                 @NotNull AtomicInteger nextTask) {
+    while (!task.isDone()) {
+      if (context.getCancelStatus().isCanceled()) {
+        return false;
+      }
+      final int index = nextTask.getAndIncrement();
+
+      if (index < tasks.size()) {
+        tasks.get(index).run();
+        continue;
+      }
+      try {
+        task.get(CANCEL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException ignored) {
+      }
+      catch (ExecutionException ignored) {
+        // Reported by getResult.
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static Object getResult(@NotNull FutureTask<Object> task) throws IOException {
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      // The task is done, so this doesn't block.
+      throw new IllegalStateException(e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * @return how many tools the build of {@code context} may run at once
+   */
+  static int getMaxThreads(@NotNull CompileContext context) {
+    return getMaxThreads(BuildRunner.isParallelBuildEnabled(context));
+  }
+
+  static int getMaxThreads(boolean parallelBuildEnabled) {
+    if (AndroidBuildTestingManager.getTestingManager() != null) {
+      // Tests compare the logged commands, which would interleave if the tools ran in parallel.
+      return 1;
+    }
+    return parallelBuildEnabled ? IncProjectBuilder.MAX_BUILDER_THREADS : 1;
+  }
+}
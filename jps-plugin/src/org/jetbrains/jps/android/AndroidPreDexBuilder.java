@@ -93,6 +93,7 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
     }
     if (!filesToPreDex.isEmpty()) {
       final File outputDir = target.getOutputFile(context);
+      final List<AndroidDexBuilder.DexInvocation> invocations = new ArrayList<AndroidDexBuilder.DexInvocation>();
 
       for (Pair<File, String> pair : filesToPreDex) {
         context.checkCanceled();
@@ -122,10 +123,21 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
           return false;
         }
 
-        if (!AndroidDexBuilder.runDex(platform, outputFile.getPath(), new String[]{srcFilePath}, context,
-          project, outputConsumer, BUILDER_NAME, srcFile.getName(), null)) {
+        final AndroidDexBuilder.DexInvocation invocation = AndroidDexBuilder.createDexInvocation(
+          platform, outputFile.getPath(), new String[]{srcFilePath}, context, project, outputConsumer, BUILDER_NAME, srcFile.getName(),
+          null);
+
+        if (invocation == null) {
           return false;
         }
+        invocations.add(invocation);
+      }
+      // The jars are independent of each other, so dx runs on as many of them at once as the build allows.
+      final boolean success = AndroidParallelToolRunner.runAll(context, invocations);
+      context.checkCanceled();
+
+      if (!success) {
+        return false;
       }
     }
     return true;
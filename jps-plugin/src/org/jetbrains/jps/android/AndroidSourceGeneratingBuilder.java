@@ -147,8 +147,9 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
       }
     }
 
-    final Map<File, ModuleBuildTarget> idlFilesToCompile = new HashMap<File, ModuleBuildTarget>();
-    final Map<File, ModuleBuildTarget> rsFilesToCompile = new HashMap<File, ModuleBuildTarget>();
+    // Sorted, so that the tools' messages are reported in the same order in every build.
+    final Map<File, ModuleBuildTarget> idlFilesToCompile = new TreeMap<File, ModuleBuildTarget>();
+    final Map<File, ModuleBuildTarget> rsFilesToCompile = new TreeMap<File, ModuleBuildTarget>();
 
     dirtyFilesHolder.processDirtyFiles(new FileProcessor<JavaSourceRootDescriptor, ModuleBuildTarget>() {
       @Override
@@ -689,6 +690,7 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
 
     boolean success = true;
+    final List<AndroidParallelToolRunner.Invocation<?>> invocations = new ArrayList<AndroidParallelToolRunner.Invocation<?>>();
 
     for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
       final File file = entry.getKey();
@@ -732,26 +734,42 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
         final File outputFile = new File(aidlOutputDirectory, packageName.replace('.', File.separatorChar) +
                                                               File.separator + FileUtil.getNameWithoutExtension(file) + ".java");
         final String outputFilePath = outputFile.getPath();
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidIdl.execute(target, filePath, outputFilePath, sourceRootPaths);
 
-        addMessages(context, messages, filePath, ANDROID_IDL_COMPILER);
+        invocations.add(new AndroidParallelToolRunner.Invocation<Map<AndroidCompilerMessageKind, List<String>>>() {
+          @NotNull
+          @Override
+          protected Map<AndroidCompilerMessageKind, List<String>> execute() throws IOException {
+            return AndroidIdl.execute(target, filePath, outputFilePath, sourceRootPaths);
+          }
 
-        if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
-          success = false;
-        }
-        else if (outputFile.exists()) {
-          final SourceToOutputMapping sourceToOutputMap = context.getProjectDescriptor().dataManager.getSourceToOutputMap(buildTarget);
-          sourceToOutputMap.setOutput(filePath, outputFilePath);
-          FSOperations.markDirty(context, CompilationRound.CURRENT, outputFile);
-        }
+          @Override
+          protected boolean processResult(@NotNull CompileContext context,
+                                          @NotNull Map<AndroidCompilerMessageKind, List<String>> messages) {
+            addMessages(context, messages, filePath, ANDROID_IDL_COMPILER);
+
+            if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
+              return false;
+            }
+            if (outputFile.exists()) {
+              final SourceToOutputMapping sourceToOutputMap = context.getProjectDescriptor().dataManager.getSourceToOutputMap(buildTarget);
+              sourceToOutputMap.setOutput(filePath, outputFilePath);
+              FSOperations.markDirty(context, CompilationRound.CURRENT, outputFile);
+            }
+            return true;
+          }
+
+          @Override
+          protected void processException(@NotNull CompileContext context, @NotNull IOException e) {
+            AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_IDL_COMPILER);
+          }
+        });
       }
       catch (final IOException e) {
         AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_IDL_COMPILER);
         success = false;
       }
     }
-    return success;
+    return AndroidParallelToolRunner.runAll(context, invocations) && success;
   }
 
   private static boolean runRenderscriptCompiler(@NotNull final CompileContext context,
@@ -762,6 +780,7 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
     }
 
     boolean success = true;
+    final List<AndroidParallelToolRunner.Invocation<?>> invocations = new ArrayList<AndroidParallelToolRunner.Invocation<?>>();
 
     for (Map.Entry<File, ModuleBuildTarget> entry : files.entrySet()) {
       final File file = entry.getKey();
@@ -800,21 +819,33 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
       final String sdkLocation = platform.getSdk().getHomePath();
       final String filePath = file.getPath();
 
-      File tmpOutputDirectory = null;
+      final File tmpOutputDirectory;
 
       try {
         tmpOutputDirectory = FileUtil.createTempDirectory("generated-rs-temp", null);
-        final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
+      }
+      catch (IOException e) {
+        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
+        success = false;
+        continue;
+      }
+      final String depFolderPath = getDependencyFolder(context, file, tmpOutputDirectory);
 
-        final Map<AndroidCompilerMessageKind, List<String>> messages =
-          AndroidRenderscript.execute(sdkLocation, target, filePath, tmpOutputDirectory.getPath(), depFolderPath, rawDir.getPath());
+      invocations.add(new AndroidParallelToolRunner.Invocation<Map<AndroidCompilerMessageKind, List<String>>>() {
+        @NotNull
+        @Override
+        protected Map<AndroidCompilerMessageKind, List<String>> execute() throws IOException {
+          return AndroidRenderscript.execute(sdkLocation, target, filePath, tmpOutputDirectory.getPath(), depFolderPath, rawDir.getPath());
+        }
 
-        addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
+        @Override
+        protected boolean processResult(@NotNull CompileContext context, @NotNull Map<AndroidCompilerMessageKind, List<String>> messages)
+          throws IOException {
+          addMessages(context, messages, filePath, ANDROID_RENDERSCRIPT_COMPILER);
 
-        if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
-          success = false;
-        }
-        else {
+          if (messages.get(AndroidCompilerMessageKind.ERROR).size() > 0) {
+            return false;
+          }
           final List<File> newFiles = new ArrayList<File>();
           AndroidCommonUtils.moveAllFiles(tmpOutputDirectory, rsOutputDirectory, newFiles);
 
@@ -830,19 +861,21 @@ public class AndroidSourceGeneratingBuilder extends ModuleLevelBuilder {
           for (File newFile : newFiles) {
             FSOperations.markDirty(context, CompilationRound.CURRENT, newFile);
           }
+          return true;
         }
-      }
-      catch (IOException e) {
-        AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
-        success = false;
-      }
-      finally {
-        if (tmpOutputDirectory != null) {
+
+        @Override
+        protected void processException(@NotNull CompileContext context, @NotNull IOException e) {
+          AndroidJpsUtil.reportExceptionError(context, filePath, e, ANDROID_RENDERSCRIPT_COMPILER);
+        }
+
+        @Override
+        protected void dispose() {
           FileUtil.delete(tmpOutputDirectory);
         }
-      }
+      });
     }
-    return success;
+    return AndroidParallelToolRunner.runAll(context, invocations) && success;
   }
 
   private static MyExitStatus runAaptCompiler(@NotNull final CompileContext context,
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.compiler.tools;
+
+import junit.framework.TestCase;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Runs {@link AndroidDxDaemon} on a thread of the test, with a fake dx.jar that records the arguments it was run with in its output file.
+ */
+public class AndroidDxDaemonTest extends TestCase {
+  private static final String FAKE_DX_CONSOLE =
+    "package com.android.dx.command;\n" +
+    "public class DxConsole {\n" +
+    "  public static java.io.PrintStream out = System.out;\n" +
+    "  public static java.io.PrintStream err = System.err;\n" +
+    "}\n";
+
+  // Each request loads dx in its own class loader, so the runs that overlap are counted in a system property.
+  private static final String FAKE_DX_MAIN =
+    "package com.android.dx.command.dexer;\n" +
+    "public class Main {\n" +
+    "  public static class Arguments {\n" +
+    "    public String outName;\n" +
+    "    public boolean jarOutput;\n" +
+    "    public String[] fileNames;\n" +
+    "    public boolean verbose;\n" +
+    "    public boolean strictNameCheck;\n" +
+    "    public boolean optimize;\n" +
+    "    public boolean forceJumbo;\n" +
+    "    public boolean coreLibrary;\n" +
+    "    public boolean multiDex;\n" +
+    "    public String mainDexListFile;\n" +
+    "    public boolean minimalMainDex;\n" +
+    "    public boolean incremental;\n" +
+    "  }\n" +
+    "  public static int run(Arguments args) throws Exception {\n" +
+    "    int others;\n" +
+    "    synchronized (System.class) {\n" +
+    "      others = Integer.getInteger(\"fake.dx.running\", 0);\n" +
+    "      System.setProperty(\"fake.dx.running\", Integer.toString(others + 1));\n" +
+    "    }\n" +
+    "    try {\n" +
+    "      Thread.sleep(100);\n" +
+    "      com.android.dx.command.DxConsole.out.println(\"dexing \" + args.fileNames.length + \" files\");\n" +
+    "      java.io.Writer writer = new java.io.FileWriter(args.outName);\n" +
+    "      writer.write((args.incremental ? \"incremental\" : \"full\") + (others > 0 ? \" overlapping \" + others : \"\"));\n" +
+    "      writer.close();\n" +
+    "      return 0;\n" +
+    "    }\n" +
+    "    finally {\n" +
+    "      synchronized (System.class) {\n" +
+    "        System.setProperty(\"fake.dx.running\", Integer.toString(Integer.getInteger(\"fake.dx.running\") - 1));\n" +
+    "      }\n" +
+    "    }\n" +
+    "  }\n" +
+    "}\n";
+
+  private File myTempDir;
+  private File myDxJar;
+  private File myClassesDir;
+  private File myPortFile;
+  private Thread myDaemonThread;
+  private volatile IOException myDaemonError;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myTempDir = Files.createTempDirectory("dxDaemonTest").toFile();
+    myDxJar = buildFakeDx();
+    myClassesDir = new File(myTempDir, "classes");
+    assertTrue(new File(myClassesDir, "com/example").mkdirs());
+    Files.write(new File(myClassesDir, "com/example/Foo.class").toPath(), new byte[]{(byte)0xCA, (byte)0xFE});
+    myPortFile = new File(myTempDir, "daemon.port");
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      if (myDaemonThread != null) {
+        // Replacing the port file makes the daemon exit as soon as it is idle.
+        Files.write(myPortFile.toPath(), "replaced".getBytes(StandardCharsets.UTF_8));
+        myDaemonThread.join(30 * 1000);
+        assertFalse(myDaemonThread.isAlive());
+      }
+      delete(myTempDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRunsDex() throws Exception {
+    startDaemon(4000);
+    File out = new File(myTempDir, "classes.dex");
+    Response response = request(readToken(), myDxJar.getPath(), out.getPath(), myClassesDir.getPath(), "--exclude");
+
+    assertEquals(0, response.exitCode);
+    assertEquals("dexing 1 files", response.stdout.trim());
+    assertEquals("", response.stderr);
+    assertEquals("full", read(out));
+  }
+
+  public void testIncrementalDex() throws Exception {
+    startDaemon(4000);
+    File out = new File(myTempDir, "classes.dex");
+    Response response =
+      request(readToken(), myDxJar.getPath(), out.getPath(), "--incremental", myClassesDir.getPath(), "--exclude");
+
+    assertEquals(0, response.exitCode);
+    assertEquals("incremental", read(out));
+  }
+
+  public void testReportsDxThatCannotBeLoaded() throws Exception {
+    startDaemon(4000);
+    File out = new File(myTempDir, "classes.dex");
+    Response response = request(readToken(), new File(myTempDir, "missing.jar").getPath(), out.getPath(), myClassesDir.getPath(),
+                                "--exclude");
+
+    assertEquals(-1, response.exitCode);
+    assertTrue(response.stderr, response.stderr.contains("File not found"));
+    assertFalse(out.exists());
+  }
+
+  public void testRejectsWrongToken() throws Exception {
+    startDaemon(4000);
+    File out = new File(myTempDir, "classes.dex");
+
+    try {
+      request("wrong", myDxJar.getPath(), out.getPath(), myClassesDir.getPath(), "--exclude");
+      fail("A request with the wrong token was answered");
+    }
+    catch (IOException expected) {
+    }
+    assertFalse(out.exists());
+
+    // The daemon keeps serving requests with the right token.
+    assertEquals(0, request(readToken(), myDxJar.getPath(), out.getPath(), myClassesDir.getPath(), "--exclude").exitCode);
+  }
+
+  public void testRunsDexOneAtATime() throws Exception {
+    startDaemon(4000);
+    for (String output : requestConcurrently(3)) {
+      assertEquals("full", output);
+    }
+  }
+
+  public void testRunsDexConcurrentlyUpToLimit() throws Exception {
+    startDaemon(4000, 2);
+    boolean overlapped = false;
+    for (String output : requestConcurrently(4)) {
+      assertTrue(output, output.equals("full") || output.equals("full overlapping 1"));
+      overlapped |= !output.equals("full");
+    }
+    assertTrue(overlapped);
+  }
+
+  public void testMaxConcurrentRunsFollowBuild() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    assertEquals(1, AndroidDxDaemon.getMaxConcurrentRuns(4, 0));
+    assertEquals(1, AndroidDxDaemon.getMaxConcurrentRuns(1, 1024));
+    assertEquals(Math.min(2, processors), AndroidDxDaemon.getMaxConcurrentRuns(2, 1024));
+    // However parallel the build, the daemon heap stays within the cap.
+    assertEquals(Math.min(4, processors), AndroidDxDaemon.getMaxConcurrentRuns(64, 1024));
+    assertEquals(1, AndroidDxDaemon.getMaxConcurrentRuns(64, AndroidDxDaemon.MAX_HEAP_MB * 2));
+  }
+
+  /**
+   * Sends {@code count} requests at once, and waits for all of them.
+   *
+   * @return what dx wrote to the output of each request
+   */
+  private List<String> requestConcurrently(int count) throws Exception {
+    final String token = readToken();
+    final List<File> outputs = new ArrayList<File>();
+    final List<Thread> threads = new ArrayList<Thread>();
+    final List<Throwable> errors = new ArrayList<Throwable>();
+
+    for (int i = 0; i < count; i++) {
+      final File out = new File(myTempDir, "classes" + i + ".dex");
+      outputs.add(out);
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            request(token, myDxJar.getPath(), out.getPath(), myClassesDir.getPath(), "--exclude");
+          }
+          catch (Throwable t) {
+            synchronized (errors) {
+              errors.add(t);
+            }
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Arrays.<Throwable>asList(), errors);
+    List<String> results = new ArrayList<String>();
+    for (File out : outputs) {
+      results.add(read(out));
+    }
+    return results;
+  }
+
+  public void testExitsWhenIdle() throws Exception {
+    startDaemon(200);
+    assertEquals(0, request(readToken(), myDxJar.getPath(), new File(myTempDir, "classes.dex").getPath(), myClassesDir.getPath(),
+                            "--exclude").exitCode);
+
+    myDaemonThread.join(10 * 1000);
+    assertFalse(myDaemonThread.isAlive());
+    assertNull(myDaemonError);
+    assertFalse(myPortFile.exists());
+    myDaemonThread = null;
+  }
+
+  private void startDaemon(long idleTimeoutMs) throws Exception {
+    startDaemon(idleTimeoutMs, 1);
+  }
+
+  private void startDaemon(long idleTimeoutMs, int maxConcurrentRuns) throws Exception {
+    final AndroidDxDaemon daemon = new AndroidDxDaemon(myPortFile, idleTimeoutMs, maxConcurrentRuns);
+    myDaemonThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          daemon.serve();
+        }
+        catch (IOException e) {
+          myDaemonError = e;
+        }
+      }
+    }, "dx daemon");
+    myDaemonThread.start();
+
+    long deadline = System.currentTimeMillis() + 10 * 1000;
+    while (!myPortFile.isFile()) {
+      assertTrue("The daemon did not write its port file", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private String readToken() throws IOException {
+    return read(myPortFile).split("\n")[1];
+  }
+
+  /**
+   * Sends a request the way {@code AndroidDxDaemonClient} does.
+   */
+  private Response request(String token, String... args) throws IOException {
+    int port = Integer.parseInt(read(myPortFile).split("\n")[0]);
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 5000);
+      socket.setSoTimeout(30 * 1000);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(token);
+      out.writeInt(args.length);
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      Response response = new Response();
+      response.exitCode = in.readInt();
+      response.stdout = readString(in);
+      response.stderr = readString(in);
+      return response;
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private File buildFakeDx() throws IOException {
+    File sources = new File(myTempDir, "dxSrc");
+    File consoleSource = new File(sources, "com/android/dx/command/DxConsole.java");
+    File mainSource = new File(sources, "com/android/dx/command/dexer/Main.java");
+    assertTrue(mainSource.getParentFile().mkdirs());
+    Files.write(consoleSource.toPath(), FAKE_DX_CONSOLE.getBytes(StandardCharsets.UTF_8));
+    Files.write(mainSource.toPath(), FAKE_DX_MAIN.getBytes(StandardCharsets.UTF_8));
+
+    File classes = new File(myTempDir, "dxClasses");
+    assertTrue(classes.mkdirs());
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assertNotNull("Tests must run on a JDK", compiler);
+    assertEquals(0, compiler.run(null, null, null, "-d", classes.getPath(), consoleSource.getPath(), mainSource.getPath()));
+
+    File jar = new File(myTempDir, "dx.jar");
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+    try {
+      addToJar(out, classes, "");
+    }
+    finally {
+      out.close();
+    }
+    return jar;
+  }
+
+  private static void addToJar(JarOutputStream out, File dir, String prefix) throws IOException {
+    File[] children = dir.listFiles();
+    assertNotNull(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        addToJar(out, child, prefix + child.getName() + "/");
+      }
+      else {
+        out.putNextEntry(new JarEntry(prefix + child.getName()));
+        out.write(Files.readAllBytes(child.toPath()));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private static class Response {
+    int exitCode;
+    String stdout;
+    String stderr;
+  }
+}
@@ -0,0 +1,242 @@
+package org.jetbrains.jps.android;
+
+import junit.framework.TestCase;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.IncProjectBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AndroidParallelToolRunnerTest extends TestCase {
+  private final AtomicBoolean myCanceled = new AtomicBoolean();
+  private final List<String> myEvents = Collections.synchronizedList(new ArrayList<String>());
+  private CompileContext myContext;
+  private ExecutorService myExecutor;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    final CanceledStatus cancelStatus = new CanceledStatus() {
+      @Override
+      public boolean isCanceled() {
+        return myCanceled.get();
+      }
+    };
+    // The runner only needs the cancel status, and passes the context on to the invocations.
+    myContext = (CompileContext)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{CompileContext.class},
+                                                       new InvocationHandler() {
+                                                         @Override
+                                                         public Object invoke(Object proxy, Method method, Object[] args) {
+                                                           if (method.getName().equals("getCancelStatus")) {
+                                                             return cancelStatus;
+                                                           }
+                                                           throw new UnsupportedOperationException(method.getName());
+                                                         }
+                                                       });
+    myExecutor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+      assertTrue(myExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testResultsAreProcessedInOrder() throws Exception {
+    final List<TestInvocation> invocations = new ArrayList<TestInvocation>();
+    final Random random = new Random(0);
+
+    for (int i = 0; i < 20; i++) {
+      // Later invocations tend to finish first.
+      invocations.add(new TestInvocation(i, (20 - i) * 2 + random.nextInt(5)));
+    }
+    assertTrue(AndroidParallelToolRunner.runAll(myContext, invocations, 4, myExecutor));
+
+    final List<String> processed = new ArrayList<String>();
+    final List<String> disposed = new ArrayList<String>();
+    for (int i = 0; i < invocations.size(); i++) {
+      processed.add("process " + i);
+      disposed.add("dispose " + i);
+    }
+    assertEquals(processed, filterEvents("process"));
+    assertEquals(disposed, filterEvents("dispose"));
+    assertEquals(invocations.size(), filterEvents("execute").size());
+  }
+
+  public void testFailuresAreReported() throws Exception {
+    final List<TestInvocation> invocations = new ArrayList<TestInvocation>();
+    invocations.add(new TestInvocation(0, 0));
+    invocations.add(new TestInvocation(1, 0).failWith(new IOException("aidl failed")));
+    invocations.add(new TestInvocation(2, 0).returnFailure());
+    invocations.add(new TestInvocation(3, 0));
+    assertFalse(AndroidParallelToolRunner.runAll(myContext, invocations, 2, myExecutor));
+
+    // Failures don't stop the other results from being processed.
+    assertEquals(Arrays.asList("process 0", "exception 1: aidl failed", "process 2", "process 3"),
+                 filterEvents("process", "exception"));
+    assertEquals(4, filterEvents("dispose").size());
+  }
+
+  public void testFirstUnexpectedExceptionIsPropagated() throws Exception {
+    final List<TestInvocation> invocations = new ArrayList<TestInvocation>();
+    invocations.add(new TestInvocation(0, 0));
+    invocations.add(new TestInvocation(1, 20).failWith(new IllegalStateException("first")));
+    invocations.add(new TestInvocation(2, 0).failWith(new IllegalStateException("second")));
+    invocations.add(new TestInvocation(3, 0));
+
+    try {
+      AndroidParallelToolRunner.runAll(myContext, invocations, 4, myExecutor);
+      fail();
+    }
+    catch (IllegalStateException e) {
+      assertEquals("first", e.getMessage());
+    }
+    assertEquals(Collections.singletonList("process 0"), filterEvents("process"));
+    // Invocations that were started are disposed once they finish, and the others right away.
+    assertEquals(4, filterEvents("dispose").size());
+  }
+
+  public void testCancellationSkipsTheRemainingInvocations() throws Exception {
+    final List<TestInvocation> invocations = new ArrayList<TestInvocation>();
+    invocations.add(new TestInvocation(0, 0) {
+      @NotNull
+      @Override
+      protected String execute() throws IOException {
+        myCanceled.set(true);
+        return super.execute();
+      }
+    });
+    invocations.add(new TestInvocation(1, 0));
+    invocations.add(new TestInvocation(2, 0));
+    assertFalse(AndroidParallelToolRunner.runAll(myContext, invocations, 1, myExecutor));
+
+    assertEquals(Collections.singletonList("execute 0"), filterEvents("execute"));
+    assertEquals(Collections.singletonList("process 0"), filterEvents("process"));
+    assertEquals(Arrays.asList("dispose 0", "dispose 1", "dispose 2"), filterEvents("dispose"));
+  }
+
+  public void testSingleThreadRunsOnCallingThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final List<TestInvocation> invocations = new ArrayList<TestInvocation>();
+
+    for (int i = 0; i < 5; i++) {
+      invocations.add(new TestInvocation(i, 0) {
+        @NotNull
+        @Override
+        protected String execute() throws IOException {
+          assertSame(caller, Thread.currentThread());
+          return super.execute();
+        }
+      });
+    }
+    final Executor rejecting = new Executor() {
+      @Override
+      public void execute(@NotNull Runnable command) {
+        fail("No worker should be started for a single thread");
+      }
+    };
+    assertTrue(AndroidParallelToolRunner.runAll(myContext, invocations, 1, rejecting));
+    assertEquals(Arrays.asList("execute 0", "process 0", "execute 1", "process 1", "execute 2", "process 2", "execute 3", "process 3",
+                               "execute 4", "process 4"), filterEvents("execute", "process"));
+  }
+
+  public void testMaxThreads() throws Exception {
+    assertEquals(1, AndroidParallelToolRunner.getMaxThreads(false));
+    // Build tests compare the logged commands, and leave build testing on once they have run.
+    final int expected = AndroidBuildTestingManager.getTestingManager() != null ? 1 : IncProjectBuilder.MAX_BUILDER_THREADS;
+    assertEquals(expected, AndroidParallelToolRunner.getMaxThreads(true));
+  }
+
+  @NotNull
+  private List<String> filterEvents(@NotNull String... prefixes) {
+    final List<String> result = new ArrayList<String>();
+
+    synchronized (myEvents) {
+      for (String event : myEvents) {
+        for (String prefix : prefixes) {
+          if (event.startsWith(prefix + " ")) {
+            result.add(event);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private class TestInvocation extends AndroidParallelToolRunner.Invocation<String> {
+    private final int myIndex;
+    private final long myDurationMs;
+    private Exception myException;
+    private boolean myFailure;
+
+    TestInvocation(int index, long durationMs) {
+      myIndex = index;
+      myDurationMs = durationMs;
+    }
+
+    @NotNull
+    TestInvocation failWith(@NotNull Exception exception) {
+      myException = exception;
+      return this;
+    }
+
+    @NotNull
+    TestInvocation returnFailure() {
+      myFailure = true;
+      return this;
+    }
+
+    @NotNull
+    @Override
+    protected String execute() throws IOException {
+      myEvents.add("execute " + myIndex);
+      try {
+        Thread.sleep(myDurationMs);
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (myException instanceof IOException) {
+        throw (IOException)myException;
+      }
+      if (myException != null) {
+        throw (RuntimeException)myException;
+      }
+      return "result " + myIndex;
+    }
+
+    @Override
+    protected boolean processResult(@NotNull CompileContext context, @NotNull String result) {
+      assertSame(myContext, context);
+      assertEquals("result " + myIndex, result);
+      myEvents.add("process " + myIndex);
+      return !myFailure;
+    }
+
+    @Override
+    protected void processException(@NotNull CompileContext context, @NotNull IOException e) {
+      myEvents.add("exception " + myIndex + ": " + e.getMessage());
+    }
+
+    @Override
+    protected void dispose() {
+      myEvents.add("dispose " + myIndex);
+    }
+  }
+}
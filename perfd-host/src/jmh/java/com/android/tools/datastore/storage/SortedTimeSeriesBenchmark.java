@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import gnu.trove.TLongArrayList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lock free {@link SortedTimeSeries} against the synchronized lists the pollers used before, with one thread appending
+ * samples (the poll thread) while several threads query the last second of data (the timeline's gRPC requests).
+ *
+ * Each group runs one writer and N readers, pass e.g. {@code -tg 1,16} to JMH to pick N, or run {@link #main(String[])} which measures
+ * 4, 16 and 64 readers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortedTimeSeriesBenchmark {
+  private static final int INITIAL_SAMPLES = 100_000;
+  // Keeps the writer from filling up the heap, the series is cleared once it gets this big.
+  private static final int MAX_SAMPLES = 10_000_000;
+  private static final long SAMPLE_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long QUERY_RANGE_NS = TimeUnit.SECONDS.toNanos(1);
+
+  private final SortedTimeSeries<Long> mySeries = new SortedTimeSeries<>();
+  private final SynchronizedSeries<Long> mySynchronizedSeries = new SynchronizedSeries<>();
+  private volatile long myLatestTimestamp;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < INITIAL_SAMPLES; i++) {
+      append();
+    }
+  }
+
+  @Benchmark
+  @Group("lockFree")
+  public void lockFreeWrite() {
+    if (mySeries.size() >= MAX_SAMPLES) {
+      mySeries.clear();
+    }
+    long timestamp = myLatestTimestamp + SAMPLE_PERIOD_NS;
+    mySeries.add(timestamp, timestamp);
+    myLatestTimestamp = timestamp;
+  }
+
+  @Benchmark
+  @Group("lockFree")
+  public void lockFreeRead(Blackhole blackhole) {
+    long end = myLatestTimestamp;
+    mySeries.forEach(end - QUERY_RANGE_NS, end, blackhole::consume);
+  }
+
+  @Benchmark
+  @Group("synchronized")
+  public void synchronizedWrite() {
+    if (mySynchronizedSeries.size() >= MAX_SAMPLES) {
+      mySynchronizedSeries.clear();
+    }
+    long timestamp = myLatestTimestamp + SAMPLE_PERIOD_NS;
+    mySynchronizedSeries.add(timestamp, timestamp);
+    myLatestTimestamp = timestamp;
+  }
+
+  @Benchmark
+  @Group("synchronized")
+  public void synchronizedRead(Blackhole blackhole) {
+    long end = myLatestTimestamp;
+    mySynchronizedSeries.forEach(end - QUERY_RANGE_NS, end, blackhole);
+  }
+
+  private void append() {
+    long timestamp = myLatestTimestamp + SAMPLE_PERIOD_NS;
+    mySeries.add(timestamp, timestamp);
+    mySynchronizedSeries.add(timestamp, timestamp);
+    myLatestTimestamp = timestamp;
+  }
+
+  /**
+   * The approach the pollers used before {@link SortedTimeSeries}: lists guarded by a monitor shared by the writer and the readers.
+   */
+  private static final class SynchronizedSeries<T> {
+    private final TLongArrayList myTimestamps = new TLongArrayList();
+    private final List<T> mySamples = new ArrayList<>();
+    private final Object myLock = new Object();
+
+    void add(long timestamp, T sample) {
+      synchronized (myLock) {
+        myTimestamps.add(timestamp);
+        mySamples.add(sample);
+      }
+    }
+
+    int size() {
+      synchronized (myLock) {
+        return mySamples.size();
+      }
+    }
+
+    void clear() {
+      synchronized (myLock) {
+        myTimestamps.clear();
+        mySamples.clear();
+      }
+    }
+
+    void forEach(long startTime, long endTime, Blackhole blackhole) {
+      synchronized (myLock) {
+        int index = myTimestamps.binarySearch(startTime + 1);
+        index = index >= 0 ? index : -index - 1;
+        for (int i = index; i < mySamples.size() && myTimestamps.get(i) <= endTime; i++) {
+          blackhole.consume(mySamples.get(i));
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int readers : new int[]{4, 16, 64}) {
+      Options options = new OptionsBuilder()
+        .include(SortedTimeSeriesBenchmark.class.getSimpleName())
+        .threadGroups(1, readers)
+        .build();
+      new Runner(options).run();
+    }
+  }
+}
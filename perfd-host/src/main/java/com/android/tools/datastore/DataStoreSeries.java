@@ -17,12 +17,19 @@ package com.android.tools.datastore;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.MinMaxPyramid;
+import com.android.tools.adtui.model.PrimitiveDataSeries;
+import com.android.tools.adtui.model.SeriesCursor;
 import com.android.tools.adtui.model.SeriesData;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class DataStoreSeries<E> implements DataSeries<E> {
+/**
+ * {@link DataSeries} view of the data an adapter registered in a {@link SeriesDataStore} holds. Series of numbers can also be read through
+ * a {@link SeriesCursor}, which for {@link LongDataAdapter}s doesn't box the samples.
+ */
+public class DataStoreSeries<E> implements DataSeries<E>, PrimitiveDataSeries {
   @NotNull
   private final SeriesDataStore mStore;
 
@@ -51,4 +58,75 @@ public class DataStoreSeries<E> implements DataSeries<E> {
   public ImmutableList<SeriesData<E>> getDataForXRange(@NotNull Range xRange) {
     return mStore.getSeriesData(mType, xRange, mTarget);
   }
+
+  @Override
+  public boolean isConcurrent() {
+    return true;
+  }
+
+  @NotNull
+  @Override
+  public SeriesCursor createCursor() {
+    return new SeriesCursor() {
+      private int mIndex;
+      private int mEndIndex;
+
+      // Set while the cursor walks pyramid buckets instead of raw samples.
+      @Nullable
+      private MinMaxPyramid.Cursor mPyramidCursor;
+
+      @Nullable
+      private MinMaxPyramid.Cursor mCachedPyramidCursor;
+
+      @Nullable
+      private MinMaxPyramid mCachedPyramid;
+
+      @Override
+      public void seek(@NotNull Range xRange, int maxPoints) {
+        seek(xRange);
+        // Each bucket yields up to three points, so only switch when that's still a lot less than reading the raw samples.
+        MinMaxPyramid pyramid = mEndIndex - mIndex > maxPoints * 3 ? mStore.getPyramid(mType, mTarget) : null;
+        int level = pyramid != null ? pyramid.getLevelFor(xRange.getLength(), maxPoints) : -1;
+        if (level >= 0) {
+          if (pyramid != mCachedPyramid) {
+            mCachedPyramid = pyramid;
+            mCachedPyramidCursor = pyramid.createCursor();
+          }
+          mPyramidCursor = mCachedPyramidCursor;
+          mPyramidCursor.setLevel(level);
+          mPyramidCursor.seek(xRange);
+        }
+      }
+
+      @Override
+      public void seek(@NotNull Range xRange) {
+        mPyramidCursor = null;
+        // Same indices as SeriesDataList.
+        mIndex = mStore.getClosestTimeIndex(mType, (long)xRange.getMin(), true, mTarget) - 1;
+        mEndIndex = mStore.getClosestTimeIndex(mType, (long)xRange.getMax(), false, mTarget);
+      }
+
+      @Override
+      public boolean next() {
+        if (mPyramidCursor != null) {
+          return mPyramidCursor.next();
+        }
+        if (mIndex + 1 >= mEndIndex) {
+          return false;
+        }
+        mIndex++;
+        return true;
+      }
+
+      @Override
+      public long getX() {
+        return mPyramidCursor != null ? mPyramidCursor.getX() : mStore.getTimeAt(mType, mIndex, mTarget);
+      }
+
+      @Override
+      public double getY() {
+        return mPyramidCursor != null ? mPyramidCursor.getY() : mStore.getValueAt(mType, mIndex, mTarget);
+      }
+    };
+  }
 }
@@ -16,19 +16,30 @@
 package com.android.tools.datastore;
 
 import com.android.tools.datastore.poller.*;
+import com.android.tools.datastore.storage.SampleCodec;
+import com.android.tools.datastore.storage.SampleStore;
+import com.android.tools.datastore.storage.SampleStoreFactory;
+import com.android.tools.datastore.storage.SegmentedSampleStore;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.netty.NettyChannelBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.RunnableFuture;
 
 /**
@@ -39,20 +50,53 @@ public class DataStoreService {
   private static final int MAX_MESSAGE_SIZE = 512 * 1024 * 1024 - 1;
   private ManagedChannel myChannel;
   private ServerBuilder myServerBuilder;
+  private Server myServer;
   private List<ServicePassThrough> myServices = new ArrayList<>();
+  // Read by getPollStats from any thread while devices connect and disconnect.
+  private final Map<ServicePassThrough, RunnableFuture<Void>> myRunners = new ConcurrentHashMap<>();
   private LegacyAllocationTracker myLegacyAllocationTracker;
+  private SampleStoreFactory mySampleStoreFactory = SampleStoreFactory.IN_MEMORY;
+  // Every store created through getSampleStoreFactory(), closed on shutdown.
+  private final List<SampleStore<?>> myStores = new CopyOnWriteArrayList<>();
+  @Nullable private File myStorageDirectory;
 
   public DataStoreService(String name) {
     try {
       myServerBuilder = InProcessServerBuilder.forName(name);
+      initSampleStorage(name);
       createPollers();
-      myServerBuilder.build().start();
+      myServer = myServerBuilder.build().start();
     }
     catch (IOException ex) {
       LOG.error(ex.getMessage());
     }
   }
 
+  /**
+   * Sets up the disk backed storage the pollers keep their samples in. If no temp directory can be created we fall back to keeping all
+   * samples in memory.
+   */
+  private void initSampleStorage(String name) {
+    SampleStoreFactory factory = SampleStoreFactory.IN_MEMORY;
+    try {
+      myStorageDirectory = FileUtil.createTempDirectory("datastore", name, true);
+      factory = SegmentedSampleStore.factory(myStorageDirectory);
+    }
+    catch (IOException ex) {
+      LOG.warn("Unable to create datastore storage directory, keeping samples in memory.", ex);
+    }
+    SampleStoreFactory delegate = factory;
+    mySampleStoreFactory = new SampleStoreFactory() {
+      @NotNull
+      @Override
+      public <T> SampleStore<T> createStore(@NotNull String storeName, @NotNull SampleCodec<T> codec) {
+        SampleStore<T> store = delegate.createStore(storeName, codec);
+        myStores.add(store);
+        return store;
+      }
+    };
+  }
+
   /**
    * Entry point for the datastore pollers and passthrough services are created,
    * and registered as the set of features the datastore supports.
@@ -60,9 +104,9 @@ public class DataStoreService {
   public void createPollers() {
     registerService(new ProfilerService(this));
     registerService(new EventDataPoller());
-    registerService(new CpuDataPoller());
+    registerService(new CpuDataPoller(mySampleStoreFactory));
     registerService(new MemoryDataPoller(this));
-    registerService(new NetworkDataPoller());
+    registerService(new NetworkDataPoller(mySampleStoreFactory));
   }
 
   /**
@@ -85,6 +129,7 @@ public class DataStoreService {
       service.connectService(myChannel);
       RunnableFuture<Void> runner = service.getRunner();
       if (runner != null) {
+        myRunners.put(service, runner);
         ApplicationManager.getApplication().executeOnPooledThread(runner);
       }
     }
@@ -112,13 +157,35 @@ public class DataStoreService {
    * Disconnect the datastore from the connected device.
    */
   public void disconnect() {
-    // TODO: Shutdown service connections.
+    // Stop polling the old channel, connecting creates new runners for the new one.
+    myRunners.values().forEach(runner -> runner.cancel(true));
+    myRunners.clear();
     if (myChannel != null) {
       myChannel.shutdown();
     }
     myChannel = null;
   }
 
+  /**
+   * Disconnects from the device, stops the datastore server and releases the storage (e.g. the segment files) of every poller. The
+   * datastore should not be used afterwards.
+   */
+  public void shutdown() {
+    disconnect();
+    if (myServer != null) {
+      myServer.shutdownNow();
+      myServer = null;
+    }
+    for (SampleStore<?> store : myStores) {
+      store.close();
+    }
+    myStores.clear();
+    if (myStorageDirectory != null) {
+      FileUtil.delete(myStorageDirectory);
+      myStorageDirectory = null;
+    }
+  }
+
   /**
    * Since older releases of Android and uninstrumented apps will not have JVMTI allocation tracking, we therefore need to support the older
    * JDWP allocation tracking functionality.
@@ -131,4 +198,23 @@ public class DataStoreService {
   public LegacyAllocationTracker getLegacyAllocationTracker() {
     return myLegacyAllocationTracker;
   }
+
+  /**
+   * @return the {@link PollStats} (e.g. ingest latency) of each polling service, keyed by service name.
+   */
+  @NotNull
+  public Map<String, PollStats> getPollStats() {
+    Map<String, PollStats> stats = new TreeMap<>();
+    myRunners.forEach((service, runner) -> {
+      if (runner instanceof PollRunner) {
+        stats.put(service.getClass().getSimpleName(), ((PollRunner)runner).getStats());
+      }
+    });
+    return stats;
+  }
+
+  @NotNull
+  public SampleStoreFactory getSampleStoreFactory() {
+    return mySampleStoreFactory;
+  }
 }
@@ -15,24 +15,46 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.MinMaxPyramid;
 import com.android.tools.adtui.model.SeriesData;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Implementation of {@link DataAdapter} interface.
  * This class uses gnu trove lists for the performance reason.
  */
 public class LongDataAdapter implements DataAdapter<Long> {
+  /**
+   * About the period the pollers sample at, which sizes the {@link MinMaxPyramid} kept alongside the data.
+   */
+  public static final long DEFAULT_SAMPLING_PERIOD_US = TimeUnit.MILLISECONDS.toMicros(250);
+
   @NotNull
   private final TLongArrayList myTimestampData;
 
   @NotNull
   private final TLongArrayList myValues;
 
+  @NotNull
+  private final MinMaxPyramid myPyramid;
+
+  /**
+   * Number of samples added to {@link #myPyramid} so far. The lists are filled by the poller, so the pyramid catches up when it is read.
+   * The EDT and the chart geometry thread both read it, so catching up is serialized on this adapter.
+   */
+  private int myPyramidSize;
+
   public LongDataAdapter(@NotNull TLongArrayList timestampData, @NotNull TLongArrayList trafficData) {
+    this(timestampData, trafficData, DEFAULT_SAMPLING_PERIOD_US);
+  }
+
+  public LongDataAdapter(@NotNull TLongArrayList timestampData, @NotNull TLongArrayList trafficData, long samplingPeriodUs) {
     myTimestampData = timestampData;
     myValues = trafficData;
+    myPyramid = MinMaxPyramid.forSamplingPeriod(samplingPeriodUs);
   }
 
   @Override
@@ -45,10 +67,43 @@ public class LongDataAdapter implements DataAdapter<Long> {
     return new SeriesData<>(myTimestampData.get(index), myValues.get(index));
   }
 
+  /**
+   * Same as {@link #get(int)}, without boxing the sample.
+   */
+  public long getTimestamp(int index) {
+    return myTimestampData.get(index);
+  }
+
+  /**
+   * Same as {@link #get(int)}, without boxing the sample.
+   */
+  public long getValue(int index) {
+    return myValues.get(index);
+  }
+
+  /**
+   * @return the min/max aggregates of the data, updated with any samples added since the last call.
+   */
+  @NotNull
+  public synchronized MinMaxPyramid getPyramid() {
+    int size = Math.min(myTimestampData.size(), myValues.size());
+    if (size < myPyramidSize) {
+      // The lists were cleared behind our back.
+      myPyramid.clear();
+      myPyramidSize = 0;
+    }
+    for (; myPyramidSize < size; myPyramidSize++) {
+      myPyramid.add(myTimestampData.get(myPyramidSize), myValues.get(myPyramidSize));
+    }
+    return myPyramid;
+  }
+
   @Override
-  public void reset() {
+  public synchronized void reset() {
     myTimestampData.clear();
     myValues.clear();
+    myPyramid.clear();
+    myPyramidSize = 0;
   }
 
   @Override
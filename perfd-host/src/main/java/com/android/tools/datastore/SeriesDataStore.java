@@ -15,9 +15,11 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.MinMaxPyramid;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.datastore.profilerclient.DeviceProfilerService;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This interface is the minimal interface required for defining an object that
@@ -91,4 +93,26 @@ public interface SeriesDataStore {
   default <T> SeriesData<T> getDataAt(SeriesDataType type, int index) {
     return getDataAt(type, index, null);
   }
+
+  /**
+   * Returns the time of the sample at a given index. Implementations should avoid creating a {@link SeriesData} where they can.
+   */
+  default long getTimeAt(SeriesDataType type, int index, Object target) {
+    return getDataAt(type, index, target).x;
+  }
+
+  /**
+   * Returns the value of a numeric sample at a given index. Implementations should avoid creating a {@link SeriesData} where they can.
+   */
+  default double getValueAt(SeriesDataType type, int index, Object target) {
+    return ((Number)getDataAt(type, index, target).value).doubleValue();
+  }
+
+  /**
+   * Returns the min/max aggregates of a numeric series, or null if its adapter doesn't maintain any.
+   */
+  @Nullable
+  default MinMaxPyramid getPyramid(SeriesDataType type, Object target) {
+    return null;
+  }
 }
@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.adtui.model.MinMaxPyramid;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.datastore.profilerclient.DeviceProfilerService;
@@ -94,6 +95,27 @@ public final class SeriesDataStoreImpl implements SeriesDataStore {
     return (SeriesData<T>)getAdapter(type, target).get(index);
   }
 
+  @Override
+  public long getTimeAt(SeriesDataType type, int index, @Nullable Object target) {
+    DataAdapter<?> adapter = getAdapter(type, target);
+    return adapter instanceof LongDataAdapter ? ((LongDataAdapter)adapter).getTimestamp(index) : adapter.get(index).x;
+  }
+
+  @Override
+  public double getValueAt(SeriesDataType type, int index, @Nullable Object target) {
+    DataAdapter<?> adapter = getAdapter(type, target);
+    return adapter instanceof LongDataAdapter
+           ? ((LongDataAdapter)adapter).getValue(index)
+           : ((Number)adapter.get(index).value).doubleValue();
+  }
+
+  @Nullable
+  @Override
+  public MinMaxPyramid getPyramid(SeriesDataType type, @Nullable Object target) {
+    DataAdapter<?> adapter = getAdapter(type, target);
+    return adapter instanceof LongDataAdapter ? ((LongDataAdapter)adapter).getPyramid() : null;
+  }
+
   @Override
   public <T> SeriesDataList<T> getSeriesData(SeriesDataType type, Range range, @Nullable Object target) {
     return new SeriesDataList<>(range, this, type, target);
@@ -16,6 +16,9 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.storage.ProtoSampleCodec;
+import com.android.tools.datastore.storage.SampleStore;
+import com.android.tools.datastore.storage.SampleStoreFactory;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profiler.proto.Profiler;
@@ -45,8 +48,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
    */
   private ProfilerServiceGrpc.ProfilerServiceBlockingStub myProfilerService;
 
-  //TODO Pull this into a storage container that can read/write this to disk
-  protected final List<CpuProfiler.CpuProfilerData> myData = new ArrayList<>();
+  protected final SampleStore<CpuProfiler.CpuProfilerData> myData;
   protected final Map<Integer, CpuProfiler.GetThreadsResponse.Thread.Builder> myThreads = new TreeMap<>();
   protected final Map<Integer, TraceData> myTraces = new HashMap<>();
 
@@ -56,12 +58,13 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
 
   private long myStartTraceTimestamp = -1;
 
-  public CpuDataPoller() {
+  public CpuDataPoller(@NotNull SampleStoreFactory storeFactory) {
+    myData = storeFactory.createStore("cpu", new ProtoSampleCodec<>(CpuProfiler.CpuProfilerData.parser()));
   }
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    return new PollRunner(this, PollRunner.ACTIVE_POLLING_DELAY_NS, PollRunner.IDLE_POLLING_DELAY_NS);
   }
 
   @Override
@@ -76,7 +79,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
   }
 
   @Override
-  public void poll() throws StatusRuntimeException {
+  public boolean poll() throws StatusRuntimeException {
     CpuProfiler.CpuDataRequest.Builder dataRequestBuilder = CpuProfiler.CpuDataRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myDataRequestStartTimestampNs)
@@ -86,7 +89,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     synchronized (myLock) {
       for (CpuProfiler.CpuProfilerData data : response.getDataList()) {
         myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
+        myData.append(data.getBasicInfo().getEndTimestamp(), data);
         if (data.getDataCase() == CpuProfiler.CpuProfilerData.DataCase.THREAD_ACTIVITIES) {
           CpuProfiler.ThreadActivities activities = data.getThreadActivities();
           if (activities != null) {
@@ -107,6 +110,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
         }
       }
     }
+    return response.getDataCount() > 0;
   }
 
   @Override
@@ -121,15 +125,7 @@ public class CpuDataPoller extends CpuServiceGrpc.CpuServiceImplBase implements
     long startTime = request.getStartTimestamp();
     long endTime = request.getEndTimestamp();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      for (CpuProfiler.CpuProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          response.addData(data);
-        }
-      }
-    }
+    myData.query(startTime, endTime, response::addData);
     observer.onNext(response.build());
     observer.onCompleted();
   }
@@ -51,7 +51,7 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
   }
 
   @Override
-  public void poll() throws StatusRuntimeException {
+  public boolean poll() throws StatusRuntimeException {
     EventProfiler.EventDataRequest.Builder dataRequestBuilder = EventProfiler.EventDataRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myDataRequestStartTimestampNs)
@@ -97,6 +97,7 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
         mySystemMap.put(id, data);
       }
     }
+    return activityResponse.getDataCount() > 0 || systemResponse.getDataCount() > 0;
   }
 
   @Override
@@ -118,7 +119,8 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
         // 1) the first state change before the current start time.
         // 2) add all the state changes in the current time range.
         // 3) add the latest state change assuming the first two criteria are not met.
-        for (int i = 0; i < data.getStateChangesCount(); i++) {
+        // State changes are in timestamp order, so skip straight to the first one after the start time.
+        for (int i = firstStateChangeAfter(data, request.getStartTimestamp()); i < data.getStateChangesCount(); i++) {
           EventProfiler.ActivityStateData state = data.getStateChanges(i);
           if (state.getTimestamp() > request.getStartTimestamp() && state.getTimestamp() < request.getEndTimestamp()) {
             if (builder.getStateChangesCount() == 0 && i > 0) {
@@ -141,6 +143,21 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
     responseObserver.onCompleted();
   }
 
+  private static int firstStateChangeAfter(EventProfiler.ActivityData data, long time) {
+    int low = 0;
+    int high = data.getStateChangesCount();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (data.getStateChanges(mid).getTimestamp() <= time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   @Override
   public void getSystemData(EventProfiler.EventDataRequest request, StreamObserver<EventProfiler.SystemDataResponse> responseObserver) {
     EventProfiler.SystemDataResponse.Builder response = EventProfiler.SystemDataResponse.newBuilder();
@@ -185,6 +202,6 @@ public class EventDataPoller extends EventServiceGrpc.EventServiceImplBase imple
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    return new PollRunner(this, PollRunner.ACTIVE_POLLING_DELAY_NS, PollRunner.IDLE_POLLING_DELAY_NS);
   }
 }
@@ -19,6 +19,9 @@ import com.android.tools.adtui.model.DurationData;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LegacyAllocationTrackingService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.storage.ProtoSampleCodec;
+import com.android.tools.datastore.storage.SampleStore;
+import com.android.tools.datastore.storage.SampleStoreFactory;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationEvent;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationsInfo;
@@ -27,31 +30,37 @@ import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.VmStatsSample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import io.grpc.ManagedChannel;
 import io.grpc.ServerServiceDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.RunnableFuture;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 import static com.android.tools.profiler.proto.MemoryProfiler.TrackAllocationsResponse.Status.SUCCESS;
 
 public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
+  private static final Logger LOG = Logger.getInstance(MemoryDataPoller.class);
+
   private final LegacyAllocationTrackingService myLegacyAllocationTrackingService;
 
   private long myDataRequestStartTimestampNs = Long.MIN_VALUE;
 
   private MemoryServiceGrpc.MemoryServiceBlockingStub myPollingService;
 
-  //TODO: Pull this into a storage container that can read/write this to disk
   //TODO: Rename MemoryData to MemoryProfilerData for consistency
   //TODO: Do these needs to be synchronized?
-  protected final List<MemorySample> myMemoryData = new ArrayList<>();
-  protected final List<VmStatsSample> myStatsData = new ArrayList<>();
+  protected final SampleStore<MemorySample> myMemoryData;
+  protected final SampleStore<VmStatsSample> myStatsData;
   protected final List<HeapDumpSample> myHeapData = new ArrayList<>();
-  protected final List<AllocationEvent> myAllocationEvents = new ArrayList<>();
+  protected final SampleStore<AllocationEvent> myAllocationEvents;
   protected final List<AllocationsInfo> myAllocationsInfos = new ArrayList<>();
   protected final Map<String, AllocatedClass> myAllocatedClasses = new HashMap<>();
   protected final Map<ByteString, AllocationStack> myAllocationStacks = new HashMap<>();
@@ -65,11 +74,15 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   public MemoryDataPoller(@NotNull DataStoreService dataStoreService) {
     myLegacyAllocationTrackingService = new LegacyAllocationTrackingService(dataStoreService::getLegacyAllocationTracker);
+    SampleStoreFactory storeFactory = dataStoreService.getSampleStoreFactory();
+    myMemoryData = storeFactory.createStore("memory", new ProtoSampleCodec<>(MemorySample.parser()));
+    myStatsData = storeFactory.createStore("vmstats", new ProtoSampleCodec<>(VmStatsSample.parser()));
+    myAllocationEvents = storeFactory.createStore("allocations", new ProtoSampleCodec<>(AllocationEvent.parser()));
   }
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    return new PollRunner(this, PollRunner.ACTIVE_POLLING_DELAY_NS, PollRunner.IDLE_POLLING_DELAY_NS);
   }
 
   @Override
@@ -87,7 +100,9 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     synchronized (myUpdatingDataLock) {
       myMemoryData.clear();
       myStatsData.clear();
+      myHeapData.forEach(HeapDumpSample::discard);
       myHeapData.clear();
+      myPendingHeapDumpSample = null;
     }
     myProcessId = request.getAppId();
     observer.onNext(myPollingService.startMonitoringApp(request));
@@ -110,6 +125,7 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
   @Override
   public void getHeapDump(HeapDumpDataRequest request, StreamObserver<DumpDataResponse> responseObserver) {
     DumpDataResponse.Builder responseBuilder = DumpDataResponse.newBuilder();
+    File file = null;
     synchronized (myUpdatingDataLock) {
       int index = Collections
         .binarySearch(myHeapData, new HeapDumpSample(request.getDumpId()), (o1, o2) -> o1.myInfo.getDumpId() - o2.myInfo.getDumpId());
@@ -121,18 +137,27 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
         if (dump.isError) {
           responseBuilder.setStatus(DumpDataResponse.Status.FAILURE_UNKNOWN);
         }
+        else if (dump.myFile == null) {
+          responseBuilder.setStatus(DumpDataResponse.Status.NOT_READY);
+        }
         else {
-          ByteString data = dump.myData;
-          if (data == null) {
-            responseBuilder.setStatus(DumpDataResponse.Status.NOT_READY);
-          }
-          else {
-            responseBuilder.setStatus(DumpDataResponse.Status.SUCCESS);
-            responseBuilder.setData(data);
-          }
+          file = dump.myFile;
         }
       }
     }
+    if (file != null) {
+      // Dumps are only read back into memory for the duration of the request, the poller itself keeps them on disk. The read happens
+      // outside of the lock so polling isn't held up by it, if the app is restarted meanwhile the file is gone and the read fails.
+      try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+        responseBuilder.setStatus(DumpDataResponse.Status.SUCCESS);
+        responseBuilder.setData(ByteString.readFrom(in));
+      }
+      catch (IOException e) {
+        LOG.warn("Unable to read heap dump " + request.getDumpId(), e);
+        responseBuilder.clearData();
+        responseBuilder.setStatus(DumpDataResponse.Status.FAILURE_UNKNOWN);
+      }
+    }
     responseObserver.onNext(responseBuilder.build());
     responseObserver.onCompleted();
   }
@@ -168,7 +193,7 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
             synchronized (myUpdatingDataLock) {
               classes.forEach(allocatedClass -> myAllocatedClasses.putIfAbsent(allocatedClass.getClassName(), allocatedClass));
               stacks.forEach(allocationStack -> myAllocationStacks.putIfAbsent(allocationStack.getStackId(), allocationStack));
-              allocations.forEach(myAllocationEvents::add);
+              allocations.forEach(event -> myAllocationEvents.append(event.getTimestamp(), event));
             }
           });
       }
@@ -193,26 +218,22 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
 
-    //TODO: Optimize so we do not need to loop over all the data every request, ideally binary search to start time and loop till end.
+    // Sample stores can be read while the poll thread is writing to them, only the duration lists need the lock.
+    myMemoryData.query(startTime, endTime, response::addMemSamples);
+    myStatsData.query(startTime, endTime, response::addVmStatsSamples);
+    myAllocationEvents.query(startTime, endTime, response::addAllocationEvents);
     synchronized (myUpdatingDataLock) {
-      myMemoryData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime).forEach(response::addMemSamples);
-      myStatsData.stream().filter(obj -> obj.getTimestamp() > startTime && obj.getTimestamp() <= endTime)
-        .forEach(response::addVmStatsSamples);
-      myHeapData.stream().filter(obj -> (obj.myInfo.getStartTime() > startTime && obj.myInfo.getStartTime() <= endTime) ||
-                                        (obj.myInfo.getEndTime() > startTime && obj.myInfo.getEndTime() <= endTime))
-        .forEach(obj -> response.addHeapDumpInfos(obj.myInfo));
-      myAllocationsInfos.stream().filter(info -> (info.getStartTime() > startTime && info.getStartTime() <= endTime) ||
-                                                 (info.getEndTime() > startTime && info.getEndTime() <= endTime))
-        .forEach(response::addAllocationsInfo);
-      myAllocationEvents.stream().filter(event -> event.getTimestamp() > startTime && event.getTimestamp() <= endTime)
-        .forEach(response::addAllocationEvents);
+      forEachOverlapping(myHeapData, sample -> sample.myInfo.getStartTime(), sample -> sample.myInfo.getEndTime(), startTime, endTime,
+                         sample -> response.addHeapDumpInfos(sample.myInfo));
+      forEachOverlapping(myAllocationsInfos, AllocationsInfo::getStartTime, AllocationsInfo::getEndTime, startTime, endTime,
+                         response::addAllocationsInfo);
     }
     responseObserver.onNext(response.build());
     responseObserver.onCompleted();
   }
 
   @Override
-  public void poll() {
+  public boolean poll() {
     MemoryRequest.Builder dataRequestBuilder = MemoryRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTime(myDataRequestStartTimestampNs)
@@ -220,9 +241,9 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     MemoryData response = myPollingService.getData(dataRequestBuilder.build());
 
     synchronized (myUpdatingDataLock) {
-      myMemoryData.addAll(response.getMemSamplesList());
-      myStatsData.addAll(response.getVmStatsSamplesList());
-      myAllocationEvents.addAll(response.getAllocationEventsList());
+      response.getMemSamplesList().forEach(sample -> myMemoryData.append(sample.getTimestamp(), sample));
+      response.getVmStatsSamplesList().forEach(sample -> myStatsData.append(sample.getTimestamp(), sample));
+      response.getAllocationEventsList().forEach(event -> myAllocationEvents.append(event.getTimestamp(), event));
 
       if (response.getAllocationsInfoCount() > 0) {
         int startAppendIndex = 0;
@@ -271,9 +292,16 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
           for (HeapDumpSample sample : dumpsToFetch) {
             DumpDataResponse dumpDataResponse = myPollingService.getHeapDump(
               HeapDumpDataRequest.newBuilder().setAppId(myProcessId).setDumpId(sample.myInfo.getDumpId()).build());
+            File file = dumpDataResponse.getStatus() == DumpDataResponse.Status.SUCCESS ? spill(sample, dumpDataResponse.getData()) : null;
             synchronized (myUpdatingDataLock) {
-              if (dumpDataResponse.getStatus() == DumpDataResponse.Status.SUCCESS) {
-                sample.myData = dumpDataResponse.getData();
+              if (sample.isDiscarded) {
+                // The app was restarted while the dump was being fetched, nothing refers to the sample anymore.
+                if (file != null) {
+                  FileUtil.delete(file);
+                }
+              }
+              else if (file != null) {
+                sample.myFile = file;
               }
               else {
                 sample.isError = true;
@@ -286,6 +314,67 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    return response.getMemSamplesCount() > 0 || response.getVmStatsSamplesCount() > 0 || response.getAllocationEventsCount() > 0 ||
+           response.getAllocationsInfoCount() > 0 || response.getHeapDumpInfosCount() > 0;
+  }
+
+  /**
+   * Writes the contents of a heap dump to a temp file, so the poller does not hold on to every dump taken during the session.
+   *
+   * @return the file, or null if the dump could not be written.
+   */
+  @Nullable
+  private static File spill(@NotNull HeapDumpSample sample, @NotNull ByteString data) {
+    File file = null;
+    try {
+      file = FileUtil.createTempFile("heapdump" + sample.myInfo.getDumpId(), ".hprof", true);
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+        data.writeTo(out);
+      }
+      return file;
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to store heap dump " + sample.myInfo.getDumpId(), e);
+      if (file != null) {
+        FileUtil.delete(file);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Passes the entries of a list of consecutive (start time ordered, non-overlapping) durations that start or end within (startTime,
+   * endTime] to the consumer. Binary searches for the first duration that ends after startTime instead of scanning the whole list.
+   */
+  private static <T> void forEachOverlapping(@NotNull List<T> durations,
+                                             @NotNull ToLongFunction<T> getStart,
+                                             @NotNull ToLongFunction<T> getEnd,
+                                             long startTime,
+                                             long endTime,
+                                             @NotNull Consumer<T> consumer) {
+    int low = 0;
+    int high = durations.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareTimes(getEnd.applyAsLong(durations.get(mid)), startTime) <= 0) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+
+    for (int i = low; i < durations.size(); i++) {
+      T duration = durations.get(i);
+      long start = getStart.applyAsLong(duration);
+      if (start > endTime) {
+        break;
+      }
+      long end = getEnd.applyAsLong(duration);
+      if ((start > startTime && start <= endTime) || (end > startTime && end <= endTime)) {
+        consumer.accept(duration);
+      }
+    }
   }
 
   private static int compareTimes(long left, long right) {
@@ -303,8 +392,9 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
 
   private static class HeapDumpSample {
     @NotNull public HeapDumpInfo myInfo;
-    @Nullable public volatile ByteString myData = null;
+    @Nullable public volatile File myFile = null;
     public volatile boolean isError = false;
+    public volatile boolean isDiscarded = false;
 
     private HeapDumpSample(@NotNull HeapDumpInfo info) {
       myInfo = info;
@@ -313,5 +403,17 @@ public class MemoryDataPoller extends MemoryServiceGrpc.MemoryServiceImplBase im
     public HeapDumpSample(int id) {
       myInfo = HeapDumpInfo.newBuilder().setDumpId(id).build();
     }
+
+    /**
+     * Deletes the dump's file, and makes a fetch still in flight for it delete its file instead of storing it.
+     */
+    public void discard() {
+      isDiscarded = true;
+      File file = myFile;
+      if (file != null) {
+        FileUtil.delete(file);
+        myFile = null;
+      }
+    }
   }
 }
\ No newline at end of file
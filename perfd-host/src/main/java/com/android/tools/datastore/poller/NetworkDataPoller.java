@@ -16,6 +16,9 @@
 package com.android.tools.datastore.poller;
 
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.storage.ProtoSampleCodec;
+import com.android.tools.datastore.storage.SampleStore;
+import com.android.tools.datastore.storage.SampleStoreFactory;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import io.grpc.ManagedChannel;
@@ -27,7 +30,6 @@ import org.jetbrains.annotations.NotNull;
 import java.util.*;
 import java.util.concurrent.RunnableFuture;
 
-// TODO: Implement a storage container that can read/write data to disk
 public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase implements ServicePassThrough, PollRunner.PollingCallback {
   // Intentionally accessing this field out of sync block because it's OK for it to be o
   // off by a frame; we'll pick up all data eventually
@@ -38,15 +40,17 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   private int myProcessId = -1;
 
   private final Object myLock = new Object();
-  @GuardedBy("myLock") private final List<NetworkProfiler.NetworkProfilerData> myData = new ArrayList<>();
+  // Written under myLock, read without it.
+  private final SampleStore<NetworkProfiler.NetworkProfilerData> myData;
   @GuardedBy("myLock") private final Map<Long, ConnectionData> myConnectionData = new LinkedHashMap<>();
 
-  public NetworkDataPoller() {
+  public NetworkDataPoller(@NotNull SampleStoreFactory storeFactory) {
+    myData = storeFactory.createStore("network", new ProtoSampleCodec<>(NetworkProfiler.NetworkProfilerData.parser()));
   }
 
   @Override
   public RunnableFuture<Void> getRunner() {
-    return new PollRunner(this, PollRunner.POLLING_DELAY_NS);
+    return new PollRunner(this, PollRunner.ACTIVE_POLLING_DELAY_NS, PollRunner.IDLE_POLLING_DELAY_NS);
   }
 
   @Override
@@ -63,34 +67,22 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   public void getData(NetworkProfiler.NetworkDataRequest request, StreamObserver<NetworkProfiler.NetworkDataResponse> responseObserver) {
     NetworkProfiler.NetworkDataResponse.Builder response = NetworkProfiler.NetworkDataResponse.newBuilder();
 
-    //TODO: Optimize so we do not need to loop all the data every request, ideally binary search to start time and loop till end.
-    synchronized (myLock) {
-      if (myData.size() == 0) {
-        responseObserver.onNext(response.build());
-        responseObserver.onCompleted();
-        return;
-      }
-
-      long startTime = request.getStartTimestamp();
-      long endTime = request.getEndTimestamp();
-
-      for (NetworkProfiler.NetworkProfilerData data : myData) {
-        long current = data.getBasicInfo().getEndTimestamp();
-        if (current > startTime && current <= endTime) {
-          if ((request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
-              (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
-               data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
-            response.addData(data);
-          }
-        }
+    // myData is lock free for readers, so this doesn't contend with the poll thread.
+    long startTime = request.getStartTimestamp();
+    long endTime = request.getEndTimestamp();
+    myData.query(startTime, endTime, data -> {
+      if ((request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTION_DATA) ||
+          (request.getType() == NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY &&
+           data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.CONNECTIVITY_DATA)) {
+        response.addData(data);
       }
-      responseObserver.onNext(response.build());
-      responseObserver.onCompleted();
-    }
+    });
+    responseObserver.onNext(response.build());
+    responseObserver.onCompleted();
   }
 
   @Override
@@ -176,9 +168,9 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
   }
 
   @Override
-  public void poll() {
+  public boolean poll() {
     if (myProcessId == -1) {
-      return;
+      return false;
     }
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
       .setAppId(myProcessId)
@@ -189,13 +181,17 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
     synchronized (myLock) {
       for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
         myDataRequestStartTimestampNs = data.getBasicInfo().getEndTimestamp();
-        myData.add(data);
+        myData.append(data.getBasicInfo().getEndTimestamp(), data);
       }
-      pollHttpRange();
+      boolean hasHttpData = pollHttpRange();
+      return response.getDataCount() > 0 || hasHttpData;
     }
   }
 
-  private void pollHttpRange() {
+  /**
+   * @return true if any connection was added or updated.
+   */
+  private boolean pollHttpRange() {
     NetworkProfiler.HttpRangeRequest.Builder requestBuilder = NetworkProfiler.HttpRangeRequest.newBuilder()
       .setAppId(myProcessId)
       .setStartTimestamp(myHttpRangeRequestStartTimeNs)
@@ -220,6 +216,7 @@ public class NetworkDataPoller extends NetworkServiceGrpc.NetworkServiceImplBase
         }
       }
     }
+    return response.getDataCount() > 0;
   }
 
   private void pollHttpDetails(long connectionId, NetworkProfiler.HttpDetailsRequest.Type type) {
@@ -23,16 +23,35 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs a {@link PollingCallback} on a loop. With a fixed period the callback is polled every period. In adaptive mode the delay between
+ * polls is halved, down to the active period, after each poll that received data, and doubled, up to the idle period, after each poll
+ * that didn't. The delay therefore settles around the rate at which the service produces data, so busy services see their samples
+ * sooner while services that produce data slowly, or not at all, are not polled faster than they need to be.
+ */
 public class PollRunner implements RunnableFuture<Void> {
   interface PollingCallback {
-    void poll();
+    /**
+     * @return true if the poll received new data.
+     */
+    boolean poll();
   }
 
-  public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
+  /**
+   * Shortest delay between polls, used while every poll returns data.
+   */
+  public static final long ACTIVE_POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  /**
+   * Longest delay between polls once the service stops returning data.
+   */
+  public static final long IDLE_POLLING_DELAY_NS = TimeUnit.SECONDS.toNanos(1);
 
   private static Logger getLog() { return Logger.getInstance(PollRunner.class); }
 
-  private long myPollPeriodNs;
+  private final long myMinPollPeriodNs;
+
+  private final long myMaxPollPeriodNs;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
@@ -40,11 +59,28 @@ public class PollRunner implements RunnableFuture<Void> {
 
   PollingCallback myPollingCallback;
 
+  private final PollStats myStats = new PollStats();
+
   public PollRunner(PollingCallback pollCallback, long pollPeriodNs) {
+    this(pollCallback, pollPeriodNs, pollPeriodNs);
+  }
+
+  public PollRunner(PollingCallback pollCallback, long minPollPeriodNs, long maxPollPeriodNs) {
+    if (minPollPeriodNs > maxPollPeriodNs) {
+      throw new IllegalArgumentException("Invalid poll periods: " + minPollPeriodNs + " > " + maxPollPeriodNs);
+    }
     myPollingCallback = pollCallback;
-    myPollPeriodNs = pollPeriodNs;
+    myMinPollPeriodNs = minPollPeriodNs;
+    myMaxPollPeriodNs = maxPollPeriodNs;
+  }
 
+  /**
+   * @return the statistics of the polls made so far, e.g. to compare the ingest latency of different poll periods.
+   */
+  public PollStats getStats() {
+    return myStats;
   }
+
   public void stop() {
     cancel(true);
     try {
@@ -58,13 +94,22 @@ public class PollRunner implements RunnableFuture<Void> {
   @Override
   public void run() {
     try {
+      long periodNs = myMinPollPeriodNs;
+      long previousStartTimeNs = System.nanoTime();
       while (myRunning.getCount() > 0) {
         long startTimeNs = System.nanoTime();
+        boolean hasData = false;
         try {
-          myPollingCallback.poll();
+          hasData = myPollingCallback.poll();
         }
         catch (StatusRuntimeException ignored) {}
-        long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
+        long endTimeNs = System.nanoTime();
+        // Data produced right after the previous poll went out only arrives with this one.
+        myStats.record(endTimeNs - startTimeNs, endTimeNs - previousStartTimeNs, hasData);
+        previousStartTimeNs = startTimeNs;
+
+        periodNs = getNextPeriodNs(periodNs, hasData);
+        long sleepTime = Math.max(periodNs - (endTimeNs - startTimeNs), 0L);
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
     }
@@ -76,6 +121,13 @@ public class PollRunner implements RunnableFuture<Void> {
     }
   }
 
+  /**
+   * @return the delay before the poll that follows one made after {@code periodNs}.
+   */
+  long getNextPeriodNs(long periodNs, boolean hasData) {
+    return hasData ? Math.max(periodNs / 2, myMinPollPeriodNs) : Math.min(periodNs * 2, myMaxPollPeriodNs);
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+/**
+ * Running statistics of a {@link PollRunner}. The ingest latency of a poll is the time from the previous poll's request to this poll's
+ * response, i.e. the longest any sample received by this poll could have waited on the device before reaching the datastore.
+ */
+public class PollStats {
+  private long myPollCount;
+  private long myEmptyPollCount;
+  private long myTotalRpcTimeNs;
+  private long myTotalIngestLatencyNs;
+  private long myMaxIngestLatencyNs;
+
+  synchronized void record(long rpcTimeNs, long ingestLatencyNs, boolean hasData) {
+    myPollCount++;
+    myTotalRpcTimeNs += rpcTimeNs;
+    if (hasData) {
+      myTotalIngestLatencyNs += ingestLatencyNs;
+      myMaxIngestLatencyNs = Math.max(myMaxIngestLatencyNs, ingestLatencyNs);
+    }
+    else {
+      myEmptyPollCount++;
+    }
+  }
+
+  public synchronized long getPollCount() {
+    return myPollCount;
+  }
+
+  /**
+   * @return the number of polls that didn't receive any data.
+   */
+  public synchronized long getEmptyPollCount() {
+    return myEmptyPollCount;
+  }
+
+  public synchronized long getAverageRpcTimeNs() {
+    return myPollCount == 0 ? 0 : myTotalRpcTimeNs / myPollCount;
+  }
+
+  /**
+   * @return the average ingest latency of the polls that received data.
+   */
+  public synchronized long getAverageIngestLatencyNs() {
+    long dataPolls = myPollCount - myEmptyPollCount;
+    return dataPolls == 0 ? 0 : myTotalIngestLatencyNs / dataPolls;
+  }
+
+  public synchronized long getMaxIngestLatencyNs() {
+    return myMaxIngestLatencyNs;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("polls: %d (%d empty), avg rpc: %d us, avg ingest latency: %d us, max ingest latency: %d us", myPollCount,
+                         myEmptyPollCount, getAverageRpcTimeNs() / 1000, getAverageIngestLatencyNs() / 1000, myMaxIngestLatencyNs / 1000);
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * {@link SampleStore} that keeps every sample on the heap.
+ */
+public class InMemorySampleStore<T> implements SampleStore<T> {
+  private final SortedTimeSeries<T> mySamples = new SortedTimeSeries<>();
+
+  @Override
+  public void append(long timestamp, @NotNull T sample) {
+    mySamples.add(timestamp, sample);
+  }
+
+  @Override
+  public void query(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+    mySamples.forEach(startTime, endTime, consumer);
+  }
+
+  @Override
+  public int size() {
+    return mySamples.size();
+  }
+
+  @Override
+  public void clear() {
+    mySamples.clear();
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+}
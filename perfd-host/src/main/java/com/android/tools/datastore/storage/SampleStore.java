@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Storage for samples that arrive (mostly) in timestamp order, e.g. the data the pollers cache from perfd.
+ * Stores have a single writer: calls to {@link #append(long, Object)} and {@link #clear()} have to be serialized by the caller. Queries
+ * may run on any thread concurrently with writes and never block them.
+ */
+public interface SampleStore<T> {
+  /**
+   * Adds a sample to the store.
+   *
+   * @param timestamp the device time (in nanoseconds) the sample is indexed by.
+   */
+  void append(long timestamp, @NotNull T sample);
+
+  /**
+   * Passes every sample whose timestamp is in (startTime, endTime] to the consumer.
+   */
+  void query(long startTime, long endTime, @NotNull Consumer<T> consumer);
+
+  /**
+   * @return the number of samples in the store.
+   */
+  int size();
+
+  /**
+   * Removes all samples from the store.
+   */
+  void clear();
+
+  /**
+   * Removes all samples and releases any resources (e.g. files) held by the store. The store should not be used afterwards.
+   */
+  void close();
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the {@link SampleStore}s the datastore pollers keep their data in, so the backing storage can be swapped out.
+ */
+public interface SampleStoreFactory {
+  /**
+   * Factory for stores that keep everything on the heap.
+   */
+  SampleStoreFactory IN_MEMORY = new SampleStoreFactory() {
+    @NotNull
+    @Override
+    public <T> SampleStore<T> createStore(@NotNull String name, @NotNull SampleCodec<T> codec) {
+      return new InMemorySampleStore<>();
+    }
+  };
+
+  /**
+   * @param name  unique name of the store, implementations may use it to name the files backing the store.
+   * @param codec used to serialize the samples if the store moves them off heap.
+   */
+  @NotNull
+  <T> SampleStore<T> createStore(@NotNull String name, @NotNull SampleCodec<T> codec);
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link SampleStore} that partitions samples by time. Only the partition currently being written to (the hot tail) is kept on the heap,
+ * once samples move on to the next partition it is written to its own segment file and memory-mapped for reading. Each segment remembers
+ * the time range it covers so {@link #query(long, long, Consumer)} only touches the segments that overlap the requested range.
+ *
+ * Every record in a segment file is laid out as [timestamp (long)][length (int)][encoded sample (length bytes)], sorted by timestamp.
+ * Each mapped segment keeps a sparse index of every {@link #INDEX_STRIDE}th record so a query can seek close to its start time.
+ *
+ * Like {@link SortedTimeSeries}, the store has a single writer and lock free readers: the list of sealed segments and the hot segment are
+ * published as one immutable state that queries read without blocking the writer.
+ */
+public class SegmentedSampleStore<T> implements SampleStore<T> {
+  public static final long DEFAULT_PARTITION_NS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+  private static final int INDEX_STRIDE = 64;
+
+  private static Logger getLog() { return Logger.getInstance(SegmentedSampleStore.class); }
+
+  @NotNull private final File myDirectory;
+  @NotNull private final String myName;
+  @NotNull private final SampleCodec<T> myCodec;
+  private final long myPartitionNs;
+
+  // Only touched by the writer.
+  private long myHotPartition = Long.MIN_VALUE;
+
+  // Sealed segments and hot segment are published together so readers never see a sample twice or not at all while a segment is sealed.
+  @NotNull private volatile State<T> myState = new State<>(Collections.emptyList(), new MemorySegment<>());
+  // Only written by the writer.
+  private volatile int mySize;
+
+  public SegmentedSampleStore(@NotNull File directory, @NotNull String name, @NotNull SampleCodec<T> codec) {
+    this(directory, name, codec, DEFAULT_PARTITION_NS);
+  }
+
+  public SegmentedSampleStore(@NotNull File directory, @NotNull String name, @NotNull SampleCodec<T> codec, long partitionNs) {
+    if (partitionNs <= 0) {
+      throw new IllegalArgumentException("Invalid partition size: " + partitionNs);
+    }
+    myDirectory = directory;
+    myName = name;
+    myCodec = codec;
+    myPartitionNs = partitionNs;
+  }
+
+  /**
+   * @return a factory creating {@link SegmentedSampleStore}s that write their segments into the given directory.
+   */
+  @NotNull
+  public static SampleStoreFactory factory(@NotNull File directory) {
+    return new SampleStoreFactory() {
+      @NotNull
+      @Override
+      public <T> SampleStore<T> createStore(@NotNull String name, @NotNull SampleCodec<T> codec) {
+        return new SegmentedSampleStore<>(directory, name, codec);
+      }
+    };
+  }
+
+  @Override
+  public void append(long timestamp, @NotNull T sample) {
+    long partition = Math.floorDiv(timestamp, myPartitionNs);
+    if (partition > myHotPartition) {
+      if (myState.myHotSegment.size() > 0) {
+        sealHotSegment();
+      }
+      myHotPartition = partition;
+    }
+    // Samples that arrive late for an already sealed partition go into the hot segment, segments may therefore overlap in time.
+    myState.myHotSegment.add(timestamp, sample);
+    mySize++;
+  }
+
+  @Override
+  public void query(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+    State<T> state = myState;
+    List<Segment<T>> sealedSegments = state.mySealedSegments;
+    // Every segment contains at least one sample from its own partition, which is later than anything in the segments before it, so the
+    // max timestamps are sorted. Min timestamps are not (late samples), so the remaining segments are filtered by their headers.
+    for (int i = firstSegmentEndingAfter(sealedSegments, startTime); i < sealedSegments.size(); i++) {
+      Segment<T> segment = sealedSegments.get(i);
+      if (segment.overlaps(startTime, endTime)) {
+        segment.query(startTime, endTime, consumer);
+      }
+    }
+    // The hot segment may have been sealed and replaced since, but it is never written to again after that.
+    if (state.myHotSegment.overlaps(startTime, endTime)) {
+      state.myHotSegment.query(startTime, endTime, consumer);
+    }
+  }
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public void clear() {
+    List<Segment<T>> sealedSegments = myState.mySealedSegments;
+    myState = new State<>(Collections.emptyList(), new MemorySegment<>());
+    myHotPartition = Long.MIN_VALUE;
+    mySize = 0;
+    // Mappings stay valid for readers still holding the old state after their files are deleted.
+    for (Segment<T> segment : sealedSegments) {
+      segment.dispose();
+    }
+  }
+
+  @Override
+  public void close() {
+    clear();
+  }
+
+  private static <T> int firstSegmentEndingAfter(@NotNull List<Segment<T>> segments, long time) {
+    int low = 0;
+    int high = segments.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (segments.get(mid).getMaxTimestamp() <= time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void sealHotSegment() {
+    State<T> state = myState;
+    List<Segment<T>> sealedSegments = new ArrayList<>(state.mySealedSegments.size() + 1);
+    sealedSegments.addAll(state.mySealedSegments);
+
+    File file = new File(myDirectory, String.format("%s-%d-%d.seg", myName, myHotPartition, sealedSegments.size()));
+    try {
+      sealedSegments.add(MappedSegment.write(file, state.myHotSegment, myCodec));
+    }
+    catch (IOException e) {
+      // Keep the samples on the heap rather than losing them.
+      getLog().warn("Unable to write segment " + file, e);
+      FileUtil.delete(file);
+      sealedSegments.add(state.myHotSegment);
+    }
+    myState = new State<>(Collections.unmodifiableList(sealedSegments), new MemorySegment<>());
+  }
+
+  private static final class State<T> {
+    @NotNull private final List<Segment<T>> mySealedSegments;
+    @NotNull private final MemorySegment<T> myHotSegment;
+
+    private State(@NotNull List<Segment<T>> sealedSegments, @NotNull MemorySegment<T> hotSegment) {
+      mySealedSegments = sealedSegments;
+      myHotSegment = hotSegment;
+    }
+  }
+
+  private static abstract class Segment<T> {
+    abstract long getMinTimestamp();
+
+    abstract long getMaxTimestamp();
+
+    boolean overlaps(long startTime, long endTime) {
+      return getMaxTimestamp() > startTime && getMinTimestamp() <= endTime;
+    }
+
+    abstract void query(long startTime, long endTime, @NotNull Consumer<T> consumer);
+
+    void dispose() {
+    }
+  }
+
+  private static final class MemorySegment<T> extends Segment<T> {
+    private final SortedTimeSeries<T> mySamples = new SortedTimeSeries<>();
+
+    void add(long timestamp, @NotNull T sample) {
+      mySamples.add(timestamp, sample);
+    }
+
+    int size() {
+      return mySamples.size();
+    }
+
+    @Override
+    boolean overlaps(long startTime, long endTime) {
+      SortedTimeSeries.Snapshot<T> snapshot = mySamples.snapshot();
+      return snapshot.getMaxTimestamp() > startTime && snapshot.getMinTimestamp() <= endTime;
+    }
+
+    @Override
+    long getMinTimestamp() {
+      return mySamples.snapshot().getMinTimestamp();
+    }
+
+    @Override
+    long getMaxTimestamp() {
+      return mySamples.snapshot().getMaxTimestamp();
+    }
+
+    @Override
+    void query(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+      mySamples.forEach(startTime, endTime, consumer);
+    }
+  }
+
+  private static final class MappedSegment<T> extends Segment<T> {
+    @NotNull private final File myFile;
+    @NotNull private final SampleCodec<T> myCodec;
+    @NotNull private final MappedByteBuffer myBuffer;
+    // Timestamp and file offset of every INDEX_STRIDE-th record.
+    @NotNull private final long[] myIndexTimestamps;
+    @NotNull private final int[] myIndexOffsets;
+    private final long myMaxTimestamp;
+
+    private MappedSegment(@NotNull File file,
+                          @NotNull SampleCodec<T> codec,
+                          @NotNull MappedByteBuffer buffer,
+                          @NotNull long[] indexTimestamps,
+                          @NotNull int[] indexOffsets,
+                          long maxTimestamp) {
+      myFile = file;
+      myCodec = codec;
+      myBuffer = buffer;
+      myIndexTimestamps = indexTimestamps;
+      myIndexOffsets = indexOffsets;
+      myMaxTimestamp = maxTimestamp;
+    }
+
+    @NotNull
+    static <T> MappedSegment<T> write(@NotNull File file, @NotNull MemorySegment<T> source, @NotNull SampleCodec<T> codec)
+      throws IOException {
+      SortedTimeSeries.Snapshot<T> samples = source.mySamples.snapshot();
+      List<byte[]> encoded = new ArrayList<>(samples.size());
+      int length = 0;
+      for (int i = 0; i < samples.size(); i++) {
+        byte[] bytes = codec.encode(samples.get(i));
+        encoded.add(bytes);
+        length += RECORD_HEADER_SIZE + bytes.length;
+      }
+
+      int indexSize = (samples.size() + INDEX_STRIDE - 1) / INDEX_STRIDE;
+      long[] indexTimestamps = new long[indexSize];
+      int[] indexOffsets = new int[indexSize];
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      for (int i = 0; i < encoded.size(); i++) {
+        if (i % INDEX_STRIDE == 0) {
+          indexTimestamps[i / INDEX_STRIDE] = samples.getTimestamp(i);
+          indexOffsets[i / INDEX_STRIDE] = buffer.position();
+        }
+        byte[] bytes = encoded.get(i);
+        buffer.putLong(samples.getTimestamp(i)).putInt(bytes.length).put(bytes);
+      }
+      buffer.flip();
+
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        // The mapping stays valid after the channel is closed.
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        return new MappedSegment<>(file, codec, mapped, indexTimestamps, indexOffsets, samples.getMaxTimestamp());
+      }
+    }
+
+    @Override
+    long getMinTimestamp() {
+      return myIndexTimestamps.length == 0 ? Long.MAX_VALUE : myIndexTimestamps[0];
+    }
+
+    @Override
+    long getMaxTimestamp() {
+      return myMaxTimestamp;
+    }
+
+    @Override
+    void query(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+      // Seek to an indexed record at or before the start time, the records before it are all out of range.
+      int index = Arrays.binarySearch(myIndexTimestamps, startTime);
+      index = index >= 0 ? index : Math.max(0, -index - 2);
+
+      ByteBuffer buffer = myBuffer.duplicate();
+      buffer.position(myIndexOffsets.length == 0 ? 0 : myIndexOffsets[index]);
+      while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+        long timestamp = buffer.getLong();
+        int length = buffer.getInt();
+        if (timestamp > endTime) {
+          break;
+        }
+        if (timestamp > startTime) {
+          byte[] bytes = new byte[length];
+          buffer.get(bytes);
+          try {
+            consumer.accept(myCodec.decode(bytes));
+          }
+          catch (IOException e) {
+            getLog().warn("Corrupted sample in segment " + myFile, e);
+          }
+        }
+        else {
+          buffer.position(buffer.position() + length);
+        }
+      }
+    }
+
+    @Override
+    void dispose() {
+      // The mapping is only released once the segment is collected, some platforms (e.g. Windows) can't delete the file until then.
+      if (!FileUtil.delete(myFile)) {
+        myFile.deleteOnExit();
+      }
+    }
+  }
+}
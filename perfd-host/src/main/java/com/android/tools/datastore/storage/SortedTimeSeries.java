@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * In-memory series of samples kept sorted by timestamp. Samples normally arrive in order and are appended in O(1), out of order samples
+ * are inserted at their sorted position. Range lookups binary search to the first sample in range, so they cost O(log n + k) for k
+ * matching samples instead of a scan over the whole history.
+ *
+ * The series supports a single writer and any number of concurrent readers without locking: every write publishes an immutable
+ * {@link Snapshot} that readers grab with {@link #snapshot()}. In order appends only ever write past the end of the published snapshot
+ * so the backing arrays are shared between snapshots, out of order inserts and {@link #clear()} copy them. Writes from more than one
+ * thread have to be serialized by the caller.
+ */
+public class SortedTimeSeries<T> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  @NotNull private volatile Snapshot<T> mySnapshot = new Snapshot<>(new long[INITIAL_CAPACITY], new Object[INITIAL_CAPACITY], 0);
+
+  public void add(long timestamp, @NotNull T sample) {
+    Snapshot<T> current = mySnapshot;
+    int size = current.mySize;
+    long[] timestamps = current.myTimestamps;
+    Object[] samples = current.mySamples;
+
+    if (size == 0 || timestamps[size - 1] <= timestamp) {
+      if (size == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, size * 2);
+        samples = Arrays.copyOf(samples, size * 2);
+      }
+      timestamps[size] = timestamp;
+      samples[size] = sample;
+    }
+    else {
+      // Earlier snapshots may still be read, so inserting in the middle has to work on a copy.
+      int index = current.firstIndexAfter(timestamp);
+      int capacity = size == timestamps.length ? size * 2 : timestamps.length;
+      long[] newTimestamps = new long[capacity];
+      Object[] newSamples = new Object[capacity];
+      System.arraycopy(timestamps, 0, newTimestamps, 0, index);
+      System.arraycopy(samples, 0, newSamples, 0, index);
+      System.arraycopy(timestamps, index, newTimestamps, index + 1, size - index);
+      System.arraycopy(samples, index, newSamples, index + 1, size - index);
+      newTimestamps[index] = timestamp;
+      newSamples[index] = sample;
+      timestamps = newTimestamps;
+      samples = newSamples;
+    }
+    mySnapshot = new Snapshot<>(timestamps, samples, size + 1);
+  }
+
+  /**
+   * @return an immutable view of the series as of the last write.
+   */
+  @NotNull
+  public Snapshot<T> snapshot() {
+    return mySnapshot;
+  }
+
+  /**
+   * Passes every sample whose timestamp is in (startTime, endTime] to the consumer, in timestamp order.
+   */
+  public void forEach(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+    mySnapshot.forEach(startTime, endTime, consumer);
+  }
+
+  public int size() {
+    return mySnapshot.size();
+  }
+
+  public void clear() {
+    mySnapshot = new Snapshot<>(new long[INITIAL_CAPACITY], new Object[INITIAL_CAPACITY], 0);
+  }
+
+  public static final class Snapshot<T> {
+    @NotNull private final long[] myTimestamps;
+    @NotNull private final Object[] mySamples;
+    private final int mySize;
+
+    private Snapshot(@NotNull long[] timestamps, @NotNull Object[] samples, int size) {
+      myTimestamps = timestamps;
+      mySamples = samples;
+      mySize = size;
+    }
+
+    /**
+     * Passes every sample whose timestamp is in (startTime, endTime] to the consumer, in timestamp order.
+     */
+    public void forEach(long startTime, long endTime, @NotNull Consumer<T> consumer) {
+      for (int i = firstIndexAfter(startTime); i < mySize && myTimestamps[i] <= endTime; i++) {
+        consumer.accept(get(i));
+      }
+    }
+
+    /**
+     * @return the index of the first sample with a timestamp strictly greater than the given time, or {@link #size()} if there is none.
+     */
+    public int firstIndexAfter(long time) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= time) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    public long getTimestamp(int index) {
+      checkIndex(index);
+      return myTimestamps[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    public T get(int index) {
+      checkIndex(index);
+      return (T)mySamples[index];
+    }
+
+    public int size() {
+      return mySize;
+    }
+
+    public boolean isEmpty() {
+      return mySize == 0;
+    }
+
+    public long getMinTimestamp() {
+      return mySize == 0 ? Long.MAX_VALUE : myTimestamps[0];
+    }
+
+    public long getMaxTimestamp() {
+      return mySize == 0 ? Long.MIN_VALUE : myTimestamps[mySize - 1];
+    }
+
+    private void checkIndex(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.datastore.poller.PollRunner.ACTIVE_POLLING_DELAY_NS;
+import static com.android.tools.datastore.poller.PollRunner.IDLE_POLLING_DELAY_NS;
+import static org.junit.Assert.*;
+
+public class PollRunnerTest {
+  @Test
+  public void testFixedPeriod() {
+    long period = TimeUnit.MILLISECONDS.toNanos(250);
+    PollRunner runner = new PollRunner(() -> false, period);
+    assertEquals(period, runner.getNextPeriodNs(period, true));
+    assertEquals(period, runner.getNextPeriodNs(period, false));
+  }
+
+  @Test
+  public void testBacksOffWithoutData() {
+    PollRunner runner = new PollRunner(() -> false, ACTIVE_POLLING_DELAY_NS, IDLE_POLLING_DELAY_NS);
+    long period = ACTIVE_POLLING_DELAY_NS;
+    for (int i = 0; i < 5; i++) {
+      long next = runner.getNextPeriodNs(period, false);
+      assertEquals(Math.min(period * 2, IDLE_POLLING_DELAY_NS), next);
+      period = next;
+    }
+    assertEquals(IDLE_POLLING_DELAY_NS, period);
+    assertEquals(IDLE_POLLING_DELAY_NS, runner.getNextPeriodNs(period, false));
+
+    // Data brings the period down again, one step at a time
+    assertEquals(IDLE_POLLING_DELAY_NS / 2, runner.getNextPeriodNs(period, true));
+    assertEquals(ACTIVE_POLLING_DELAY_NS, runner.getNextPeriodNs(ACTIVE_POLLING_DELAY_NS, true));
+  }
+
+  @Test
+  public void testPollRateFollowsDataRate() {
+    PollRunner runner = new PollRunner(() -> false, ACTIVE_POLLING_DELAY_NS, IDLE_POLLING_DELAY_NS);
+    long samplePeriod = TimeUnit.MILLISECONDS.toNanos(200);
+    long duration = TimeUnit.SECONDS.toNanos(60);
+
+    // A service producing a sample every 200ms is polled at most twice per sample
+    long polls = 0;
+    long period = ACTIVE_POLLING_DELAY_NS;
+    long previousPoll = 0;
+    for (long time = 0; time < duration; time += period) {
+      boolean hasData = time / samplePeriod > previousPoll / samplePeriod;
+      period = runner.getNextPeriodNs(period, hasData);
+      previousPoll = time;
+      polls++;
+    }
+    assertTrue("polls: " + polls, polls <= 2 * duration / samplePeriod);
+
+    // and an idle one about once per idle period
+    polls = 0;
+    period = ACTIVE_POLLING_DELAY_NS;
+    for (long time = 0; time < duration; time += period) {
+      period = runner.getNextPeriodNs(period, false);
+      polls++;
+    }
+    assertTrue("polls: " + polls, polls <= duration / IDLE_POLLING_DELAY_NS + 5);
+  }
+
+  @Test
+  public void testRunsUntilStopped() throws Exception {
+    PollRunner runner = new PollRunner(() -> true, ACTIVE_POLLING_DELAY_NS, IDLE_POLLING_DELAY_NS);
+    Thread thread = new Thread(runner);
+    thread.start();
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(ACTIVE_POLLING_DELAY_NS) * 3);
+    runner.stop();
+    thread.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(thread.isAlive());
+    assertTrue(runner.isDone());
+    assertTrue(runner.getStats().getPollCount() > 0);
+    assertEquals(0, runner.getStats().getEmptyPollCount());
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SegmentedSampleStoreTest {
+  private static final long PARTITION_NS = 10;
+
+  private static final SampleCodec<String> CODEC = new SampleCodec<String>() {
+    @NotNull
+    @Override
+    public byte[] encode(@NotNull String sample) {
+      return sample.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    @Override
+    public String decode(@NotNull byte[] bytes) {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+
+  private File myDirectory;
+  private SegmentedSampleStore<String> myStore;
+
+  @Before
+  public void setUp() throws Exception {
+    myDirectory = FileUtil.createTempDirectory("segments", null);
+    myStore = new SegmentedSampleStore<>(myDirectory, "test", CODEC, PARTITION_NS);
+  }
+
+  @After
+  public void tearDown() {
+    myStore.close();
+    FileUtil.delete(myDirectory);
+  }
+
+  @Test
+  public void testRolloverSealsPreviousPartitions() {
+    appendRange(0, 50);
+
+    assertEquals(50, myStore.size());
+    // Partitions [0, 10) to [30, 40) have been written to segment files, [40, 50) is still the hot segment.
+    assertEquals(4, getSegmentFiles().length);
+    assertEquals(range(0, 50), query(-1, 49));
+  }
+
+  @Test
+  public void testRangeQueries() {
+    appendRange(0, 50);
+
+    // Start time is exclusive and end time inclusive, across sealed segments and the hot segment.
+    assertEquals(range(16, 33), query(15, 32));
+    assertEquals(range(20, 30), query(19, 29));
+    assertEquals(range(41, 46), query(40, 45));
+    assertEquals(Collections.emptyList(), query(49, 100));
+    assertEquals(Collections.emptyList(), query(-100, -1));
+  }
+
+  @Test
+  public void testQueriesSeekWithinLargeSegments() {
+    myStore = new SegmentedSampleStore<>(myDirectory, "large", CODEC, 1000);
+    appendRange(0, 1500);
+
+    assertEquals(range(700, 901), query(699, 900));
+    assertEquals(range(999, 1001), query(998, 1000));
+  }
+
+  @Test
+  public void testLateSamplesAreQueried() {
+    appendRange(0, 25);
+    myStore.append(5, "late");
+
+    assertEquals(26, myStore.size());
+    List<String> samples = query(4, 6);
+    Collections.sort(samples);
+    assertEquals(Arrays.asList("5", "6", "late"), samples);
+  }
+
+  @Test
+  public void testClearDeletesSegments() {
+    appendRange(0, 50);
+    myStore.clear();
+
+    assertEquals(0, myStore.size());
+    assertEquals(0, getSegmentFiles().length);
+    assertEquals(Collections.emptyList(), query(-1, 100));
+
+    // The store can be reused after being cleared.
+    appendRange(100, 125);
+    assertEquals(2, getSegmentFiles().length);
+    assertEquals(range(100, 125), query(0, 200));
+  }
+
+  @Test
+  public void testCloseDeletesSegments() {
+    appendRange(0, 50);
+    myStore.close();
+
+    assertEquals(0, getSegmentFiles().length);
+  }
+
+  @Test
+  public void testReadersSeeConsistentDataWhileWriting() throws Exception {
+    int count = 5000;
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> error = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      int lastSize = 0;
+      while (!done.get() && error.get() == null) {
+        List<String> samples = query(Long.MIN_VALUE, Long.MAX_VALUE);
+        // Samples are appended in order, so a reader always sees a prefix of them, with nothing missing or duplicated while segments
+        // are sealed.
+        for (int i = 0; i < samples.size(); i++) {
+          if (!samples.get(i).equals(String.valueOf(i))) {
+            error.set("Unexpected sample " + samples.get(i) + " at " + i);
+          }
+        }
+        if (samples.size() < lastSize) {
+          error.set("Lost samples: " + samples.size() + " after " + lastSize);
+        }
+        lastSize = samples.size();
+      }
+    });
+    reader.start();
+    appendRange(0, count);
+    done.set(true);
+    reader.join();
+
+    assertNull(error.get());
+    assertEquals(range(0, count), query(Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  private void appendRange(int start, int end) {
+    for (int i = start; i < end; i++) {
+      myStore.append(i, String.valueOf(i));
+    }
+  }
+
+  @NotNull
+  private List<String> query(long startTime, long endTime) {
+    List<String> samples = new ArrayList<>();
+    myStore.query(startTime, endTime, samples::add);
+    return samples;
+  }
+
+  @NotNull
+  private static List<String> range(int start, int end) {
+    List<String> samples = new ArrayList<>();
+    for (int i = start; i < end; i++) {
+      samples.add(String.valueOf(i));
+    }
+    return samples;
+  }
+
+  @NotNull
+  private File[] getSegmentFiles() {
+    File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(".seg"));
+    assertNotNull(files);
+    return files;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SortedTimeSeriesTest {
+  @Test
+  public void testRangeQueries() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    for (int i = 0; i < 100; i++) {
+      series.add(i * 10, String.valueOf(i * 10));
+    }
+
+    assertEquals(100, series.size());
+    // Start time is exclusive and end time inclusive.
+    assertEquals(Arrays.asList("20", "30", "40"), query(series, 10, 40));
+    assertEquals(Arrays.asList("20", "30"), query(series, 15, 35));
+    assertEquals(Collections.singletonList("0"), query(series, -1, 0));
+    assertEquals(Collections.emptyList(), query(series, 990, 2000));
+    assertEquals(Collections.emptyList(), query(series, 41, 49));
+  }
+
+  @Test
+  public void testOutOfOrderSamplesAreSorted() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    series.add(10, "10");
+    series.add(30, "30");
+    series.add(20, "20");
+    series.add(5, "5");
+    series.add(30, "30b");
+
+    SortedTimeSeries.Snapshot<String> snapshot = series.snapshot();
+    assertEquals(5, snapshot.size());
+    assertEquals(5, snapshot.getMinTimestamp());
+    assertEquals(30, snapshot.getMaxTimestamp());
+    // Samples with the same timestamp are kept in insertion order.
+    assertEquals(Arrays.asList("5", "10", "20", "30", "30b"), query(series, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testFirstIndexAfter() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    series.add(10, "a");
+    series.add(20, "b");
+    series.add(20, "c");
+    series.add(30, "d");
+
+    SortedTimeSeries.Snapshot<String> snapshot = series.snapshot();
+    assertEquals(0, snapshot.firstIndexAfter(5));
+    assertEquals(1, snapshot.firstIndexAfter(10));
+    assertEquals(3, snapshot.firstIndexAfter(20));
+    assertEquals(3, snapshot.firstIndexAfter(25));
+    assertEquals(4, snapshot.firstIndexAfter(30));
+  }
+
+  @Test
+  public void testGrowsPastInitialCapacity() {
+    SortedTimeSeries<Integer> series = new SortedTimeSeries<>();
+    for (int i = 0; i < 1000; i++) {
+      series.add(i, i);
+    }
+
+    SortedTimeSeries.Snapshot<Integer> snapshot = series.snapshot();
+    assertEquals(1000, snapshot.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, snapshot.getTimestamp(i));
+      assertEquals(Integer.valueOf(i), snapshot.get(i));
+    }
+  }
+
+  @Test
+  public void testEmptySeries() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    SortedTimeSeries.Snapshot<String> snapshot = series.snapshot();
+
+    assertTrue(snapshot.isEmpty());
+    assertEquals(Long.MAX_VALUE, snapshot.getMinTimestamp());
+    assertEquals(Long.MIN_VALUE, snapshot.getMaxTimestamp());
+    assertEquals(Collections.emptyList(), query(series, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    series.add(10, "a");
+    series.snapshot().get(1);
+  }
+
+  @Test
+  public void testClear() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    series.add(10, "a");
+    series.add(20, "b");
+    series.clear();
+
+    assertEquals(0, series.size());
+    assertEquals(Collections.emptyList(), query(series, Long.MIN_VALUE, Long.MAX_VALUE));
+    series.add(5, "c");
+    assertEquals(Collections.singletonList("c"), query(series, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testSnapshotsAreNotAffectedByLaterWrites() {
+    SortedTimeSeries<String> series = new SortedTimeSeries<>();
+    series.add(10, "10");
+    series.add(30, "30");
+    SortedTimeSeries.Snapshot<String> snapshot = series.snapshot();
+
+    series.add(40, "40");
+    series.add(20, "20");
+    series.clear();
+
+    assertEquals(2, snapshot.size());
+    List<String> samples = new ArrayList<>();
+    snapshot.forEach(Long.MIN_VALUE, Long.MAX_VALUE, samples::add);
+    assertEquals(Arrays.asList("10", "30"), samples);
+  }
+
+  @NotNull
+  private static <T> List<T> query(@NotNull SortedTimeSeries<T> series, long startTime, long endTime) {
+    List<T> samples = new ArrayList<>();
+    series.forEach(startTime, endTime, samples::add);
+    return samples;
+  }
+}
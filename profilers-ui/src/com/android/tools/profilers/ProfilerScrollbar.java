@@ -121,13 +121,22 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
     });
   }
 
+  @Override
+  public boolean isDirty() {
+    if (myScrolling) {
+      return true;
+    }
+    BoundedRangeModel model = getModel();
+    return model.getValue() != getViewRelativeMinMs() || model.getExtent() != getViewExtentMs() ||
+           model.getMaximum() != getDataExtentMs();
+  }
+
   @Override
   public void animate(float frameLength) {
-    Range dataRangeUs = myTimeline.getDataRange();
     Range viewRangeUs = myTimeline.getViewRange();
-    int dataExtentMs = (int)((dataRangeUs.getLength() - myTimeline.getViewBuffer()) / MS_TO_US);
-    int viewExtentMs = Math.min(dataExtentMs, (int)(viewRangeUs.getLength() / MS_TO_US));
-    int viewRelativeMinMs = Math.max(0, (int)((viewRangeUs.getMin() - dataRangeUs.getMin()) / MS_TO_US));
+    int dataExtentMs = getDataExtentMs();
+    int viewExtentMs = getViewExtentMs();
+    int viewRelativeMinMs = getViewRelativeMinMs();
 
     if (myScrolling) {
       int valueMs = getValue();
@@ -152,6 +161,18 @@ public final class ProfilerScrollbar extends JBScrollBar implements Animatable {
     }
   }
 
+  private int getDataExtentMs() {
+    return (int)((myTimeline.getDataRange().getLength() - myTimeline.getViewBuffer()) / MS_TO_US);
+  }
+
+  private int getViewExtentMs() {
+    return Math.min(getDataExtentMs(), (int)(myTimeline.getViewRange().getLength() / MS_TO_US));
+  }
+
+  private int getViewRelativeMinMs() {
+    return Math.max(0, (int)((myTimeline.getViewRange().getMin() - myTimeline.getDataRange().getMin()) / MS_TO_US));
+  }
+
   private boolean isScrollable() {
     BoundedRangeModel model = getModel();
     return model.getMaximum() > model.getExtent();
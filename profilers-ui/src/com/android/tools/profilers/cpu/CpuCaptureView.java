@@ -31,6 +31,8 @@ import com.intellij.util.PlatformIcons;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.util.Collections;
 import java.util.Comparator;
@@ -46,8 +48,11 @@ public class CpuCaptureView {
   private final JBTabbedPane myPanel;
   private final JTree myTree;
   private final RangedTree myRangedTree;
-  private final CpuProfilerStageView myView;
   private final CpuTraceTreeSorter myTreeSorter;
+  private final JTree myBottomUpTree;
+  private final RangedTree myBottomUpRangedTree;
+  private final CpuTraceTreeSorter myBottomUpTreeSorter;
+  private final CpuProfilerStageView myView;
   private final Comparator<DefaultMutableTreeNode> myDefaultSortOrder;
 
   public CpuCaptureView(@NotNull CpuCapture capture, @NotNull CpuProfilerStageView view) {
@@ -55,7 +60,7 @@ public class CpuCaptureView {
     ProfilerTimeline timeline = view.getStage().getStudioProfilers().getTimeline();
 
     // Reverse the order as the default ordering is SortOrder.ASCENDING
-    myDefaultSortOrder = Collections.reverseOrder(new DoubleValueNodeComparator(TopDownNode::getTotal));
+    myDefaultSortOrder = Collections.reverseOrder(new DoubleValueNodeComparator(CpuTreeNode::getTotal));
     myCapture = capture;
     myView = view;
 
@@ -66,7 +71,36 @@ public class CpuCaptureView {
     myTree = new JTree();
     myTreeSorter = new CpuTraceTreeSorter(myTree);
     myRangedTree = new RangedTree(timeline.getSelectionRange());
-    JComponent columnTree = new ColumnTreeBuilder(myTree)
+
+    myBottomUpTree = new JTree();
+    myBottomUpTreeSorter = new CpuTraceTreeSorter(myBottomUpTree);
+    myBottomUpRangedTree = new RangedTree(timeline.getSelectionRange());
+    // Callers in the bottom up tree are only loaded as its nodes are expanded.
+    myBottomUpTree.addTreeExpansionListener(new TreeExpansionListener() {
+      @Override
+      public void treeExpanded(TreeExpansionEvent event) {
+        CpuTreeModel<?> model = (CpuTreeModel<?>)myBottomUpTree.getModel();
+        model.expand((DefaultMutableTreeNode)event.getPath().getLastPathComponent());
+      }
+
+      @Override
+      public void treeCollapsed(TreeExpansionEvent event) {
+        CpuTreeModel<?> model = (CpuTreeModel<?>)myBottomUpTree.getModel();
+        model.collapse((DefaultMutableTreeNode)event.getPath().getLastPathComponent());
+      }
+    });
+
+    myPanel = new JBTabbedPane();
+    myPanel.addTab("Top Down", createColumnTree(myTree, myTreeSorter));
+    myPanel.addTab("Bottom Up", createColumnTree(myBottomUpTree, myBottomUpTreeSorter));
+    myPanel.addTab("Chart", myCaptureTreeChart);
+
+    updateThread();
+  }
+
+  @NotNull
+  private JComponent createColumnTree(@NotNull JTree tree, @NotNull CpuTraceTreeSorter sorter) {
+    return new ColumnTreeBuilder(tree)
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("Name")
           .setPreferredWidth(900)
@@ -77,43 +111,37 @@ public class CpuCaptureView {
           .setName("Self (μs)")
           .setPreferredWidth(100)
           .setHeaderAlignment(SwingConstants.RIGHT)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getSelf, false))
-          .setComparator(new DoubleValueNodeComparator(TopDownNode::getSelf)))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getSelf, false))
+          .setComparator(new DoubleValueNodeComparator(CpuTreeNode::getSelf)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("%")
           .setPreferredWidth(50)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getSelf, true))
-          .setComparator(new DoubleValueNodeComparator(TopDownNode::getSelf)))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getSelf, true))
+          .setComparator(new DoubleValueNodeComparator(CpuTreeNode::getSelf)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("Children (μs)")
           .setPreferredWidth(100)
           .setHeaderAlignment(SwingConstants.RIGHT)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getChildrenTotal, false))
-          .setComparator(new DoubleValueNodeComparator(TopDownNode::getChildrenTotal)))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getChildrenTotal, false))
+          .setComparator(new DoubleValueNodeComparator(CpuTreeNode::getChildrenTotal)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("%")
           .setPreferredWidth(50)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getChildrenTotal, true))
-          .setComparator(new DoubleValueNodeComparator(TopDownNode::getChildrenTotal)))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getChildrenTotal, true))
+          .setComparator(new DoubleValueNodeComparator(CpuTreeNode::getChildrenTotal)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("Total (μs)")
           .setPreferredWidth(100)
           .setHeaderAlignment(SwingConstants.RIGHT)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getTotal, false))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getTotal, false))
           .setComparator(myDefaultSortOrder))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
           .setName("%")
           .setPreferredWidth(50)
-          .setRenderer(new DoubleValueCellRenderer(TopDownNode::getTotal, true))
+          .setRenderer(new DoubleValueCellRenderer(CpuTreeNode::getTotal, true))
           .setComparator(myDefaultSortOrder))
-      .setTreeSorter(myTreeSorter)
+      .setTreeSorter(sorter)
       .build();
-
-    myPanel = new JBTabbedPane();
-    myPanel.addTab("Top Down", columnTree);
-    myPanel.addTab("Chart", myCaptureTreeChart);
-
-    updateThread();
   }
 
   public void updateThread() {
@@ -126,17 +154,23 @@ public class CpuCaptureView {
     myRangedTree.setModel(model);
     myTree.setModel(model);
     myTreeSorter.setModel(model, myDefaultSortOrder);
-    expandTreeNodes();
+    expandTreeNodes(myTree);
+    // Updates the bottom up column tree displayed in capture panel
+    BottomUpTreeModel bottomUpModel = node == null ? null : new BottomUpTreeModel(new BottomUpNode(node));
+    myBottomUpRangedTree.setModel(bottomUpModel);
+    myBottomUpTree.setModel(bottomUpModel);
+    myBottomUpTreeSorter.setModel(bottomUpModel, myDefaultSortOrder);
+    expandTreeNodes(myBottomUpTree);
   }
 
   /**
    * Expands a few nodes in order to improve the visual feedback of the list.
    */
-  private void expandTreeNodes() {
+  private static void expandTreeNodes(@NotNull JTree tree) {
     int maxRowsToExpand = 8; // TODO: adjust this value if necessary.
     int i = 0;
-    while (i < myTree.getRowCount() && i < maxRowsToExpand) {
-      myTree.expandRow(i++);
+    while (i < tree.getRowCount() && i < maxRowsToExpand) {
+      tree.expandRow(i++);
     }
   }
 
@@ -152,46 +186,48 @@ public class CpuCaptureView {
   public void register(Choreographer choreographer) {
     choreographer.register(myCaptureTreeChart);
     choreographer.register(myRangedTree);
+    choreographer.register(myBottomUpRangedTree);
   }
 
   public void unregister(Choreographer choreographer) {
     choreographer.unregister(myCaptureTreeChart);
     choreographer.unregister(myRangedTree);
+    choreographer.unregister(myBottomUpRangedTree);
   }
 
-  private static TopDownNode getNode(Object value) {
+  private static CpuTreeNode getNode(Object value) {
     DefaultMutableTreeNode node = (DefaultMutableTreeNode)value;
-    return (TopDownNode)node.getUserObject();
+    return (CpuTreeNode)node.getUserObject();
   }
 
 
   private static class NameValueNodeComparator implements Comparator<DefaultMutableTreeNode> {
     @Override
     public int compare(DefaultMutableTreeNode o1, DefaultMutableTreeNode o2) {
-      return ((TopDownNode)o1.getUserObject()).getMethodName().compareTo(((TopDownNode)o2.getUserObject()).getMethodName());
+      return ((CpuTreeNode)o1.getUserObject()).getMethodName().compareTo(((CpuTreeNode)o2.getUserObject()).getMethodName());
     }
   }
 
   private class DoubleValueNodeComparator implements Comparator<DefaultMutableTreeNode> {
-    private final Function<TopDownNode, Double> myGetter;
+    private final Function<CpuTreeNode, Double> myGetter;
 
-    DoubleValueNodeComparator(Function<TopDownNode, Double> getter) {
+    DoubleValueNodeComparator(Function<CpuTreeNode, Double> getter) {
       myGetter = getter;
     }
 
     @Override
     public int compare(DefaultMutableTreeNode a, DefaultMutableTreeNode b) {
-      TopDownNode o1 = ((TopDownNode)a.getUserObject());
-      TopDownNode o2 = ((TopDownNode)b.getUserObject());
+      CpuTreeNode o1 = ((CpuTreeNode)a.getUserObject());
+      CpuTreeNode o2 = ((CpuTreeNode)b.getUserObject());
       Double value = myGetter.apply(o1) - myGetter.apply(o2);
       return value > 0 ? 1 : -1;
     }
   }
   private static class DoubleValueCellRenderer extends ColoredTreeCellRenderer {
-    private final Function<TopDownNode, Double> myGetter;
+    private final Function<CpuTreeNode, Double> myGetter;
     private final boolean myPercentage;
 
-    DoubleValueCellRenderer(Function<TopDownNode, Double> getter, boolean percentage) {
+    DoubleValueCellRenderer(Function<CpuTreeNode, Double> getter, boolean percentage) {
       myGetter = getter;
       myPercentage = percentage;
     }
@@ -205,11 +241,11 @@ public class CpuCaptureView {
                                       int row,
                                       boolean hasFocus) {
       setTextAlign(SwingConstants.RIGHT);
-      TopDownNode node = getNode(value);
+      CpuTreeNode node = getNode(value);
       if (node != null)  {
         double v = myGetter.apply(node);
         if (myPercentage) {
-          TopDownNode root = getNode(tree.getModel().getRoot());
+          CpuTreeNode root = getNode(tree.getModel().getRoot());
           append(String.format("%.2f%%", v / root.getTotal() * 100));
         } else {
           append(String.format("%,.0f", v));
@@ -232,8 +268,8 @@ public class CpuCaptureView {
                                       int row,
                                       boolean hasFocus) {
       if (value instanceof DefaultMutableTreeNode &&
-          ((DefaultMutableTreeNode)value).getUserObject() instanceof TopDownNode) {
-        TopDownNode node = (TopDownNode)((DefaultMutableTreeNode)value).getUserObject();
+          ((DefaultMutableTreeNode)value).getUserObject() instanceof CpuTreeNode) {
+        CpuTreeNode node = (CpuTreeNode)((DefaultMutableTreeNode)value).getUserObject();
         if (node != null) {
           if (node.getMethodName().isEmpty()) {
             setIcon(AllIcons.Debugger.ThreadSuspended);
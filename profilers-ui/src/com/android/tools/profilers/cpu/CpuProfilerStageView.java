@@ -54,6 +54,10 @@ public class CpuProfilerStageView extends StageView<CpuProfilerStage> {
   private final CpuProfilerStage myStage;
 
   private final JButton myCaptureButton;
+  /**
+   * Shows the progress of the capture being parsed, hidden otherwise.
+   */
+  private final JProgressBar myParsingProgress;
   private final JBList myThreads;
   /**
    * The action listener of the capture button changes depending on the state of the profiler.
@@ -72,7 +76,8 @@ public class CpuProfilerStageView extends StageView<CpuProfilerStage> {
     stage.getAspect().addDependency()
       .setExecutor(ApplicationManager.getApplication()::invokeLater)
       .onChange(CpuProfilerAspect.CAPTURE, this::updateCapture)
-      .onChange(CpuProfilerAspect.SELECTED_THREADS, this::updateThreadSelection);
+      .onChange(CpuProfilerAspect.SELECTED_THREADS, this::updateThreadSelection)
+      .onChange(CpuProfilerAspect.CAPTURE_PARSING, this::updateParsingProgress);
 
     StudioProfilers profilers = stage.getStudioProfilers();
     ProfilerTimeline timeline = profilers.getTimeline();
@@ -224,7 +229,11 @@ public class CpuProfilerStageView extends StageView<CpuProfilerStage> {
     myCaptureButton = new JButton();
     myCaptureButton.addActionListener(event -> capture());
 
+    myParsingProgress = new JProgressBar(0, 100);
+    myParsingProgress.setStringPainted(true);
+
     updateCapture();
+    updateParsingProgress();
   }
 
   @Override
@@ -238,6 +247,7 @@ public class CpuProfilerStageView extends StageView<CpuProfilerStage> {
     button.addActionListener(action -> myStage.getStudioProfilers().setMonitoringStage());
     toolbar.add(button);
     toolbar.add(myCaptureButton);
+    toolbar.add(myParsingProgress);
 
     panel.add(toolbar, BorderLayout.WEST);
     return panel;
@@ -280,6 +290,17 @@ public class CpuProfilerStageView extends StageView<CpuProfilerStage> {
     myCaptureButton.setText(myStage.isCapturing() ? "Stop" : "Record");
   }
 
+  private void updateParsingProgress() {
+    double progress = myStage.getParsingProgress();
+    boolean parsing = progress >= 0;
+    myParsingProgress.setVisible(parsing);
+    if (parsing) {
+      myParsingProgress.setValue((int)(progress * 100));
+    }
+    // A new capture can't be recorded until the previous one is shown.
+    myCaptureButton.setEnabled(!parsing);
+  }
+
   private void capture() {
     if (myStage.isCapturing()) {
       myStage.stopCapturing();
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory;
+
+import com.android.tools.profilers.memory.adapters.CaptureDiff;
+import com.android.tools.profilers.memory.adapters.CaptureDiff.ClassDelta;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lists how the classes changed between the heap dump being compared against and the focused heap dump, largest growth first.
+ */
+final class MemoryDiffView {
+  private enum Column {
+    CLASS_NAME("Class Name", String.class),
+    BASE_COUNT("Base Count", Integer.class),
+    TARGET_COUNT("Count", Integer.class),
+    COUNT_DELTA("Count Delta", Integer.class),
+    SHALLOW_SIZE_DELTA("Shallow Size Delta", Long.class),
+    RETAINED_SIZE_DELTA("Retained Size Delta", Long.class);
+
+    @NotNull private final String myName;
+    @NotNull private final Class<?> myType;
+
+    Column(@NotNull String name, @NotNull Class<?> type) {
+      myName = name;
+      myType = type;
+    }
+  }
+
+  @Nullable private CaptureDiff myCaptureDiff;
+
+  @Nullable
+  public CaptureDiff getCurrentDiff() {
+    return myCaptureDiff;
+  }
+
+  /**
+   * Must manually remove from parent container!
+   */
+  public void reset() {
+    myCaptureDiff = null;
+  }
+
+  @NotNull
+  public JComponent buildComponent(@NotNull CaptureDiff captureDiff) {
+    myCaptureDiff = captureDiff;
+    List<Column> columns = new ArrayList<>(Arrays.asList(Column.values()));
+    if (!captureDiff.hasRetainedSizes()) {
+      columns.remove(Column.RETAINED_SIZE_DELTA);
+    }
+    JTable table = new JBTable(new ClassDeltaTableModel(captureDiff.getClassDeltas(), columns));
+    table.setAutoCreateRowSorter(true);
+    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    return new JBScrollPane(table);
+  }
+
+  private static final class ClassDeltaTableModel extends AbstractTableModel {
+    @NotNull private final List<ClassDelta> myClassDeltas;
+    @NotNull private final List<Column> myColumns;
+
+    private ClassDeltaTableModel(@NotNull List<ClassDelta> classDeltas, @NotNull List<Column> columns) {
+      myClassDeltas = classDeltas;
+      myColumns = columns;
+    }
+
+    @Override
+    public int getRowCount() {
+      return myClassDeltas.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return myColumns.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return myColumns.get(column).myName;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+      return myColumns.get(columnIndex).myType;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+      ClassDelta delta = myClassDeltas.get(rowIndex);
+      switch (myColumns.get(columnIndex)) {
+        case CLASS_NAME:
+          return delta.getName();
+        case BASE_COUNT:
+          return delta.getBaseCount();
+        case TARGET_COUNT:
+          return delta.getTargetCount();
+        case COUNT_DELTA:
+          return delta.getCountDelta();
+        case SHALLOW_SIZE_DELTA:
+          return delta.getShallowSizeDelta();
+        case RETAINED_SIZE_DELTA:
+          return delta.getRetainedSizeDelta();
+        default:
+          throw new UnsupportedOperationException("Unexpected getValueAt called with: " + myColumns.get(columnIndex));
+      }
+    }
+  }
+}
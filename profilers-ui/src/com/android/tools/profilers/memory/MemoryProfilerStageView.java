@@ -29,9 +29,11 @@ import com.android.tools.adtui.model.DurationData;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.RangedSeries;
+import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profilers.*;
 import com.android.tools.profilers.event.EventMonitor;
 import com.android.tools.profilers.event.EventMonitorView;
+import com.android.tools.profilers.memory.adapters.CaptureDiff;
 import com.android.tools.profilers.memory.adapters.CaptureObject;
 import com.android.tools.profilers.memory.adapters.ClassObject;
 import com.intellij.icons.AllIcons;
@@ -42,6 +44,7 @@ import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -63,10 +66,13 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
 
   @NotNull private final MemoryClassView myClassView = new MemoryClassView(getStage());
   @NotNull private final MemoryInstanceView myInstanceView = new MemoryInstanceView(getStage());
+  @NotNull private final MemoryDiffView myDiffView = new MemoryDiffView();
 
   @NotNull private Splitter myMainSplitter = new Splitter(false);
   @NotNull private Splitter myChartClassesSplitter = new Splitter(true);
   @NotNull private JButton myAllocationButton;
+  @NotNull private JToggleButton myCompareButton;
+  @Nullable private Timer myLoadingTimer;
 
   public MemoryProfilerStageView(@NotNull MemoryProfilerStage stage) {
     super(stage);
@@ -80,15 +86,27 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
     myAllocationButton = new JButton("Record");
     myAllocationButton.addActionListener(e -> getStage().trackAllocations(!getStage().isTrackingAllocations()));
 
+    // While selected, clicking another heap dump compares the focused heap dump against it instead of focusing it.
+    myCompareButton = new JToggleButton("Compare");
+
     getStage().getAspect().addDependency()
       .setExecutor(ApplicationManager.getApplication()::invokeLater)
       .onChange(MemoryProfilerAspect.CURRENT_CAPTURE, this::captureObjectChanged)
+      .onChange(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE, this::captureObjectLoaded)
+      .onChange(MemoryProfilerAspect.CURRENT_RETAINED_SIZES, myMainSplitter::repaint)
       .onChange(MemoryProfilerAspect.CURRENT_CLASS, this::classObjectChanged)
+      .onChange(MemoryProfilerAspect.CURRENT_DIFF, this::captureDiffChanged)
       .onChange(MemoryProfilerAspect.LEGACY_ALLOCATION, this::legacyAllocationChanged);
 
     legacyAllocationChanged();
   }
 
+  @Override
+  public void exit() {
+    super.exit();
+    stopLoadingTimer();
+  }
+
   @Override
   public JComponent getToolbar() {
 
@@ -104,6 +122,7 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
     JButton triggerHeapDumpButton = new JButton("Heap Dump");
     triggerHeapDumpButton.addActionListener(e -> getStage().requestHeapDump());
     toolBar.add(triggerHeapDumpButton);
+    toolBar.add(myCompareButton);
 
     return toolBar;
   }
@@ -181,7 +200,7 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
         .setLabelProvider(
           data -> String.format("Dump (%s)", data.getDuration() == DurationData.UNSPECIFIED_DURATION ? "in progress" :
                                              TimeAxisFormatter.DEFAULT.getFormattedString(viewRange.getLength(), data.getDuration(), true)))
-        .setClickHander(data -> getStage().setFocusedHeapDump(data.getDumpInfo()))
+        .setClickHander(data -> heapDumpClicked(data.getDumpInfo()))
         .build();
     DurationDataRenderer<AllocationsDurationData> allocationRenderer =
       new DurationDataRenderer.Builder<>(new RangedSeries<>(viewRange, getStage().getAllocationInfosDurations()), Color.LIGHT_GRAY)
@@ -279,12 +298,74 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
   private void captureObjectChanged() {
     CaptureObject captureObject = getStage().getSelectedCaptureObject();
     if (myClassView.getCurrentCapture() != captureObject) {
+      stopLoadingTimer();
       myClassView.reset();
       myChartClassesSplitter.setSecondComponent(null);
       myMainSplitter.setSecondComponent(null);
       if (captureObject != null) {
         // TODO don't rebuild the component, but update it
-        myChartClassesSplitter.setSecondComponent(myClassView.buildComponent(captureObject));
+        myChartClassesSplitter.setSecondComponent(
+          captureObject.isDoneLoading() ? myClassView.buildComponent(captureObject) : buildLoadingComponent(captureObject));
+      }
+    }
+  }
+
+  private void captureObjectLoaded() {
+    CaptureObject captureObject = getStage().getSelectedCaptureObject();
+    if (captureObject != null && captureObject.isDoneLoading() && myClassView.getCurrentCapture() != captureObject) {
+      stopLoadingTimer();
+      myChartClassesSplitter.setSecondComponent(myClassView.buildComponent(captureObject));
+    }
+  }
+
+  @NotNull
+  private JComponent buildLoadingComponent(@NotNull CaptureObject captureObject) {
+    JPanel panel = new JPanel(new BorderLayout());
+    JLabel label = new JLabel(captureObject.getLoadMessage());
+    JProgressBar progressBar = new JProgressBar(0, 100);
+    panel.add(label, BorderLayout.PAGE_START);
+    panel.add(progressBar, BorderLayout.PAGE_END);
+
+    // Refresh the progress at 30fps (33ms/frame).
+    myLoadingTimer = new Timer(1000 / 30, e -> {
+      label.setText(captureObject.getLoadMessage());
+      progressBar.setValue((int)(captureObject.getLoadProgress() * 100));
+    });
+    myLoadingTimer.start();
+
+    JPanel loadingPanel = new JPanel(new GridBagLayout());
+    loadingPanel.add(panel);
+    return loadingPanel;
+  }
+
+  private void stopLoadingTimer() {
+    if (myLoadingTimer != null) {
+      myLoadingTimer.stop();
+      myLoadingTimer = null;
+    }
+  }
+
+  private void heapDumpClicked(@NotNull HeapDumpInfo dumpInfo) {
+    HeapDumpInfo focusedDumpInfo = getStage().getFocusedHeapDump();
+    if (myCompareButton.isSelected() && focusedDumpInfo != null && !focusedDumpInfo.equals(dumpInfo)) {
+      getStage().setFocusedDiffHeapDump(dumpInfo);
+    }
+    else {
+      getStage().setFocusedHeapDump(dumpInfo);
+    }
+  }
+
+  private void captureDiffChanged() {
+    CaptureDiff captureDiff = getStage().getCaptureDiff();
+    if (myDiffView.getCurrentDiff() != captureDiff) {
+      boolean showingDiff = myDiffView.getCurrentDiff() != null;
+      myDiffView.reset();
+      if (captureDiff != null) {
+        // TODO don't rebuild the component, but update it
+        myMainSplitter.setSecondComponent(myDiffView.buildComponent(captureDiff));
+      }
+      else if (showingDiff) {
+        myMainSplitter.setSecondComponent(null);
       }
     }
   }
@@ -293,6 +374,7 @@ public class MemoryProfilerStageView extends StageView<MemoryProfilerStage> {
     ClassObject classObject = getStage().getSelectedClass();
     if (myInstanceView.getCurrentClassObject() != classObject) {
       myInstanceView.reset();
+      myDiffView.reset();
       myMainSplitter.setSecondComponent(null);
       if (classObject != null) {
         // TODO don't rebuild the component, but update it
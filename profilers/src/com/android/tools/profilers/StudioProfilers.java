@@ -39,6 +39,12 @@ final public class StudioProfilers extends AspectModel<ProfilerAspect> {
 
   public static final int INVALID_PROCESS_ID = -1;
 
+  /**
+   * About how often perfd samples the usage data of the monitors, used to size the buckets of the series that aggregate it for zoomed
+   * out views. It doesn't need to be exact.
+   */
+  public static final long SAMPLING_PERIOD_US = TimeUnit.MILLISECONDS.toMicros(250);
+
   private final ProfilerClient myClient;
   @Nullable
   private String myPreferredProcessName;
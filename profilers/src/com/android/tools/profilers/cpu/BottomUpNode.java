@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A node of the bottom up view of a call tree. The children of the root are all the methods called in the tree, and the children of
+ * any other node are the callers of the calls that node stands for. As the number of caller paths can be much larger than the tree
+ * itself, children are only built when first requested.
+ */
+class BottomUpNode extends CpuTreeNode<BottomUpNode> {
+  /**
+   * The parent of every call in the tree, shared by all the nodes built from the same root.
+   */
+  @NotNull private final Map<HNode<MethodModel>, HNode<MethodModel>> myParents;
+  /**
+   * The calls of the method this node stands for.
+   */
+  @NotNull private final List<HNode<MethodModel>> myNodes;
+  /**
+   * For every call in {@link #myNodes}, the outermost caller reached so far through this node's path, whose parents are the children
+   * of this node. Null for the root.
+   */
+  @Nullable private final List<HNode<MethodModel>> myCallers;
+  @Nullable private List<BottomUpNode> myChildren;
+
+  public BottomUpNode(@NotNull HNode<MethodModel> node) {
+    this(node.getData(), Collections.singletonList(node), null, new IdentityHashMap<>());
+
+    Deque<HNode<MethodModel>> stack = new ArrayDeque<>();
+    stack.push(node);
+    while (!stack.isEmpty()) {
+      HNode<MethodModel> parent = stack.pop();
+      for (HNode<MethodModel> child : parent.getChildren()) {
+        myParents.put(child, parent);
+        stack.push(child);
+      }
+    }
+  }
+
+  private BottomUpNode(@NotNull MethodModel method,
+                       @NotNull List<HNode<MethodModel>> nodes,
+                       @Nullable List<HNode<MethodModel>> callers,
+                       @NotNull Map<HNode<MethodModel>, HNode<MethodModel>> parents) {
+    super(method, nodes);
+    myNodes = nodes;
+    myCallers = callers;
+    myParents = parents;
+  }
+
+  @NotNull
+  @Override
+  public List<BottomUpNode> getChildren() {
+    if (myChildren == null) {
+      myChildren = myCallers == null ? buildMethods() : buildCallers();
+    }
+    return myChildren;
+  }
+
+  @NotNull
+  private List<BottomUpNode> buildMethods() {
+    Map<String, List<HNode<MethodModel>>> methods = new LinkedHashMap<>();
+    Deque<HNode<MethodModel>> stack = new ArrayDeque<>(myNodes.get(0).getChildren());
+    while (!stack.isEmpty()) {
+      HNode<MethodModel> node = stack.removeFirst();
+      methods.computeIfAbsent(node.getData().getId(), id -> new ArrayList<>()).add(node);
+      List<HNode<MethodModel>> children = node.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        stack.addFirst(children.get(i));
+      }
+    }
+
+    List<BottomUpNode> children = new ArrayList<>(methods.size());
+    for (List<HNode<MethodModel>> nodes : methods.values()) {
+      children.add(new BottomUpNode(nodes.get(0).getData(), nodes, nodes, myParents));
+    }
+    return children;
+  }
+
+  @NotNull
+  private List<BottomUpNode> buildCallers() {
+    assert myCallers != null;
+    Map<String, List<HNode<MethodModel>>> nodes = new LinkedHashMap<>();
+    Map<String, List<HNode<MethodModel>>> callers = new LinkedHashMap<>();
+    for (int i = 0; i < myNodes.size(); i++) {
+      HNode<MethodModel> caller = myParents.get(myCallers.get(i));
+      if (caller != null) {
+        String id = caller.getData().getId();
+        nodes.computeIfAbsent(id, key -> new ArrayList<>()).add(myNodes.get(i));
+        callers.computeIfAbsent(id, key -> new ArrayList<>()).add(caller);
+      }
+    }
+
+    List<BottomUpNode> children = new ArrayList<>(nodes.size());
+    for (Map.Entry<String, List<HNode<MethodModel>>> entry : nodes.entrySet()) {
+      List<HNode<MethodModel>> path = callers.get(entry.getKey());
+      children.add(new BottomUpNode(path.get(0).getData(), entry.getValue(), path, myParents));
+    }
+    return children;
+  }
+}
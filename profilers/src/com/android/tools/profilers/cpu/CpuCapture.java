@@ -18,8 +18,6 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.model.DurationData;
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.perflib.vmtrace.ThreadInfo;
-import com.android.tools.perflib.vmtrace.VmTraceData;
 import com.android.tools.perflib.vmtrace.VmTraceParser;
 import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.util.io.FileUtil;
@@ -39,28 +37,32 @@ public class CpuCapture implements DurationData {
   private final int myMainThreadId;
 
   @NotNull
-  private final Map<ThreadInfo, HNode<MethodModel>> myCaptureTrees;
+  private final Map<CpuThreadInfo, HNode<MethodModel>> myCaptureTrees;
 
   @NotNull
   private final Range myRange;
 
   public CpuCapture(@NotNull ByteString bytes) {
+    this(bytes, null);
+  }
 
-    // TODO: Move file parsing/manipulation to another thread.
-    // TODO: Remove layers, analyze whether we can keep the whole file in memory.
+  /**
+   * @param listener notified of the parsing progress, from the parsing threads.
+   */
+  public CpuCapture(@NotNull ByteString bytes, @Nullable StreamingTraceParser.ProgressListener listener) {
     try {
-      File trace = FileUtil.createTempFile("cpu_trace", ".trace");
-      VmTraceData data;
-      try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(bytes.toByteArray());
-        VmTraceParser parser = new VmTraceParser(trace);
-        parser.parse();
-        data = parser.getTraceData();
+      File trace = FileUtil.createTempFile("cpu_trace", ".trace", true);
+      try {
+        // Stream the trace to disk rather than copying it into a byte array first, the parser maps the file back.
+        try (FileOutputStream out = new FileOutputStream(trace)) {
+          bytes.writeTo(out);
+        }
+        Map<CpuThreadInfo, HNode<MethodModel>> trees = StreamingTraceParser.parse(trace, listener);
+        myCaptureTrees = trees != null ? trees : parseWithPerflib(trace);
+      }
+      finally {
+        FileUtil.delete(trace);
       }
-
-      CpuTraceArt traceArt = new CpuTraceArt();
-      traceArt.parse(data);
-      myCaptureTrees = traceArt.getThreadsGraph();
     }
     catch (IOException e) {
       throw new IllegalStateException(e);
@@ -68,10 +70,10 @@ public class CpuCapture implements DurationData {
 
     // Try to find the main thread. The main thread is called "main" but if we fail
     // to find it we will fall back to the thread with the most information.
-    Map.Entry<ThreadInfo, HNode<MethodModel>> main = null;
+    Map.Entry<CpuThreadInfo, HNode<MethodModel>> main = null;
     boolean foundMainThread = false;
     myRange = new Range();
-    for (Map.Entry<ThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
+    for (Map.Entry<CpuThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
       if (entry.getKey().getName().equals(MAIN_THREAD_NAME)) {
         main = entry;
         foundMainThread = true;
@@ -87,6 +89,19 @@ public class CpuCapture implements DurationData {
     myMainThreadId = main.getKey().getId();
   }
 
+  /**
+   * Fallback for traces {@link StreamingTraceParser} doesn't support, e.g. the ones written in ART's streaming mode, which
+   * have their thread and method tables at the end.
+   */
+  @NotNull
+  private static Map<CpuThreadInfo, HNode<MethodModel>> parseWithPerflib(@NotNull File trace) throws IOException {
+    VmTraceParser parser = new VmTraceParser(trace);
+    parser.parse();
+    CpuTraceArt traceArt = new CpuTraceArt();
+    traceArt.parse(parser.getTraceData());
+    return traceArt.getThreadsGraph();
+  }
+
   public int getMainThreadId() {
     return myMainThreadId;
   }
@@ -98,7 +113,7 @@ public class CpuCapture implements DurationData {
 
   @Nullable
   public HNode<MethodModel> getCaptureNode(int threadId) {
-    for (Map.Entry<ThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
+    for (Map.Entry<CpuThreadInfo, HNode<MethodModel>> entry : myCaptureTrees.entrySet()) {
       if (entry.getKey().getId() == threadId) {
         return entry.getValue();
       }
@@ -107,7 +122,7 @@ public class CpuCapture implements DurationData {
   }
 
   @NotNull
-  public Set<ThreadInfo> getThreads() {
+  public Set<CpuThreadInfo> getThreads() {
     return myCaptureTrees.keySet();
   }
 
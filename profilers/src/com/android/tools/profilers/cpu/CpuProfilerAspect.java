@@ -20,4 +20,6 @@ public enum CpuProfilerAspect {
   CAPTURE,
   // The threads selection has changed.
   SELECTED_THREADS,
+  // A capture started or finished parsing, or its parsing progressed.
+  CAPTURE_PARSING,
 }
@@ -20,6 +20,8 @@ import com.android.tools.adtui.model.*;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import com.android.tools.profilers.*;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.HashMap;
@@ -27,8 +29,13 @@ import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CpuProfilerStage extends Stage {
 
@@ -46,6 +53,23 @@ public class CpuProfilerStage extends Stage {
   }
 
   private static final Logger LOG = Logger.getInstance(CpuProfilerStage.class);
+
+  /**
+   * Captures are parsed off the UI thread, so the UI can show the parsing progress.
+   */
+  private static final ExecutorService PARSE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "CPU Capture Parser");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  @NotNull
+  private final Executor myParseExecutor;
+  /**
+   * Runs what the parse executor hands back to the UI thread: the parsed capture and the parsing progress notifications.
+   */
+  @NotNull
+  private final Executor myUiExecutor;
   @NotNull
   private final CpuServiceGrpc.CpuServiceBlockingStub myCpuService;
   @NotNull
@@ -69,12 +93,35 @@ public class CpuProfilerStage extends Stage {
   private int mySelectedThread;
 
   /**
-   * A cache of already parsed captures, indexed by trace_id.
+   * Fraction of the capture being parsed, or a negative value if none is.
    */
-  private Map<Integer, CpuCapture> myTraceCaptures = new HashMap<>();
+  private volatile double myParsingProgress = -1;
+
+  /**
+   * Whether a {@link CpuProfilerAspect#CAPTURE_PARSING} notification is queued on the UI executor already.
+   */
+  private final AtomicBoolean myParsingProgressQueued = new AtomicBoolean();
+
+  /**
+   * A cache of already parsed captures, indexed by trace_id, or null for traces that couldn't be fetched or parsed. Written by the parse
+   * executor.
+   */
+  private Map<Integer, CpuCapture> myTraceCaptures = Collections.synchronizedMap(new HashMap<>());
+
+  /**
+   * Ids of the traces being parsed by the parse executor, which aren't in {@link #myTraceCaptures} yet.
+   */
+  private final Set<Integer> myParsingTraces = Collections.synchronizedSet(new HashSet<>());
 
   public CpuProfilerStage(@NotNull StudioProfilers profiler) {
+    this(profiler, PARSE_EXECUTOR, SwingUtilities::invokeLater);
+  }
+
+  @VisibleForTesting
+  CpuProfilerStage(@NotNull StudioProfilers profiler, @NotNull Executor parseExecutor, @NotNull Executor uiExecutor) {
     super(profiler);
+    myParseExecutor = parseExecutor;
+    myUiExecutor = uiExecutor;
     myCpuService = getStudioProfilers().getClient().getCpuClient();
     myCpuTraceDataSeries = new CpuTraceDataSeries();
   }
@@ -115,24 +162,72 @@ public class CpuProfilerStage extends Stage {
       .build();
 
     CpuProfiler.CpuProfilingAppStopResponse response = myCpuService.stopProfilingApp(request);
-    CpuCapture capture = null;
 
     if (!response.getStatus().equals(CpuProfiler.CpuProfilingAppStopResponse.Status.SUCCESS)) {
       LOG.error("Unable to stop tracing:" + response.getStatus());
       LOG.error(response.getErrorMessage());
     }
     else {
-      capture = new CpuCapture(response.getTrace());
-      // Force parsing the capture
-      getCapture(response.getTraceId());
-    }
-    if (capture != null) {
-      setCapture(capture);
-      setSelectedThread(capture.getMainThreadId());
+      int traceId = response.getTraceId();
+      ByteString trace = response.getTrace();
+      setParsingProgress(0);
+      myParsingTraces.add(traceId);
+      myParseExecutor.execute(() -> {
+        CpuCapture capture;
+        try {
+          capture = parseCapture(trace);
+        }
+        catch (RuntimeException e) {
+          LOG.error("Unable to parse capture " + traceId, e);
+          capture = null;
+        }
+        // The trace events of the timeline read the same capture, don't parse it again for them.
+        myTraceCaptures.put(traceId, capture);
+        myParsingTraces.remove(traceId);
+        if (capture != null) {
+          CpuCapture parsed = capture;
+          myUiExecutor.execute(() -> {
+            setCapture(parsed);
+            setSelectedThread(parsed.getMainThreadId());
+          });
+        }
+      });
     }
     myCapturing = false;
   }
 
+  /**
+   * @return the fraction of the capture being parsed, from 0 to 1, or a negative value if no capture is being parsed. Changes are
+   * notified through {@link CpuProfilerAspect#CAPTURE_PARSING} on the UI thread, several changes may be notified at once.
+   */
+  public double getParsingProgress() {
+    return myParsingProgress;
+  }
+
+  @NotNull
+  private CpuCapture parseCapture(@NotNull ByteString trace) {
+    setParsingProgress(0);
+    try {
+      return new CpuCapture(trace, this::setParsingProgress);
+    }
+    finally {
+      setParsingProgress(-1);
+    }
+  }
+
+  /**
+   * Called from the parsing threads. Only one notification is queued on the UI thread at a time, it reports the latest progress.
+   */
+  private void setParsingProgress(double fraction) {
+    myParsingProgress = fraction;
+    if (myParsingProgressQueued.compareAndSet(false, true)) {
+      myUiExecutor.execute(() -> {
+        myParsingProgressQueued.set(false);
+        myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
+      });
+    }
+  }
+
   public void setCapture(CpuCapture capture) {
     myCapture = capture;
 
@@ -175,18 +270,34 @@ public class CpuProfilerStage extends Stage {
     return new CpuThreadsModel(this, getStudioProfilers().getProcessId());
   }
 
+  /**
+   * Doesn't block: a trace that wasn't fetched yet is fetched and parsed on the parse executor, and can be read once that is done.
+   *
+   * @return the parsed capture of the given trace, or null if it is still being fetched or parsed, or couldn't be.
+   */
+  @Nullable
   public CpuCapture getCapture(int traceId) {
     CpuCapture capture = myTraceCaptures.get(traceId);
-    if (capture == null) {
-      CpuProfiler.GetTraceRequest request = CpuProfiler.GetTraceRequest.newBuilder()
-        .setAppId(getStudioProfilers().getProcessId())
-        .setTraceId(traceId)
-        .build();
-      CpuProfiler.GetTraceResponse trace = myCpuService.getTrace(request);
-      if (trace.getStatus() == CpuProfiler.GetTraceResponse.Status.SUCCESS) {
-        capture = new CpuCapture(trace.getData());
-      }
-      myTraceCaptures.put(traceId, capture);
+    if (capture == null && !myTraceCaptures.containsKey(traceId) && myParsingTraces.add(traceId)) {
+      int processId = getStudioProfilers().getProcessId();
+      myParseExecutor.execute(() -> {
+        CpuCapture parsed = null;
+        try {
+          CpuProfiler.GetTraceRequest request = CpuProfiler.GetTraceRequest.newBuilder()
+            .setAppId(processId)
+            .setTraceId(traceId)
+            .build();
+          CpuProfiler.GetTraceResponse trace = myCpuService.getTrace(request);
+          if (trace.getStatus() == CpuProfiler.GetTraceResponse.Status.SUCCESS) {
+            parsed = parseCapture(trace.getData());
+          }
+        }
+        catch (RuntimeException e) {
+          LOG.warn("Unable to load trace " + traceId, e);
+        }
+        myTraceCaptures.put(traceId, parsed);
+        myParsingTraces.remove(traceId);
+      });
     }
     return capture;
   }
@@ -206,6 +317,9 @@ public class CpuProfilerStage extends Stage {
       List<SeriesData<CpuCapture>> seriesData = new ArrayList<>();
       for (CpuProfiler.TraceInfo traceInfo : response.getTraceInfoList()) {
         CpuCapture capture = getCapture(traceInfo.getTraceId());
+        if (capture == null) {
+          continue;
+        }
         Range range = capture.getRange();
 
         seriesData.add(new SeriesData<>((long)range.getMin(), capture));
@@ -15,17 +15,14 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
@@ -33,19 +30,20 @@ import java.util.concurrent.TimeUnit;
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class CpuThreadCountDataSeries implements DataSeries<Long> {
+public class CpuThreadCountDataSeries extends LoadingDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
   private final int myProcessId;
 
   public CpuThreadCountDataSeries(@NotNull CpuServiceGrpc.CpuServiceBlockingStub client, int id) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myProcessId = id;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries data) {
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     CpuProfiler.GetThreadsRequest.Builder request = CpuProfiler.GetThreadsRequest.newBuilder()
       .setAppId(myProcessId)
@@ -68,13 +66,11 @@ public class CpuThreadCountDataSeries implements DataSeries<Long> {
       }
     }
 
-    List<SeriesData<Long>> data = new ArrayList<>();
     long total = 0;
     for (Map.Entry<Long, Long> entry : count.entrySet()) {
       total += entry.getValue();
-      data.add(new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(entry.getKey()), total));
+      data.add(TimeUnit.NANOSECONDS.toMicros(entry.getKey()), total);
     }
-    data.add(new SeriesData<>((long)timeCurrentRangeUs.getMax(), total));
-    return ContainerUtil.immutableList(data);
+    data.add((long)timeCurrentRangeUs.getMax(), total);
   }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A thread that has a call tree in a {@link CpuCapture}.
+ */
+public class CpuThreadInfo {
+
+  private final int myId;
+
+  @NotNull
+  private final String myName;
+
+  public CpuThreadInfo(int id, @NotNull String name) {
+    myId = id;
+    myName = name;
+  }
+
+  public int getId() {
+    return myId;
+  }
+
+  @NotNull
+  public String getName() {
+    return myName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CpuThreadInfo && ((CpuThreadInfo)o).myId == myId;
+  }
+
+  @Override
+  public int hashCode() {
+    return myId;
+  }
+
+  @Override
+  public String toString() {
+    return myName;
+  }
+}
@@ -32,7 +32,7 @@ public class CpuTraceArt {
    * Tree representation of ART trace (generated from perflib tree).
    * Keys are thread ids and values are their respective {@link HNode}
    */
-  Map<ThreadInfo, HNode<MethodModel>> myNodes;
+  Map<CpuThreadInfo, HNode<MethodModel>> myNodes;
 
   public void parse(VmTraceData data) throws IOException {
     myNodes = new HashMap<>();
@@ -42,7 +42,7 @@ public class CpuTraceArt {
       if (threadInfo.getTopLevelCall() == null) {
         continue;
       }
-      myNodes.put(threadInfo, convertCallsToNode(data, threadInfo.getTopLevelCall(), 0));
+      myNodes.put(new CpuThreadInfo(threadInfo.getId(), threadInfo.getName()), convertCallsToNode(data, threadInfo.getTopLevelCall(), 0));
     }
   }
 
@@ -66,7 +66,7 @@ public class CpuTraceArt {
     return node;
   }
 
-  public Map<ThreadInfo, HNode<MethodModel>> getThreadsGraph() {
+  public Map<CpuThreadInfo, HNode<MethodModel>> getThreadsGraph() {
     return myNodes;
   }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedTreeModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import java.util.*;
+
+/**
+ * A tree model of {@link CpuTreeNode}s that only shows the nodes with calls in the current range, and keeps their values up to date.
+ */
+abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTreeModel implements RangedTreeModel {
+
+  private final Range myRange;
+  /**
+   * Whether the children of a node are only loaded once its parent is expanded, instead of loading the whole tree.
+   */
+  private final boolean myLazy;
+  private final Set<T> myExpanded;
+
+  protected CpuTreeModel(@NotNull T node, boolean lazy) {
+    super(new DefaultMutableTreeNode(node));
+    myRange = new Range();
+    myLazy = lazy;
+    myExpanded = new HashSet<>();
+    // The root is always shown expanded.
+    myExpanded.add(node);
+    update(new Range(-Double.MAX_VALUE, Double.MAX_VALUE));
+  }
+
+  @Override
+  public void update(@NotNull Range range) {
+    DefaultMutableTreeNode root = (DefaultMutableTreeNode)getRoot();
+
+    List<Range> diffs = new LinkedList<>();
+    // Add all the newly added ranges.
+    diffs.addAll(range.subtract(myRange));
+    // Add the ranges we don't have anymore
+    diffs.addAll(myRange.subtract(range));
+
+    update(root, range, diffs);
+
+    myRange.set(range);
+  }
+
+  /**
+   * Loads the grandchildren of the given node, so that its children can be expanded in turn.
+   */
+  public void expand(@NotNull DefaultMutableTreeNode node) {
+    T data = getData(node);
+    if (myLazy && data != null && myExpanded.add(data)) {
+      Enumeration e = node.children();
+      while (e.hasMoreElements()) {
+        update((DefaultMutableTreeNode)e.nextElement(), myRange, null);
+      }
+    }
+  }
+
+  public void collapse(@NotNull DefaultMutableTreeNode node) {
+    T data = getData(node);
+    if (data != null) {
+      myExpanded.remove(data);
+    }
+  }
+
+  public boolean changes(T data, List<Range> ranges) {
+    for (Range diff : ranges) {
+      if (data.inRange(diff)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isLoaded(@NotNull DefaultMutableTreeNode node) {
+    DefaultMutableTreeNode parent = (DefaultMutableTreeNode)node.getParent();
+    return !myLazy || parent == null || myExpanded.contains(getData(parent));
+  }
+
+  /**
+   * Updates the given node and its loaded descendants for the given range. Nodes without calls in the {@code ranges} that changed are
+   * left as they are, unless {@code ranges} is null.
+   */
+  private void update(DefaultMutableTreeNode node, Range range, @Nullable List<Range> ranges) {
+    T data = getData(node);
+    if (data == null) {
+      return;
+    }
+    if (ranges == null || changes(data, ranges)) {
+      if (isLoaded(node)) {
+        Enumeration e = node.children();
+        Map<String, DefaultMutableTreeNode> children = new HashMap<>();
+        while (e.hasMoreElements()) {
+          DefaultMutableTreeNode child = (DefaultMutableTreeNode)e.nextElement();
+          children.put(getData(child).getId(), child);
+        }
+        Set<String> actual = new HashSet<>();
+        for (T child : data.getChildren()) {
+          if (child.inRange(range)) {
+            actual.add(child.getId());
+            DefaultMutableTreeNode existing = children.get(child.getId());
+            if (existing == null) {
+              existing = new DefaultMutableTreeNode(child);
+              insertNodeInto(existing, node, 0);
+            }
+            update(existing, range, ranges);
+          }
+          else {
+            child.reset();
+          }
+        }
+        for (Map.Entry<String, DefaultMutableTreeNode> entry : children.entrySet()) {
+          if (!actual.contains(entry.getKey())) {
+            removeNodeFromParent(entry.getValue());
+          }
+        }
+      }
+      data.update(range);
+      nodeChanged(node);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable
+  private T getData(@NotNull DefaultMutableTreeNode node) {
+    return (T)node.getUserObject();
+  }
+}
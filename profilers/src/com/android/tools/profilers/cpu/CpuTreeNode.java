@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import com.android.tools.adtui.model.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A node of an aggregated view (top down, bottom up) of a call tree. Every node stands for a set of method calls from the capture, and
+ * indexes the time they cover so that its totals can be recomputed for a new range without walking the calls again.
+ */
+abstract class CpuTreeNode<T extends CpuTreeNode<T>> {
+  @NotNull private final String myId;
+  @NotNull private final MethodModel myMethod;
+  /**
+   * Time covered by the calls this node stands for.
+   */
+  @NotNull private final IntervalIndex myTotalIndex;
+  /**
+   * Time spent in the calls themselves, i.e. not covered by any of their callees.
+   */
+  @NotNull private final IntervalIndex mySelfIndex;
+  private double myTotal;
+  private double mySelf;
+
+  protected CpuTreeNode(@NotNull MethodModel method, @NotNull List<HNode<MethodModel>> nodes) {
+    myId = method.getId();
+    myMethod = method;
+
+    IntervalIndex.Builder total = new IntervalIndex.Builder();
+    IntervalIndex.Builder self = new IntervalIndex.Builder();
+    for (HNode<MethodModel> node : nodes) {
+      total.add(node.getStart(), node.getEnd());
+      long cursor = node.getStart();
+      for (HNode<MethodModel> child : node.getChildren()) {
+        self.add(cursor, child.getStart());
+        cursor = Math.max(cursor, child.getEnd());
+      }
+      self.add(cursor, node.getEnd());
+    }
+    myTotalIndex = total.build();
+    mySelfIndex = self.build();
+  }
+
+  @NotNull
+  public String getId() {
+    return myId;
+  }
+
+  @NotNull
+  public abstract List<T> getChildren();
+
+  public boolean inRange(@NotNull Range range) {
+    return myTotalIndex.intersects(range);
+  }
+
+  public String getMethodName() {
+    return myMethod.getName();
+  }
+
+  public String getPackage() {
+    return myMethod.getNameSpace();
+  }
+
+  public double getTotal() {
+    return myTotal;
+  }
+
+  public double getSelf() {
+    return mySelf;
+  }
+
+  public double getChildrenTotal() {
+    return myTotal - mySelf;
+  }
+
+  public void update(@NotNull Range range) {
+    myTotal = myTotalIndex.getTotal(range);
+    mySelf = mySelfIndex.getTotal(range);
+  }
+
+  public void reset() {
+    myTotal = 0.0;
+    mySelf = 0.0;
+  }
+}
@@ -15,25 +15,21 @@
  */
 package com.android.tools.profilers.cpu;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class CpuUsageDataSeries implements DataSeries<Long> {
+public class CpuUsageDataSeries extends LoadingDataSeries {
   @NotNull
   private CpuServiceGrpc.CpuServiceBlockingStub myClient;
 
@@ -41,14 +37,14 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
   private final int myProcessId;
 
   public CpuUsageDataSeries(@NotNull CpuServiceGrpc.CpuServiceBlockingStub client, boolean otherProcesses, int id) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myOtherProcesses = otherProcesses;
     myProcessId = id;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries seriesData) {
     // Get an extra padding on each side, to have a smooth rendering at the edges.
     // TODO: Change the CPU API to allow specifying this padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -72,14 +68,13 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
       }
       CpuUsageDataSeries.CpuUsageData usageData = getCpuUsageData(data, lastCpuData);
       if (myOtherProcesses) {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getOtherProcessesUsage()));
+        seriesData.add(dataTimestamp, (long)usageData.getOtherProcessesUsage());
       }
       else {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getAppUsage()));
+        seriesData.add(dataTimestamp, (long)usageData.getAppUsage());
       }
       lastCpuData = data;
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 
   private static CpuUsageDataSeries.CpuUsageData getCpuUsageData(CpuProfiler.CpuProfilerData data, CpuProfiler.CpuProfilerData lastData) {
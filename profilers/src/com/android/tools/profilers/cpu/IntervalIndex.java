@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of disjoint time intervals sorted by start, together with the running sum of their lengths. This allows answering
+ * how much of the set falls within a given range in O(log n), instead of intersecting the range with every interval.
+ */
+final class IntervalIndex {
+
+  private static final long[] EMPTY = new long[0];
+
+  private final long[] myStarts;
+  private final long[] myEnds;
+  /**
+   * myPrefix[i] is the total length of the first i intervals.
+   */
+  private final long[] myPrefix;
+
+  private IntervalIndex(@NotNull long[] starts, @NotNull long[] ends, int size) {
+    myStarts = Arrays.copyOf(starts, size);
+    myEnds = Arrays.copyOf(ends, size);
+    myPrefix = new long[size + 1];
+    for (int i = 0; i < size; i++) {
+      myPrefix[i + 1] = myPrefix[i] + myEnds[i] - myStarts[i];
+    }
+  }
+
+  public int size() {
+    return myStarts.length;
+  }
+
+  /**
+   * Returns whether any interval overlaps the given range. Touching endpoints do not count as an overlap.
+   */
+  public boolean intersects(@NotNull Range range) {
+    return firstAfter(range.getMin()) < lastBefore(range.getMax());
+  }
+
+  /**
+   * Returns the total length of the intervals clipped to the given range.
+   */
+  public double getTotal(@NotNull Range range) {
+    double min = range.getMin();
+    double max = range.getMax();
+    int from = firstAfter(min);
+    int to = lastBefore(max);
+    if (from >= to) {
+      return 0;
+    }
+    double total = myPrefix[to] - myPrefix[from];
+    if (myStarts[from] < min) {
+      total -= min - myStarts[from];
+    }
+    if (myEnds[to - 1] > max) {
+      total -= myEnds[to - 1] - max;
+    }
+    return total;
+  }
+
+  /**
+   * Returns the index of the first interval that ends after {@code value}.
+   */
+  private int firstAfter(double value) {
+    int low = 0;
+    int high = myEnds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myEnds[mid] > value) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns one past the index of the last interval that starts before {@code value}.
+   */
+  private int lastBefore(double value) {
+    int low = 0;
+    int high = myStarts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myStarts[mid] < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Collects intervals in any order. Overlapping and adjacent intervals are merged when the index is built, and empty ones are dropped.
+   */
+  static final class Builder {
+    private long[] myStarts = EMPTY;
+    private long[] myEnds = EMPTY;
+    private int mySize;
+    private boolean mySorted = true;
+
+    @NotNull
+    public Builder add(long start, long end) {
+      if (end <= start) {
+        return this;
+      }
+      if (mySize == myStarts.length) {
+        int capacity = Math.max(4, mySize * 2);
+        myStarts = Arrays.copyOf(myStarts, capacity);
+        myEnds = Arrays.copyOf(myEnds, capacity);
+      }
+      if (mySize > 0 && start < myStarts[mySize - 1]) {
+        mySorted = false;
+      }
+      myStarts[mySize] = start;
+      myEnds[mySize] = end;
+      mySize++;
+      return this;
+    }
+
+    @NotNull
+    public IntervalIndex build() {
+      if (!mySorted) {
+        sort();
+      }
+      int size = 0;
+      for (int i = 0; i < mySize; i++) {
+        if (size > 0 && myStarts[i] <= myEnds[size - 1]) {
+          myEnds[size - 1] = Math.max(myEnds[size - 1], myEnds[i]);
+        }
+        else {
+          myStarts[size] = myStarts[i];
+          myEnds[size] = myEnds[i];
+          size++;
+        }
+      }
+      return new IntervalIndex(myStarts, myEnds, size);
+    }
+
+    private void sort() {
+      Integer[] order = new Integer[mySize];
+      for (int i = 0; i < mySize; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(myStarts[a], myStarts[b]));
+      long[] starts = new long[mySize];
+      long[] ends = new long[mySize];
+      for (int i = 0; i < mySize; i++) {
+        starts[i] = myStarts[order[i]];
+        ends[i] = myEnds[order[i]];
+      }
+      myStarts = starts;
+      myEnds = ends;
+      mySorted = true;
+    }
+  }
+}
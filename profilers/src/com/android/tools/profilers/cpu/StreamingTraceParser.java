@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import com.google.common.annotations.VisibleForTesting;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses ART method traces straight into the {@link HNode} trees of a {@link CpuCapture}, without building perflib's
+ * {@code VmTraceData} first.
+ *
+ * The trace file is memory-mapped rather than read into the heap. A first pass over the records indexes them by thread,
+ * then the call tree of each thread is built in parallel. Only the trees, the method table and the index stay on the heap.
+ *
+ * Only traces that start with their text header (the "*version" section) are supported, see {@link #parse(File, ProgressListener)}.
+ */
+public final class StreamingTraceParser {
+
+  /**
+   * Receives the fraction of the trace parsed so far, from 0 to 1. It's called from the parsing threads.
+   */
+  public interface ProgressListener {
+    void progressChanged(double fraction);
+  }
+
+  private static final String HEADER_VERSION = "*version";
+  private static final String HEADER_THREADS = "*threads";
+  private static final String HEADER_METHODS = "*methods";
+  private static final String HEADER_END = "*end";
+  private static final String KEY_CLOCK = "clock";
+  private static final String CLOCK_DUAL = "dual";
+
+  /**
+   * 'SLOW' in little endian, at the start of the binary section.
+   */
+  private static final int DATA_MAGIC = 0x574f4c53;
+
+  private static final int ACTION_MASK = 0x03;
+  private static final int ACTION_ENTER = 0;
+
+  /**
+   * Name of the method at the root of each thread's tree, which has all the calls made by the thread as children.
+   */
+  @VisibleForTesting
+  static final String TOP_LEVEL_METHOD = "(toplevel)";
+
+  /**
+   * How many records the first pass reads between two progress reports.
+   */
+  private static final int PROGRESS_INTERVAL = 1 << 16;
+
+  private StreamingTraceParser() {
+  }
+
+  /**
+   * @return the call tree of each thread of the trace, or null if the trace isn't in a format this parser supports.
+   */
+  @Nullable
+  public static Map<CpuThreadInfo, HNode<MethodModel>> parse(@NotNull File trace, @Nullable ProgressListener listener)
+    throws IOException {
+    try (FileChannel channel = FileChannel.open(trace.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        // Can't be mapped in one buffer.
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return parse(buffer, listener);
+    }
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static Map<CpuThreadInfo, HNode<MethodModel>> parse(@NotNull ByteBuffer buffer, @Nullable ProgressListener listener)
+    throws IOException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    String firstLine = readLine(buffer);
+    if (!HEADER_VERSION.equals(firstLine)) {
+      return null;
+    }
+    Header header = readHeader(buffer);
+    Data data = readDataHeader(buffer, header);
+
+    // First pass: which records belong to which thread. Records are a fixed size, so indices are enough to find them again.
+    Map<Integer, TIntArrayList> recordsByThread = new HashMap<>();
+    long recordCount = data.getRecordCount();
+    if (recordCount > Integer.MAX_VALUE) {
+      throw new IOException("Too many records in trace: " + recordCount);
+    }
+    for (int i = 0; i < recordCount; i++) {
+      int threadId = data.getThreadId(i);
+      TIntArrayList records = recordsByThread.get(threadId);
+      if (records == null) {
+        records = new TIntArrayList();
+        recordsByThread.put(threadId, records);
+      }
+      records.add(i);
+      if (listener != null && i % PROGRESS_INTERVAL == 0) {
+        listener.progressChanged(0.5 * i / recordCount);
+      }
+    }
+
+    // Second pass: the call trees, one thread per task.
+    AtomicLong treeRecords = new AtomicLong();
+    Map<CpuThreadInfo, HNode<MethodModel>> trees = new ConcurrentHashMap<>();
+    recordsByThread.entrySet().parallelStream().forEach(entry -> {
+      int threadId = entry.getKey();
+      TIntArrayList records = entry.getValue();
+      String name = header.myThreadNames.get(threadId);
+      CpuThreadInfo thread = new CpuThreadInfo(threadId, name != null ? name : "Thread " + threadId);
+      trees.put(thread, buildTree(data, header, records));
+      long done = treeRecords.addAndGet(records.size());
+      if (listener != null) {
+        listener.progressChanged(0.5 + 0.5 * done / recordCount);
+      }
+    });
+    if (listener != null) {
+      listener.progressChanged(1);
+    }
+    return trees;
+  }
+
+  /**
+   * Builds the call tree of a thread from its records, in the order they were written.
+   */
+  @NotNull
+  private static HNode<MethodModel> buildTree(@NotNull Data data, @NotNull Header header, @NotNull TIntArrayList records) {
+    HNode<MethodModel> root = new HNode<>(header.getMethod(-1), 0, 0);
+    if (records.isEmpty()) {
+      return root;
+    }
+    long startUs = data.myStartTimeUs;
+    long firstTime = startUs + data.getTime(records.get(0));
+    long lastTime = firstTime;
+    root.setStart(firstTime);
+
+    // The open calls; stack.get(0) is the root.
+    List<HNode<MethodModel>> stack = new ArrayList<>();
+    TIntArrayList stackMethods = new TIntArrayList();
+    stack.add(root);
+    stackMethods.add(-1);
+
+    for (int i = 0; i < records.size(); i++) {
+      int record = records.get(i);
+      int methodValue = data.getMethodValue(record);
+      int methodId = methodValue & ~ACTION_MASK;
+      long time = startUs + data.getTime(record);
+      lastTime = Math.max(lastTime, time);
+
+      if ((methodValue & ACTION_MASK) == ACTION_ENTER) {
+        HNode<MethodModel> node = new HNode<>(header.getMethod(methodId), time, time);
+        node.setDepth(stack.size());
+        stack.get(stack.size() - 1).addHNode(node);
+        stack.add(node);
+        stackMethods.add(methodId);
+        continue;
+      }
+
+      // An exit, possibly unwinding through calls whose exits weren't recorded (e.g. because of an exception).
+      int match = stackMethods.lastIndexOf(methodId);
+      int closeFrom = match > 0 ? match : 1;
+      for (int j = stack.size() - 1; j >= closeFrom; j--) {
+        stack.remove(j).setEnd(time);
+        stackMethods.remove(j);
+      }
+      if (match <= 0) {
+        // The call started before tracing did: it covers everything the thread did so far.
+        HNode<MethodModel> node = new HNode<>(header.getMethod(methodId), firstTime, time);
+        node.setDepth(1);
+        for (HNode<MethodModel> child : root.getChildren()) {
+          node.addHNode(child);
+          incrementDepth(child);
+        }
+        root.getChildren().clear();
+        root.addHNode(node);
+      }
+    }
+
+    // Calls still running when tracing stopped.
+    for (int j = stack.size() - 1; j > 0; j--) {
+      stack.get(j).setEnd(lastTime);
+    }
+    root.setEnd(lastTime);
+    return root;
+  }
+
+  private static void incrementDepth(@NotNull HNode<MethodModel> node) {
+    // Iterative, call trees can be deep.
+    List<HNode<MethodModel>> toVisit = new ArrayList<>();
+    toVisit.add(node);
+    while (!toVisit.isEmpty()) {
+      HNode<MethodModel> current = toVisit.remove(toVisit.size() - 1);
+      current.setDepth(current.getDepth() + 1);
+      toVisit.addAll(current.getChildren());
+    }
+  }
+
+  @NotNull
+  private static Header readHeader(@NotNull ByteBuffer buffer) throws IOException {
+    Header header = new Header();
+    String section = HEADER_VERSION;
+    // The version number comes right after *version, the key=value lines after it.
+    readLine(buffer);
+    while (true) {
+      String line = readLine(buffer);
+      if (line == null) {
+        throw new IOException("Unexpected end of trace header");
+      }
+      if (line.startsWith("*")) {
+        if (line.equals(HEADER_END)) {
+          return header;
+        }
+        section = line;
+        continue;
+      }
+      if (line.isEmpty()) {
+        continue;
+      }
+
+      switch (section) {
+        case HEADER_VERSION:
+          int equals = line.indexOf('=');
+          if (equals > 0 && line.substring(0, equals).equals(KEY_CLOCK)) {
+            header.myClock = line.substring(equals + 1);
+          }
+          break;
+        case HEADER_THREADS: {
+          String[] fields = line.split("\t", 2);
+          header.myThreadNames.put(Integer.parseInt(fields[0]), fields.length > 1 ? fields[1] : "");
+          break;
+        }
+        case HEADER_METHODS: {
+          String[] fields = line.split("\t");
+          String id = fields[0];
+          MethodModel method = new MethodModel();
+          method.setNamespace(fields.length > 1 ? fields[1] : "");
+          method.setName(fields.length > 2 ? fields[2] : "");
+          method.setSignature(fields.length > 3 ? fields[3] : "");
+          method.setFilename(fields.length > 4 ? fields[4] : "");
+          method.setLineNumber(fields.length > 5 ? parseLineNumber(fields[5]) : -1);
+          header.myMethods.put((int)Long.parseLong(id.startsWith("0x") ? id.substring(2) : id, 16), method);
+          break;
+        }
+        default:
+          // Unknown sections are skipped.
+      }
+    }
+  }
+
+  private static int parseLineNumber(@NotNull String field) {
+    try {
+      return Integer.parseInt(field);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @NotNull
+  private static Data readDataHeader(@NotNull ByteBuffer buffer, @NotNull Header header) throws IOException {
+    int dataStart = buffer.position();
+    if (buffer.remaining() < 16 || buffer.getInt() != DATA_MAGIC) {
+      throw new IOException("Trace data section not found");
+    }
+    int version = buffer.getShort() & 0xffff;
+    int offset = buffer.getShort() & 0xffff;
+    long startTimeUs = buffer.getLong();
+
+    int recordSize;
+    switch (version) {
+      case 1:
+        recordSize = 9;
+        break;
+      case 2:
+        recordSize = 10;
+        break;
+      default:
+        recordSize = buffer.getShort() & 0xffff;
+        break;
+    }
+    return new Data(buffer, dataStart + offset, recordSize, version == 1, CLOCK_DUAL.equals(header.myClock), startTimeUs);
+  }
+
+  /**
+   * Reads a line of the text header, or null at the end of the buffer.
+   */
+  @Nullable
+  private static String readLine(@NotNull ByteBuffer buffer) {
+    int start = buffer.position();
+    int limit = buffer.limit();
+    if (start >= limit) {
+      return null;
+    }
+    int end = start;
+    while (end < limit && buffer.get(end) != '\n') {
+      end++;
+    }
+    byte[] bytes = new byte[end - start];
+    buffer.get(bytes);
+    if (end < limit) {
+      // Skip the '\n'.
+      buffer.get();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final class Header {
+    @NotNull private final Map<Integer, String> myThreadNames = new HashMap<>();
+    @NotNull private final Map<Integer, MethodModel> myMethods = new HashMap<>();
+    @NotNull private String myClock = "";
+
+    /**
+     * Methods are shared by all the nodes that call them. Calls to methods missing from the table get a placeholder. The
+     * header isn't modified once read, so this is safe to call from the threads building the trees.
+     */
+    @NotNull
+    private MethodModel getMethod(int id) {
+      MethodModel method = myMethods.get(id);
+      return method != null ? method : new MethodModel(id == -1 ? TOP_LEVEL_METHOD : String.format("unknown(0x%x)", id));
+    }
+  }
+
+  /**
+   * The binary records of the trace, read in place from the mapped file. Only absolute reads are used, so it can be
+   * shared by the threads building the trees.
+   */
+  private static final class Data {
+    @NotNull private final ByteBuffer myBuffer;
+    private final int myRecordsStart;
+    private final int myRecordSize;
+    private final boolean myByteThreadId;
+    private final boolean myDualClock;
+    private final long myStartTimeUs;
+
+    private Data(@NotNull ByteBuffer buffer,
+                 int recordsStart,
+                 int recordSize,
+                 boolean byteThreadId,
+                 boolean dualClock,
+                 long startTimeUs) {
+      myBuffer = buffer;
+      myRecordsStart = recordsStart;
+      myRecordSize = recordSize;
+      myByteThreadId = byteThreadId;
+      myDualClock = dualClock;
+      myStartTimeUs = startTimeUs;
+    }
+
+    private long getRecordCount() {
+      return (myBuffer.limit() - myRecordsStart) / myRecordSize;
+    }
+
+    private int getThreadId(int record) {
+      int position = myRecordsStart + record * myRecordSize;
+      return myByteThreadId ? myBuffer.get(position) & 0xff : myBuffer.getShort(position) & 0xffff;
+    }
+
+    private int getMethodValue(int record) {
+      return myBuffer.getInt(myRecordsStart + record * myRecordSize + (myByteThreadId ? 1 : 2));
+    }
+
+    /**
+     * @return the time of the record relative to the start of the trace, in microseconds. Uses the wall clock when the
+     * trace has both.
+     */
+    private long getTime(int record) {
+      int position = myRecordsStart + record * myRecordSize + (myByteThreadId ? 5 : 6);
+      if (myDualClock) {
+        position += 4;
+      }
+      return myBuffer.getInt(position) & 0xffffffffL;
+    }
+  }
+}
@@ -16,106 +16,49 @@
 package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.HNode;
-import com.android.tools.adtui.model.Range;
-import com.google.common.collect.Iterables;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 
 /**
- * A top-down CPU usage tree. This is a node on that tree and represents all the calls that share the same callstack upto a point.
- * It's created from an execution tree by merging the nodes with the same path from the root.
+ * A node of the top down view of a call tree, where calls reached through the same path of methods are merged together.
  */
-class TopDownNode {
-  private final List<HNode<MethodModel>> myNodes;
+class TopDownNode extends CpuTreeNode<TopDownNode> {
   private final List<TopDownNode> myChildren;
-  private final String myId;
-  private double myTotal;
 
   public TopDownNode(@NotNull HNode<MethodModel> node) {
-    myNodes = new LinkedList<>();
-    myChildren = new ArrayList<>();
-    myId = node.getData().getId();
-    myNodes.add(node);
-
-    Map<String, TopDownNode> children = new TreeMap<>();
-    for (HNode<MethodModel> child : node.getChildren()) {
-      TopDownNode prev = children.get(child.getData().getId());
-      TopDownNode other = new TopDownNode(child);
-      if (prev == null) {
-        children.put(child.getData().getId(), other);
-        myChildren.add(other);
-      }
-      else {
-        prev.merge(other);
-      }
-    }
-  }
-
-  private void merge(TopDownNode other) {
-    myNodes.addAll(other.myNodes);
-    Map<String, TopDownNode> children = new TreeMap<>();
-    for (TopDownNode child : myChildren) {
-      children.put(child.myId, child);
-    }
-    for (TopDownNode otherChild : other.myChildren) {
-      TopDownNode existing = children.get(otherChild.myId);
-      if (existing != null) {
-        existing.merge(otherChild);
+    this(node.getData(), Collections.singletonList(node));
+
+    // Merge the tree level by level with an explicit stack, as call stacks can be deeper than the thread stack allows for recursion.
+    Deque<TopDownNode> parents = new ArrayDeque<>();
+    Deque<List<HNode<MethodModel>>> instances = new ArrayDeque<>();
+    parents.push(this);
+    instances.push(Collections.singletonList(node));
+    while (!parents.isEmpty()) {
+      TopDownNode parent = parents.pop();
+      Map<String, List<HNode<MethodModel>>> children = new LinkedHashMap<>();
+      for (HNode<MethodModel> instance : instances.pop()) {
+        for (HNode<MethodModel> child : instance.getChildren()) {
+          children.computeIfAbsent(child.getData().getId(), id -> new ArrayList<>()).add(child);
+        }
       }
-      else {
-        myChildren.add(otherChild);
+      for (List<HNode<MethodModel>> group : children.values()) {
+        TopDownNode child = new TopDownNode(group.get(0).getData(), group);
+        parent.myChildren.add(child);
+        parents.push(child);
+        instances.push(group);
       }
     }
   }
 
-  public String getId() {
-    return myId;
+  private TopDownNode(@NotNull MethodModel method, @NotNull List<HNode<MethodModel>> nodes) {
+    super(method, nodes);
+    myChildren = new ArrayList<>();
   }
 
+  @NotNull
+  @Override
   public List<TopDownNode> getChildren() {
     return myChildren;
   }
-
-  public boolean inRange(Range range) {
-    return Iterables.any(myNodes, node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
-  }
-
-  public String getMethodName() {
-    MethodModel data = myNodes.get(0).getData();
-    return data.getName();
-  }
-
-  public String getPackage() {
-    MethodModel data = myNodes.get(0).getData();
-    return data.getNameSpace();
-  }
-
-  public double getTotal() {
-    return myTotal;
-  }
-
-  public double getSelf() {
-    return getTotal() - getChildrenTotal();
-  }
-
-  public double getChildrenTotal() {
-    double total = 0;
-    for (TopDownNode child : myChildren) {
-      total += child.getTotal();
-    }
-    return total;
-  }
-
-  public void update(Range range) {
-    myTotal = 0.0;
-    for (HNode<MethodModel> node : myNodes) {
-      Range intersection = range.getIntersection(new Range(node.getStart(), node.getEnd()));
-      myTotal += intersection.isEmpty() ? 0 : intersection.getLength();
-    }
-  }
-
-  public void reset() {
-    myTotal = 0.0;
-  }
 }
@@ -15,39 +15,37 @@
  */
 package com.android.tools.profilers.memory;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
-public final class MemoryDataSeries implements DataSeries<Long> {
+public final class MemoryDataSeries extends LoadingDataSeries {
   @NotNull
   private MemoryServiceGrpc.MemoryServiceBlockingStub myClient;
 
   private final int myProcessId;
 
   @NotNull
-  private Function<MemorySample, Long> myFilter;
+  private ToLongFunction<MemorySample> myFilter;
 
   public MemoryDataSeries(@NotNull MemoryServiceGrpc.MemoryServiceBlockingStub client, int id,
-                          @NotNull Function<MemorySample, Long> filter) {
+                          @NotNull ToLongFunction<MemorySample> filter) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myProcessId = id;
     myFilter = filter;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries seriesData) {
     // TODO: Change the Memory API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     MemoryProfiler.MemoryRequest.Builder dataRequestBuilder = MemoryProfiler.MemoryRequest.newBuilder()
@@ -56,11 +54,9 @@ public final class MemoryDataSeries implements DataSeries<Long> {
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     MemoryProfiler.MemoryData response = myClient.getData(dataRequestBuilder.build());
 
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (MemoryProfiler.MemoryData.MemorySample sample : response.getMemSamplesList()) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
-      seriesData.add(new SeriesData<>(dataTimestamp, myFilter.apply(sample)));
+      seriesData.add(dataTimestamp, myFilter.applyAsLong(sample));
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }
@@ -18,6 +18,9 @@ package com.android.tools.profilers.memory;
 public enum MemoryProfilerAspect {
   LEGACY_ALLOCATION,
   CURRENT_CAPTURE,
+  CURRENT_LOADED_CAPTURE,
+  CURRENT_RETAINED_SIZES,
+  CURRENT_DIFF,
   CURRENT_HEAP,
   CURRENT_CLASS,
   CURRENT_INSTANCE
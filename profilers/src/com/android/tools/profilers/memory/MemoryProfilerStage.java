@@ -24,19 +24,32 @@ import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.AllocationsInf
 import com.android.tools.profiler.proto.MemoryServiceGrpc.MemoryServiceBlockingStub;
 import com.android.tools.profilers.*;
 import com.android.tools.profilers.memory.adapters.*;
+import com.google.common.annotations.VisibleForTesting;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import static com.android.tools.adtui.model.DurationData.UNSPECIFIED_DURATION;
 
 public class MemoryProfilerStage extends Stage {
+  /**
+   * Captures are loaded off the calling thread, as fetching and parsing a heap dump can take a long time.
+   */
+  private static final ExecutorService LOAD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "Memory Capture Loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private static class MemoryProfilerSelection {
     // TODO this should persist across stages
     @Nullable private CaptureObject mySelectedCaptureObject;
@@ -114,10 +127,31 @@ public class MemoryProfilerStage extends Stage {
   @NotNull
   private MemoryProfilerSelection mySelection;
 
+  @NotNull
+  private final Executor myLoadExecutor;
+
+  /**
+   * The capture the selected capture is being compared against, and the result of that comparison once both have been loaded.
+   */
+  @Nullable private volatile CaptureObject myDiffCaptureObject;
+  @Nullable private CaptureDiff myCaptureDiff;
+
+  /**
+   * Captures ready for the diff: the selected one once its loading, including its retained sizes, has finished, the diff capture once it
+   * is loaded for a diff. Guarded by {@code this}.
+   */
+  @NotNull private final Set<CaptureObject> mySettledCaptures = Collections.newSetFromMap(new IdentityHashMap<>());
+
   private boolean myAllocationStatus;
 
   public MemoryProfilerStage(@NotNull StudioProfilers profilers) {
+    this(profilers, LOAD_EXECUTOR);
+  }
+
+  @VisibleForTesting
+  MemoryProfilerStage(@NotNull StudioProfilers profilers, @NotNull Executor loadExecutor) {
     super(profilers);
+    myLoadExecutor = loadExecutor;
     myProcessId = profilers.getProcessId();
     myClient = profilers.getClient().getMemoryClient();
     myHeapDumpSampleDataSeries = new HeapDumpSampleDataSeries();
@@ -152,10 +186,56 @@ public class MemoryProfilerStage extends Stage {
                                      TimeUnit.NANOSECONDS.toMicros(sample.getEndTime()));
   }
 
+  @Nullable
+  public HeapDumpInfo getFocusedHeapDump() {
+    return myExclusiveMemoryObjectsSelection.getFocusedHeapDumpInfo();
+  }
+
+  /**
+   * Compares the focused heap dump against the given one, see {@link #selectDiffCaptureObject(CaptureObject)}.
+   */
   public void setFocusedDiffHeapDump(@NotNull HeapDumpInfo diffSample) {
     myExclusiveMemoryObjectsSelection.setFocusedDiffHeapDumpInfo(diffSample);
   }
 
+  /**
+   * Compares the selected capture, as the target, against the given capture, as the base. The base is only made ready for a diff, see
+   * {@link CaptureObject#loadForDiff()}, rather than loaded to be shown. The diff is computed on the load executor once both captures are
+   * ready, after which {@link MemoryProfilerAspect#CURRENT_DIFF} fires.
+   */
+  public void selectDiffCaptureObject(@Nullable CaptureObject diffCaptureObject) {
+    if (myDiffCaptureObject == diffCaptureObject) {
+      return;
+    }
+
+    synchronized (this) {
+      if (myDiffCaptureObject != null) {
+        mySettledCaptures.remove(myDiffCaptureObject);
+        Disposer.dispose(myDiffCaptureObject);
+      }
+      myDiffCaptureObject = diffCaptureObject;
+      myCaptureDiff = null;
+    }
+    myAspect.changed(MemoryProfilerAspect.CURRENT_DIFF);
+
+    if (diffCaptureObject != null) {
+      loadCapture(diffCaptureObject, () -> myDiffCaptureObject == diffCaptureObject, false);
+    }
+  }
+
+  @Nullable
+  public CaptureObject getDiffCaptureObject() {
+    return myDiffCaptureObject;
+  }
+
+  /**
+   * @return the comparison between the diff capture and the selected capture, or null if either is missing or still loading.
+   */
+  @Nullable
+  public synchronized CaptureDiff getCaptureDiff() {
+    return myCaptureDiff;
+  }
+
   public void setAllocationsTimeRange(long startNs, long endNs) {
     myExclusiveMemoryObjectsSelection.setSelectionRange(startNs, endNs);
     ProfilerTimeline timeline = getStudioProfilers().getTimeline();
@@ -217,9 +297,81 @@ public class MemoryProfilerStage extends Stage {
       return;
     }
 
+    // A diff is always relative to the selected capture, so it goes away with it.
+    selectDiffCaptureObject(null);
+    synchronized (this) {
+      mySettledCaptures.remove(previousCaptureObject);
+    }
     mySelection.set(captureObject, null, null, null);
     myAspect.changed(MemoryProfilerAspect.CURRENT_CAPTURE);
     getStudioProfilers().modeChanged();
+
+    if (captureObject != null) {
+      loadCapture(captureObject, () -> getSelectedCaptureObject() == captureObject, true);
+    }
+  }
+
+  /**
+   * Loads the capture on the load executor unless it is already loaded, then tries to compute the diff. The diff capture is only loaded
+   * as far as a diff needs, and its retained sizes are not computed.
+   *
+   * @param isCurrent whether the capture is still of interest. Once it is not, it has been disposed and no aspects should fire for it.
+   * @param isSelected whether the capture is the selected one, as opposed to the diff capture.
+   */
+  private void loadCapture(@NotNull CaptureObject captureObject, @NotNull BooleanSupplier isCurrent, boolean isSelected) {
+    if (captureObject.isDoneLoading()) {
+      if (isSelected) {
+        myAspect.changed(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE);
+      }
+      settleCapture(captureObject);
+      return;
+    }
+
+    myLoadExecutor.execute(() -> {
+      if (!isSelected) {
+        if (captureObject.loadForDiff() && isCurrent.getAsBoolean()) {
+          settleCapture(captureObject);
+        }
+        return;
+      }
+      if (!captureObject.load() || !isCurrent.getAsBoolean()) {
+        return;
+      }
+      myAspect.changed(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE);
+      if (captureObject.computeRetainedSizes() && isCurrent.getAsBoolean()) {
+        myAspect.changed(MemoryProfilerAspect.CURRENT_RETAINED_SIZES);
+      }
+      if (isCurrent.getAsBoolean()) {
+        settleCapture(captureObject);
+      }
+    });
+  }
+
+  /**
+   * Marks the capture as fully loaded, and computes the diff if it was the last of the two captures being waited on. The diff is
+   * computed on whichever thread settles last, which is the load executor unless both captures were loaded up front.
+   */
+  private void settleCapture(@NotNull CaptureObject captureObject) {
+    CaptureObject base;
+    CaptureObject target;
+    synchronized (this) {
+      mySettledCaptures.add(captureObject);
+      base = myDiffCaptureObject;
+      target = getSelectedCaptureObject();
+      if (base == null || target == null || myCaptureDiff != null ||
+          !mySettledCaptures.contains(base) || !mySettledCaptures.contains(target)) {
+        return;
+      }
+    }
+
+    CaptureDiff diff = CaptureDiff.compute(base, target);
+    synchronized (this) {
+      if (myDiffCaptureObject != base || getSelectedCaptureObject() != target) {
+        return;
+      }
+      myCaptureDiff = diff;
+    }
+    myAspect.changed(MemoryProfilerAspect.CURRENT_DIFF);
   }
 
   @Nullable
@@ -267,6 +419,7 @@ public class MemoryProfilerStage extends Stage {
     public void setFocusedHeapDumpInfo(@NotNull HeapDumpInfo focusedHeapDumpInfo) {
       if (focusedHeapDumpInfo != myFocusedHeapDumpInfo) {
         myFocusedHeapDumpInfo = focusedHeapDumpInfo;
+        myFocusedDiffHeapDumpInfo = null;
         mySelectionStartTime = Long.MAX_VALUE;
         mySelectionEndTime = Long.MIN_VALUE;
         selectCaptureObject(new HeapDumpCaptureObject(myClient, myProcessId, myFocusedHeapDumpInfo, null));
@@ -279,11 +432,10 @@ public class MemoryProfilerStage extends Stage {
     }
 
     public void setFocusedDiffHeapDumpInfo(@NotNull HeapDumpInfo focusedDiffHeapDumpInfo) {
-      assert myFocusedDiffHeapDumpInfo != null && mySelectionStartTime == Long.MAX_VALUE && mySelectionEndTime == Long.MIN_VALUE;
+      assert myFocusedHeapDumpInfo != null && mySelectionStartTime == Long.MAX_VALUE && mySelectionEndTime == Long.MIN_VALUE;
       if (focusedDiffHeapDumpInfo != myFocusedDiffHeapDumpInfo) {
         myFocusedDiffHeapDumpInfo = focusedDiffHeapDumpInfo;
-        myAspect.changed(MemoryProfilerAspect.CURRENT_CAPTURE);
-        // TODO implement/set diff view
+        selectDiffCaptureObject(new HeapDumpCaptureObject(myClient, myProcessId, myFocusedDiffHeapDumpInfo, null));
       }
     }
 
@@ -15,39 +15,36 @@
  */
 package com.android.tools.profilers.memory;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
-public final class VmStatsDataSeries implements DataSeries<Long> {
+public final class VmStatsDataSeries extends LoadingDataSeries {
   @NotNull
   private MemoryServiceGrpc.MemoryServiceBlockingStub myClient;
 
   private final int myProcessId;
 
   @NotNull
-  private Function<MemoryProfiler.MemoryData.VmStatsSample, Long> myFilter;
+  private ToLongFunction<MemoryProfiler.MemoryData.VmStatsSample> myFilter;
 
   public VmStatsDataSeries(@NotNull MemoryServiceGrpc.MemoryServiceBlockingStub client, int id,
-                           @NotNull Function<MemoryProfiler.MemoryData.VmStatsSample, Long> filter) {
+                           @NotNull ToLongFunction<MemoryProfiler.MemoryData.VmStatsSample> filter) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myProcessId = id;
     myFilter = filter;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries seriesData) {
     // TODO: Change the Memory API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     MemoryProfiler.MemoryRequest.Builder dataRequestBuilder = MemoryProfiler.MemoryRequest.newBuilder()
@@ -56,11 +53,9 @@ public final class VmStatsDataSeries implements DataSeries<Long> {
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     MemoryProfiler.MemoryData response = myClient.getData(dataRequestBuilder.build());
 
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (MemoryProfiler.MemoryData.VmStatsSample sample : response.getVmStatsSamplesList()) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
-      seriesData.add(new SeriesData<>(dataTimestamp, myFilter.apply(sample)));
+      seriesData.add(dataTimestamp, myFilter.applyAsLong(sample));
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }
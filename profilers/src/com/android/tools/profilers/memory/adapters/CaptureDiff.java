@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationStack;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Lines up the classes, and where available the allocation sites, of two captures and reports how they changed from the base capture to
+ * the target capture. Only per-class and per-site totals are kept.
+ *
+ * Heap dumps are not loaded for this: each dump is streamed once from its spilled hprof file by {@link HprofHistogram}, which holds
+ * totals rather than instances, so comparing two dumps needs neither of them parsed nor their dominators computed. Retained sizes can't
+ * be read that way, so a diff of heap dumps has none, see {@link #hasRetainedSizes()}. Other captures are walked through their loaded
+ * heaps, in which case allocation sites need a walk over every instance and are only computed once asked for.
+ */
+public final class CaptureDiff {
+  private static final Logger LOG = Logger.getInstance(CaptureDiff.class);
+
+  private static final Comparator<ClassDelta> CLASS_GROWTH_ORDER =
+    Comparator.comparingInt(ClassDelta::getCountDelta).thenComparingLong(ClassDelta::getRetainedSizeDelta).reversed()
+      .thenComparing(ClassDelta::getName);
+
+  private static final Comparator<AllocationSiteDelta> SITE_GROWTH_ORDER =
+    Comparator.comparingInt(AllocationSiteDelta::getCountDelta).thenComparingLong(AllocationSiteDelta::getSizeDelta).reversed()
+      .thenComparing(AllocationSiteDelta::getClassName);
+
+  @NotNull private final CaptureObject myBase;
+  @NotNull private final CaptureObject myTarget;
+  @NotNull private final List<ClassDelta> myClassDeltas;
+  @Nullable private List<AllocationSiteDelta> myAllocationSiteDeltas;
+  private final boolean myHasRetainedSizes;
+
+  private CaptureDiff(@NotNull CaptureObject base,
+                      @NotNull CaptureObject target,
+                      @NotNull Collection<ClassDelta> classDeltas,
+                      @Nullable Collection<AllocationSiteDelta> siteDeltas,
+                      boolean hasRetainedSizes) {
+    myBase = base;
+    myTarget = target;
+    myClassDeltas = sort(classDeltas, CLASS_GROWTH_ORDER);
+    myAllocationSiteDeltas = siteDeltas == null ? null : sort(siteDeltas, SITE_GROWTH_ORDER);
+    myHasRetainedSizes = hasRetainedSizes;
+  }
+
+  /**
+   * Both captures must be ready for a diff, see {@link CaptureObject#loadForDiff()}. Classes are matched by name across all heaps, this
+   * only reads per-class totals, not instances. Both captures are {@link CaptureObject#retain() retained} while they are read, if either
+   * is already disposed, or can't be read, the diff is empty.
+   */
+  @NotNull
+  public static CaptureDiff compute(@NotNull CaptureObject base, @NotNull CaptureObject target) {
+    if (!retain(base, target)) {
+      return new CaptureDiff(base, target, Collections.emptyList(), Collections.emptyList(), false);
+    }
+    try {
+      HprofHistogram baseHistogram = base.readHistogram();
+      HprofHistogram targetHistogram = baseHistogram == null ? null : target.readHistogram();
+      if (baseHistogram != null && targetHistogram != null) {
+        return compute(base, target, baseHistogram, targetHistogram);
+      }
+
+      Map<String, ClassDelta> classDeltas = new HashMap<>();
+      accumulateClasses(base, false, classDeltas);
+      accumulateClasses(target, true, classDeltas);
+      return new CaptureDiff(base, target, classDeltas.values(), null, true);
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to read captures to compare", e);
+      return new CaptureDiff(base, target, Collections.emptyList(), Collections.emptyList(), false);
+    }
+    finally {
+      release(base, target);
+    }
+  }
+
+  @NotNull
+  private static CaptureDiff compute(@NotNull CaptureObject base,
+                                     @NotNull CaptureObject target,
+                                     @NotNull HprofHistogram baseHistogram,
+                                     @NotNull HprofHistogram targetHistogram) {
+    Map<String, ClassDelta> classDeltas = new HashMap<>();
+    Map<SiteKey, AllocationSiteDelta> siteDeltas = new HashMap<>();
+    for (HprofHistogram histogram : Arrays.asList(baseHistogram, targetHistogram)) {
+      boolean isTarget = histogram == targetHistogram;
+      histogram.getClasses().forEach(
+        (name, totals) -> classDeltas.computeIfAbsent(name, ClassDelta::new).add(isTarget, totals.getCount(), totals.getSize(), 0));
+      histogram.getSites().forEach(
+        (site, totals) -> siteDeltas
+          .computeIfAbsent(new SiteKey(site.getClassName(), site.getStack()), key -> new AllocationSiteDelta(key.myClassName, key.myStack))
+          .add(isTarget, totals.getCount(), totals.getSize()));
+    }
+    return new CaptureDiff(base, target, classDeltas.values(), siteDeltas.values(), false);
+  }
+
+  @NotNull
+  private static <T> List<T> sort(@NotNull Collection<T> values, @NotNull Comparator<T> order) {
+    List<T> sorted = new ArrayList<>(values);
+    sorted.sort(order);
+    return Collections.unmodifiableList(sorted);
+  }
+
+  private static boolean retain(@NotNull CaptureObject base, @NotNull CaptureObject target) {
+    if (!base.retain()) {
+      return false;
+    }
+    if (!target.retain()) {
+      base.release();
+      return false;
+    }
+    return true;
+  }
+
+  private static void release(@NotNull CaptureObject base, @NotNull CaptureObject target) {
+    target.release();
+    base.release();
+  }
+
+  private static void accumulateClasses(@NotNull CaptureObject capture, boolean isTarget, @NotNull Map<String, ClassDelta> classDeltas) {
+    for (HeapObject heap : capture.getHeaps()) {
+      for (ClassObject klass : heap.getClasses()) {
+        classDeltas.computeIfAbsent(klass.getName(), ClassDelta::new)
+          .add(isTarget, klass.getChildrenCount(), klass.getShallowSize(), klass.getRetainedSize());
+      }
+    }
+  }
+
+  private static void accumulateSites(@NotNull CaptureObject capture,
+                                      boolean isTarget,
+                                      @NotNull Map<SiteKey, AllocationSiteDelta> siteDeltas) {
+    for (HeapObject heap : capture.getHeaps()) {
+      for (ClassObject klass : heap.getClasses()) {
+        // Instances are first grouped by their call stack key, so each site's stack is only built once per class rather than once per
+        // instance. Instance wrappers are only alive for the duration of a single class, which keeps the walk bounded by the largest class.
+        Map<Object, SiteTotals> sites = new HashMap<>();
+        for (InstanceObject instance : klass.getInstances()) {
+          Object key = instance.getCallStackKey();
+          if (key != null) {
+            sites.computeIfAbsent(key, k -> new SiteTotals(instance)).add(instance.getShallowSize());
+          }
+        }
+
+        String name = klass.getName();
+        for (SiteTotals totals : sites.values()) {
+          AllocationStack stack = totals.myInstance.getCallStack();
+          if (stack == null || stack.getStackFramesCount() == 0) {
+            continue;
+          }
+          siteDeltas.computeIfAbsent(new SiteKey(name, stack), key -> new AllocationSiteDelta(key.myClassName, key.myStack))
+            .add(isTarget, totals.myCount, totals.mySize);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the classes of both captures, sorted by instance count growth, then by retained size growth.
+   */
+  @NotNull
+  public List<ClassDelta> getClassDeltas() {
+    return myClassDeltas;
+  }
+
+  /**
+   * @return whether the retained sizes of {@link #getClassDeltas()} are known. They are 0 otherwise.
+   */
+  public boolean hasRetainedSizes() {
+    return myHasRetainedSizes;
+  }
+
+  /**
+   * Instances are attributed to an allocation site only if they carry a non-empty call stack. Unless both captures were read as hprof
+   * histograms, the first call walks every instance of both captures, so it should not be called on the UI thread.
+   *
+   * @return the allocation sites of both captures, sorted by instance count growth, then by size growth. Empty if neither capture has
+   * call stacks, or if either was disposed before the sites were computed.
+   */
+  @NotNull
+  public synchronized List<AllocationSiteDelta> getAllocationSiteDeltas() {
+    if (myAllocationSiteDeltas == null) {
+      Map<SiteKey, AllocationSiteDelta> siteDeltas = new HashMap<>();
+      if (retain(myBase, myTarget)) {
+        try {
+          accumulateSites(myBase, false, siteDeltas);
+          accumulateSites(myTarget, true, siteDeltas);
+        }
+        finally {
+          release(myBase, myTarget);
+        }
+      }
+      myAllocationSiteDeltas = sort(siteDeltas.values(), SITE_GROWTH_ORDER);
+    }
+    return myAllocationSiteDeltas;
+  }
+
+  public static final class ClassDelta {
+    @NotNull private final String myName;
+    private int myBaseCount;
+    private int myTargetCount;
+    private long myBaseShallowSize;
+    private long myTargetShallowSize;
+    private long myBaseRetainedSize;
+    private long myTargetRetainedSize;
+
+    private ClassDelta(@NotNull String name) {
+      myName = name;
+    }
+
+    private void add(boolean isTarget, int count, long shallowSize, long retainedSize) {
+      if (isTarget) {
+        myTargetCount += count;
+        myTargetShallowSize += shallowSize;
+        myTargetRetainedSize += retainedSize;
+      }
+      else {
+        myBaseCount += count;
+        myBaseShallowSize += shallowSize;
+        myBaseRetainedSize += retainedSize;
+      }
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public int getBaseCount() {
+      return myBaseCount;
+    }
+
+    public int getTargetCount() {
+      return myTargetCount;
+    }
+
+    public int getCountDelta() {
+      return myTargetCount - myBaseCount;
+    }
+
+    public long getShallowSizeDelta() {
+      return myTargetShallowSize - myBaseShallowSize;
+    }
+
+    public long getBaseRetainedSize() {
+      return myBaseRetainedSize;
+    }
+
+    public long getTargetRetainedSize() {
+      return myTargetRetainedSize;
+    }
+
+    public long getRetainedSizeDelta() {
+      return myTargetRetainedSize - myBaseRetainedSize;
+    }
+  }
+
+  public static final class AllocationSiteDelta {
+    @NotNull private final String myClassName;
+    @NotNull private final AllocationStack myStack;
+    private int myBaseCount;
+    private int myTargetCount;
+    private long myBaseSize;
+    private long myTargetSize;
+
+    private AllocationSiteDelta(@NotNull String className, @NotNull AllocationStack stack) {
+      myClassName = className;
+      myStack = stack;
+    }
+
+    private void add(boolean isTarget, int count, long size) {
+      if (isTarget) {
+        myTargetCount += count;
+        myTargetSize += size;
+      }
+      else {
+        myBaseCount += count;
+        myBaseSize += size;
+      }
+    }
+
+    @NotNull
+    public String getClassName() {
+      return myClassName;
+    }
+
+    @NotNull
+    public AllocationStack getStack() {
+      return myStack;
+    }
+
+    public int getBaseCount() {
+      return myBaseCount;
+    }
+
+    public int getTargetCount() {
+      return myTargetCount;
+    }
+
+    public int getCountDelta() {
+      return myTargetCount - myBaseCount;
+    }
+
+    public long getSizeDelta() {
+      return myTargetSize - myBaseSize;
+    }
+  }
+
+  /**
+   * Instance count and size of one class at one allocation site within a single capture.
+   */
+  private static final class SiteTotals {
+    @NotNull private final InstanceObject myInstance;
+    private int myCount;
+    private long mySize;
+
+    private SiteTotals(@NotNull InstanceObject instance) {
+      myInstance = instance;
+    }
+
+    private void add(long size) {
+      myCount++;
+      mySize += size;
+    }
+  }
+
+  private static final class SiteKey {
+    @NotNull private final String myClassName;
+    @NotNull private final AllocationStack myStack;
+
+    private SiteKey(@NotNull String className, @NotNull AllocationStack stack) {
+      myClassName = className;
+      myStack = stack;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SiteKey)) {
+        return false;
+      }
+      SiteKey other = (SiteKey)obj;
+      return myClassName.equals(other.myClassName) && myStack.equals(other.myStack);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * myClassName.hashCode() + myStack.hashCode();
+    }
+  }
+}
@@ -17,13 +17,87 @@ package com.android.tools.profilers.memory.adapters;
 
 import com.intellij.openapi.Disposable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.List;
 
 public abstract class CaptureObject implements MemoryObject, Disposable {
   @NotNull
   public abstract String getLabel();
 
+  /**
+   * Only valid once {@link #isDoneLoading()} returns true.
+   */
   @NotNull
   public abstract List<HeapObject> getHeaps();
+
+  /**
+   * Fetches and parses the data backing this capture. This can take a long time, so it should not be called on the UI thread.
+   *
+   * @return whether the capture was loaded successfully.
+   */
+  public boolean load() {
+    return true;
+  }
+
+  public boolean isDoneLoading() {
+    return true;
+  }
+
+  /**
+   * Gets the capture ready to be compared against another one, which by default means fully loading it. This can take a long time, so it
+   * should not be called on the UI thread.
+   *
+   * @return whether the capture can be diffed.
+   */
+  public boolean loadForDiff() {
+    return load();
+  }
+
+  /**
+   * Reads the per-class and per-site totals of a capture ready for a diff straight from the data backing it. Only called while the
+   * capture is {@link #retain() retained}.
+   *
+   * @return null if the capture can't be read this way, in which case a {@link CaptureDiff} walks its loaded heaps instead.
+   */
+  @Nullable
+  HprofHistogram readHistogram() throws IOException {
+    return null;
+  }
+
+  /**
+   * @return how far along {@link #load()} is, between 0 and 1.
+   */
+  public double getLoadProgress() {
+    return isDoneLoading() ? 1 : 0;
+  }
+
+  @NotNull
+  public String getLoadMessage() {
+    return "";
+  }
+
+  /**
+   * Computes the retained sizes of a loaded capture. Captures can be shown before this is done, as it may take much longer than
+   * {@link #load()}.
+   *
+   * @return whether retained sizes were computed, in which case views showing them should be refreshed.
+   */
+  public boolean computeRetainedSizes() {
+    return false;
+  }
+
+  /**
+   * Keeps the data backing the capture alive until the matching {@link #release()}, even if the capture is disposed meanwhile. Work
+   * walking the heaps of a capture off the UI thread should be wrapped in these.
+   *
+   * @return false if the capture is already disposed, in which case it must not be released.
+   */
+  public boolean retain() {
+    return true;
+  }
+
+  public void release() {
+  }
 }
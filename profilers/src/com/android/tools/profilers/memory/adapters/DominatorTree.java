@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Dominator tree and retained sizes of a graph whose vertices are numbered 0 to n - 1, computed with the semi-NCA algorithm over
+ * primitive arrays.
+ *
+ * Semi-dominators are computed in a single depth-first pass, as the path compression they rely on is inherently sequential. The
+ * immediate dominator of a vertex however only depends on the immediate dominators of its ancestors in the depth-first spanning tree,
+ * so the nearest common ancestor pass handles the tree one depth at a time, with the vertices at each depth processed in parallel.
+ *
+ * The distance of every vertex to the closest root is computed as well, as heap views show it next to retained sizes.
+ */
+final class DominatorTree {
+  /**
+   * Returned by {@link #getImmediateDominator(int)} for roots, and vertices not reachable from any root.
+   */
+  static final int NO_DOMINATOR = -1;
+
+  /**
+   * Levels of the spanning tree smaller than this are not worth handing to other threads.
+   */
+  private static final int PARALLEL_THRESHOLD = 4096;
+
+  /**
+   * Depth-first number of every vertex, -1 for unreachable ones. Number 0 is a virtual vertex that points to all the roots.
+   */
+  @NotNull private final int[] myNumbers;
+  /**
+   * Vertex of every depth-first number, the virtual root being mapped to -1.
+   */
+  @NotNull private final int[] myVertices;
+  /**
+   * Immediate dominator of every depth-first number.
+   */
+  @NotNull private final int[] myDominators;
+  @NotNull private final long[] myRetainedSizes;
+  /**
+   * Length of the shortest path from any root to every depth-first number.
+   */
+  @NotNull private final int[] myDistances;
+
+  /**
+   * @param predecessors the vertices pointing to each vertex
+   * @param roots        the vertices the graph is traversed from
+   * @param sizes        the size of each vertex, retained sizes are the sum of the sizes of the vertices each vertex dominates
+   */
+  DominatorTree(@NotNull int[][] predecessors, @NotNull int[] roots, @NotNull int[] sizes) {
+    this(getStarts(predecessors), flatten(predecessors), roots, sizes);
+  }
+
+  /**
+   * @param predecessorStarts where the predecessors of each vertex start in {@code predecessors}, with one extra entry for the end of
+   *                          the last vertex's predecessors
+   * @param predecessors      the vertices pointing to each vertex, in compressed row form
+   * @param roots             the vertices the graph is traversed from
+   * @param sizes             the size of each vertex, retained sizes are the sum of the sizes of the vertices each vertex dominates
+   */
+  DominatorTree(@NotNull int[] predecessorStarts, @NotNull int[] predecessors, @NotNull int[] roots, @NotNull int[] sizes) {
+    int vertexCount = predecessorStarts.length - 1;
+
+    // Successors in compressed row form, with the virtual root stored as vertex n.
+    int[] successorStarts = new int[vertexCount + 2];
+    for (int predecessor : predecessors) {
+      successorStarts[predecessor + 1]++;
+    }
+    successorStarts[vertexCount + 1] = roots.length;
+    for (int i = 0; i <= vertexCount; i++) {
+      successorStarts[i + 1] += successorStarts[i];
+    }
+    int[] successors = new int[successorStarts[vertexCount + 1]];
+    int[] fill = Arrays.copyOf(successorStarts, vertexCount + 1);
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      for (int i = predecessorStarts[vertex]; i < predecessorStarts[vertex + 1]; i++) {
+        successors[fill[predecessors[i]]++] = vertex;
+      }
+    }
+    System.arraycopy(roots, 0, successors, fill[vertexCount], roots.length);
+
+    // Depth-first numbering, recording the parent and depth of every vertex in the spanning tree.
+    myNumbers = new int[vertexCount + 1];
+    Arrays.fill(myNumbers, -1);
+    int[] vertices = new int[vertexCount + 1];
+    int[] parents = new int[vertexCount + 1];
+    int[] depths = new int[vertexCount + 1];
+    int[] stack = new int[vertexCount + 1];
+    int[] nextEdge = new int[vertexCount + 1];
+    int count = 0;
+    int top = 0;
+    stack[0] = vertexCount;
+    nextEdge[0] = successorStarts[vertexCount];
+    myNumbers[vertexCount] = count;
+    vertices[count++] = vertexCount;
+    while (top >= 0) {
+      int vertex = stack[top];
+      if (nextEdge[top] == successorStarts[vertex + 1]) {
+        top--;
+        continue;
+      }
+      int successor = successors[nextEdge[top]++];
+      if (myNumbers[successor] == -1) {
+        int number = count++;
+        myNumbers[successor] = number;
+        vertices[number] = successor;
+        parents[number] = myNumbers[vertex];
+        depths[number] = top + 1;
+        top++;
+        stack[top] = successor;
+        nextEdge[top] = successorStarts[successor];
+      }
+    }
+    myNumbers[vertexCount] = -1;
+    myVertices = Arrays.copyOf(vertices, count);
+    myVertices[0] = -1;
+
+    int[] semis = computeSemiDominators(predecessorStarts, predecessors, roots, parents, count, stack);
+    myDominators = computeDominators(semis, parents, depths, count);
+
+    myDistances = computeDistances(successorStarts, successors, vertexCount, count, stack);
+
+    myRetainedSizes = new long[count];
+    for (int number = 1; number < count; number++) {
+      myRetainedSizes[number] = sizes[myVertices[number]];
+    }
+    // Dominators have smaller depth-first numbers than the vertices they dominate.
+    for (int number = count - 1; number > 0; number--) {
+      myRetainedSizes[myDominators[number]] += myRetainedSizes[number];
+    }
+  }
+
+  @NotNull
+  private static int[] getStarts(@NotNull int[][] lists) {
+    int[] starts = new int[lists.length + 1];
+    for (int i = 0; i < lists.length; i++) {
+      starts[i + 1] = starts[i] + lists[i].length;
+    }
+    return starts;
+  }
+
+  @NotNull
+  private static int[] flatten(@NotNull int[][] lists) {
+    return Arrays.stream(lists).flatMapToInt(Arrays::stream).toArray();
+  }
+
+  /**
+   * Lengauer-Tarjan semi-dominators with path compression, indexed by depth-first number.
+   */
+  @NotNull
+  private int[] computeSemiDominators(@NotNull int[] predecessorStarts,
+                                      @NotNull int[] predecessors,
+                                      @NotNull int[] roots,
+                                      @NotNull int[] parents,
+                                      int count,
+                                      @NotNull int[] path) {
+    int[] semis = new int[count];
+    int[] labels = new int[count];
+    int[] ancestors = new int[count];
+    for (int number = 0; number < count; number++) {
+      semis[number] = number;
+      labels[number] = number;
+      ancestors[number] = -1;
+    }
+    boolean[] isRoot = new boolean[count];
+    for (int root : roots) {
+      isRoot[myNumbers[root]] = true;
+    }
+
+    for (int number = count - 1; number > 0; number--) {
+      int vertex = myVertices[number];
+      // The virtual root is a predecessor of every root, but is not part of the predecessor lists.
+      if (isRoot[number]) {
+        semis[number] = 0;
+      }
+      for (int i = predecessorStarts[vertex]; i < predecessorStarts[vertex + 1]; i++) {
+        int predecessorNumber = myNumbers[predecessors[i]];
+        if (predecessorNumber == -1) {
+          continue;
+        }
+        int label = eval(predecessorNumber, semis, labels, ancestors, path);
+        if (semis[label] < semis[number]) {
+          semis[number] = semis[label];
+        }
+      }
+      ancestors[number] = parents[number];
+    }
+    return semis;
+  }
+
+  /**
+   * Returns the vertex with the smallest semi-dominator on the path from the given vertex up to the root of its tree in the forest
+   * processed so far, compressing that path on the way.
+   */
+  private static int eval(int number, @NotNull int[] semis, @NotNull int[] labels, @NotNull int[] ancestors, @NotNull int[] path) {
+    if (ancestors[number] == -1) {
+      return number;
+    }
+    int size = 0;
+    for (int current = number; ancestors[ancestors[current]] != -1; current = ancestors[current]) {
+      path[size++] = current;
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      int current = path[i];
+      int ancestor = ancestors[current];
+      if (semis[labels[ancestor]] < semis[labels[current]]) {
+        labels[current] = labels[ancestor];
+      }
+      ancestors[current] = ancestors[ancestor];
+    }
+    return labels[number];
+  }
+
+  /**
+   * Immediate dominators, indexed by depth-first number: the nearest common ancestor of a vertex's parent and semi-dominator.
+   */
+  @NotNull
+  private static int[] computeDominators(@NotNull int[] semis, @NotNull int[] parents, @NotNull int[] depths, int count) {
+    // Bucket the vertices by depth in the spanning tree.
+    int maxDepth = 0;
+    for (int number = 0; number < count; number++) {
+      maxDepth = Math.max(maxDepth, depths[number]);
+    }
+    int[] levelStarts = new int[maxDepth + 2];
+    for (int number = 0; number < count; number++) {
+      levelStarts[depths[number] + 1]++;
+    }
+    for (int depth = 0; depth <= maxDepth; depth++) {
+      levelStarts[depth + 1] += levelStarts[depth];
+    }
+    int[] levels = new int[count];
+    int[] fill = Arrays.copyOf(levelStarts, maxDepth + 1);
+    for (int number = 0; number < count; number++) {
+      levels[fill[depths[number]]++] = number;
+    }
+
+    int[] dominators = new int[count];
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      int start = levelStarts[depth];
+      int end = levelStarts[depth + 1];
+      IntStream level = IntStream.range(start, end);
+      if (end - start >= PARALLEL_THRESHOLD) {
+        level = level.parallel();
+      }
+      level.forEach(i -> {
+        int number = levels[i];
+        int dominator = parents[number];
+        while (dominator > semis[number]) {
+          dominator = dominators[dominator];
+        }
+        dominators[number] = dominator;
+      });
+    }
+    return dominators;
+  }
+
+  /**
+   * Breadth-first distances from the roots, indexed by depth-first number.
+   */
+  @NotNull
+  private int[] computeDistances(@NotNull int[] successorStarts, @NotNull int[] successors, int virtualRoot, int count, @NotNull int[] queue) {
+    int[] distances = new int[count];
+    Arrays.fill(distances, -1);
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = virtualRoot;
+    while (head < tail) {
+      int vertex = queue[head++];
+      int distance = vertex == virtualRoot ? 0 : distances[myNumbers[vertex]] + 1;
+      for (int i = successorStarts[vertex]; i < successorStarts[vertex + 1]; i++) {
+        int successor = successors[i];
+        int number = myNumbers[successor];
+        if (distances[number] == -1) {
+          distances[number] = distance;
+          queue[tail++] = successor;
+        }
+      }
+    }
+    return distances;
+  }
+
+  public boolean isReachable(int vertex) {
+    return myNumbers[vertex] != -1;
+  }
+
+  /**
+   * @return the vertex immediately dominating the given one, or {@link #NO_DOMINATOR} for roots and unreachable vertices.
+   */
+  public int getImmediateDominator(int vertex) {
+    int number = myNumbers[vertex];
+    return number == -1 ? NO_DOMINATOR : myVertices[myDominators[number]];
+  }
+
+  /**
+   * @return the number of references on the shortest path from a root to the given vertex, 0 for roots and -1 for unreachable vertices.
+   */
+  public int getDistanceToRoot(int vertex) {
+    int number = myNumbers[vertex];
+    return number == -1 ? -1 : myDistances[number];
+  }
+
+  /**
+   * @return the sum of the sizes of the vertices dominated by the given one, including itself. 0 if the vertex is unreachable.
+   */
+  public long getRetainedSize(int vertex) {
+    int number = myNumbers[vertex];
+    return number == -1 ? 0 : myRetainedSizes[number];
+  }
+}
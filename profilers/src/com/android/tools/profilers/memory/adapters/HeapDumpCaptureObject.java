@@ -15,22 +15,48 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
+import com.android.tools.perflib.captures.MemoryMappedFileBuffer;
 import com.android.tools.perflib.heap.ProguardMap;
 import com.android.tools.perflib.heap.Snapshot;
-import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
-// TODO finish this class for the memory detail view
+/**
+ * A heap dump fetched from the datastore. The dump is spilled to a temp file and memory mapped rather than kept on the heap, so that
+ * holding on to several large dumps at once does not exhaust the heap.
+ */
 public class HeapDumpCaptureObject extends CaptureObject {
+  private static final Logger LOG = Logger.getInstance(HeapDumpCaptureObject.class);
+
+  private static final long NOT_READY_RETRY_MS = 50L;
+
+  // Gives the datastore about two minutes to pull the dump from the device before giving up on it.
+  @VisibleForTesting
+  static final int MAX_NOT_READY_RETRIES = 2400;
+
+  // Rough share of the load time spent fetching the dump, and fetching plus parsing it, used to report progress.
+  private static final double FETCH_PROGRESS = 0.3;
+  private static final double PARSE_PROGRESS = 0.9;
+
+  // The dump is written to its temp file in chunks of this size, so progress moves while a large dump is being stored.
+  private static final int WRITE_CHUNK_SIZE = 1024 * 1024;
+
   @NotNull
   private final MemoryServiceGrpc.MemoryServiceBlockingStub myClient;
 
@@ -43,7 +69,28 @@ public class HeapDumpCaptureObject extends CaptureObject {
   private final ProguardMap myProguardMap;
 
   @Nullable
-  private Snapshot mySnapshot;
+  private File myFile;
+
+  @Nullable
+  private volatile Snapshot mySnapshot;
+
+  @Nullable
+  private volatile List<HeapObject> myHeaps;
+
+  @NotNull
+  private final HeapDumpDominators myDominators = new HeapDumpDominators();
+
+  private volatile double myProgress;
+
+  @NotNull
+  private volatile String myMessage = "";
+
+  private boolean myDisposed;
+
+  /**
+   * Number of {@link #retain()} calls not released yet. The snapshot and its file outlive {@link #dispose()} until this drops to 0.
+   */
+  private int myRetainCount;
 
   public HeapDumpCaptureObject(@NotNull MemoryServiceGrpc.MemoryServiceBlockingStub client,
                                int appId,
@@ -56,11 +103,40 @@ public class HeapDumpCaptureObject extends CaptureObject {
   }
 
   @Override
-  public void dispose() {
+  public synchronized void dispose() {
+    myDisposed = true;
+    myHeaps = null;
+    if (myRetainCount == 0) {
+      freeSnapshot();
+    }
+  }
+
+  @Override
+  public synchronized boolean retain() {
+    if (myDisposed) {
+      return false;
+    }
+    myRetainCount++;
+    return true;
+  }
+
+  @Override
+  public synchronized void release() {
+    assert myRetainCount > 0;
+    if (--myRetainCount == 0 && myDisposed) {
+      freeSnapshot();
+    }
+  }
+
+  private void freeSnapshot() {
     if (mySnapshot != null) {
       mySnapshot.dispose();
       mySnapshot = null;
     }
+    if (myFile != null) {
+      FileUtil.delete(myFile);
+      myFile = null;
+    }
   }
 
   @Override
@@ -77,35 +153,184 @@ public class HeapDumpCaptureObject extends CaptureObject {
   @NotNull
   @Override
   public List<HeapObject> getHeaps() {
-    DumpDataResponse response;
-    while (true) {
-      // TODO move this to another thread and complete before we notify
-      response = myClient.getHeapDump(HeapDumpDataRequest.newBuilder().setAppId(myAppId).setDumpId(myHeapDumpInfo.getDumpId()).build());
+    List<HeapObject> heaps = myHeaps;
+    return heaps == null ? Collections.emptyList() : heaps;
+  }
+
+  @Override
+  public boolean isDoneLoading() {
+    return myHeaps != null;
+  }
+
+  @Override
+  public double getLoadProgress() {
+    return myProgress;
+  }
+
+  @NotNull
+  @Override
+  public String getLoadMessage() {
+    return myMessage;
+  }
+
+  @Override
+  public boolean load() {
+    if (isDoneLoading()) {
+      return true;
+    }
+    if (!loadForDiff() || !retain()) {
+      return false;
+    }
+
+    try {
+      File file;
+      synchronized (this) {
+        file = myFile;
+      }
+      myMessage = "Parsing heap dump...";
+      Snapshot snapshot;
+      try {
+        MemoryMappedFileBuffer buffer = new MemoryMappedFileBuffer(file);
+        snapshot = myProguardMap != null ? Snapshot.createSnapshot(buffer, myProguardMap) : Snapshot.createSnapshot(buffer);
+      }
+      catch (Throwable t) {
+        LOG.warn("Unable to parse heap dump " + myHeapDumpInfo.getDumpId(), t);
+        return false;
+      }
+
+      synchronized (this) {
+        if (myDisposed) {
+          snapshot.dispose();
+          return false;
+        }
+        myProgress = PARSE_PROGRESS;
+        mySnapshot = snapshot;
+        // Heaps are shown with their shallow sizes right away, retained sizes follow from computeRetainedSizes().
+        myHeaps = snapshot.getHeaps().stream().map(heap -> new HeapDumpHeapObject(heap, myDominators)).collect(Collectors.toList());
+      }
+    }
+    finally {
+      release();
+    }
+    myProgress = 1;
+    myMessage = "";
+    return true;
+  }
+
+  /**
+   * Only fetches the dump into its temp file, a diff streams it from there rather than parsing it.
+   */
+  @Override
+  public boolean loadForDiff() {
+    synchronized (this) {
+      if (myFile != null) {
+        return true;
+      }
+    }
+
+    myMessage = "Fetching heap dump...";
+    File file;
+    try {
+      file = fetch();
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to store heap dump " + myHeapDumpInfo.getDumpId(), e);
+      return false;
+    }
+    if (file == null) {
+      return false;
+    }
+
+    synchronized (this) {
+      if (myDisposed) {
+        FileUtil.delete(file);
+        return false;
+      }
+      myFile = file;
+      myProgress = FETCH_PROGRESS;
+    }
+    return true;
+  }
+
+  @Nullable
+  @Override
+  HprofHistogram readHistogram() throws IOException {
+    File file;
+    synchronized (this) {
+      file = myFile;
+    }
+    return file == null ? null : HprofHistogram.read(file);
+  }
+
+  @Override
+  public boolean computeRetainedSizes() {
+    Snapshot snapshot;
+    synchronized (this) {
+      snapshot = mySnapshot;
+      if (snapshot == null || myDominators.isComputed() || !retain()) {
+        return false;
+      }
+    }
+    try {
+      myDominators.compute(snapshot);
+    }
+    finally {
+      release();
+    }
+    return true;
+  }
+
+  private synchronized boolean isDisposed() {
+    return myDisposed;
+  }
+
+  /**
+   * Waits for the datastore to finish pulling the dump from the device, then writes it into a temp file. The datastore hands the dump
+   * over in a single response, so only the write to disk reports progress.
+   *
+   * @return the file the dump was written to, or null if the dump could not be fetched, was still not ready after
+   * {@link #MAX_NOT_READY_RETRIES} retries, or the capture was disposed while waiting for it.
+   */
+  @Nullable
+  private File fetch() throws IOException {
+    HeapDumpDataRequest request = HeapDumpDataRequest.newBuilder().setAppId(myAppId).setDumpId(myHeapDumpInfo.getDumpId()).build();
+    for (int retries = 0; ; retries++) {
+      if (isDisposed()) {
+        return null;
+      }
+      DumpDataResponse response = myClient.getHeapDump(request);
       if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
-        break;
+        File file = FileUtil.createTempFile("heapdump" + myHeapDumpInfo.getDumpId(), ".hprof", true);
+        ByteString data = response.getData();
+        int size = data.size();
+        try (OutputStream out = new FileOutputStream(file)) {
+          for (int offset = 0; offset < size; offset += WRITE_CHUNK_SIZE) {
+            int end = Math.min(size, offset + WRITE_CHUNK_SIZE);
+            data.substring(offset, end).writeTo(out);
+            myProgress = FETCH_PROGRESS * end / size;
+          }
+        }
+        catch (IOException e) {
+          FileUtil.delete(file);
+          throw e;
+        }
+        return file;
       }
       else if (response.getStatus() == DumpDataResponse.Status.NOT_READY) {
+        if (retries >= MAX_NOT_READY_RETRIES) {
+          LOG.warn("Heap dump " + myHeapDumpInfo.getDumpId() + " still not ready after " + retries + " retries");
+          return null;
+        }
         try {
-          Thread.sleep(50L);
+          Thread.sleep(NOT_READY_RETRY_MS);
         }
         catch (InterruptedException e) {
           Thread.currentThread().interrupt();
-          return new ArrayList<>();
+          return null;
         }
         continue;
       }
-      return new ArrayList<>();
-    }
-
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
-    if (myProguardMap != null) {
-      mySnapshot = Snapshot.createSnapshot(buffer, myProguardMap);
+      return null;
     }
-    else {
-      mySnapshot = Snapshot.createSnapshot(buffer);
-    }
-    mySnapshot.computeDominators();
-
-    return mySnapshot.getHeaps().stream().map(HeapDumpHeapObject::new).collect(Collectors.toList());
   }
 }
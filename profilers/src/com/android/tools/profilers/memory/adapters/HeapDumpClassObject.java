@@ -16,6 +16,7 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.perflib.heap.ClassObj;
+import com.android.tools.perflib.heap.Instance;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
@@ -28,11 +29,17 @@ import java.util.stream.Collectors;
 class HeapDumpClassObject extends ClassObject {
   private final ClassObj myClassObj;
 
+  @NotNull
+  private final HeapDumpDominators myDominators;
+
   @NotNull
   private String myMemoizedName;
 
-  public HeapDumpClassObject(@NotNull ClassObj classObj) {
+  private long myRetainedSize = -1;
+
+  public HeapDumpClassObject(@NotNull ClassObj classObj, @NotNull HeapDumpDominators dominators) {
     myClassObj = classObj;
+    myDominators = dominators;
 
     String className = myClassObj.getClassName();
     String packageName = null;
@@ -67,13 +74,25 @@ class HeapDumpClassObject extends ClassObject {
 
   @Override
   public long getRetainedSize() {
-    return myClassObj.getTotalRetainedSize();
+    if (myRetainedSize < 0) {
+      if (!myDominators.isComputed()) {
+        return 0;
+      }
+      long size = 0;
+      for (Instance instance : myClassObj.getInstancesList()) {
+        size += myDominators.getRetainedSize(instance);
+      }
+      myRetainedSize = size;
+    }
+    return myRetainedSize;
   }
 
   @NotNull
   @Override
   public List<InstanceObject> getInstances() {
-    return myClassObj.getInstancesList().stream().map(HeapDumpInstanceObject::new).collect(Collectors.toList());
+    return myClassObj.getInstancesList().stream()
+      .map(instance -> new HeapDumpInstanceObject(instance, myDominators))
+      .collect(Collectors.toList());
   }
 
   @NotNull
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.*;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Retained sizes and distances to GC roots of the instances of a {@link Snapshot}. These are computed by a {@link DominatorTree} over
+ * int indexed arrays, rather than by {@link Snapshot#computeDominators()}, which walks the instances one at a time. Until
+ * {@link #compute(Snapshot)} has run, all instances report a retained size of 0, so a heap dump can be shown with its shallow sizes
+ * first.
+ *
+ * perflib doesn't document its instances as safe to read from several threads, so the graph is read from the snapshot sequentially.
+ * Only the dominator computation over the extracted arrays runs in parallel.
+ */
+final class HeapDumpDominators {
+  @Nullable private volatile Result myResult;
+
+  public boolean isComputed() {
+    return myResult != null;
+  }
+
+  public void compute(@NotNull Snapshot snapshot) {
+    // Vertices are numbered in the order the instances are found, keyed by their perflib id.
+    List<Instance> instances = new ArrayList<>();
+    TLongIntHashMap ids = new TLongIntHashMap();
+    for (Heap heap : snapshot.getHeaps()) {
+      for (ClassObj classObj : heap.getClasses()) {
+        addVertex(classObj, instances, ids);
+        for (Instance instance : classObj.getInstancesList()) {
+          addVertex(instance, instances, ids);
+        }
+      }
+    }
+
+    // Predecessors in compressed row form, so the graph costs two int arrays rather than an array per instance.
+    int count = instances.size();
+    int[] sizes = new int[count];
+    int[] predecessorStarts = new int[count + 1];
+    TIntArrayList predecessors = new TIntArrayList(count);
+    for (int i = 0; i < count; i++) {
+      Instance instance = instances.get(i);
+      sizes[i] = instance.getSize();
+      for (Instance reference : instance.getHardReverseReferences()) {
+        if (ids.containsKey(reference.getId())) {
+          predecessors.add(ids.get(reference.getId()));
+        }
+      }
+      predecessorStarts[i + 1] = predecessors.size();
+    }
+
+    Collection<RootObj> gcRoots = snapshot.getGCRoots();
+    int[] roots = new int[gcRoots.size()];
+    int rootCount = 0;
+    for (RootObj root : gcRoots) {
+      Instance instance = root.getReferredInstance();
+      if (instance != null && ids.containsKey(instance.getId())) {
+        roots[rootCount++] = ids.get(instance.getId());
+      }
+    }
+
+    DominatorTree tree = new DominatorTree(predecessorStarts, predecessors.toNativeArray(), Arrays.copyOf(roots, rootCount), sizes);
+    myResult = new Result(ids, tree);
+  }
+
+  private static void addVertex(@NotNull Instance instance, @NotNull List<Instance> instances, @NotNull TLongIntHashMap ids) {
+    if (!ids.containsKey(instance.getId())) {
+      ids.put(instance.getId(), instances.size());
+      instances.add(instance);
+    }
+  }
+
+  /**
+   * @return the retained size of the instance, or 0 if not computed yet.
+   */
+  public long getRetainedSize(@NotNull Instance instance) {
+    Result result = myResult;
+    if (result == null || !result.myIds.containsKey(instance.getId())) {
+      return 0;
+    }
+    return result.myTree.getRetainedSize(result.myIds.get(instance.getId()));
+  }
+
+  /**
+   * @return the number of references between a GC root and the instance, or -1 if unknown or unreachable.
+   */
+  public int getDistanceToGcRoot(@NotNull Instance instance) {
+    Result result = myResult;
+    if (result == null || !result.myIds.containsKey(instance.getId())) {
+      return -1;
+    }
+    return result.myTree.getDistanceToRoot(result.myIds.get(instance.getId()));
+  }
+
+  private static final class Result {
+    /**
+     * Vertex of every instance, by perflib instance id.
+     */
+    @NotNull private final TLongIntHashMap myIds;
+    @NotNull private final DominatorTree myTree;
+
+    private Result(@NotNull TLongIntHashMap ids, @NotNull DominatorTree tree) {
+      myIds = ids;
+      myTree = tree;
+    }
+  }
+}
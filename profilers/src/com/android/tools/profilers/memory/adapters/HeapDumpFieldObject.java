@@ -40,18 +40,18 @@ public class HeapDumpFieldObject extends FieldObject {
     .build();
 
   @NotNull private final ClassInstance.FieldValue myField;
+  @NotNull private final HeapDumpDominators myDominators;
   private final int myShallowSize;
-  private final long myRetainedSize;
   private final ValueType myValueType;
 
-  public HeapDumpFieldObject(@NotNull ClassInstance.FieldValue field) {
+  public HeapDumpFieldObject(@NotNull ClassInstance.FieldValue field, @NotNull HeapDumpDominators dominators) {
     myField = field;
+    myDominators = dominators;
     Type type = myField.getField().getType();
     if (type == Type.OBJECT) {
       if (myField.getValue() == null) {
         myValueType = ValueType.UNKNOWN; // TODO fix this by using the parent instance's information
         myShallowSize = 0;
-        myRetainedSize = 0;
       }
       else {
         Class valueClass = myField.getValue().getClass();
@@ -67,13 +67,11 @@ public class HeapDumpFieldObject extends FieldObject {
           myValueType = ValueType.OBJECT;
         }
         myShallowSize = instance.getSize();
-        myRetainedSize = instance.getTotalRetainedSize();
       }
     }
     else {
       myValueType = ourValueTypeMap.getOrDefault(type, ValueType.UNKNOWN);
       myShallowSize = type.getSize();
-      myRetainedSize = type.getSize();
     }
   }
 
@@ -95,7 +93,11 @@ public class HeapDumpFieldObject extends FieldObject {
 
   @Override
   public long getRetainedSize() {
-    return myRetainedSize;
+    // Retained sizes of instances are looked up on demand, as they may be computed after this object is created.
+    if (myField.getField().getType() == Type.OBJECT) {
+      return myField.getValue() == null ? 0 : myDominators.getRetainedSize((Instance)myField.getValue());
+    }
+    return myShallowSize;
   }
 
   @Override
@@ -111,7 +113,7 @@ public class HeapDumpFieldObject extends FieldObject {
     if (myField.getField().getType() == Type.OBJECT && myField.getValue() != null) {
       Instance instance = (Instance)myField.getValue();
       assert instance != null;
-      return (new HeapDumpInstanceObject(instance)).getFields();
+      return (new HeapDumpInstanceObject(instance, myDominators)).getFields();
     }
     return Collections.emptyList();
   }
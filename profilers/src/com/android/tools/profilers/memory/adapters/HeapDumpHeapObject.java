@@ -31,8 +31,12 @@ class HeapDumpHeapObject extends HeapObject {
   @NotNull
   private final Heap myHeap;
 
-  public HeapDumpHeapObject(@NotNull Heap heap) {
+  @NotNull
+  private final HeapDumpDominators myDominators;
+
+  public HeapDumpHeapObject(@NotNull Heap heap, @NotNull HeapDumpDominators dominators) {
     myHeap = heap;
+    myDominators = dominators;
   }
 
   @NotNull
@@ -54,7 +58,7 @@ class HeapDumpHeapObject extends HeapObject {
   @NotNull
   @Override
   public List<ClassObject> getClasses() {
-    return myHeap.getClasses().stream().map(HeapDumpClassObject::new).collect(Collectors.toList());
+    return myHeap.getClasses().stream().map(classObj -> new HeapDumpClassObject(classObj, myDominators)).collect(Collectors.toList());
   }
 
   @NotNull
@@ -28,9 +28,11 @@ import java.util.List;
  */
 public class HeapDumpInstanceObject extends InstanceObject {
   @NotNull private final Instance myInstance;
+  @NotNull private final HeapDumpDominators myDominators;
 
-  public HeapDumpInstanceObject(@NotNull Instance instance) {
+  public HeapDumpInstanceObject(@NotNull Instance instance, @NotNull HeapDumpDominators dominators) {
     myInstance = instance;
+    myDominators = dominators;
   }
 
   @NotNull
@@ -42,7 +44,7 @@ public class HeapDumpInstanceObject extends InstanceObject {
 
   @Override
   public int getDepth() {
-    return myInstance.getDistanceToGcRoot();
+    return myDominators.getDistanceToGcRoot(myInstance);
   }
 
   @Override
@@ -52,7 +54,7 @@ public class HeapDumpInstanceObject extends InstanceObject {
 
   @Override
   public long getRetainedSize() {
-    return myInstance.getTotalRetainedSize();
+    return myDominators.getRetainedSize(myInstance);
   }
 
   @Nullable
@@ -62,7 +64,7 @@ public class HeapDumpInstanceObject extends InstanceObject {
     if (myInstance instanceof ClassInstance) {
       ClassInstance classInstance = (ClassInstance)myInstance;
       for (ClassInstance.FieldValue field : classInstance.getValues()) {
-        sublist.add(new HeapDumpFieldObject(field));
+        sublist.add(new HeapDumpFieldObject(field, myDominators));
       }
     }
     else if (myInstance instanceof ArrayInstance) {
@@ -70,7 +72,8 @@ public class HeapDumpInstanceObject extends InstanceObject {
       Type arrayType = arrayInstance.getArrayType();
       int arrayIndex = 0;
       for (Object value : arrayInstance.getValues()) {
-        sublist.add(new HeapDumpFieldObject(new ClassInstance.FieldValue(new Field(arrayType, Integer.toString(arrayIndex)), value)));
+        sublist.add(new HeapDumpFieldObject(new ClassInstance.FieldValue(new Field(arrayType, Integer.toString(arrayIndex)), value),
+                                            myDominators));
         arrayIndex++;
       }
     }
@@ -81,8 +84,12 @@ public class HeapDumpInstanceObject extends InstanceObject {
   @Nullable
   @Override
   public AllocationStack getCallStack() {
+    StackTrace stack = myInstance.getStack();
+    if (stack == null) {
+      return null;
+    }
     AllocationStack.Builder builder = AllocationStack.newBuilder();
-    for (StackFrame stackFrame : myInstance.getStack().getFrames()) {
+    for (StackFrame stackFrame : stack.getFrames()) {
       String fileName = stackFrame.getFilename();
       String guessedClassName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length()) : fileName;
       builder.addStackFrames(
@@ -91,4 +98,13 @@ public class HeapDumpInstanceObject extends InstanceObject {
     }
     return builder.build();
   }
+
+  /**
+   * Instances allocated at the same site share their perflib {@link StackTrace}.
+   */
+  @Nullable
+  @Override
+  public Object getCallStackKey() {
+    return myInstance.getStack();
+  }
 }
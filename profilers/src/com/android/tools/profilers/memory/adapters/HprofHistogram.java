@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationStack;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Per-class and per-allocation-site instance counts and shallow sizes of an hprof file, read in a single sequential pass without
+ * building a heap model. Memory use is bounded by the number of strings, classes, stack traces and allocation sites in the dump, not by
+ * its number of instances, so two large dumps can be compared without either being loaded.
+ *
+ * Sizes follow perflib: an instance is as large as its class says, an array is its length times the size of its element type.
+ */
+final class HprofHistogram {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Top level record tags.
+  private static final int STRING = 0x01;
+  private static final int LOAD_CLASS = 0x02;
+  private static final int STACK_FRAME = 0x04;
+  private static final int STACK_TRACE = 0x05;
+  private static final int HEAP_DUMP = 0x0C;
+  private static final int HEAP_DUMP_SEGMENT = 0x1C;
+
+  // Heap dump sub-record tags, including the ones Android adds.
+  private static final int ROOT_UNKNOWN = 0xFF;
+  private static final int ROOT_JNI_GLOBAL = 0x01;
+  private static final int ROOT_JNI_LOCAL = 0x02;
+  private static final int ROOT_JAVA_FRAME = 0x03;
+  private static final int ROOT_NATIVE_STACK = 0x04;
+  private static final int ROOT_STICKY_CLASS = 0x05;
+  private static final int ROOT_THREAD_BLOCK = 0x06;
+  private static final int ROOT_MONITOR_USED = 0x07;
+  private static final int ROOT_THREAD_OBJECT = 0x08;
+  private static final int CLASS_DUMP = 0x20;
+  private static final int INSTANCE_DUMP = 0x21;
+  private static final int OBJECT_ARRAY_DUMP = 0x22;
+  private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+  private static final int HEAP_DUMP_INFO = 0xFE;
+  private static final int ROOT_INTERNED_STRING = 0x89;
+  private static final int ROOT_FINALIZING = 0x8A;
+  private static final int ROOT_DEBUGGER = 0x8B;
+  private static final int ROOT_REFERENCE_CLEANUP = 0x8C;
+  private static final int ROOT_VM_INTERNAL = 0x8D;
+  private static final int ROOT_JNI_MONITOR = 0x8E;
+  private static final int ROOT_UNREACHABLE = 0x90;
+  private static final int PRIMITIVE_ARRAY_NODATA = 0xC3;
+
+  private static final int TYPE_OBJECT = 2;
+
+  @NotNull private final Map<String, Totals> myClasses;
+  @NotNull private final Map<Site, Totals> mySites;
+
+  private HprofHistogram(@NotNull Map<String, Totals> classes, @NotNull Map<Site, Totals> sites) {
+    myClasses = classes;
+    mySites = sites;
+  }
+
+  /**
+   * @return the totals of each class, by class name. Classes with the same name, such as the same class in several heaps, are merged.
+   */
+  @NotNull
+  public Map<String, Totals> getClasses() {
+    return myClasses;
+  }
+
+  /**
+   * @return the totals of each allocation site. Only instances that carry a non-empty stack trace are attributed to a site.
+   */
+  @NotNull
+  public Map<Site, Totals> getSites() {
+    return mySites;
+  }
+
+  @NotNull
+  public static HprofHistogram read(@NotNull File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+      return new Reader(in).read();
+    }
+  }
+
+  public static final class Totals {
+    private int myCount;
+    private long mySize;
+
+    private void add(int count, long size) {
+      myCount += count;
+      mySize += size;
+    }
+
+    public int getCount() {
+      return myCount;
+    }
+
+    public long getSize() {
+      return mySize;
+    }
+  }
+
+  public static final class Site {
+    @NotNull private final String myClassName;
+    @NotNull private final AllocationStack myStack;
+
+    private Site(@NotNull String className, @NotNull AllocationStack stack) {
+      myClassName = className;
+      myStack = stack;
+    }
+
+    @NotNull
+    public String getClassName() {
+      return myClassName;
+    }
+
+    @NotNull
+    public AllocationStack getStack() {
+      return myStack;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Site)) {
+        return false;
+      }
+      Site other = (Site)obj;
+      return myClassName.equals(other.myClassName) && myStack.equals(other.myStack);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * myClassName.hashCode() + myStack.hashCode();
+    }
+  }
+
+  private static final class Reader {
+    @NotNull private final DataInputStream myIn;
+    private int myIdSize;
+
+    @NotNull private final Map<Long, String> myStrings = new HashMap<>();
+    @NotNull private final Map<Long, String> myClassNames = new HashMap<>();
+    @NotNull private final Map<Long, AllocationStack.StackFrame> myFrames = new HashMap<>();
+    @NotNull private final Map<Integer, long[]> myTraces = new HashMap<>();
+    @NotNull private final TLongIntHashMap myInstanceSizes = new TLongIntHashMap();
+
+    /**
+     * Classes are numbered in the order their first instance is seen. Primitive arrays have no class id, their negated type stands in.
+     */
+    @NotNull private final TLongIntHashMap myClassIndices = new TLongIntHashMap();
+    @NotNull private final List<Long> myClassIds = new ArrayList<>();
+
+    /**
+     * Instance counts and array sizes per class and stack trace serial, keyed by the class index in the upper half and the serial in the
+     * lower half.
+     */
+    @NotNull private final TLongObjectHashMap<Totals> myCounts = new TLongObjectHashMap<>();
+
+    private Reader(@NotNull DataInputStream in) {
+      myIn = in;
+    }
+
+    @NotNull
+    private HprofHistogram read() throws IOException {
+      // The header is a null terminated format name, the size of ids and a timestamp.
+      while (myIn.readByte() != 0) {
+      }
+      myIdSize = myIn.readInt();
+      if (myIdSize != 4 && myIdSize != 8) {
+        throw new IOException("Unsupported id size " + myIdSize);
+      }
+      myIn.readLong();
+
+      int tag;
+      while ((tag = myIn.read()) != -1) {
+        myIn.readInt();
+        long length = myIn.readInt() & 0xFFFFFFFFL;
+        switch (tag) {
+          case STRING: {
+            long id = readId();
+            byte[] bytes = new byte[(int)(length - myIdSize)];
+            myIn.readFully(bytes);
+            myStrings.put(id, new String(bytes, StandardCharsets.UTF_8));
+            break;
+          }
+          case LOAD_CLASS: {
+            myIn.readInt();
+            long classId = readId();
+            myIn.readInt();
+            myClassNames.put(classId, getString(readId()));
+            break;
+          }
+          case STACK_FRAME: {
+            long frameId = readId();
+            String methodName = getString(readId());
+            readId();
+            String fileName = getString(readId());
+            myIn.readInt();
+            int line = myIn.readInt();
+            // Same frame as HeapDumpInstanceObject builds from perflib, so that sites compare equal whichever way they were read.
+            String guessedClassName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length()) : fileName;
+            myFrames.put(frameId, AllocationStack.StackFrame.newBuilder().setClassName(guessedClassName).setMethodName(methodName)
+              .setLineNumber(line).setFileName(fileName).build());
+            break;
+          }
+          case STACK_TRACE: {
+            int serial = myIn.readInt();
+            myIn.readInt();
+            long[] frameIds = new long[myIn.readInt()];
+            for (int i = 0; i < frameIds.length; i++) {
+              frameIds[i] = readId();
+            }
+            myTraces.put(serial, frameIds);
+            break;
+          }
+          case HEAP_DUMP:
+          case HEAP_DUMP_SEGMENT:
+            readHeapDump(length);
+            break;
+          default:
+            skip(length);
+        }
+      }
+      return summarize();
+    }
+
+    private void readHeapDump(long length) throws IOException {
+      for (long left = length; left > 0; ) {
+        int tag = myIn.readUnsignedByte();
+        left -= 1 + readSubRecord(tag);
+      }
+    }
+
+    /**
+     * @return the number of bytes read after the tag.
+     */
+    private long readSubRecord(int tag) throws IOException {
+      switch (tag) {
+        case ROOT_UNKNOWN:
+        case ROOT_STICKY_CLASS:
+        case ROOT_MONITOR_USED:
+        case ROOT_INTERNED_STRING:
+        case ROOT_FINALIZING:
+        case ROOT_DEBUGGER:
+        case ROOT_REFERENCE_CLEANUP:
+        case ROOT_VM_INTERNAL:
+        case ROOT_UNREACHABLE:
+          return skip(myIdSize);
+        case ROOT_JNI_GLOBAL:
+          return skip(2 * myIdSize);
+        case ROOT_NATIVE_STACK:
+        case ROOT_THREAD_BLOCK:
+        case HEAP_DUMP_INFO:
+          return skip(myIdSize + 4);
+        case ROOT_JNI_LOCAL:
+        case ROOT_JAVA_FRAME:
+        case ROOT_THREAD_OBJECT:
+        case ROOT_JNI_MONITOR:
+          return skip(myIdSize + 8);
+        case CLASS_DUMP:
+          return readClassDump();
+        case INSTANCE_DUMP: {
+          readId();
+          int stackSerial = myIn.readInt();
+          long classId = readId();
+          int bytes = myIn.readInt();
+          skip(bytes);
+          count(classId, stackSerial, 0);
+          return 2 * myIdSize + 8 + bytes;
+        }
+        case OBJECT_ARRAY_DUMP: {
+          readId();
+          int stackSerial = myIn.readInt();
+          int arrayLength = myIn.readInt();
+          long classId = readId();
+          skip((long)arrayLength * myIdSize);
+          count(classId, stackSerial, (long)arrayLength * myIdSize);
+          return 2 * myIdSize + 8 + (long)arrayLength * myIdSize;
+        }
+        case PRIMITIVE_ARRAY_DUMP:
+        case PRIMITIVE_ARRAY_NODATA: {
+          readId();
+          int stackSerial = myIn.readInt();
+          int arrayLength = myIn.readInt();
+          int type = myIn.readUnsignedByte();
+          long size = (long)arrayLength * getTypeSize(type);
+          if (tag == PRIMITIVE_ARRAY_DUMP) {
+            skip(size);
+          }
+          count(-type, stackSerial, size);
+          return myIdSize + 9 + (tag == PRIMITIVE_ARRAY_DUMP ? size : 0);
+        }
+        default:
+          throw new IOException("Unknown heap dump sub-record " + tag);
+      }
+    }
+
+    private long readClassDump() throws IOException {
+      long classId = readId();
+      myIn.readInt();
+      skip(6 * myIdSize);
+      myInstanceSizes.put(classId, myIn.readInt());
+      long read = 7 * myIdSize + 8;
+
+      int constants = myIn.readUnsignedShort();
+      read += 2;
+      for (int i = 0; i < constants; i++) {
+        myIn.readUnsignedShort();
+        int type = myIn.readUnsignedByte();
+        read += 3 + skip(getTypeSize(type));
+      }
+      int statics = myIn.readUnsignedShort();
+      read += 2;
+      for (int i = 0; i < statics; i++) {
+        readId();
+        int type = myIn.readUnsignedByte();
+        read += myIdSize + 1 + skip(getTypeSize(type));
+      }
+      int fields = myIn.readUnsignedShort();
+      read += 2;
+      read += skip(fields * (myIdSize + 1));
+      return read;
+    }
+
+    /**
+     * @param arraySize the size of the array, 0 for instances, whose size is only known once their class has been read.
+     */
+    private void count(long classId, int stackSerial, long arraySize) {
+      int index;
+      if (myClassIndices.containsKey(classId)) {
+        index = myClassIndices.get(classId);
+      }
+      else {
+        index = myClassIds.size();
+        myClassIds.add(classId);
+        myClassIndices.put(classId, index);
+      }
+      long key = ((long)index << 32) | (stackSerial & 0xFFFFFFFFL);
+      Totals totals = myCounts.get(key);
+      if (totals == null) {
+        totals = new Totals();
+        myCounts.put(key, totals);
+      }
+      totals.add(1, arraySize);
+    }
+
+    @NotNull
+    private HprofHistogram summarize() {
+      Map<String, Totals> classes = new HashMap<>();
+      Map<Site, Totals> sites = new HashMap<>();
+      Map<Integer, AllocationStack> stacks = new HashMap<>();
+      for (long key : myCounts.keys()) {
+        long classId = myClassIds.get((int)(key >>> 32));
+        int stackSerial = (int)key;
+        Totals counts = myCounts.get(key);
+        long size = counts.mySize + (long)counts.myCount * myInstanceSizes.get(classId);
+
+        String name = getClassName(classId);
+        classes.computeIfAbsent(name, className -> new Totals()).add(counts.myCount, size);
+        AllocationStack stack = stacks.computeIfAbsent(stackSerial, this::getStack);
+        if (stack.getStackFramesCount() > 0) {
+          sites.computeIfAbsent(new Site(name, stack), site -> new Totals()).add(counts.myCount, size);
+        }
+      }
+      return new HprofHistogram(classes, sites);
+    }
+
+    @NotNull
+    private AllocationStack getStack(int serial) {
+      AllocationStack.Builder builder = AllocationStack.newBuilder();
+      long[] frameIds = myTraces.get(serial);
+      if (frameIds != null) {
+        for (long frameId : frameIds) {
+          AllocationStack.StackFrame frame = myFrames.get(frameId);
+          if (frame != null) {
+            builder.addStackFrames(frame);
+          }
+        }
+      }
+      return builder.build();
+    }
+
+    @NotNull
+    private String getClassName(long classId) {
+      if (classId < 0) {
+        return getPrimitiveArrayName((int)-classId);
+      }
+      String name = myClassNames.get(classId);
+      return name != null ? name : String.format("0x%x", classId);
+    }
+
+    @NotNull
+    private String getString(long id) {
+      String string = myStrings.get(id);
+      return string != null ? string : "";
+    }
+
+    private long readId() throws IOException {
+      return myIdSize == 4 ? myIn.readInt() & 0xFFFFFFFFL : myIn.readLong();
+    }
+
+    private long skip(long bytes) throws IOException {
+      for (long left = bytes; left > 0; ) {
+        int skipped = myIn.skipBytes((int)Math.min(left, Integer.MAX_VALUE));
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        left -= skipped;
+      }
+      return bytes;
+    }
+
+    private int getTypeSize(int type) throws IOException {
+      switch (type) {
+        case TYPE_OBJECT:
+          return myIdSize;
+        case 4: // boolean
+        case 8: // byte
+          return 1;
+        case 5: // char
+        case 9: // short
+          return 2;
+        case 6: // float
+        case 10: // int
+          return 4;
+        case 7: // double
+        case 11: // long
+          return 8;
+        default:
+          throw new IOException("Unknown type " + type);
+      }
+    }
+
+    @NotNull
+    private static String getPrimitiveArrayName(int type) {
+      switch (type) {
+        case 4:
+          return "boolean[]";
+        case 5:
+          return "char[]";
+        case 6:
+          return "float[]";
+        case 7:
+          return "double[]";
+        case 8:
+          return "byte[]";
+        case 9:
+          return "short[]";
+        case 10:
+          return "int[]";
+        case 11:
+          return "long[]";
+        default:
+          return "unknown[]";
+      }
+    }
+  }
+}
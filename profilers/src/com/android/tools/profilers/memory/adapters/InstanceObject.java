@@ -63,6 +63,17 @@ public abstract class InstanceObject implements MemoryObject {
     return null;
   }
 
+  /**
+   * A cheap stand-in for {@link #getCallStack()}, for grouping instances of the same capture by allocation site without building each
+   * of their stacks. Instances allocated at the same site return equal keys.
+   *
+   * @return the key, or null if the instance has no call stack.
+   */
+  @Nullable
+  public Object getCallStackKey() {
+    return getCallStack();
+  }
+
   @NotNull
   public String getValueLabel() {
     return "";
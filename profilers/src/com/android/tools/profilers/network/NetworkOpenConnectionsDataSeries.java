@@ -15,19 +15,15 @@
  */
 package com.android.tools.profilers.network;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,19 +33,19 @@ import java.util.concurrent.TimeUnit;
  *
  * TODO: This class needs tests.
  */
-public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
+public class NetworkOpenConnectionsDataSeries extends LoadingDataSeries {
   @NotNull
   private NetworkServiceGrpc.NetworkServiceBlockingStub myClient;
   private final int myProcessId;
 
   public NetworkOpenConnectionsDataSeries(@NotNull NetworkServiceGrpc.NetworkServiceBlockingStub client, int id) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myProcessId = id;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries seriesData) {
 
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -62,8 +58,7 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
     for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
       long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getBasicInfo().getEndTimestamp());
       NetworkProfiler.ConnectionData connectionData = data.getConnectionData();
-      seriesData.add(new SeriesData<>(xTimestamp, (long)connectionData.getConnectionNumber()));
+      seriesData.add(xTimestamp, connectionData.getConnectionNumber());
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }
@@ -15,19 +15,15 @@
  */
 package com.android.tools.profilers.network;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.ColumnarDataSeries;
+import com.android.tools.adtui.model.LoadingDataSeries;
 import com.android.tools.adtui.model.Range;
-import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
-import com.intellij.util.containers.ContainerUtil;
-import com.intellij.util.containers.ImmutableList;
+import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,7 +34,7 @@ import java.util.concurrent.TimeUnit;
  *
  * TODO: This class needs tests.
  */
-public class NetworkTrafficDataSeries implements DataSeries<Long> {
+public class NetworkTrafficDataSeries extends LoadingDataSeries {
   public enum Type {
     BYTES_RECEIVED("Received"),
     BYTES_SENT("Sent");
@@ -61,14 +57,14 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
   private final Type myType;
 
   public NetworkTrafficDataSeries(@NotNull NetworkServiceGrpc.NetworkServiceBlockingStub client, int id, Type type) {
+    super(StudioProfilers.SAMPLING_PERIOD_US);
     myClient = client;
     myProcessId = id;
     myType = type;
   }
 
   @Override
-  public ImmutableList<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  protected void load(@NotNull Range timeCurrentRangeUs, @NotNull ColumnarDataSeries seriesData) {
 
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -83,15 +79,14 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
       NetworkProfiler.SpeedData speedData = data.getSpeedData();
       switch (myType) {
         case BYTES_RECEIVED:
-          seriesData.add(new SeriesData<>(xTimestamp, speedData.getReceived()));
+          seriesData.add(xTimestamp, speedData.getReceived());
           break;
         case BYTES_SENT:
-          seriesData.add(new SeriesData<>(xTimestamp, speedData.getSent()));
+          seriesData.add(xTimestamp, speedData.getSent());
           break;
         default:
           throw new IllegalStateException("Unexpected network traffic data series type: " + myType);
       }
     }
-    return ContainerUtil.immutableList(seriesData);
   }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import com.android.tools.adtui.model.Range;
+import org.junit.Test;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BottomUpNodeTest {
+
+  @Test
+  public void testMethodsAndCallers() throws Exception {
+    HNode<MethodModel> root = TopDownNodeTest.createTree();
+
+    // Once inverted for the bottom up view, the tree should become:
+    // A
+    // +- B
+    // |  +-A
+    // +- D
+    // |  +-B
+    // |    +-A
+    // +- E
+    // |  +-B
+    // |    +-A
+    // +- C
+    // |  +-A
+    // +- F
+    // |  +-C
+    // |    +-A
+    // +- G
+    //    +-B
+    //      +-A
+
+    BottomUpNode bottomUp = new BottomUpNode(root);
+    List<BottomUpNode> methods = bottomUp.getChildren();
+    assertEquals(6, methods.size());
+    assertEquals(":B:", methods.get(0).getId());
+    assertEquals(":D:", methods.get(1).getId());
+    assertEquals(":E:", methods.get(2).getId());
+    assertEquals(":C:", methods.get(3).getId());
+    assertEquals(":F:", methods.get(4).getId());
+    assertEquals(":G:", methods.get(5).getId());
+
+    BottomUpNode e = methods.get(2);
+    assertEquals(1, e.getChildren().size());
+    assertEquals(":B:", e.getChildren().get(0).getId());
+    assertEquals(1, e.getChildren().get(0).getChildren().size());
+    assertEquals(":A:", e.getChildren().get(0).getChildren().get(0).getId());
+    assertEquals(0, e.getChildren().get(0).getChildren().get(0).getChildren().size());
+  }
+
+  @Test
+  public void testTotals() throws Exception {
+    BottomUpNode bottomUp = new BottomUpNode(TopDownNodeTest.createTree());
+    Range range = new Range(-Double.MAX_VALUE, Double.MAX_VALUE);
+    bottomUp.update(range);
+    assertEquals(30, bottomUp.getTotal(), 0);
+    assertEquals(30 - 8 - 6 - 7, bottomUp.getSelf(), 0);
+
+    BottomUpNode b = bottomUp.getChildren().get(0);
+    b.update(range);
+    assertEquals(8 + 7, b.getTotal(), 0);
+    assertEquals(4 + 0, b.getSelf(), 0);
+
+    // The time of E is attributed to its caller B, as well as to the caller of B.
+    BottomUpNode e = bottomUp.getChildren().get(2);
+    BottomUpNode eFromB = e.getChildren().get(0);
+    BottomUpNode eFromA = eFromB.getChildren().get(0);
+    for (BottomUpNode node : new BottomUpNode[]{e, eFromB, eFromA}) {
+      node.update(new Range(8, 25));
+      assertEquals(1 + 3, node.getTotal(), 0);
+      assertEquals(1 + 3, node.getSelf(), 0);
+    }
+  }
+
+  @Test
+  public void testCallersAreLoadedOnExpansion() throws Exception {
+    BottomUpTreeModel model = new BottomUpTreeModel(new BottomUpNode(TopDownNodeTest.createTree()));
+    DefaultMutableTreeNode root = (DefaultMutableTreeNode)model.getRoot();
+    assertEquals(6, root.getChildCount());
+    DefaultMutableTreeNode e = findChild(root, ":E:");
+    assertEquals(1, e.getChildCount());
+    DefaultMutableTreeNode eFromB = findChild(e, ":B:");
+    assertEquals(0, eFromB.getChildCount());
+
+    model.expand(e);
+    assertEquals(1, eFromB.getChildCount());
+    assertEquals(5, ((CpuTreeNode)eFromB.getUserObject()).getTotal(), 0);
+
+    model.update(new Range(0, 10));
+    assertEquals(3, root.getChildCount());
+    assertEquals(2, ((CpuTreeNode)eFromB.getUserObject()).getTotal(), 0);
+    assertEquals(2, ((CpuTreeNode)((DefaultMutableTreeNode)eFromB.getChildAt(0)).getUserObject()).getTotal(), 0);
+  }
+
+  private static DefaultMutableTreeNode findChild(DefaultMutableTreeNode node, String id) {
+    for (int i = 0; i < node.getChildCount(); i++) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode)node.getChildAt(i);
+      if (((CpuTreeNode)child.getUserObject()).getId().equals(id)) {
+        return child;
+      }
+    }
+    return null;
+  }
+}
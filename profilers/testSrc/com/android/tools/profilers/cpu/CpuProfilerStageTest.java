@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.profiler.proto.CpuProfiler;
+import com.android.tools.profiler.proto.CpuServiceGrpc;
+import com.android.tools.profilers.TestGrpcChannel;
+import io.grpc.stub.StreamObserver;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CpuProfilerStageTest {
+  @Rule
+  public TestGrpcChannel<CpuServiceMock> myGrpcChannel = new TestGrpcChannel<>("CpuProfilerStageTestChannel", new CpuServiceMock());
+
+  @Test
+  public void testTraceCaptureLoadedOnParseExecutor() throws Exception {
+    List<Runnable> parseTasks = new ArrayList<>();
+    List<Runnable> uiTasks = new ArrayList<>();
+    CpuProfilerStage stage = new CpuProfilerStage(myGrpcChannel.getProfilers(), parseTasks::add, uiTasks::add);
+    CpuServiceMock service = myGrpcChannel.getService();
+
+    // The trace isn't fetched on the calling thread.
+    assertNull(stage.getCapture(1));
+    assertEquals(0, service.myGetTraceCount);
+    assertEquals(1, parseTasks.size());
+
+    // Asking again while it is loading doesn't load it twice.
+    assertNull(stage.getCapture(1));
+    assertEquals(1, parseTasks.size());
+
+    parseTasks.remove(0).run();
+    assertEquals(1, service.myGetTraceCount);
+
+    // The trace couldn't be fetched, it isn't tried again every time it is read.
+    assertNull(stage.getCapture(1));
+    assertTrue(parseTasks.isEmpty());
+    assertTrue(uiTasks.isEmpty());
+  }
+
+  private static class CpuServiceMock extends CpuServiceGrpc.CpuServiceImplBase {
+    private int myGetTraceCount;
+
+    @Override
+    public void getTrace(CpuProfiler.GetTraceRequest request, StreamObserver<CpuProfiler.GetTraceResponse> responseObserver) {
+      myGetTraceCount++;
+      responseObserver.onNext(CpuProfiler.GetTraceResponse.newBuilder().setStatus(CpuProfiler.GetTraceResponse.Status.FAILURE).build());
+      responseObserver.onCompleted();
+    }
+  }
+}
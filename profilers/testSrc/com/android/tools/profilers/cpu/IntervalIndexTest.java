@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IntervalIndexTest {
+
+  @Test
+  public void testTotals() throws Exception {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(20, 30).add(40, 50).build();
+    assertEquals(3, index.size());
+    assertEquals(30, index.getTotal(new Range(-Double.MAX_VALUE, Double.MAX_VALUE)), 0);
+    assertEquals(30, index.getTotal(new Range(0, 50)), 0);
+    assertEquals(5, index.getTotal(new Range(5, 15)), 0);
+    assertEquals(0, index.getTotal(new Range(10, 20)), 0);
+    assertEquals(3, index.getTotal(new Range(2, 5)), 0);
+    assertEquals(5 + 10 + 5, index.getTotal(new Range(5, 45)), 0);
+    assertEquals(0, index.getTotal(new Range(60, 70)), 0);
+  }
+
+  @Test
+  public void testIntersects() throws Exception {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(20, 30).build();
+    assertTrue(index.intersects(new Range(5, 6)));
+    assertTrue(index.intersects(new Range(9, 21)));
+    assertFalse(index.intersects(new Range(10, 20)));
+    assertFalse(index.intersects(new Range(30, 40)));
+    assertFalse(new IntervalIndex.Builder().build().intersects(new Range(0, 10)));
+  }
+
+  @Test
+  public void testUnsortedAndOverlappingIntervalsAreMerged() throws Exception {
+    IntervalIndex index = new IntervalIndex.Builder().add(20, 30).add(0, 10).add(5, 15).add(25, 26).add(40, 40).build();
+    assertEquals(2, index.size());
+    assertEquals(15 + 10, index.getTotal(new Range(0, 50)), 0);
+    assertEquals(5 + 5, index.getTotal(new Range(10, 25)), 0);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.HNode;
+import com.android.tools.perflib.vmtrace.VmTraceParser;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class StreamingTraceParserTest {
+
+  private static final long START_TIME_US = 1000;
+
+  private static final String HEADER = "*version\n" +
+                                       "3\n" +
+                                       "clock=dual\n" +
+                                       "*threads\n" +
+                                       "1\tmain\n" +
+                                       "2\tworker\n" +
+                                       "*methods\n" +
+                                       "0x4\tcom.example.Foo\tfoo\t()V\tFoo.java\t10\n" +
+                                       "0x8\tcom.example.Foo\tbar\t()V\tFoo.java\t20\n" +
+                                       "0xc\tcom.example.Baz\tbaz\t(I)V\tBaz.java\t30\n" +
+                                       "*end\n";
+
+  @Test
+  public void testCallTreesPerThread() throws Exception {
+    // main: foo [10, 50] calling bar [20, 30]. worker: baz [15, 40], interleaved with main's records.
+    ByteBuffer trace = createTrace(new int[][]{
+      {1, 0x4, 10},
+      {2, 0xc, 15},
+      {1, 0x8, 20},
+      {1, 0x8 | 1, 30},
+      {2, 0xc | 1, 40},
+      {1, 0x4 | 1, 50},
+    });
+    // Progress is reported from the parsing threads.
+    List<Double> progress = new CopyOnWriteArrayList<>();
+    Map<CpuThreadInfo, HNode<MethodModel>> trees = StreamingTraceParser.parse(trace, progress::add);
+    Assert.assertNotNull(trees);
+    Assert.assertEquals(2, trees.size());
+    Assert.assertEquals(1.0, progress.get(progress.size() - 1), 0);
+
+    HNode<MethodModel> main = getTree(trees, 1, "main");
+    Assert.assertEquals(StreamingTraceParser.TOP_LEVEL_METHOD, main.getData().getName());
+    Assert.assertEquals(START_TIME_US + 10, main.getStart());
+    Assert.assertEquals(START_TIME_US + 50, main.getEnd());
+    Assert.assertEquals(1, main.getChildren().size());
+
+    HNode<MethodModel> foo = main.getChildren().get(0);
+    assertNode(foo, "foo", 1, 10, 50);
+    Assert.assertEquals("com.example.Foo", foo.getData().getNameSpace());
+    Assert.assertEquals(1, foo.getChildren().size());
+    assertNode(foo.getChildren().get(0), "bar", 2, 20, 30);
+
+    HNode<MethodModel> worker = getTree(trees, 2, "worker");
+    Assert.assertEquals(1, worker.getChildren().size());
+    assertNode(worker.getChildren().get(0), "baz", 1, 15, 40);
+  }
+
+  @Test
+  public void testCallsOutsideOfTheTrace() throws Exception {
+    // bar was running before tracing started, foo is still running when it stopped, baz exits via an exception in foo.
+    ByteBuffer trace = createTrace(new int[][]{
+      {1, 0xc, 10},
+      {1, 0xc | 1, 20},
+      {1, 0x8 | 1, 30},
+      {1, 0x4, 40},
+      {1, 0xc, 50},
+      {1, 0x4 | 2, 60},
+      {1, 0x4, 70},
+    });
+    Map<CpuThreadInfo, HNode<MethodModel>> trees = StreamingTraceParser.parse(trace, null);
+    Assert.assertNotNull(trees);
+    HNode<MethodModel> main = getTree(trees, 1, "main");
+    Assert.assertEquals(3, main.getChildren().size());
+
+    HNode<MethodModel> bar = main.getChildren().get(0);
+    assertNode(bar, "bar", 1, 10, 30);
+    Assert.assertEquals(1, bar.getChildren().size());
+    assertNode(bar.getChildren().get(0), "baz", 2, 10, 20);
+
+    HNode<MethodModel> foo = main.getChildren().get(1);
+    assertNode(foo, "foo", 1, 40, 60);
+    assertNode(foo.getChildren().get(0), "baz", 2, 50, 60);
+
+    assertNode(main.getChildren().get(2), "foo", 1, 70, 70);
+  }
+
+  @Test
+  public void testMatchesPerflib() throws Exception {
+    // A trace shaped like a sampled app trace: a few threads with interleaved, deeply nested calls over many methods.
+    int threadCount = 4;
+    int methodCount = 200;
+    StringBuilder header = new StringBuilder("*version\n3\nclock=dual\n*threads\n");
+    for (int thread = 1; thread <= threadCount; thread++) {
+      header.append(thread).append('\t').append(thread == 1 ? "main" : "Thread-" + thread).append('\n');
+    }
+    header.append("*methods\n");
+    for (int method = 1; method <= methodCount; method++) {
+      header.append(String.format("0x%x\tcom.example.Class%d\tmethod%d\t()V\tClass%d.java\t%d\n", method << 2, method % 17, method,
+                                  method % 17, method));
+    }
+    header.append("*end\n");
+
+    Random random = new Random(1);
+    List<int[]> records = new ArrayList<>();
+    List<Deque<Integer>> stacks = new ArrayList<>();
+    for (int thread = 0; thread < threadCount; thread++) {
+      stacks.add(new ArrayDeque<>());
+    }
+    int time = 0;
+    for (int i = 0; i < 50000; i++) {
+      int thread = random.nextInt(threadCount);
+      Deque<Integer> stack = stacks.get(thread);
+      time += 1 + random.nextInt(5);
+      if (stack.isEmpty() || (stack.size() < 12 && random.nextInt(100) < 55)) {
+        int method = (1 + random.nextInt(methodCount)) << 2;
+        stack.push(method);
+        records.add(new int[]{thread + 1, method, time});
+      }
+      else {
+        records.add(new int[]{thread + 1, stack.pop() | 1, time});
+      }
+    }
+    for (int thread = 0; thread < threadCount; thread++) {
+      Deque<Integer> stack = stacks.get(thread);
+      while (!stack.isEmpty()) {
+        time++;
+        records.add(new int[]{thread + 1, stack.pop() | 1, time});
+      }
+    }
+
+    File file = File.createTempFile("streaming_trace_parser", ".trace");
+    try {
+      ByteBuffer trace = createTrace(header.toString(), records.toArray(new int[records.size()][]));
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.getChannel().write(trace);
+      }
+
+      Map<CpuThreadInfo, HNode<MethodModel>> trees = StreamingTraceParser.parse(file, null);
+      Assert.assertNotNull(trees);
+      VmTraceParser parser = new VmTraceParser(file);
+      parser.parse();
+      CpuTraceArt perflib = new CpuTraceArt();
+      perflib.parse(parser.getTraceData());
+      Map<CpuThreadInfo, HNode<MethodModel>> expected = perflib.getThreadsGraph();
+
+      Assert.assertEquals(expected.size(), trees.size());
+      for (Map.Entry<CpuThreadInfo, HNode<MethodModel>> entry : expected.entrySet()) {
+        HNode<MethodModel> actual = getTree(trees, entry.getKey().getId(), entry.getKey().getName());
+        // The top level calls are synthetic in both parsers, compare what they contain.
+        assertSameCalls(entry.getValue(), actual);
+      }
+    }
+    finally {
+      Assert.assertTrue(file.delete());
+    }
+  }
+
+  @Test
+  public void testUnsupportedFormat() throws Exception {
+    ByteBuffer trace = ByteBuffer.wrap("SLOW".getBytes(StandardCharsets.UTF_8));
+    Assert.assertNull(StreamingTraceParser.parse(trace, null));
+  }
+
+  @NotNull
+  private static HNode<MethodModel> getTree(@NotNull Map<CpuThreadInfo, HNode<MethodModel>> trees, int id, @NotNull String name) {
+    for (Map.Entry<CpuThreadInfo, HNode<MethodModel>> entry : trees.entrySet()) {
+      if (entry.getKey().getId() == id) {
+        Assert.assertEquals(name, entry.getKey().getName());
+        return entry.getValue();
+      }
+    }
+    throw new AssertionError("No tree for thread " + id);
+  }
+
+  private static void assertNode(@NotNull HNode<MethodModel> node, @NotNull String name, int depth, long start, long end) {
+    Assert.assertEquals(name, node.getData().getName());
+    Assert.assertEquals(depth, node.getDepth());
+    Assert.assertEquals(START_TIME_US + start, node.getStart());
+    Assert.assertEquals(START_TIME_US + end, node.getEnd());
+  }
+
+  private static void assertSameCalls(@NotNull HNode<MethodModel> expected, @NotNull HNode<MethodModel> actual) {
+    // Iterative, call trees can be deep.
+    Deque<HNode<MethodModel>> expectedToVisit = new ArrayDeque<>(expected.getChildren());
+    Deque<HNode<MethodModel>> actualToVisit = new ArrayDeque<>(actual.getChildren());
+    Assert.assertEquals(expectedToVisit.size(), actualToVisit.size());
+    while (!expectedToVisit.isEmpty()) {
+      HNode<MethodModel> expectedNode = expectedToVisit.pop();
+      HNode<MethodModel> actualNode = actualToVisit.pop();
+      Assert.assertEquals(expectedNode.getData().getName(), actualNode.getData().getName());
+      Assert.assertEquals(expectedNode.getData().getNameSpace(), actualNode.getData().getNameSpace());
+      Assert.assertEquals(expectedNode.getDepth(), actualNode.getDepth());
+      Assert.assertEquals(expectedNode.getStart(), actualNode.getStart());
+      Assert.assertEquals(expectedNode.getEnd(), actualNode.getEnd());
+      Assert.assertEquals(expectedNode.getChildren().size(), actualNode.getChildren().size());
+      expectedToVisit.addAll(expectedNode.getChildren());
+      actualToVisit.addAll(actualNode.getChildren());
+    }
+  }
+
+  /**
+   * Creates a version 3, dual clock trace. Each record is {thread id, method id | action, wall time}.
+   */
+  @NotNull
+  private static ByteBuffer createTrace(@NotNull int[][] records) {
+    return createTrace(HEADER, records);
+  }
+
+  @NotNull
+  private static ByteBuffer createTrace(@NotNull String headerText, @NotNull int[][] records) {
+    byte[] header = headerText.getBytes(StandardCharsets.UTF_8);
+    int dataHeaderSize = 32;
+    int recordSize = 14;
+    ByteBuffer buffer = ByteBuffer.allocate(header.length + dataHeaderSize + records.length * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(header);
+    buffer.putInt(0x574f4c53);
+    buffer.putShort((short)3);
+    buffer.putShort((short)dataHeaderSize);
+    buffer.putLong(START_TIME_US);
+    buffer.putShort((short)recordSize);
+    buffer.position(header.length + dataHeaderSize);
+    for (int[] record : records) {
+      buffer.putShort((short)record[0]);
+      buffer.putInt(record[1]);
+      // Thread time, then wall time.
+      buffer.putInt(record[2] / 2);
+      buffer.putInt(record[2]);
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
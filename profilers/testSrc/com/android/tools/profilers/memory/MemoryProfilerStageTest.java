@@ -19,11 +19,18 @@ import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.android.tools.profilers.StudioProfilers;
 import com.android.tools.profilers.TestGrpcChannel;
+import com.android.tools.profilers.memory.adapters.CaptureObject;
+import com.android.tools.profilers.memory.adapters.HeapObject;
 import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
 import org.junit.Rule;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 public class MemoryProfilerStageTest {
 
@@ -55,6 +62,112 @@ public class MemoryProfilerStageTest {
     assertEquals(false, stage.isTrackingAllocations());
   }
 
+  @Test
+  public void testCaptureLoadedOnExecutor() throws Exception {
+    StudioProfilers profilers = myGrpcChannel.getProfilers();
+    List<Runnable> tasks = new ArrayList<>();
+    MemoryProfilerStage stage = new MemoryProfilerStage(profilers, tasks::add);
+    profilers.setStage(stage);
+
+    List<MemoryProfilerAspect> aspects = new ArrayList<>();
+    stage.getAspect().addDependency()
+      .onChange(MemoryProfilerAspect.CURRENT_CAPTURE, () -> aspects.add(MemoryProfilerAspect.CURRENT_CAPTURE))
+      .onChange(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE, () -> aspects.add(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE))
+      .onChange(MemoryProfilerAspect.CURRENT_RETAINED_SIZES, () -> aspects.add(MemoryProfilerAspect.CURRENT_RETAINED_SIZES));
+
+    FakeCaptureObject capture = new FakeCaptureObject();
+    stage.selectCaptureObject(capture);
+    assertEquals(Collections.singletonList(MemoryProfilerAspect.CURRENT_CAPTURE), aspects);
+    assertFalse(capture.isDoneLoading());
+    assertEquals(1, tasks.size());
+
+    tasks.remove(0).run();
+    assertTrue(capture.isDoneLoading());
+    // The capture is shown as soon as it is loaded, and refreshed once its retained sizes are known.
+    assertEquals(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE, aspects.get(aspects.size() - 2));
+    assertEquals(MemoryProfilerAspect.CURRENT_RETAINED_SIZES, aspects.get(aspects.size() - 1));
+
+    // A capture that finishes loading after it has been replaced should not notify.
+    aspects.clear();
+    FakeCaptureObject stale = new FakeCaptureObject();
+    stage.selectCaptureObject(stale);
+    stage.selectCaptureObject(null);
+    assertEquals(1, tasks.size());
+    tasks.remove(0).run();
+    assertTrue(stale.myDisposed);
+    assertFalse(aspects.contains(MemoryProfilerAspect.CURRENT_LOADED_CAPTURE));
+    assertFalse(aspects.contains(MemoryProfilerAspect.CURRENT_RETAINED_SIZES));
+  }
+
+  @Test
+  public void testDiffComputedOnceBothCapturesLoaded() throws Exception {
+    StudioProfilers profilers = myGrpcChannel.getProfilers();
+    List<Runnable> tasks = new ArrayList<>();
+    MemoryProfilerStage stage = new MemoryProfilerStage(profilers, tasks::add);
+    profilers.setStage(stage);
+
+    int[] diffChanges = new int[1];
+    stage.getAspect().addDependency().onChange(MemoryProfilerAspect.CURRENT_DIFF, () -> diffChanges[0]++);
+
+    FakeCaptureObject target = new FakeCaptureObject();
+    FakeCaptureObject base = new FakeCaptureObject();
+    stage.selectCaptureObject(target);
+    stage.selectDiffCaptureObject(base);
+    assertEquals(2, tasks.size());
+    assertNull(stage.getCaptureDiff());
+
+    tasks.remove(1).run();
+    assertNull(stage.getCaptureDiff());
+    tasks.remove(0).run();
+    assertNotNull(stage.getCaptureDiff());
+
+    // Selecting another capture drops the diff, and disposes of the capture it was relative to.
+    diffChanges[0] = 0;
+    stage.selectCaptureObject(null);
+    assertNull(stage.getCaptureDiff());
+    assertNull(stage.getDiffCaptureObject());
+    assertTrue(base.myDisposed);
+    assertEquals(1, diffChanges[0]);
+  }
+
+  private static class FakeCaptureObject extends CaptureObject {
+    private volatile boolean myLoaded;
+    private boolean myDisposed;
+
+    @NotNull
+    @Override
+    public String getLabel() {
+      return "";
+    }
+
+    @NotNull
+    @Override
+    public List<HeapObject> getHeaps() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean load() {
+      myLoaded = true;
+      return true;
+    }
+
+    @Override
+    public boolean isDoneLoading() {
+      return myLoaded;
+    }
+
+    @Override
+    public boolean computeRetainedSizes() {
+      return true;
+    }
+
+    @Override
+    public void dispose() {
+      myDisposed = true;
+    }
+  }
+
   private static class MemoryServiceMock extends MemoryServiceGrpc.MemoryServiceImplBase {
     private MemoryProfiler.TrackAllocationsResponse.Status myNextStatus;
 
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationStack;
+import com.android.tools.profilers.memory.adapters.CaptureDiff.AllocationSiteDelta;
+import com.android.tools.profilers.memory.adapters.CaptureDiff.ClassDelta;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CaptureDiffTest {
+  private static final AllocationStack STACK_A = stack("com.example.Foo", "onCreate");
+  private static final AllocationStack STACK_B = stack("com.example.Bar", "onResume");
+
+  @Test
+  public void testClassDeltasSortedByGrowth() throws Exception {
+    FakeCapture base = new FakeCapture(
+      new FakeHeap(new FakeClass("Leaked", 10, 100), new FakeClass("Shrunk", 5, 50), new FakeClass("Removed", 1, 8)));
+    FakeCapture target = new FakeCapture(
+      new FakeHeap(new FakeClass("Leaked", 40, 400), new FakeClass("Shrunk", 2, 20)),
+      new FakeHeap(new FakeClass("Added", 3, 30), new FakeClass("Leaked", 2, 20)));
+
+    List<ClassDelta> deltas = CaptureDiff.compute(base, target).getClassDeltas();
+    assertEquals(Arrays.asList("Leaked", "Added", "Removed", "Shrunk"), names(deltas));
+
+    // Classes are lined up by name across heaps.
+    ClassDelta leaked = deltas.get(0);
+    assertEquals(10, leaked.getBaseCount());
+    assertEquals(42, leaked.getTargetCount());
+    assertEquals(32, leaked.getCountDelta());
+    assertEquals(320, leaked.getRetainedSizeDelta());
+
+    ClassDelta removed = deltas.get(2);
+    assertEquals(0, removed.getTargetCount());
+    assertEquals(-1, removed.getCountDelta());
+    assertEquals(-8, removed.getRetainedSizeDelta());
+  }
+
+  @Test
+  public void testRetainedSizeBreaksCountTies() throws Exception {
+    FakeCapture base = new FakeCapture(new FakeHeap(new FakeClass("Small", 1, 10), new FakeClass("Large", 1, 10)));
+    FakeCapture target = new FakeCapture(new FakeHeap(new FakeClass("Small", 2, 20), new FakeClass("Large", 2, 1000)));
+    assertEquals(Arrays.asList("Large", "Small"), names(CaptureDiff.compute(base, target).getClassDeltas()));
+  }
+
+  @Test
+  public void testAllocationSiteDeltas() throws Exception {
+    FakeClass baseFoo = new FakeClass("Foo", 0, 0);
+    baseFoo.addInstance(STACK_A, 16);
+    baseFoo.addInstance(STACK_B, 16);
+    baseFoo.addInstance(null, 16);
+    FakeClass targetFoo = new FakeClass("Foo", 0, 0);
+    targetFoo.addInstance(STACK_A, 16);
+    targetFoo.addInstance(stack("com.example.Foo", "onCreate"), 16);
+    targetFoo.addInstance(STACK_A, 16);
+    targetFoo.addInstance(AllocationStack.newBuilder().build(), 16);
+
+    List<AllocationSiteDelta> sites =
+      CaptureDiff.compute(new FakeCapture(new FakeHeap(baseFoo)), new FakeCapture(new FakeHeap(targetFoo))).getAllocationSiteDeltas();
+    assertEquals(2, sites.size());
+
+    // Instances without a call stack are not attributed to any site, and equal stacks are the same site.
+    assertEquals(STACK_A, sites.get(0).getStack());
+    assertEquals("Foo", sites.get(0).getClassName());
+    assertEquals(1, sites.get(0).getBaseCount());
+    assertEquals(3, sites.get(0).getTargetCount());
+    assertEquals(32, sites.get(0).getSizeDelta());
+
+    assertEquals(STACK_B, sites.get(1).getStack());
+    assertEquals(-1, sites.get(1).getCountDelta());
+  }
+
+  @Test
+  public void testCallStacksAreOnlyBuiltForAllocationSites() throws Exception {
+    FakeClass baseFoo = new FakeClass("Foo", 0, 0);
+    for (int i = 0; i < 10; i++) {
+      baseFoo.addInstance(STACK_A, 16);
+    }
+    baseFoo.addInstance(STACK_B, 16);
+    baseFoo.addInstance(null, 16);
+    CaptureDiff diff = CaptureDiff.compute(new FakeCapture(new FakeHeap(baseFoo)), new FakeCapture(new FakeHeap()));
+    assertEquals(0, baseFoo.myCallStackCount);
+
+    // One stack per site is built, not one per instance, and only the first time the sites are asked for.
+    List<AllocationSiteDelta> sites = diff.getAllocationSiteDeltas();
+    assertEquals(2, sites.size());
+    assertEquals(STACK_A, sites.get(1).getStack());
+    assertEquals(10, sites.get(1).getBaseCount());
+    assertEquals(-160, sites.get(1).getSizeDelta());
+    assertSame(sites, diff.getAllocationSiteDeltas());
+    assertEquals(2, baseFoo.myCallStackCount);
+  }
+
+  @Test
+  public void testCapturesAreRetainedDuringTheWalk() throws Exception {
+    FakeCapture base = new FakeCapture(new FakeHeap(new FakeClass("Foo", 1, 10)));
+    FakeCapture target = new FakeCapture(new FakeHeap(new FakeClass("Foo", 2, 20)));
+    assertEquals(1, CaptureDiff.compute(base, target).getClassDeltas().size());
+    assertEquals(Collections.singletonList(1), base.myRetainCountsSeen);
+    assertEquals(Collections.singletonList(1), target.myRetainCountsSeen);
+    assertEquals(0, base.myRetainCount);
+    assertEquals(0, target.myRetainCount);
+
+    // A disposed capture can't be walked, the diff comes back empty and the other capture is released.
+    target.dispose();
+    CaptureDiff diff = CaptureDiff.compute(base, target);
+    assertTrue(diff.getClassDeltas().isEmpty());
+    assertTrue(diff.getAllocationSiteDeltas().isEmpty());
+    assertEquals(0, base.myRetainCount);
+  }
+
+  @Test
+  public void testHistogramsAreDiffedWithoutWalkingHeaps() throws Exception {
+    HprofHistogramTest.HprofWriter baseWriter = new HprofHistogramTest.HprofWriter();
+    baseWriter.loadClass(100, "Leaked");
+    baseWriter.classDump(100, 16);
+    baseWriter.stackFrame(1000, "onCreate", "Foo.java", 1);
+    baseWriter.stackTrace(1, 1000);
+    baseWriter.instance(1, 100, 1);
+    HprofHistogramTest.HprofWriter targetWriter = new HprofHistogramTest.HprofWriter();
+    targetWriter.loadClass(300, "Leaked");
+    targetWriter.classDump(300, 16);
+    targetWriter.stackFrame(2000, "onCreate", "Foo.java", 1);
+    targetWriter.stackTrace(5, 2000);
+    for (int i = 0; i < 4; i++) {
+      targetWriter.instance(i, 300, 5);
+    }
+
+    File baseFile = baseWriter.write();
+    File targetFile = targetWriter.write();
+    try {
+      FakeCapture base = new FakeCapture(baseFile, new FakeHeap(new FakeClass("Other", 1, 10)));
+      FakeCapture target = new FakeCapture(targetFile, new FakeHeap(new FakeClass("Other", 2, 20)));
+      CaptureDiff diff = CaptureDiff.compute(base, target);
+      assertTrue(base.myRetainCountsSeen.isEmpty());
+      assertTrue(target.myRetainCountsSeen.isEmpty());
+      assertFalse(diff.hasRetainedSizes());
+
+      // Classes and sites are matched by name and frames, not by their ids in either dump.
+      assertEquals(Collections.singletonList("Leaked"), names(diff.getClassDeltas()));
+      assertEquals(3, diff.getClassDeltas().get(0).getCountDelta());
+      assertEquals(48, diff.getClassDeltas().get(0).getShallowSizeDelta());
+      List<AllocationSiteDelta> sites = diff.getAllocationSiteDeltas();
+      assertEquals(1, sites.size());
+      assertEquals(1, sites.get(0).getBaseCount());
+      assertEquals(4, sites.get(0).getTargetCount());
+    }
+    finally {
+      FileUtil.delete(baseFile);
+      FileUtil.delete(targetFile);
+    }
+  }
+
+  @NotNull
+  private static List<String> names(@NotNull List<ClassDelta> deltas) {
+    List<String> names = new ArrayList<>();
+    deltas.forEach(delta -> names.add(delta.getName()));
+    return names;
+  }
+
+  @NotNull
+  private static AllocationStack stack(@NotNull String className, @NotNull String methodName) {
+    return AllocationStack.newBuilder()
+      .addStackFrames(AllocationStack.StackFrame.newBuilder().setClassName(className).setMethodName(methodName).build()).build();
+  }
+
+  private static class FakeCapture extends CaptureObject {
+    @Nullable private final File myFile;
+    @NotNull private final List<HeapObject> myHeaps;
+    @NotNull private final List<Integer> myRetainCountsSeen = new ArrayList<>();
+    private int myRetainCount;
+    private boolean myDisposed;
+
+    FakeCapture(@NotNull HeapObject... heaps) {
+      this(null, heaps);
+    }
+
+    /**
+     * @param file an hprof file to read the capture from instead of its heaps.
+     */
+    FakeCapture(@Nullable File file, @NotNull HeapObject... heaps) {
+      myFile = file;
+      myHeaps = Arrays.asList(heaps);
+    }
+
+    @Nullable
+    @Override
+    HprofHistogram readHistogram() throws IOException {
+      return myFile == null ? null : HprofHistogram.read(myFile);
+    }
+
+    @NotNull
+    @Override
+    public String getLabel() {
+      return "";
+    }
+
+    @NotNull
+    @Override
+    public List<HeapObject> getHeaps() {
+      myRetainCountsSeen.add(myRetainCount);
+      return myHeaps;
+    }
+
+    @Override
+    public boolean retain() {
+      if (myDisposed) {
+        return false;
+      }
+      myRetainCount++;
+      return true;
+    }
+
+    @Override
+    public void release() {
+      myRetainCount--;
+    }
+
+    @Override
+    public void dispose() {
+      myDisposed = true;
+    }
+  }
+
+  private static class FakeHeap extends HeapObject {
+    @NotNull private final List<ClassObject> myClasses;
+
+    FakeHeap(@NotNull ClassObject... classes) {
+      myClasses = Arrays.asList(classes);
+    }
+
+    @NotNull
+    @Override
+    public String getHeapName() {
+      return "";
+    }
+
+    @NotNull
+    @Override
+    public List<ClassObject> getClasses() {
+      return myClasses;
+    }
+
+    @NotNull
+    @Override
+    public List<ClassAttribute> getClassAttributes() {
+      return Collections.emptyList();
+    }
+  }
+
+  private static class FakeClass extends ClassObject {
+    @NotNull private final String myName;
+    private final int myCount;
+    private final long myRetainedSize;
+    @NotNull private final List<InstanceObject> myInstances = new ArrayList<>();
+    private int myCallStackCount;
+
+    FakeClass(@NotNull String name, int count, long retainedSize) {
+      myName = name;
+      myCount = count;
+      myRetainedSize = retainedSize;
+    }
+
+    void addInstance(@Nullable AllocationStack stack, int size) {
+      myInstances.add(new InstanceObject() {
+        @NotNull
+        @Override
+        public String getName() {
+          return myName;
+        }
+
+        @Override
+        public int getShallowSize() {
+          return size;
+        }
+
+        @Nullable
+        @Override
+        public AllocationStack getCallStack() {
+          myCallStackCount++;
+          return stack;
+        }
+
+        @Nullable
+        @Override
+        public Object getCallStackKey() {
+          return stack;
+        }
+      });
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+      return myName;
+    }
+
+    @Override
+    public int getChildrenCount() {
+      return myCount;
+    }
+
+    @Override
+    public long getRetainedSize() {
+      return myRetainedSize;
+    }
+
+    @NotNull
+    @Override
+    public List<InstanceObject> getInstances() {
+      return myInstances;
+    }
+
+    @NotNull
+    @Override
+    public List<InstanceAttribute> getInstanceAttributes() {
+      return Collections.emptyList();
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.android.tools.profilers.memory.adapters.DominatorTree.NO_DOMINATOR;
+import static org.junit.Assert.*;
+
+public class DominatorTreeTest {
+
+  @Test
+  public void testDiamond() throws Exception {
+    // 0 -> 1 -> 3 -> 4
+    // 0 -> 2 -> 3
+    // 5 is unreachable, and points to 4.
+    int[][] predecessors = predecessors(6, new int[][]{{0, 1}, {0, 2}, {1, 3}, {2, 3}, {3, 4}, {5, 4}});
+    DominatorTree tree = new DominatorTree(predecessors, new int[]{0}, new int[]{1, 2, 4, 8, 16, 32});
+
+    assertEquals(NO_DOMINATOR, tree.getImmediateDominator(0));
+    assertEquals(0, tree.getImmediateDominator(1));
+    assertEquals(0, tree.getImmediateDominator(2));
+    assertEquals(0, tree.getImmediateDominator(3));
+    assertEquals(3, tree.getImmediateDominator(4));
+    assertFalse(tree.isReachable(5));
+    assertEquals(NO_DOMINATOR, tree.getImmediateDominator(5));
+
+    assertEquals(0, tree.getDistanceToRoot(0));
+    assertEquals(1, tree.getDistanceToRoot(2));
+    assertEquals(3, tree.getDistanceToRoot(4));
+    assertEquals(-1, tree.getDistanceToRoot(5));
+
+    assertEquals(1 + 2 + 4 + 8 + 16, tree.getRetainedSize(0));
+    assertEquals(2, tree.getRetainedSize(1));
+    assertEquals(8 + 16, tree.getRetainedSize(3));
+    assertEquals(0, tree.getRetainedSize(5));
+  }
+
+  @Test
+  public void testMultipleRoots() throws Exception {
+    // Roots 0 and 1 both point to 2, which points to 3. Root 1 is also reachable from 0.
+    int[][] predecessors = predecessors(4, new int[][]{{0, 2}, {1, 2}, {2, 3}, {0, 1}});
+    DominatorTree tree = new DominatorTree(predecessors, new int[]{0, 1}, new int[]{1, 1, 1, 1});
+
+    assertEquals(NO_DOMINATOR, tree.getImmediateDominator(0));
+    assertEquals(NO_DOMINATOR, tree.getImmediateDominator(1));
+    assertEquals(NO_DOMINATOR, tree.getImmediateDominator(2));
+    assertEquals(2, tree.getImmediateDominator(3));
+    assertEquals(1, tree.getRetainedSize(0));
+    assertEquals(2, tree.getRetainedSize(2));
+    assertEquals(0, tree.getDistanceToRoot(1));
+    assertEquals(2, tree.getDistanceToRoot(3));
+  }
+
+  @Test
+  public void testMatchesReferenceOnRandomGraphs() throws Exception {
+    Random random = new Random(42);
+    for (int iteration = 0; iteration < 200; iteration++) {
+      int vertexCount = 1 + random.nextInt(40);
+      checkAgainstReference(randomGraph(random, vertexCount, random.nextInt(vertexCount * 3)), randomRoots(random, vertexCount));
+    }
+  }
+
+  @Test
+  public void testWideGraph() throws Exception {
+    // Wide enough for the levels of the spanning tree to be processed in parallel: the root points to the first half of the vertices,
+    // each of the others is pointed to by one or two of them.
+    Random random = new Random(7);
+    int vertexCount = 10000;
+    int half = vertexCount / 2;
+    List<int[]> edges = new ArrayList<>();
+    for (int vertex = 1; vertex < vertexCount; vertex++) {
+      if (vertex < half) {
+        edges.add(new int[]{0, vertex});
+      }
+      else {
+        edges.add(new int[]{1 + random.nextInt(half - 1), vertex});
+        if (random.nextBoolean()) {
+          edges.add(new int[]{1 + random.nextInt(half - 1), vertex});
+        }
+      }
+    }
+    checkAgainstReference(predecessors(vertexCount, edges.toArray(new int[edges.size()][])), new int[]{0});
+  }
+
+  private static void checkAgainstReference(@NotNull int[][] predecessors, @NotNull int[] roots) {
+    int vertexCount = predecessors.length;
+    int[] sizes = new int[vertexCount];
+    Arrays.fill(sizes, 1);
+    DominatorTree tree = new DominatorTree(predecessors, roots, sizes);
+
+    int[][] successors = successors(predecessors);
+    boolean[] reachable = reachable(successors, roots, -1);
+    int[] expected = new int[vertexCount];
+    Arrays.fill(expected, NO_DOMINATOR);
+    // The vertices each vertex dominates are the ones that become unreachable once it is removed.
+    long[] retained = new long[vertexCount];
+    List<Set<Integer>> dominators = new ArrayList<>();
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      dominators.add(new HashSet<>());
+    }
+    for (int dominator = 0; dominator < vertexCount; dominator++) {
+      if (!reachable[dominator]) {
+        continue;
+      }
+      boolean[] without = reachable(successors, roots, dominator);
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        if (reachable[vertex] && !without[vertex]) {
+          retained[dominator]++;
+          if (vertex != dominator) {
+            dominators.get(vertex).add(dominator);
+          }
+        }
+      }
+    }
+    // The immediate dominator is the strict dominator dominated by all the others.
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      for (int candidate : dominators.get(vertex)) {
+        if (dominators.get(candidate).size() == dominators.get(vertex).size() - 1) {
+          expected[vertex] = candidate;
+        }
+      }
+    }
+
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      assertEquals(reachable[vertex], tree.isReachable(vertex));
+      assertEquals("dominator of " + vertex, expected[vertex], tree.getImmediateDominator(vertex));
+      assertEquals("retained size of " + vertex, retained[vertex], tree.getRetainedSize(vertex));
+    }
+  }
+
+  @NotNull
+  private static boolean[] reachable(@NotNull int[][] successors, @NotNull int[] roots, int removed) {
+    boolean[] visited = new boolean[successors.length];
+    Deque<Integer> stack = new ArrayDeque<>();
+    for (int root : roots) {
+      if (root != removed && !visited[root]) {
+        visited[root] = true;
+        stack.push(root);
+      }
+    }
+    while (!stack.isEmpty()) {
+      for (int successor : successors[stack.pop()]) {
+        if (successor != removed && !visited[successor]) {
+          visited[successor] = true;
+          stack.push(successor);
+        }
+      }
+    }
+    return visited;
+  }
+
+  @NotNull
+  private static int[][] randomGraph(@NotNull Random random, int vertexCount, int edgeCount) {
+    int[][] edges = new int[edgeCount][];
+    for (int i = 0; i < edgeCount; i++) {
+      edges[i] = new int[]{random.nextInt(vertexCount), random.nextInt(vertexCount)};
+    }
+    return predecessors(vertexCount, edges);
+  }
+
+  @NotNull
+  private static int[] randomRoots(@NotNull Random random, int vertexCount) {
+    int[] roots = new int[1 + random.nextInt(3)];
+    for (int i = 0; i < roots.length; i++) {
+      roots[i] = random.nextInt(vertexCount);
+    }
+    return roots;
+  }
+
+  @NotNull
+  private static int[][] predecessors(int vertexCount, @NotNull int[][] edges) {
+    List<List<Integer>> lists = new ArrayList<>();
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      lists.add(new ArrayList<>());
+    }
+    for (int[] edge : edges) {
+      lists.get(edge[1]).add(edge[0]);
+    }
+    return toArrays(lists);
+  }
+
+  @NotNull
+  private static int[][] successors(@NotNull int[][] predecessors) {
+    List<List<Integer>> lists = new ArrayList<>();
+    for (int vertex = 0; vertex < predecessors.length; vertex++) {
+      lists.add(new ArrayList<>());
+    }
+    for (int vertex = 0; vertex < predecessors.length; vertex++) {
+      for (int predecessor : predecessors[vertex]) {
+        lists.get(predecessor).add(vertex);
+      }
+    }
+    return toArrays(lists);
+  }
+
+  @NotNull
+  private static int[][] toArrays(@NotNull List<List<Integer>> lists) {
+    int[][] arrays = new int[lists.size()][];
+    for (int i = 0; i < arrays.length; i++) {
+      arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+    }
+    return arrays;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler;
+import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.android.tools.profilers.TestGrpcChannel;
+import io.grpc.stub.StreamObserver;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HeapDumpCaptureObjectTest {
+
+  @Rule
+  public TestGrpcChannel<NotReadyMemoryService> myGrpcChannel =
+    new TestGrpcChannel<>("HEAP_DUMP_CAPTURE_TEST_CHANNEL", new NotReadyMemoryService());
+
+  @Test
+  public void testDisposeStopsWaitingForTheDump() throws Exception {
+    NotReadyMemoryService service = myGrpcChannel.getService();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(myGrpcChannel.getClient().getMemoryClient(), 1,
+                                MemoryProfiler.HeapDumpInfo.newBuilder().setDumpId(1).build(), null);
+    service.myCapture = capture;
+
+    // The service keeps answering NOT_READY and disposes the capture on its third request.
+    assertFalse(capture.load());
+    assertEquals(3, service.myRequestCount);
+    assertFalse(capture.isDoneLoading());
+  }
+
+  private static class NotReadyMemoryService extends MemoryServiceGrpc.MemoryServiceImplBase {
+    private HeapDumpCaptureObject myCapture;
+    private int myRequestCount;
+
+    @Override
+    public void getHeapDump(MemoryProfiler.HeapDumpDataRequest request, StreamObserver<MemoryProfiler.DumpDataResponse> response) {
+      if (++myRequestCount == 3) {
+        myCapture.dispose();
+      }
+      response.onNext(MemoryProfiler.DumpDataResponse.newBuilder().setStatus(MemoryProfiler.DumpDataResponse.Status.NOT_READY).build());
+      response.onCompleted();
+    }
+  }
+}
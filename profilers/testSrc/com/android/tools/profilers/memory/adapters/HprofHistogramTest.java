@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationStack;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HprofHistogramTest {
+  @Test
+  public void testClassTotals() throws Exception {
+    HprofWriter writer = new HprofWriter();
+    writer.loadClass(100, "com.example.Foo");
+    writer.loadClass(200, "java.lang.Object[]");
+    writer.classDump(100, 24);
+    writer.instance(1, 100, 0);
+    writer.instance(2, 100, 0);
+    writer.heapDumpInfo();
+    writer.instance(3, 100, 0);
+    writer.objectArray(4, 200, 0, 5);
+    writer.primitiveArray(5, 0, 12);
+    writer.root(6);
+
+    Map<String, HprofHistogram.Totals> classes = read(writer).getClasses();
+    assertEquals(3, classes.size());
+    // Instances of the same class are merged across heaps, sizes are taken from the class.
+    assertEquals(3, classes.get("com.example.Foo").getCount());
+    assertEquals(72, classes.get("com.example.Foo").getSize());
+    assertEquals(1, classes.get("java.lang.Object[]").getCount());
+    assertEquals(20, classes.get("java.lang.Object[]").getSize());
+    assertEquals(48, classes.get("int[]").getSize());
+  }
+
+  @Test
+  public void testAllocationSites() throws Exception {
+    HprofWriter writer = new HprofWriter();
+    writer.loadClass(100, "com.example.Foo");
+    writer.classDump(100, 16);
+    writer.stackFrame(1000, "onCreate", "Foo.java", 42);
+    writer.stackTrace(7, 1000);
+    writer.stackTrace(8);
+    writer.instance(1, 100, 7);
+    writer.instance(2, 100, 7);
+    writer.instance(3, 100, 8);
+    writer.instance(4, 100, 0);
+
+    Map<HprofHistogram.Site, HprofHistogram.Totals> sites = read(writer).getSites();
+    // Instances without a stack trace, or with an empty one, are not attributed to any site.
+    assertEquals(1, sites.size());
+    HprofHistogram.Site site = sites.keySet().iterator().next();
+    assertEquals("com.example.Foo", site.getClassName());
+    AllocationStack.StackFrame frame = site.getStack().getStackFrames(0);
+    assertEquals("Foo", frame.getClassName());
+    assertEquals("onCreate", frame.getMethodName());
+    assertEquals(42, frame.getLineNumber());
+    assertEquals(2, sites.get(site).getCount());
+    assertEquals(32, sites.get(site).getSize());
+  }
+
+  @NotNull
+  private static HprofHistogram read(@NotNull HprofWriter writer) throws IOException {
+    File file = writer.write();
+    try {
+      return HprofHistogram.read(file);
+    }
+    finally {
+      FileUtil.delete(file);
+    }
+  }
+
+  /**
+   * Writes a minimal hprof file with 4 byte ids, all heap dump sub-records in a single segment.
+   */
+  static final class HprofWriter {
+    private static final int TYPE_INT = 10;
+
+    private final ByteArrayOutputStream myRecords = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream myHeapDump = new ByteArrayOutputStream();
+    private final DataOutputStream myRecordsOut = new DataOutputStream(myRecords);
+    private final DataOutputStream myHeapDumpOut = new DataOutputStream(myHeapDump);
+    private int myNextStringId = 1;
+
+    void loadClass(int classId, @NotNull String name) throws IOException {
+      int nameId = string(name);
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeInt(0);
+      out.writeInt(classId);
+      out.writeInt(0);
+      out.writeInt(nameId);
+      record(0x02, body);
+    }
+
+    void stackFrame(int frameId, @NotNull String methodName, @NotNull String fileName, int line) throws IOException {
+      int methodId = string(methodName);
+      int fileId = string(fileName);
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeInt(frameId);
+      out.writeInt(methodId);
+      out.writeInt(0);
+      out.writeInt(fileId);
+      out.writeInt(0);
+      out.writeInt(line);
+      record(0x04, body);
+    }
+
+    void stackTrace(int serial, int... frameIds) throws IOException {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeInt(serial);
+      out.writeInt(0);
+      out.writeInt(frameIds.length);
+      for (int frameId : frameIds) {
+        out.writeInt(frameId);
+      }
+      record(0x05, body);
+    }
+
+    /**
+     * Writes a class with one static int and one int instance field, which must be skipped over.
+     */
+    void classDump(int classId, int instanceSize) throws IOException {
+      myHeapDumpOut.writeByte(0x20);
+      myHeapDumpOut.writeInt(classId);
+      myHeapDumpOut.writeInt(0);
+      for (int i = 0; i < 6; i++) {
+        myHeapDumpOut.writeInt(0);
+      }
+      myHeapDumpOut.writeInt(instanceSize);
+      myHeapDumpOut.writeShort(0);
+      myHeapDumpOut.writeShort(1);
+      myHeapDumpOut.writeInt(string("sCount"));
+      myHeapDumpOut.writeByte(TYPE_INT);
+      myHeapDumpOut.writeInt(7);
+      myHeapDumpOut.writeShort(1);
+      myHeapDumpOut.writeInt(string("mValue"));
+      myHeapDumpOut.writeByte(TYPE_INT);
+    }
+
+    void instance(int id, int classId, int stackSerial) throws IOException {
+      myHeapDumpOut.writeByte(0x21);
+      myHeapDumpOut.writeInt(id);
+      myHeapDumpOut.writeInt(stackSerial);
+      myHeapDumpOut.writeInt(classId);
+      myHeapDumpOut.writeInt(4);
+      myHeapDumpOut.writeInt(0);
+    }
+
+    void objectArray(int id, int classId, int stackSerial, int length) throws IOException {
+      myHeapDumpOut.writeByte(0x22);
+      myHeapDumpOut.writeInt(id);
+      myHeapDumpOut.writeInt(stackSerial);
+      myHeapDumpOut.writeInt(length);
+      myHeapDumpOut.writeInt(classId);
+      for (int i = 0; i < length; i++) {
+        myHeapDumpOut.writeInt(0);
+      }
+    }
+
+    void primitiveArray(int id, int stackSerial, int length) throws IOException {
+      myHeapDumpOut.writeByte(0x23);
+      myHeapDumpOut.writeInt(id);
+      myHeapDumpOut.writeInt(stackSerial);
+      myHeapDumpOut.writeInt(length);
+      myHeapDumpOut.writeByte(TYPE_INT);
+      for (int i = 0; i < length; i++) {
+        myHeapDumpOut.writeInt(i);
+      }
+    }
+
+    void heapDumpInfo() throws IOException {
+      myHeapDumpOut.writeByte(0xFE);
+      myHeapDumpOut.writeInt('A');
+      myHeapDumpOut.writeInt(string("app"));
+    }
+
+    void root(int id) throws IOException {
+      myHeapDumpOut.writeByte(0x05);
+      myHeapDumpOut.writeInt(id);
+    }
+
+    @NotNull
+    File write() throws IOException {
+      File file = FileUtil.createTempFile("histogram", ".hprof", true);
+      try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+        out.write("JAVA PROFILE 1.0.3".getBytes(StandardCharsets.UTF_8));
+        out.writeByte(0);
+        out.writeInt(4);
+        out.writeLong(0);
+        myRecords.writeTo(out);
+        out.writeByte(0x1C);
+        out.writeInt(0);
+        out.writeInt(myHeapDump.size());
+        myHeapDump.writeTo(out);
+      }
+      return file;
+    }
+
+    private int string(@NotNull String value) throws IOException {
+      int id = myNextStringId++;
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeInt(id);
+      out.write(value.getBytes(StandardCharsets.UTF_8));
+      record(0x01, body);
+      return id;
+    }
+
+    private void record(int tag, @NotNull ByteArrayOutputStream body) throws IOException {
+      myRecordsOut.writeByte(tag);
+      myRecordsOut.writeInt(0);
+      myRecordsOut.writeInt(body.size());
+      body.writeTo(myRecordsOut);
+    }
+  }
+}
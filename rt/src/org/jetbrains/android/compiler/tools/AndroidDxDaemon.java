@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.compiler.tools;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs dx for builds that connect to it over a loopback socket, so that they don't pay for starting a JVM, loading dx and warming it up
+ * on every dex step. It is started by the first build that needs it, outlives that build, and exits once it has been idle for a while.
+ * <p>
+ * On start, the daemon writes its port and a secret token to the file it is given. A request is the token followed by the arguments of
+ * {@link AndroidDxRunner#main}, and the response is the exit code followed by the output and error output of that dx run.
+ * <p>
+ * dx keeps its state in static fields, which may still refer to the inputs and outputs of the previous run, so every request runs
+ * {@link AndroidDxRunner} in a new class loader that is closed once it's done. What the daemon saves is the start of the JVM, not the
+ * loading of dx. Each dx run may use as much heap as a dx process of its own would, so the daemon is started with that heap for every run it
+ * may do at once, see {@link #getMaxConcurrentRuns(int, long)}, and runs dx for at most that many requests at a time.
+ */
+@SuppressWarnings({"UseOfSystemOutOrSystemErr", "CallToPrintStackTrace", "SSBasedInspection"})
+public class AndroidDxDaemon {
+  private static final int IDLE_CHECK_INTERVAL_MS = 10 * 1000;
+
+  /**
+   * How long a connection may take to send its request. Until it has sent the right token, it doesn't count as activity.
+   */
+  private static final int REQUEST_TIMEOUT_MS = 30 * 1000;
+
+  /**
+   * The most heap a daemon is started with for its concurrent dx runs, however many the build could run at once.
+   */
+  static final long MAX_HEAP_MB = 4 * 1024;
+
+  private final File myPortFile;
+  private final long myIdleTimeoutMs;
+  private final String myToken = UUID.randomUUID().toString();
+  private final URL[] myClassPath;
+  private final Semaphore myDexPermits;
+
+  private int myPendingConnections;
+  private int myActiveRequests;
+  private long myLastActivity = System.currentTimeMillis();
+
+  AndroidDxDaemon(File portFile, long idleTimeoutMs, int maxConcurrentRuns) throws MalformedURLException {
+    myPortFile = portFile;
+    myIdleTimeoutMs = idleTimeoutMs;
+    myDexPermits = new Semaphore(Math.max(1, maxConcurrentRuns), true);
+
+    List<URL> classPath = new ArrayList<URL>();
+    for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      classPath.add(new File(path).toURI().toURL());
+    }
+    myClassPath = classPath.toArray(new URL[classPath.size()]);
+  }
+
+  /**
+   * Serves requests until the daemon has been idle for its idle timeout, or another daemon replaced it.
+   */
+  void serve() throws IOException {
+    ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    try {
+      String portFileContents = serverSocket.getLocalPort() + "\n" + myToken;
+      writePortFile(portFileContents);
+      serverSocket.setSoTimeout((int)Math.max(1, Math.min(IDLE_CHECK_INTERVAL_MS, myIdleTimeoutMs / 2)));
+
+      while (true) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        }
+        catch (SocketTimeoutException e) {
+          if (shouldExit(portFileContents)) {
+            break;
+          }
+          continue;
+        }
+        connectionAccepted();
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            handle(socket);
+          }
+        }, "dx request");
+        thread.setDaemon(true);
+        thread.start();
+      }
+      if (portFileContents.equals(readPortFile())) {
+        //noinspection ResultOfMethodCallIgnored
+        myPortFile.delete();
+      }
+    }
+    finally {
+      serverSocket.close();
+    }
+  }
+
+  /**
+   * @return true once no build has used the daemon for the idle timeout, or as soon as it is idle if another daemon replaced it
+   */
+  private synchronized boolean shouldExit(String portFileContents) {
+    if (myActiveRequests > 0 || myPendingConnections > 0) {
+      return false;
+    }
+    return System.currentTimeMillis() - myLastActivity > myIdleTimeoutMs || !portFileContents.equals(readPortFile());
+  }
+
+  private void handle(Socket socket) {
+    boolean started = false;
+    try {
+      try {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (!myToken.equals(in.readUTF())) {
+          return;
+        }
+        requestStarted();
+        started = true;
+
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = in.readUTF();
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitCode;
+        myDexPermits.acquireUninterruptibly();
+        try {
+          exitCode = runDex(args, stdout, stderr);
+        }
+        finally {
+          myDexPermits.release();
+        }
+
+        out.writeInt(exitCode);
+        writeBytes(out, stdout.toByteArray());
+        writeBytes(out, stderr.toByteArray());
+        out.flush();
+      }
+      finally {
+        socket.close();
+      }
+    }
+    catch (IOException e) {
+      if (started) {
+        // The build went away, so there's nobody to report this to.
+        e.printStackTrace();
+      }
+    }
+    finally {
+      if (started) {
+        requestFinished();
+      }
+      else {
+        connectionDropped();
+      }
+    }
+  }
+
+  private synchronized void connectionAccepted() {
+    myPendingConnections++;
+  }
+
+  private synchronized void connectionDropped() {
+    myPendingConnections--;
+  }
+
+  private synchronized void requestStarted() {
+    myPendingConnections--;
+    myActiveRequests++;
+    myLastActivity = System.currentTimeMillis();
+  }
+
+  private synchronized void requestFinished() {
+    myActiveRequests--;
+    myLastActivity = System.currentTimeMillis();
+  }
+
+  private int runDex(String[] args, ByteArrayOutputStream stdout, ByteArrayOutputStream stderr) throws IOException {
+    URLClassLoader loader = new URLClassLoader(myClassPath, ClassLoader.getSystemClassLoader().getParent());
+    try {
+      Class<?> runnerClass = loader.loadClass(AndroidDxRunner.class.getName());
+      Method runner = runnerClass.getMethod("run", String[].class, PrintStream.class, PrintStream.class);
+      PrintStream out = new PrintStream(stdout, true, "UTF-8");
+      PrintStream err = new PrintStream(stderr, true, "UTF-8");
+      try {
+        return (Integer)runner.invoke(null, args, out, err);
+      }
+      catch (IllegalAccessException e) {
+        e.printStackTrace(err);
+      }
+      catch (InvocationTargetException e) {
+        e.getTargetException().printStackTrace(err);
+      }
+      catch (RuntimeException e) {
+        e.printStackTrace(err);
+      }
+      catch (Error e) {
+        // Most likely an OutOfMemoryError, which the daemon can survive, since everything dx allocated goes away with its class loader.
+        e.printStackTrace(err);
+      }
+      return -1;
+    }
+    catch (ClassNotFoundException e) {
+      throw new IOException(e.getMessage());
+    }
+    catch (NoSuchMethodException e) {
+      throw new IOException(e.getMessage());
+    }
+    finally {
+      loader.close();
+    }
+  }
+
+  private void writePortFile(String contents) throws IOException {
+    File tempFile = new File(myPortFile.getPath() + ".tmp");
+    createOwnerOnlyFile(tempFile.toPath());
+    Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+    try {
+      writer.write(contents);
+    }
+    finally {
+      writer.close();
+    }
+
+    //noinspection ResultOfMethodCallIgnored
+    myPortFile.delete();
+    if (!tempFile.renameTo(myPortFile)) {
+      throw new IOException("Cannot write " + myPortFile);
+    }
+  }
+
+  /**
+   * Creates {@code path} so that only its owner can read it, before the token is written to it, since the token is what keeps other users
+   * from running dx as this one. Where there are no POSIX permissions, as on Windows, the file is in the user's own system directory.
+   */
+  private static void createOwnerOnlyFile(Path path) throws IOException {
+    Files.deleteIfExists(path);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+                                                                             PosixFilePermission.OWNER_WRITE)));
+    }
+    else {
+      Files.createFile(path);
+      File file = path.toFile();
+      //noinspection ResultOfMethodCallIgnored
+      file.setReadable(false, false);
+      //noinspection ResultOfMethodCallIgnored
+      file.setReadable(true, true);
+    }
+  }
+
+  private String readPortFile() {
+    try {
+      Reader reader = new InputStreamReader(new FileInputStream(myPortFile), "UTF-8");
+      try {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[256];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+          builder.append(buffer, 0, n);
+        }
+        return builder.toString();
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * @return how many dx runs that may each use {@code runHeapMb} a daemon should do at once for a build that runs up to
+   * {@code buildThreads} tools at once: no more than that, than there are processors, or than fit in {@link #MAX_HEAP_MB}, and 1 if the
+   * heap of a run isn't known
+   */
+  public static int getMaxConcurrentRuns(int buildThreads, long runHeapMb) {
+    if (runHeapMb <= 0) {
+      return 1;
+    }
+    long runs = Math.min(buildThreads, Math.min(Runtime.getRuntime().availableProcessors(), MAX_HEAP_MB / runHeapMb));
+    return (int)Math.max(1, runs);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2 && args.length != 3) {
+      System.err.println("Usage: AndroidDxDaemon <port file> <idle timeout in ms> [<dx runs at once>]");
+      System.exit(1);
+    }
+    int maxConcurrentRuns = args.length == 3 ? Integer.parseInt(args[2]) : 1;
+    new AndroidDxDaemon(new File(args[0]), Long.parseLong(args[1]), maxConcurrentRuns).serve();
+    System.exit(0);
+  }
+}
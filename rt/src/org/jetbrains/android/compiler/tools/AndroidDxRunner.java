@@ -21,6 +21,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -62,6 +63,10 @@ public class AndroidDxRunner {
   private static Field myMultiDex;
   private static Field myMinimalMainDex;
   private static Field myMainDexList;
+  private static Field myIncremental;
+
+  private static PrintStream myOut = System.out;
+  private static PrintStream myErr = System.err;
 
   private AndroidDxRunner() { }
 
@@ -69,7 +74,7 @@ public class AndroidDxRunner {
     try {
       File f = new File(dxPath);
       if (!f.isFile()) {
-        System.err.println("File not found: " + dxPath);
+        myErr.println("File not found: " + dxPath);
         return;
       }
       URL url = f.toURI().toURL();
@@ -99,6 +104,7 @@ public class AndroidDxRunner {
       myMultiDex = getFieldIfPossible(argClass, "multiDex");
       myMainDexList = getFieldIfPossible(argClass, "mainDexListFile");
       myMinimalMainDex = getFieldIfPossible(argClass, "minimalMainDex");
+      myIncremental = getFieldIfPossible(argClass, "incremental");
     }
     catch (SecurityException e) {
       reportError("Unable to find API for dex.jar", e);
@@ -132,12 +138,17 @@ public class AndroidDxRunner {
                             String[] fileNames,
                             boolean optimize,
                             boolean forceJumbo,
-                            boolean coreLibrary, boolean multiDex, String mainDexList, boolean minimalMainDex) {
+                            boolean coreLibrary, boolean multiDex, String mainDexList, boolean minimalMainDex,
+                            boolean incremental) {
     loadDex(dxPath);
 
+    if (myMethod == null) {
+      // Failed to load, which is already reported.
+      return -1;
+    }
     try {
-      myConsoleErr.set(null, System.err);
-      myConsoleOut.set(null, System.out);
+      myConsoleErr.set(null, myErr);
+      myConsoleOut.set(null, myOut);
 
       Object args = myConstructor.newInstance();
       myOutNameField.set(args, outFilePath);
@@ -185,6 +196,14 @@ public class AndroidDxRunner {
       else {
         reportWarning("Cannot find 'mainDexListFile' field. The option won't be passed to DEX");
       }
+      if (incremental) {
+        if (myIncremental != null) {
+          myIncremental.set(args, true);
+        }
+        else {
+          reportWarning("Cannot find 'incremental' field. All classes will be dexed");
+        }
+      }
       Object res = myMethod.invoke(null, args);
 
       if (res instanceof Integer) {
@@ -205,12 +224,12 @@ public class AndroidDxRunner {
   }
 
   private static void reportError(String message, Throwable t) {
-    System.err.println(message);
-    t.printStackTrace();
+    myErr.println(message);
+    t.printStackTrace(myErr);
   }
 
   private static void reportWarning(String message) {
-    System.err.println("warning: " + message);
+    myErr.println("warning: " + message);
   }
 
   private static void collectFiles(File root, Collection<String> result, Set<String> visited, Set<String> qNames) throws IOException {
@@ -257,16 +276,28 @@ public class AndroidDxRunner {
   }
 
   public static void main(String[] args) {
+    run(args, System.out, System.err);
+  }
+
+  /**
+   * Runs dx with the arguments that {@link #main} takes, writing its output to the given streams instead of the standard ones.
+   *
+   * @return the exit code of dx, or -1 if it could not be run
+   */
+  public static int run(String[] args, PrintStream out, PrintStream err) {
+    myOut = out;
+    myErr = err;
+
     if (args.length == 0) {
-      System.err.println("Error: dx path must be passed as first argument");
+      myErr.println("Error: dx path must be passed as first argument");
     }
     String dxPath = args[0];
     if (args.length == 1) {
-      System.err.println("Error: out file path must be passed as second argument");
+      myErr.println("Error: out file path must be passed as second argument");
     }
     String outFilePath = args[1];
     if (args.length == 2) {
-      System.err.println("Error: no files");
+      myErr.println("Error: no files");
     }
 
     Set<String> files = new HashSet<String>();
@@ -277,6 +308,7 @@ public class AndroidDxRunner {
     boolean coreLibrary = false;
     boolean multiDex = false;
     boolean minimalMainDex = false;
+    boolean incremental = false;
     String mainDexList = null;
 
     int i = 2;
@@ -303,6 +335,9 @@ public class AndroidDxRunner {
       else if ("--minimal-main-dex".equals(args[i])) {
         minimalMainDex = true;
       }
+      else if ("--incremental".equals(args[i])) {
+        incremental = true;
+      }
       else if ("--main-dex-list".equals(args[i])) {
         i++;
         if (i < args.length) {
@@ -333,6 +368,6 @@ public class AndroidDxRunner {
     files.removeAll(Arrays.asList(excludedFiles));
     String[] filesArray = files.toArray(new String[files.size()]);
     //System.out.println("file names: " + concat(filesArray));
-    runDex(dxPath, outFilePath, filesArray, optimize, forceJumbo, coreLibrary, multiDex, mainDexList, minimalMainDex);
+    return runDex(dxPath, outFilePath, filesArray, optimize, forceJumbo, coreLibrary, multiDex, mainDexList, minimalMainDex, incremental);
   }
 }